@@ -89,6 +89,8 @@ tokens
     CONSTRAINT='constraint';
     SHOW='show';
     TABLES='tables';
+    TABLESAMPLE='tablesample';
+    PERCENT='percent';
 }
 
 
@@ -422,12 +424,13 @@ select_expression returns [ParseNode ret]
 select_node returns [SelectStatement ret]
     :   SELECT (hint=hintClause)? sel=select_list
         FROM from=parseFrom
+        (TABLESAMPLE LPAREN p=sample_percent PERCENT RPAREN)?
         (WHERE where=condition)?
         (GROUP BY group=group_by)?
         (HAVING having=condition)?
         (ORDER BY order=order_by)?
         (LIMIT l=limit)?
-        {$ret = factory.select(from, hint, sel, where, group, having, order, l, getBindCount()); }
+        {$ret = factory.select(from, hint, sel, where, group, having, order, l, p, getBindCount()); }
     ;
 
 // Parse a full upsert expression structure.
@@ -455,6 +458,11 @@ limit returns [LimitNode ret]
     | l=int_literal { $ret = factory.limit(l); }
     ;
     
+sample_percent returns [Double ret]
+    : n=NUMBER { $ret = Double.valueOf(n.getText()); }
+    | d=DECIMAL { $ret = Double.valueOf(d.getText()); }
+    ;
+    
 hintClause returns [HintNode ret]
     :  c=ML_HINT { $ret = factory.hint(c.getText()); }
     ;
@@ -511,10 +519,11 @@ named_table returns [NamedTableNode ret]
     ;
 
 
+// A table alias may not be TABLESAMPLE, as it would be ambiguous with the TABLESAMPLE clause that may follow it
 table_ref returns [TableNode ret]
-    :   n=bind_name ((AS)? alias=identifier)? { $ret = factory.bindTable(alias, factory.table(null,n)); } // TODO: review
-    |   t=from_table_name ((AS)? alias=identifier)? { $ret = factory.namedTable(alias, t); }
-    |   LPAREN s=select_node RPAREN ((AS)? alias=identifier)? { $ret = factory.subselect(alias, s); }
+    :   n=bind_name ((AS)? alias=parseNoReserved)? { $ret = factory.bindTable(alias, factory.table(null,n)); } // TODO: review
+    |   t=from_table_name ((AS)? alias=parseNoReserved)? { $ret = factory.namedTable(alias, t); }
+    |   LPAREN s=select_node RPAREN ((AS)? alias=parseNoReserved)? { $ret = factory.subselect(alias, s); }
     ;
 
 join_specs returns [List<TableNode> ret]
@@ -717,10 +726,13 @@ bind_name returns [String ret]
 // Parse a field, includes line and column information.
 identifier returns [String ret]
     :   c=parseNoReserved { $ret = c; }
+    |   k=TABLESAMPLE { $ret = k.getText(); }
     ;
 
+// Keywords that are only meaningful in a single context aren't reserved, so that existing names remain valid
 parseNoReserved returns [String ret]
     :   n=NAME { $ret = n.getText(); }
+    |   k=PERCENT { $ret = k.getText(); }
     ;
 
 expression_list returns [List<ParseNode> ret]
@@ -36,10 +36,9 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.memory.ChildMemoryManager;
 import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.metrics.ServerMetrics;
 import com.salesforce.phoenix.query.QueryServices;
 import com.salesforce.phoenix.query.QueryServicesOptions;
-import com.salesforce.phoenix.schema.PTable;
-import com.salesforce.phoenix.util.ImmutableBytesPtr;
 
 
 /**
@@ -57,7 +56,9 @@ public class GlobalCache extends TenantCacheImpl {
     private final Configuration config;
     private final ConcurrentMap<ImmutableBytesWritable,TenantCache> perTenantCacheMap = new ConcurrentHashMap<ImmutableBytesWritable,TenantCache>();
     // Cache for lastest PTable for a given Phoenix table
-    private final ConcurrentHashMap<ImmutableBytesPtr,PTable> metaDataCacheMap = new ConcurrentHashMap<ImmutableBytesPtr,PTable>();
+    private final MetaDataCache metaDataCache;
+    // Caches of deserialized scan attributes, one per kind of attribute
+    private final ConcurrentMap<ScanStateCache.Deserializer<?>,ScanStateCache<?>> scanStateCaches = new ConcurrentHashMap<ScanStateCache.Deserializer<?>,ScanStateCache<?>>();
     
     public static GlobalCache getInstance(Configuration config) {
         if (INSTANCE == null) {
@@ -70,8 +71,29 @@ public class GlobalCache extends TenantCacheImpl {
         return INSTANCE;
     }
     
-    public ConcurrentHashMap<ImmutableBytesPtr,PTable> getMetaDataCache() {
-        return metaDataCacheMap;
+    public MetaDataCache getMetaDataCache() {
+        return metaDataCache;
+    }
+    
+    /**
+     * Get the cache of the state deserialized from one kind of scan attribute.
+     * @param deserializer the deserializer of the attribute, which identifies the cache
+     * and must be the same instance for every call for the same kind of attribute.
+     * @return the existing or newly created ScanStateCache
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ScanStateCache<T> getScanStateCache(ScanStateCache.Deserializer<T> deserializer) {
+        ScanStateCache<T> scanStateCache = (ScanStateCache<T>)scanStateCaches.get(deserializer);
+        if (scanStateCache == null) {
+            ScanStateCache<T> newScanStateCache = new ScanStateCache<T>(deserializer,
+                    config.getLong(MAX_SCAN_STATE_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SCAN_STATE_CACHE_SIZE),
+                    config.getInt(MAX_SCAN_STATE_CACHE_TIME_TO_LIVE_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SCAN_STATE_CACHE_TIME_TO_LIVE_MS));
+            scanStateCache = (ScanStateCache<T>)scanStateCaches.putIfAbsent(deserializer, newScanStateCache);
+            if (scanStateCache == null) {
+                scanStateCache = newScanStateCache;
+            }
+        }
+        return scanStateCache;
     }
     
     /**
@@ -88,12 +110,19 @@ public class GlobalCache extends TenantCacheImpl {
     }
     
     private GlobalCache(Configuration config) {
-        super(Executors.newSingleThreadScheduledExecutor(),
-              new GlobalMemoryManager(Runtime.getRuntime().totalMemory() * 
-                                          config.getInt(MAX_MEMORY_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_PERC) / 100,
-                                      config.getInt(MAX_MEMORY_WAIT_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_WAIT_MS)),
+        this(config, new GlobalMemoryManager(Runtime.getRuntime().totalMemory() * 
+                                                 config.getInt(MAX_MEMORY_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_PERC) / 100,
+                                             config.getInt(MAX_MEMORY_WAIT_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_MEMORY_WAIT_MS)));
+    }
+    
+    private GlobalCache(Configuration config, GlobalMemoryManager memoryManager) {
+        super(Executors.newSingleThreadScheduledExecutor(), memoryManager,
               config.getInt(QueryServices.MAX_HASH_CACHE_TIME_TO_LIVE_MS, QueryServicesOptions.DEFAULT_MAX_HASH_CACHE_TIME_TO_LIVE_MS));
+        ServerMetrics.getInstance().setMemoryManager(memoryManager);
         this.config = config;
+        this.metaDataCache = new MetaDataCache(getMemoryManager(),
+                config.getLong(MAX_SERVER_METADATA_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SERVER_METADATA_CACHE_SIZE),
+                config.getInt(MAX_SERVER_METADATA_CACHE_TIME_TO_LIVE_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SERVER_METADATA_CACHE_TIME_TO_LIVE_MS));
     }
     
     public Configuration getConfig() {
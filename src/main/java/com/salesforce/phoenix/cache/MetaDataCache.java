@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.*;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.util.ImmutableBytesPtr;
+import com.salesforce.phoenix.util.SizedUtil;
+
+
+/**
+ * 
+ * Server-side cache of the latest PTable for a given Phoenix table, bounded by the
+ * estimated size of the cached tables. Least recently used tables (and deleted table
+ * markers) are evicted once the maximum size is reached or once they have not been
+ * accessed for the configured time to live. The memory held by the cache is charged
+ * against the {@link MemoryManager} passed in, and a table is not cached if the
+ * memory manager does not have enough memory available.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MetaDataCache {
+    private static final Logger logger = LoggerFactory.getLogger(MetaDataCache.class);
+    
+    private final Cache<ImmutableBytesPtr,PTable> cache;
+    private final MemoryChunk memoryChunk;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    
+    public MetaDataCache(MemoryManager memoryManager, long maxSizeBytes, long timeToLiveMs) {
+        this.memoryChunk = memoryManager.allocate(0);
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxSizeBytes)
+            .expireAfterAccess(timeToLiveMs, TimeUnit.MILLISECONDS)
+            .weigher(new Weigher<ImmutableBytesPtr,PTable>() {
+                @Override
+                public int weigh(ImmutableBytesPtr key, PTable table) {
+                    return sizeOf(key, table);
+                }
+            })
+            .removalListener(new RemovalListener<ImmutableBytesPtr,PTable>() {
+                @Override
+                public void onRemoval(RemovalNotification<ImmutableBytesPtr,PTable> notification) {
+                    if (logger.isDebugEnabled() && notification.wasEvicted()) {
+                        logger.debug("Evicted " + notification.getValue() + " from meta data cache: " + notification.getCause());
+                    }
+                    resizeMemory(-sizeOf(notification.getKey(), notification.getValue()));
+                }
+            })
+            .build();
+    }
+    
+    /**
+     * Estimate the number of bytes held by a cached table. Deleted table markers
+     * have no name and no columns, so they only account for the key and the object.
+     */
+    private static int sizeOf(ImmutableBytesPtr key, PTable table) {
+        int size = SizedUtil.OBJECT_SIZE * 2 + SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE + key.getLength();
+        if (table.getName() != null) {
+            size += sizeOf(table.getName());
+        }
+        for (PColumnFamily family : table.getColumnFamilies()) {
+            size += SizedUtil.OBJECT_SIZE + sizeOf(family.getName()) + 2 * SizedUtil.MAP_ENTRY_SIZE;
+        }
+        for (PColumn column : table.getColumns()) {
+            // Each column is referenced from the list of all columns, the columns by name multimap,
+            // and either the PK column list or its column family.
+            size += SizedUtil.OBJECT_SIZE + 4 * SizedUtil.POINTER_SIZE + 2 * SizedUtil.INT_OBJECT_SIZE 
+                    + sizeOf(column.getName()) + SizedUtil.MAP_ENTRY_SIZE * 2;
+        }
+        return size;
+    }
+    
+    private static int sizeOf(PName name) {
+        return name == null ? 0 : SizedUtil.OBJECT_SIZE * 2 + SizedUtil.ARRAY_SIZE * 2 
+                + name.getString().length() * SizedUtil.CHAR_SIZE + name.getBytes().length;
+    }
+    
+    /**
+     * Resize the memory charged for the cache without waiting, so that neither a put nor
+     * an eviction giving back memory is ever held up on the memory manager.
+     * @return false if the memory to grow by is not available right away
+     */
+    private boolean resizeMemory(long deltaBytes) {
+        synchronized (memoryChunk) {
+            return memoryChunk.tryResize(memoryChunk.getSize() + deltaBytes);
+        }
+    }
+    
+    public PTable get(ImmutableBytesPtr key) {
+        return cache.getIfPresent(key);
+    }
+    
+    /**
+     * Cache the given table, replacing any existing table for the key.
+     * If the memory manager cannot provide the memory to hold the table right away,
+     * the existing entry is invalidated and the table is not cached, since the cache
+     * must never hold a table older than the latest one.
+     */
+    public void put(ImmutableBytesPtr key, PTable table) {
+        int size = sizeOf(key, table);
+        if (!resizeMemory(size)) {
+            rejectedCount.incrementAndGet();
+            logger.warn("Unable to cache " + table + " of " + size + " bytes: not enough memory available");
+            cache.invalidate(key);
+            return;
+        }
+        cache.put(key, table);
+    }
+    
+    public void remove(ImmutableBytesPtr key) {
+        cache.invalidate(key);
+    }
+    
+    public void clear() {
+        cache.invalidateAll();
+    }
+    
+    /**
+     * @return the number of tables and deleted table markers currently cached.
+     */
+    public long getEntryCount() {
+        return cache.size();
+    }
+    
+    /**
+     * @return the estimated number of bytes held by the cached tables.
+     */
+    public long getSizeBytes() {
+        synchronized (memoryChunk) {
+            return memoryChunk.getSize();
+        }
+    }
+    
+    /**
+     * @return the number of tables not cached because of insufficient memory.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+    
+    /**
+     * @return the hit, miss, and eviction statistics of the cache.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+}
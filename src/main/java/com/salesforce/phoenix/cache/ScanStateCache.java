@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.*;
+import com.salesforce.phoenix.util.ImmutableBytesPtr;
+
+
+/**
+ * 
+ * Server-side cache of the state a coprocessor deserializes from a scan attribute,
+ * keyed by the serialized attribute bytes. Since every split of a query carries the
+ * same attribute bytes, each region server only deserializes the state once per query
+ * shape instead of once per region scan. Entries are evicted once the maximum size is
+ * reached or once they have not been accessed for the configured time to live. The size
+ * of an entry is estimated from the size of its serialized attribute bytes.
+ * 
+ * State that is immutable, like a PTable, is shared by all scans through {@link #get(byte[])}.
+ * State that is modified during evaluation, like expressions, is instead borrowed by a single
+ * scan at a time through {@link #borrow(byte[])} and given back when the scan is done with it
+ * through {@link #release(byte[], Object)}.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class ScanStateCache<T> {
+    // Enough for the handler threads of a region server to each hold one without deserializing
+    private static final int MAX_POOLED_STATE_PER_KEY = 32;
+    
+    /**
+     * Deserializes the state held by a scan attribute
+     */
+    public static interface Deserializer<T> {
+        T deserialize(byte[] b) throws IOException;
+    }
+    
+    private final Deserializer<T> deserializer;
+    private final Cache<ImmutableBytesPtr,T> sharedCache;
+    private final Cache<ImmutableBytesPtr,Queue<T>> pooledCache;
+    
+    /**
+     * @param deserializer deserializes the state on a cache miss
+     * @param maxSizeBytes the maximum size of the cached state, estimated from the size of
+     * the serialized attribute bytes. A pool of borrowed state is sized as if it were full.
+     * If zero, nothing is cached and the state is deserialized every time.
+     * @param timeToLiveMs the time after which an entry that has not been accessed is evicted
+     */
+    public ScanStateCache(Deserializer<T> deserializer, long maxSizeBytes, long timeToLiveMs) {
+        this.deserializer = deserializer;
+        this.sharedCache = CacheBuilder.newBuilder()
+            .maximumWeight(maxSizeBytes)
+            .expireAfterAccess(timeToLiveMs, TimeUnit.MILLISECONDS)
+            .weigher(new Weigher<ImmutableBytesPtr,T>() {
+                @Override
+                public int weigh(ImmutableBytesPtr key, T state) {
+                    return key.getLength();
+                }
+            })
+            .build();
+        this.pooledCache = CacheBuilder.newBuilder()
+            .maximumWeight(maxSizeBytes)
+            .expireAfterAccess(timeToLiveMs, TimeUnit.MILLISECONDS)
+            .weigher(new Weigher<ImmutableBytesPtr,Queue<T>>() {
+                @Override
+                public int weigh(ImmutableBytesPtr key, Queue<T> pool) {
+                    return key.getLength() * MAX_POOLED_STATE_PER_KEY;
+                }
+            })
+            .build();
+    }
+    
+    /**
+     * Get the state for the serialized attribute, which may be shared with other scans
+     * running concurrently. May only be used for immutable state.
+     * @param b the serialized attribute bytes
+     * @return the deserialized state
+     */
+    public T get(byte[] b) throws IOException {
+        ImmutableBytesPtr key = new ImmutableBytesPtr(b);
+        T state = sharedCache.getIfPresent(key);
+        if (state == null) {
+            state = deserializer.deserialize(b);
+            sharedCache.put(key, state);
+        }
+        return state;
+    }
+    
+    /**
+     * Get the state for the serialized attribute for the exclusive use of the caller,
+     * deserializing it if no previously released state is available.
+     * @param b the serialized attribute bytes
+     * @return the deserialized state, which should be given back through
+     * {@link #release(byte[], Object)} once the caller is done with it
+     */
+    public T borrow(byte[] b) throws IOException {
+        Queue<T> pool = pooledCache.getIfPresent(new ImmutableBytesPtr(b));
+        T state = pool == null ? null : pool.poll();
+        if (state == null) {
+            state = deserializer.deserialize(b);
+        }
+        return state;
+    }
+    
+    /**
+     * Give back state obtained through {@link #borrow(byte[])} so that it may be reused
+     * by a later scan with the same serialized attribute. The caller may no longer use it.
+     * @param b the serialized attribute bytes from which the state was borrowed
+     * @param state the borrowed state
+     */
+    public void release(byte[] b, T state) {
+        ImmutableBytesPtr key = new ImmutableBytesPtr(b);
+        Queue<T> pool = pooledCache.getIfPresent(key);
+        if (pool == null) {
+            pool = new ConcurrentLinkedQueue<T>();
+            Queue<T> existingPool = pooledCache.asMap().putIfAbsent(key, pool);
+            if (existingPool != null) {
+                pool = existingPool;
+            }
+        }
+        // The size is only approximate with concurrent releases, which is fine for a bound
+        if (pool.size() < MAX_POOLED_STATE_PER_KEY) {
+            pool.offer(state);
+        }
+    }
+    
+    /**
+     * @return the number of distinct attribute values currently cached.
+     */
+    public long getEntryCount() {
+        return sharedCache.size() + pooledCache.size();
+    }
+    
+    public void clear() {
+        sharedCache.invalidateAll();
+        pooledCache.invalidateAll();
+    }
+}
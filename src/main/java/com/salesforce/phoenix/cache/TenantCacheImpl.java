@@ -42,6 +42,7 @@ import org.xerial.snappy.Snappy;
 import com.salesforce.phoenix.exception.PhoenixIOException;
 import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.metrics.ServerMetrics;
 import com.salesforce.phoenix.util.*;
 
 /**
@@ -137,7 +138,9 @@ public class TenantCacheImpl implements TenantCache {
                 @Override
                 public Void call() throws SQLException {
                     if (System.currentTimeMillis() - lastAccessTime >= maxHashCacheTimeToLiveMs) {
-                        removeHashCache(joinId);
+                        if (removeHashCache(joinId) != null) {
+                            ServerMetrics.getInstance().addAgeOutEviction();
+                        }
                     }
                     return null;
                 }
@@ -175,6 +178,7 @@ public class TenantCacheImpl implements TenantCache {
                     int nRows = dataInput.readInt();
                     int estimatedSize = SizedUtil.sizeOfMap(nRows, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, SizedUtil.RESULT_SIZE) + hashCacheBytes.getLength();
                     this.memoryChunk = memoryManager.allocate(estimatedSize);
+                    ServerMetrics.getInstance().addHashCache(estimatedSize);
                     HashMap<ImmutableBytesWritable,Result> hashCacheMap = new HashMap<ImmutableBytesWritable,Result>(nRows * 5 / 4);
                     offset += Bytes.SIZEOF_INT;
                     // Build Map with row key as key and row as value
@@ -209,6 +213,7 @@ public class TenantCacheImpl implements TenantCache {
     
             @Override
             public void close() {
+                ServerMetrics.getInstance().removeHashCache(memoryChunk.getSize());
                 memoryChunk.close();
             }
     
@@ -73,5 +73,44 @@ public interface ColumnProjector {
      */
     Object getValue(Tuple tuple, PDataType type, ImmutableBytesWritable ptr) throws SQLException;
     
+    /**
+     * Evaluate the column without converting its value, so that the serialized
+     * value may be converted by the methods below, possibly more than once
+     * @param tuple the row containing the column
+     * @param ptr set to the serialized value of the column
+     * @return true if ptr was set and false if the column value is null
+     */
+    boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr);
+    
+    /**
+     * Convert a value obtained through {@link #evaluate(Tuple, ImmutableBytesWritable)},
+     * coercing it if necessary to the specified type
+     * @param ptr the serialized value of the column
+     * @param type the type to which to coerce the binary value
+     * @return the object representation of the column value
+     * @throws SQLException
+     */
+    Object getValue(ImmutableBytesWritable ptr, PDataType type) throws SQLException;
+    
+    /**
+     * Convert a value obtained through {@link #evaluate(Tuple, ImmutableBytesWritable)}
+     * to a long without creating an object for it when the column is natively encoded
+     * @param ptr the serialized value of the column
+     * @param type either {@link PDataType#LONG} or {@link PDataType#INTEGER}, the type
+     * to which to coerce the binary value
+     * @return the long value of the column
+     * @throws SQLException
+     */
+    long getLong(ImmutableBytesWritable ptr, PDataType type) throws SQLException;
+    
+    /**
+     * Convert a value obtained through {@link #evaluate(Tuple, ImmutableBytesWritable)}
+     * to a double without creating an object for it when the column is natively encoded
+     * @param ptr the serialized value of the column
+     * @return the double value of the column
+     * @throws SQLException
+     */
+    double getDouble(ImmutableBytesWritable ptr) throws SQLException;
+    
     boolean isCaseSensitive();
 }
@@ -71,6 +71,11 @@ public class CreateTableCompiler {
         
         return new MutationPlan() {
 
+            @Override
+            public StatementContext getContext() {
+                return context;
+            }
+
             @Override
             public ParameterMetaData getParameterMetaData() {
                 return context.getBindManager().getParameterMetaData();
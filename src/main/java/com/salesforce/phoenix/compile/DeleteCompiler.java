@@ -79,6 +79,11 @@ public class DeleteCompiler {
             final ImmutableBytesPtr key = new ImmutableBytesPtr(scan.getStartRow());
             return new MutationPlan() {
 
+                @Override
+                public StatementContext getContext() {
+                    return context;
+                }
+
                 @Override
                 public ParameterMetaData getParameterMetaData() {
                     return context.getBindManager().getParameterMetaData();
@@ -112,6 +117,11 @@ public class DeleteCompiler {
             final QueryPlan plan = new AggregatePlan(context, tableRef, projector, null, GroupBy.EMPTY_GROUP_BY, null, OrderBy.EMPTY_ORDER_BY, 0);
             return new MutationPlan() {
 
+                @Override
+                public StatementContext getContext() {
+                    return context;
+                }
+
                 @Override
                 public PhoenixConnection getConnection() {
                     return connection;
@@ -158,6 +168,11 @@ public class DeleteCompiler {
             final QueryPlan plan = new ScanPlan(context, tableRef, projector, null, OrderBy.EMPTY_ORDER_BY);
             return new MutationPlan() {
 
+                @Override
+                public StatementContext getContext() {
+                    return context;
+                }
+
                 @Override
                 public PhoenixConnection getConnection() {
                     return connection;
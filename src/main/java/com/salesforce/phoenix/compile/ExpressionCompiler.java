@@ -39,7 +39,9 @@ import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.expression.*;
+import com.salesforce.phoenix.expression.function.CountAggregateFunction;
 import com.salesforce.phoenix.expression.function.FunctionExpression;
+import com.salesforce.phoenix.expression.function.SumAggregateFunction;
 import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.parse.FunctionParseNode.BuiltInFunctionInfo;
 import com.salesforce.phoenix.schema.*;
@@ -308,6 +310,19 @@ public class ExpressionCompiler extends UnsupportedAllParseNodeVisitor<Expressio
         return context.getExpressionManager().addIfAbsent(func);
     }
     
+    /**
+     * Scale up a COUNT or SUM computed over a TABLESAMPLE of the table into
+     * an estimate of its value over the whole table, if configured to do so.
+     */
+    private Expression scaleSampledAggregate(Expression expression) throws SQLException {
+        BigDecimal scaleFactor = context.getSampleScaleFactor();
+        if (scaleFactor == null) {
+            return expression;
+        }
+        List<Expression> children = Arrays.<Expression>asList(expression, LiteralExpression.newConstant(scaleFactor, PDataType.DECIMAL));
+        return new DecimalMultiplyExpression(children);
+    }
+    
     @Override
     /**
      * @param node a function expression node
@@ -340,6 +355,9 @@ public class ExpressionCompiler extends UnsupportedAllParseNodeVisitor<Expressio
         }
         Expression expression = addFunction(func);
         expression = wrapGroupByExpression(expression);
+        if (func instanceof CountAggregateFunction || func instanceof SumAggregateFunction) {
+            expression = scaleSampledAggregate(expression);
+        }
         if (aggregateFunction == node) {
             aggregateFunction = null; // Turn back off on the way out
         }
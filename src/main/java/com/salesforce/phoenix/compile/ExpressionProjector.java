@@ -28,6 +28,7 @@
 package com.salesforce.phoenix.compile;
 
 
+import java.math.BigDecimal;
 import java.sql.SQLException;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
@@ -75,14 +76,49 @@ public class ExpressionProjector implements ColumnProjector {
 
     @Override
     public final Object getValue(Tuple tuple, PDataType type, ImmutableBytesWritable ptr) throws SQLException {
-        Expression expression = getExpression();
-        if (!expression.evaluate(tuple, ptr)) {
+        if (!evaluate(tuple, ptr)) {
             return null;
         }
-        if (ptr.getLength() == 0) {
-            return null;
+        return getValue(ptr, type);
+    }
+
+    @Override
+    public final boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        return getExpression().evaluate(tuple, ptr) && ptr.getLength() != 0;
+    }
+
+    @Override
+    public final Object getValue(ImmutableBytesWritable ptr, PDataType type) throws SQLException {
+        return type.toObject(ptr, getExpression().getDataType());
+    }
+
+    @Override
+    public final long getLong(ImmutableBytesWritable ptr, PDataType type) throws SQLException {
+        PDataType actualType = getExpression().getDataType();
+        switch (actualType) {
+        case LONG:
+        case UNSIGNED_LONG:
+        case INTEGER:
+        case UNSIGNED_INT:
+            // Same conversion as done by PDataType.toObject, without boxing the result
+            return type == PDataType.INTEGER ? actualType.getCodec().decodeInt(ptr) : actualType.getCodec().decodeLong(ptr);
+        default:
+            return ((Number)getValue(ptr, type)).longValue();
+        }
+    }
+
+    @Override
+    public final double getDouble(ImmutableBytesWritable ptr) throws SQLException {
+        PDataType actualType = getExpression().getDataType();
+        switch (actualType) {
+        case LONG:
+        case UNSIGNED_LONG:
+        case INTEGER:
+        case UNSIGNED_INT:
+            return actualType.getCodec().decodeLong(ptr);
+        default:
+            return ((BigDecimal)getValue(ptr, PDataType.DECIMAL)).doubleValue();
         }
-        return type.toObject(ptr, expression.getDataType());
     }
 
     @Override
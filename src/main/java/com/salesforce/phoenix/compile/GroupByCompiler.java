@@ -36,12 +36,14 @@ import org.apache.http.annotation.Immutable;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.salesforce.phoenix.coprocessor.GroupedAggregateRegionObserver;
 import com.salesforce.phoenix.coprocessor.UngroupedAggregateRegionObserver;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.expression.*;
 import com.salesforce.phoenix.expression.function.FunctionExpression;
+import com.salesforce.phoenix.expression.function.FunctionExpression.OrderPreserving;
 import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.SchemaUtil;
@@ -144,6 +146,8 @@ public class GroupByCompiler {
         List<Pair<Expression,Integer>> groupByPairs = Lists.newArrayListWithCapacity(groupByNodes.size());
         int groupByNodeCount = groupByNodes.size();
         GroupByClauseVisitor groupByVisitor = new GroupByClauseVisitor(context);
+        // PK column positions grouped by an expression that maps distinct values to distinct groups
+        Set<Integer> exactPositions = Sets.newHashSetWithExpectedSize(groupByNodeCount);
         for (int i = 0; i < groupByNodeCount; i++) {
             ParseNode node = groupByNodes.get(i);
             Expression expression = node.accept(groupByVisitor);
@@ -153,6 +157,9 @@ public class GroupByCompiler {
             }
             if (! (expression instanceof LiteralExpression) ) { // Filter out top level literals
                 groupByPairs.add(new Pair<Expression,Integer>(expression,groupByVisitor.columnPosition));
+                if (groupByVisitor.orderPreserving == OrderPreserving.YES) {
+                    exactPositions.add(groupByVisitor.columnPosition);
+                }
             }
             groupByVisitor.reset();
         }
@@ -174,6 +181,12 @@ public class GroupByCompiler {
                 groupByVisitor.isRowKeyOrderedGrouping &= (pos == prevPos || (pos - 1 == prevPos));
                 prevPos = pos;
             }
+            // A function such as TRUNC(date,'HOUR') maps many row keys onto the same group, so the
+            // groups are only contiguous if every PK column before it is grouped by exactly.
+            for (int i = 0; i < groupByPairs.size() && groupByVisitor.isRowKeyOrderedGrouping; i++) {
+                int pos = groupByPairs.get(i).getSecond();
+                groupByVisitor.isRowKeyOrderedGrouping &= (pos == prevPos || exactPositions.contains(pos));
+            }
         }
         List<Expression> expressions = Lists.newArrayListWithCapacity(groupByPairs.size());
         List<Expression> keyExpressions = expressions;
@@ -286,6 +299,7 @@ public class GroupByCompiler {
     private static class GroupByClauseVisitor  extends ExpressionCompiler {
         private boolean isRowKeyOrderedGrouping = true;
         private Integer columnPosition = null;
+        private OrderPreserving orderPreserving = OrderPreserving.YES;
         
         private GroupByClauseVisitor(StatementContext context) {
             super(context);
@@ -293,7 +307,12 @@ public class GroupByCompiler {
         
         @Override
         protected Expression addFunction(FunctionExpression func) {
-            isRowKeyOrderedGrouping &= func.preservesOrder();
+            OrderPreserving funcOrderPreserving = func.preservesOrder();
+            if (funcOrderPreserving == OrderPreserving.NO) {
+                isRowKeyOrderedGrouping = false;
+            } else if (funcOrderPreserving.compareTo(orderPreserving) < 0) {
+                orderPreserving = funcOrderPreserving;
+            }
             return super.addFunction(func);
         }
     
@@ -331,6 +350,7 @@ public class GroupByCompiler {
         public void reset() {
             super.reset();
             columnPosition = null;
+            orderPreserving = OrderPreserving.YES;
         }
         
         @Override
@@ -35,5 +35,10 @@ import com.salesforce.phoenix.jdbc.PhoenixConnection;
 
 public interface MutationPlan extends StatementPlan {
     public PhoenixConnection getConnection();
+    /**
+     * @return the context of the scans run by the mutation, through which they are
+     * cancelled and timed out, or null if the mutation runs no scan of its own
+     */
+    public StatementContext getContext();
     public MutationState execute() throws SQLException;
 }
@@ -71,6 +71,11 @@ public class PostDDLCompiler  {
     public MutationPlan compile(final TableRef tableRef, final byte[] emptyCF, final List<PColumn> deleteList, final long timeStamp) throws SQLException {
         return new MutationPlan() {
 
+            @Override
+            public StatementContext getContext() {
+                return null;
+            }
+
             @Override
             public PhoenixConnection getConnection() {
                 return connection;
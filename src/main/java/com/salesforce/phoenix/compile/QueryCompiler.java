@@ -35,6 +35,8 @@ import org.apache.hadoop.hbase.client.Scan;
 
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.execute.AggregatePlan;
 import com.salesforce.phoenix.execute.ScanPlan;
 import com.salesforce.phoenix.expression.Expression;
@@ -105,6 +107,18 @@ public class QueryCompiler {
         statement = RHSLiteralStatementRewriter.normalizeWhereClause(statement);
         ColumnResolver resolver = FromCompiler.getResolver(statement, connection);
         StatementContext context = new StatementContext(connection, resolver, binds, statement.getBindCount(), scan);
+        Double samplePercent = statement.getSamplePercent();
+        if (samplePercent != null) {
+            if (samplePercent <= 0 || samplePercent > 100) {
+                throw new SQLExceptionInfo.Builder(SQLExceptionCode.ILLEGAL_DATA)
+                    .setMessage("TABLESAMPLE percentage must be greater than 0 and at most 100, but was " + samplePercent)
+                    .build().buildException();
+            }
+            // Sampling the whole table is the same as not sampling at all
+            if (samplePercent < 100) {
+                context.setSamplePercent(samplePercent);
+            }
+        }
         Integer limit = LimitCompiler.getLimit(context, statement.getLimit());
 
         GroupBy groupBy = GroupByCompiler.getGroupBy(statement, context);
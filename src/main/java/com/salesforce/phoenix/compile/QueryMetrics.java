@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.compile;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.ImmutableList;
+
+
+/**
+ * 
+ * Counters collected while a query is compiled and executed. Each counter is
+ * only updated once per split or per materializing stage (never per KeyValue
+ * across threads), so collection is cheap enough to always be on. Obtain the
+ * metrics for a query through {@link com.salesforce.phoenix.util.PhoenixRuntime#getQueryMetrics(java.sql.ResultSet)}.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class QueryMetrics {
+    /**
+     * Iterator stages for which the elapsed time is tracked.
+     */
+    public enum Stage {
+        /** Wall time of the scans over each split, summed across splits */
+        SCAN,
+        /** Time spent spooling the results of each split, including the scan feeding it, summed across splits */
+        SPOOL,
+        /** Time spent materializing and sorting rows on the client for an ORDER BY */
+        SORT,
+        /** Time spent in {@link java.sql.ResultSet#next()} by the caller, added once the result set is exhausted or closed */
+        CLIENT
+    }
+    
+    /**
+     * 
+     * Counters for the scan over a single split
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    public static class SplitMetrics {
+        private final long rowCount;
+        private final long byteCount;
+        private final long wallTimeNs;
+        
+        private SplitMetrics(long rowCount, long byteCount, long wallTimeNs) {
+            this.rowCount = rowCount;
+            this.byteCount = byteCount;
+            this.wallTimeNs = wallTimeNs;
+        }
+        
+        public long getRowCount() {
+            return rowCount;
+        }
+        
+        public long getByteCount() {
+            return byteCount;
+        }
+        
+        public long getWallTime(TimeUnit unit) {
+            return unit.convert(wallTimeNs, TimeUnit.NANOSECONDS);
+        }
+        
+        @Override
+        public String toString() {
+            return "rows=" + rowCount + ",bytes=" + byteCount + ",ms=" + getWallTime(TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private final Queue<SplitMetrics> splits = new ConcurrentLinkedQueue<SplitMetrics>();
+    private final AtomicLongArray stageTimeNs = new AtomicLongArray(Stage.values().length);
+    private final AtomicLong spoolMemoryBytes = new AtomicLong();
+    private final AtomicLong spoolDiskBytes = new AtomicLong();
+    private final AtomicLong memoryWaitTimeNs = new AtomicLong();
+    private volatile long compileTimeNs;
+    
+    public void setCompileTime(long nanos) {
+        this.compileTimeNs = nanos;
+    }
+    
+    public long getCompileTime(TimeUnit unit) {
+        return unit.convert(compileTimeNs, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Record the completion of the scan over a split.
+     * @param rowCount number of rows returned by the scan
+     * @param byteCount total size of the KeyValues returned by the scan
+     * @param wallTimeNs elapsed time between opening and closing the scan
+     */
+    public void addSplit(long rowCount, long byteCount, long wallTimeNs) {
+        splits.add(new SplitMetrics(rowCount, byteCount, wallTimeNs));
+        addStageTime(Stage.SCAN, wallTimeNs);
+    }
+    
+    public List<SplitMetrics> getSplits() {
+        return ImmutableList.copyOf(splits);
+    }
+    
+    public int getSplitCount() {
+        return splits.size();
+    }
+    
+    public long getRowsScanned() {
+        long rowCount = 0;
+        for (SplitMetrics split : splits) {
+            rowCount += split.getRowCount();
+        }
+        return rowCount;
+    }
+    
+    public long getBytesScanned() {
+        long byteCount = 0;
+        for (SplitMetrics split : splits) {
+            byteCount += split.getByteCount();
+        }
+        return byteCount;
+    }
+    
+    public void addStageTime(Stage stage, long nanos) {
+        stageTimeNs.addAndGet(stage.ordinal(), nanos);
+    }
+    
+    public long getStageTime(Stage stage, TimeUnit unit) {
+        return unit.convert(stageTimeNs.get(stage.ordinal()), TimeUnit.NANOSECONDS);
+    }
+    
+    public void addSpoolBytes(long byteCount, boolean inMemory) {
+        (inMemory ? spoolMemoryBytes : spoolDiskBytes).addAndGet(byteCount);
+    }
+    
+    public long getSpoolMemoryBytes() {
+        return spoolMemoryBytes.get();
+    }
+    
+    public long getSpoolDiskBytes() {
+        return spoolDiskBytes.get();
+    }
+    
+    public void addMemoryWaitTime(long nanos) {
+        memoryWaitTimeNs.addAndGet(nanos);
+    }
+    
+    public long getMemoryWaitTime(TimeUnit unit) {
+        return unit.convert(memoryWaitTimeNs.get(), TimeUnit.NANOSECONDS);
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("compileMs=" + getCompileTime(TimeUnit.MILLISECONDS));
+        buf.append(",splits=" + getSplitCount());
+        buf.append(",rowsScanned=" + getRowsScanned());
+        buf.append(",bytesScanned=" + getBytesScanned());
+        buf.append(",spoolMemoryBytes=" + getSpoolMemoryBytes());
+        buf.append(",spoolDiskBytes=" + getSpoolDiskBytes());
+        buf.append(",memoryWaitMs=" + getMemoryWaitTime(TimeUnit.MILLISECONDS));
+        for (Stage stage : Stage.values()) {
+            buf.append("," + stage.name().toLowerCase() + "Ms=" + getStageTime(stage, TimeUnit.MILLISECONDS));
+        }
+        return buf.toString();
+    }
+}
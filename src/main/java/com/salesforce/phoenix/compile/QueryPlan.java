@@ -66,4 +66,9 @@ public interface QueryPlan extends StatementPlan {
     OrderBy getOrderBy();
 
     List<KeyRange> getSplits();
+    
+    /**
+     * Returns the context in which the plan was compiled
+     */
+    StatementContext getContext();
 }
@@ -28,23 +28,28 @@
 package com.salesforce.phoenix.compile;
 
 import java.io.*;
+import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.text.Format;
-import java.util.List;
+import java.util.*;
 
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.WritableUtils;
 
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
+import com.salesforce.phoenix.iterate.ResultIterators;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
-import com.salesforce.phoenix.query.QueryConstants;
-import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.memory.ChildMemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.MetaDataClient;
 import com.salesforce.phoenix.schema.TableRef;
-import com.salesforce.phoenix.util.DateUtil;
+import com.salesforce.phoenix.util.*;
 
 
 /**
@@ -66,11 +71,20 @@ public class StatementContext {
     private final Format dateParser;
     private final ImmutableBytesWritable tempPtr;
     private final PhoenixConnection connection;
+    private final MemoryManager memoryManager;
+    private final QueryMetrics metrics;
+    private final Set<SQLCloseable> cancellables;
+    private final List<ResultIterators> resultIterators;
 
+    private volatile boolean isCancelled;
+    private int queryTimeoutMs;
+    private long queryEndTimeMs;
     private boolean isAggregate;
+    private boolean isAsync;
     private GroupBy groupBy;
     private long currentTime = QueryConstants.UNSET_TIMESTAMP;
     private ScanRanges scanRanges = ScanRanges.EVERYTHING;
+    private Double samplePercent;
 
     public StatementContext(PhoenixConnection connection, ColumnResolver resolver, List<Object> binds, int bindCount, Scan scan) {
         this.connection = connection;
@@ -84,6 +98,13 @@ public class StatementContext {
         this.dateParser = DateUtil.getDateParser(dateFormat);
         this.tempPtr = new ImmutableBytesWritable();
         this.groupBy = GroupBy.EMPTY_GROUP_BY;
+        MemoryManager connectionMemoryManager = connection.getQueryServices().getMemoryManager();
+        int maxQueryMemoryPerc = connection.getQueryServices().getConfig().getInt(QueryServices.MAX_QUERY_MEMORY_PERC_ATTRIB, QueryServicesOptions.DEFAULT_MAX_QUERY_MEMORY_PERC);
+        this.memoryManager = maxQueryMemoryPerc < 100 ? new ChildMemoryManager(connectionMemoryManager, maxQueryMemoryPerc) : connectionMemoryManager;
+        this.metrics = new QueryMetrics();
+        this.cancellables = new HashSet<SQLCloseable>();
+        this.resultIterators = new ArrayList<ResultIterators>(1);
+        this.queryTimeoutMs = connection.getQueryServices().getConfig().getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, QueryServicesOptions.DEFAULT_THREAD_TIMEOUT_MS);
     }
 
 
@@ -133,10 +154,149 @@ public class StatementContext {
         this.scanRanges.setScanStartStopRow(scan);
     }
     
+    /**
+     * Gets the percentage of the table sampled by the TABLESAMPLE clause,
+     * or null if the whole table is scanned.
+     */
+    public Double getSamplePercent() {
+        return samplePercent;
+    }
+    
+    public void setSamplePercent(Double samplePercent) {
+        this.samplePercent = samplePercent;
+    }
+    
+    /**
+     * Gets the factor by which COUNT and SUM aggregates are multiplied to estimate
+     * their value over the whole table, or null if they should not be scaled.
+     * Controlled by phoenix.query.scaleSampledAggregates.
+     */
+    public BigDecimal getSampleScaleFactor() {
+        if (samplePercent == null || !connection.getQueryServices().getConfig().getBoolean(QueryServices.SCALE_SAMPLED_AGGREGATES_ATTRIB, QueryServicesOptions.DEFAULT_SCALE_SAMPLED_AGGREGATES)) {
+            return null;
+        }
+        return BigDecimal.valueOf(100 / samplePercent);
+    }
+    
     public PhoenixConnection getConnection() {
         return connection;
     }
 
+    /**
+     * Get the memory manager used by the statement, which limits its memory usage
+     * to phoenix.query.maxQueryMemoryPercentage of the memory available to the connection.
+     */
+    public MemoryManager getMemoryManager() {
+        return memoryManager;
+    }
+
+    /**
+     * Get the counters collected while compiling and executing the statement
+     */
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the number of milliseconds the statement may take to gather its results
+     * before it is abandoned. Defaults to phoenix.query.timeoutMs.
+     */
+    public int getQueryTimeoutMs() {
+        return queryTimeoutMs;
+    }
+
+    public void setQueryTimeoutMs(int queryTimeoutMs) {
+        this.queryTimeoutMs = queryTimeoutMs;
+    }
+
+    /**
+     * Get the time by which the statement must have gathered its results. The query
+     * timeout starts counting down on the first call, when the scans are started, and
+     * every later stage of the query waits against the same deadline.
+     */
+    public synchronized long getQueryEndTimeMs() {
+        if (queryEndTimeMs == 0) {
+            queryEndTimeMs = System.currentTimeMillis() + queryTimeoutMs;
+        }
+        return queryEndTimeMs;
+    }
+
+    /**
+     * Register a resource held while executing the statement so that it is
+     * closed if the statement is cancelled.
+     * @return false if the statement has already been cancelled, in which case
+     * the resource is not registered and the caller should release it.
+     */
+    public boolean addCancellable(SQLCloseable closeable) {
+        synchronized (cancellables) {
+            if (isCancelled) {
+                return false;
+            }
+            cancellables.add(closeable);
+            return true;
+        }
+    }
+
+    public void removeCancellable(SQLCloseable closeable) {
+        synchronized (cancellables) {
+            cancellables.remove(closeable);
+        }
+    }
+
+    /**
+     * Cancel the execution of the statement, closing any resources that
+     * were registered through {@link #addCancellable(SQLCloseable)}.
+     */
+    public void cancel() throws SQLException {
+        List<SQLCloseable> closeables;
+        synchronized (cancellables) {
+            if (isCancelled) {
+                return;
+            }
+            isCancelled = true;
+            closeables = new ArrayList<SQLCloseable>(cancellables);
+            cancellables.clear();
+        }
+        SQLCloseables.closeAll(closeables);
+    }
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * @throws SQLException if the statement has been cancelled
+     */
+    public void checkCancelled() throws SQLException {
+        if (isCancelled) {
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.QUERY_CANCELLED).build().buildException();
+        }
+    }
+
+    /**
+     * Register the scans of the statement that may be started before its
+     * results are first read.
+     */
+    public void addResultIterators(ResultIterators iterators) {
+        resultIterators.add(iterators);
+    }
+
+    public List<ResultIterators> getResultIterators() {
+        return resultIterators;
+    }
+
+    /**
+     * Whether the scans of the statement are started in the background ahead of its
+     * results being read, in which case a scan that isn't aggregated runs in parallel too.
+     */
+    public boolean isAsync() {
+        return isAsync;
+    }
+
+    public void setAsync(boolean isAsync) {
+        this.isAsync = isAsync;
+    }
+
     public long getCurrentTime() throws SQLException {
         long ts = this.getResolver().getTables().get(0).getTimeStamp();
         if (ts != QueryConstants.UNSET_TIMESTAMP) {
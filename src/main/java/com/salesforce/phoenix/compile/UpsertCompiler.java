@@ -30,6 +30,7 @@ package com.salesforce.phoenix.compile;
 import java.sql.*;
 import java.util.*;
 
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
@@ -37,6 +38,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
+import com.salesforce.phoenix.coprocessor.GroupedAggregateRegionObserver;
 import com.salesforce.phoenix.coprocessor.UngroupedAggregateRegionObserver;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
@@ -45,7 +47,7 @@ import com.salesforce.phoenix.execute.MutationState;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.LiteralExpression;
 import com.salesforce.phoenix.expression.function.CountAggregateFunction;
-import com.salesforce.phoenix.iterate.ResultIterator;
+import com.salesforce.phoenix.iterate.*;
 import com.salesforce.phoenix.jdbc.*;
 import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.query.*;
@@ -81,6 +83,140 @@ public class UpsertCompiler {
         mutation.put(ptr, columnValues);
     }
     
+    /**
+     * Projects the columns being upserted into with the PK columns leading in slot position order,
+     * ordering the select expressions the same way and adding a null literal for any missing PK column.
+     * @param projectedExpressions filled with the select expressions in projected column order
+     * @return the table formed by the projected columns
+     */
+    private static PTable newProjectedTable(PTable table, RowProjector projector, int[] columnIndexes, List<Expression> projectedExpressions) throws SQLException {
+        // At most this array will grow bigger my the number of PK columns
+        int nValuesToSet = columnIndexes.length;
+        int[] allColumnsIndexes = Arrays.copyOf(columnIndexes, columnIndexes.length + nValuesToSet);
+        int[] reverseColumnIndexes = new int[table.getColumns().size()];
+        Arrays.fill(reverseColumnIndexes, -1);
+        for (int i =0; i < nValuesToSet; i++) {
+            projectedExpressions.add(projector.getColumnProjector(i).getExpression());
+            reverseColumnIndexes[columnIndexes[i]] = i;
+        }
+        /*
+         * Order projected columns and projected expressions with PK columns
+         * leading order by slot position
+         */
+        for (int i = 0; i < table.getPKColumns().size(); i++) {
+            PColumn column = table.getPKColumns().get(i);
+            int pos = reverseColumnIndexes[column.getPosition()];
+            if (pos == -1) {
+                // Last PK column may be fixed width and nullable
+                // We don't want to insert a null expression b/c
+                // it's not valid to set a fixed width type to null.
+                if (column.getDataType().isFixedWidth()) {
+                    continue;
+                }
+                // Add literal null for missing PK columns
+                pos = projectedExpressions.size();
+                Expression literalNull = LiteralExpression.newConstant(null, column.getDataType());
+                projectedExpressions.add(literalNull);
+                allColumnsIndexes[pos] = column.getPosition();
+            } 
+            // Swap select expression at pos with i
+            Collections.swap(projectedExpressions, i, pos);
+            // Swap column indexes and reverse column indexes too
+            int tempPos = allColumnsIndexes[i];
+            allColumnsIndexes[i] = allColumnsIndexes[pos];
+            allColumnsIndexes[pos] = tempPos;
+            reverseColumnIndexes[tempPos] = pos;
+            reverseColumnIndexes[allColumnsIndexes[i]] = i;
+        }
+        // Iterate through columns being projected
+        List<PColumn> allColumns = table.getColumns();
+        List<PColumn> projectedColumns = Lists.newArrayListWithExpectedSize(projectedExpressions.size());
+        for (int i = 0; i < projectedExpressions.size(); i++) {
+            // Must make new column if position has changed
+            PColumn column = allColumns.get(allColumnsIndexes[i]);
+            projectedColumns.add(column.getPosition() == i ? column : new PColumnImpl(column, i));
+        }
+        // Build table from projectedColumns
+        return new PTableImpl(table.getName(), table.getType(), table.getTimeStamp(), table.getSequenceNumber(), table.getPKName(), projectedColumns);
+    }
+    
+    /**
+     * Sets up an UPSERT SELECT whose GROUP BY is along the row key to write the groups that are
+     * complete within a region scan on the server.
+     * @return the plan returning the remaining groups or null if the select can't be run this way
+     */
+    private static GroupedUpsertPlan newGroupedUpsertPlan(TableRef tableRef, QueryPlan plan, int[] columnIndexes) throws SQLException {
+        Scan selectScan = plan.getContext().getScan();
+        if (!(plan instanceof AggregatePlan) || plan.getLimit() != null || selectScan.getAttribute(GroupedAggregateRegionObserver.KEY_ORDERED_GROUP_BY_EXPRESSIONS) == null) {
+            return null;
+        }
+        AggregatePlan aggPlan = (AggregatePlan)plan;
+        List<Expression> projectedExpressions = Lists.newArrayListWithExpectedSize(tableRef.getTable().getColumns().size());
+        PTable projectedTable = newProjectedTable(tableRef.getTable(), plan.getProjector(), columnIndexes, projectedExpressions);
+        byte[] projectedExpressionsBytes;
+        byte[] havingBytes = null;
+        try {
+            projectedExpressionsBytes = UngroupedAggregateRegionObserver.serialize(projectedExpressions);
+            if (aggPlan.getHaving() != null) {
+                havingBytes = UngroupedAggregateRegionObserver.serialize(Collections.singletonList(aggPlan.getHaving()));
+            }
+        } catch (IllegalArgumentException e) {
+            // Not every expression may be evaluated on the server (i.e. AVG)
+            return null;
+        }
+        selectScan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TABLE, UngroupedAggregateRegionObserver.serialize(projectedTable));
+        selectScan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_EXPRS, projectedExpressionsBytes);
+        selectScan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TARGET_TABLE, tableRef.getTableName());
+        if (havingBytes != null) {
+            selectScan.setAttribute(GroupedAggregateRegionObserver.UPSERT_SELECT_HAVING, havingBytes);
+        }
+        return new GroupedUpsertPlan(aggPlan);
+    }
+    
+    /**
+     * Aggregate plan of an UPSERT SELECT grouped along the row key that strips out and
+     * sums up the counts of the rows written by the coprocessor.
+     */
+    private static class GroupedUpsertPlan extends AggregatePlan {
+        private long upsertCount;
+        
+        private GroupedUpsertPlan(AggregatePlan plan) throws SQLException {
+            // Ignore order by - it has no impact
+            super(plan.getContext(), plan.getTable(), plan.getProjector(), null, plan.getGroupBy(), plan.getHaving(), OrderBy.EMPTY_ORDER_BY, 0);
+        }
+        
+        public long getUpsertCount() {
+            return upsertCount;
+        }
+        
+        @Override
+        protected PeekingResultIterator newGroupedIterator(final PeekingResultIterator iterator) {
+            upsertCount = 0;
+            return new LookAheadResultIterator() {
+
+                @Override
+                protected Tuple advance() throws SQLException {
+                    Tuple next;
+                    KeyValue kv;
+                    while ((next = iterator.next()) != null && (kv = next.getValue(QueryConstants.SINGLE_COLUMN_FAMILY, GroupedAggregateRegionObserver.UPSERT_COUNT_COLUMN)) != null) {
+                        upsertCount += PDataType.LONG.getCodec().decodeLong(kv.getBuffer(), kv.getValueOffset());
+                    }
+                    return next;
+                }
+
+                @Override
+                public void close() throws SQLException {
+                    iterator.close();
+                }
+
+                @Override
+                public void explain(List<String> planSteps) {
+                    iterator.explain(planSteps);
+                }
+            };
+        }
+    }
+    
     public MutationPlan compile(UpsertStatement upsert, List<Object> binds) throws SQLException {
         final PhoenixConnection connection = statement.getConnection();
         ConnectionQueryServices services = connection.getQueryServices();
@@ -173,67 +309,29 @@ public class UpsertCompiler {
         final int[] pkSlotIndexes = pkSlotIndexesToBe;
         if (valueNodes == null) { // UPSERT SELECT
             /* We can run the upsert in a coprocessor if:
-             * 1) the into table matches from table
-             * 2) the select query isn't doing aggregation
-             * 3) autoCommit is on
+             * 1) the select query isn't doing aggregation
+             * 2) autoCommit is on
+             * If the into table differs from the from table, the coprocessor
+             * writes the rows to the into table through an HTable.
+             * If instead the select query groups along the row key, the
+             * coprocessor writes the groups that are complete within its scan,
+             * leaving the ones at the scan boundaries to the client.
              * Otherwise, run the query to pull the data from the server
              * and populate the MutationState (upto a limit).
             */
             final boolean isAutoCommit = connection.getAutoCommit();
-            if (isAutoCommit && !plan.isAggregate() && sameTable) { // UPSERT SELECT run server-side
-                // At most this array will grow bigger my the number of PK columns
-                int[] allColumnsIndexes = Arrays.copyOf(columnIndexes, columnIndexes.length + nValuesToSet);
-                int[] reverseColumnIndexes = new int[table.getColumns().size()];
-                List<Expression> projectedExpressions = Lists.newArrayListWithExpectedSize(reverseColumnIndexes.length);
-                Arrays.fill(reverseColumnIndexes, -1);
-                for (int i =0; i < nValuesToSet; i++) {
-                    projectedExpressions.add(projector.getColumnProjector(i).getExpression());
-                    reverseColumnIndexes[columnIndexes[i]] = i;
-                }
-                /*
-                 * Order projected columns and projected expressions with PK columns
-                 * leading order by slot position
-                 */
-                for (int i = 0; i < table.getPKColumns().size(); i++) {
-                    PColumn column = table.getPKColumns().get(i);
-                    int pos = reverseColumnIndexes[column.getPosition()];
-                    if (pos == -1) {
-                        // Last PK column may be fixed width and nullable
-                        // We don't want to insert a null expression b/c
-                        // it's not valid to set a fixed width type to null.
-                        if (column.getDataType().isFixedWidth()) {
-                            continue;
-                        }
-                        // Add literal null for missing PK columns
-                        pos = projectedExpressions.size();
-                        Expression literalNull = LiteralExpression.newConstant(null, column.getDataType());
-                        projectedExpressions.add(literalNull);
-                        allColumnsIndexes[pos] = column.getPosition();
-                    } 
-                    // Swap select expression at pos with i
-                    Collections.swap(projectedExpressions, i, pos);
-                    // Swap column indexes and reverse column indexes too
-                    int tempPos = allColumnsIndexes[i];
-                    allColumnsIndexes[i] = allColumnsIndexes[pos];
-                    allColumnsIndexes[pos] = tempPos;
-                    reverseColumnIndexes[tempPos] = reverseColumnIndexes[i];
-                    reverseColumnIndexes[i] = i;
-                }
-                // Iterate through columns being projected
-                List<PColumn> projectedColumns = Lists.newArrayListWithExpectedSize(projectedExpressions.size());
-                for (int i = 0; i < projectedExpressions.size(); i++) {
-                    // Must make new column if position has changed
-                    PColumn column = allColumns.get(allColumnsIndexes[i]);
-                    projectedColumns.add(column.getPosition() == i ? column : new PColumnImpl(column, i));
-                }
-                // Build table from projectedColumns
-                PTable projectedTable = new PTableImpl(table.getName(), table.getType(), table.getTimeStamp(), table.getSequenceNumber(), table.getPKName(), projectedColumns);
+            if (isAutoCommit && !plan.isAggregate()) { // UPSERT SELECT run server-side
+                List<Expression> projectedExpressions = Lists.newArrayListWithExpectedSize(table.getColumns().size());
+                PTable projectedTable = newProjectedTable(table, projector, columnIndexes, projectedExpressions);
                 
                 List<AliasedParseNode> select = Collections.<AliasedParseNode>singletonList(
                         NODE_FACTORY.aliasedNode(null, 
                                 NODE_FACTORY.function(CountAggregateFunction.NORMALIZED_NAME, LiteralParseNode.STAR)));
+                // Run the aggregation in the context of the select, since it determines the table being
+                // scanned, the scan ranges, and the time stamp at which it's scanned.
+                final StatementContext selectContext = plan.getContext();
                 // Ignore order by - it has no impact
-                final RowProjector aggProjector = ProjectionCompiler.getRowProjector(context, select, GroupBy.EMPTY_GROUP_BY, OrderBy.EMPTY_ORDER_BY, null);
+                final RowProjector aggProjector = ProjectionCompiler.getRowProjector(selectContext, select, GroupBy.EMPTY_GROUP_BY, OrderBy.EMPTY_ORDER_BY, null);
                 /*
                  * Transfer over PTable representing subset of columns selected, but all PK columns.
                  * Move columns setting PK first in pkSlot order, adding LiteralExpression of null for any missing ones.
@@ -241,11 +339,20 @@ public class UpsertCompiler {
                  * In region scan, evaluate expressions in order, collecting first n columns for PK and collection non PK in mutation Map
                  * Create the PRow and get the mutations, adding them to the batch
                  */
-                scan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TABLE, UngroupedAggregateRegionObserver.serialize(projectedTable));
-                scan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_EXPRS, UngroupedAggregateRegionObserver.serialize(projectedExpressions));
-                final QueryPlan aggPlan = new AggregatePlan(context, tableRef, projector, plan.getLimit(), GroupBy.EMPTY_GROUP_BY, null, OrderBy.EMPTY_ORDER_BY, 0);
+                Scan selectScan = selectContext.getScan();
+                selectScan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TABLE, UngroupedAggregateRegionObserver.serialize(projectedTable));
+                selectScan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_EXPRS, UngroupedAggregateRegionObserver.serialize(projectedExpressions));
+                if (!sameTable) {
+                    selectScan.setAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TARGET_TABLE, tableRef.getTableName());
+                }
+                final QueryPlan aggPlan = new AggregatePlan(selectContext, plan.getTable(), projector, plan.getLimit(), GroupBy.EMPTY_GROUP_BY, null, OrderBy.EMPTY_ORDER_BY, 0);
                 return new MutationPlan() {
 
+                    @Override
+                    public StatementContext getContext() {
+                        return selectContext;
+                    }
+
                     @Override
                     public PhoenixConnection getConnection() {
                         return connection;
@@ -262,7 +369,7 @@ public class UpsertCompiler {
                         ResultIterator iterator = scanner.iterator();
                         try {
                             Tuple row = iterator.next();
-                            ImmutableBytesWritable ptr = context.getTempPtr();
+                            ImmutableBytesWritable ptr = selectContext.getTempPtr();
                             final long mutationCount = (Long)aggProjector.getColumnProjector(0).getValue(row, PDataType.LONG, ptr);
                             return new MutationState(maxSize, connection) {
                                 @Override
@@ -286,8 +393,15 @@ public class UpsertCompiler {
                 };
             } else { // UPSERT SELECT run client-side
                 final int batchSize = Math.min(connection.getUpsertBatchSize(), maxSize);
+                final GroupedUpsertPlan groupedUpsertPlan = isAutoCommit ? newGroupedUpsertPlan(tableRef, plan, columnIndexes) : null;
+                final QueryPlan selectPlan = groupedUpsertPlan == null ? queryPlan : groupedUpsertPlan;
                 return new MutationPlan() {
 
+                    @Override
+                    public StatementContext getContext() {
+                        return selectPlan.getContext();
+                    }
+
                     @Override
                     public PhoenixConnection getConnection() {
                         return connection;
@@ -301,11 +415,11 @@ public class UpsertCompiler {
                     @Override
                     public MutationState execute() throws SQLException {
                         byte[][] values = new byte[columnIndexes.length][];
-                        Scanner scanner = queryPlan.getScanner();
+                        Scanner scanner = selectPlan.getScanner();
                         int estSize = scanner.getEstimatedSize();
                         int rowCount = 0;
                         Map<ImmutableBytesPtr,Map<PColumn,byte[]>> mutation = Maps.newHashMapWithExpectedSize(estSize);
-                        ResultSet rs = new PhoenixResultSet(scanner, statement);
+                        ResultSet rs = new PhoenixResultSet(scanner, statement, selectPlan.getContext());
                         PTable table = tableRef.getTable();
                         PColumn column;
                         while (rs.next()) {
@@ -332,15 +446,19 @@ public class UpsertCompiler {
                                 mutation.clear();
                             }
                         }
+                        long sizeOffset = rowCount / batchSize * batchSize;
+                        if (groupedUpsertPlan != null) {
+                            sizeOffset += groupedUpsertPlan.getUpsertCount();
+                        }
                         // If auto commit is true, this last batch will be committed upon return
-                        return new MutationState(tableRef, mutation, rowCount / batchSize * batchSize, maxSize, connection);
+                        return new MutationState(tableRef, mutation, sizeOffset, maxSize, connection);
                     }
 
                     @Override
                     public ExplainPlan getExplainPlan() throws SQLException {
-                        List<String> queryPlanSteps =  queryPlan.getExplainPlan().getPlanSteps();
+                        List<String> queryPlanSteps =  selectPlan.getExplainPlan().getPlanSteps();
                         List<String> planSteps = Lists.newArrayListWithExpectedSize(queryPlanSteps.size()+1);
-                        planSteps.add("UPSERT SELECT");
+                        planSteps.add(groupedUpsertPlan == null ? "UPSERT SELECT" : "UPSERT ROWS");
                         planSteps.addAll(queryPlanSteps);
                         return new ExplainPlan(planSteps);
                     }
@@ -379,6 +497,11 @@ public class UpsertCompiler {
             }
             return new MutationPlan() {
 
+                @Override
+                public StatementContext getContext() {
+                    return context;
+                }
+
                 @Override
                 public PhoenixConnection getConnection() {
                     return connection;
@@ -29,14 +29,30 @@ package com.salesforce.phoenix.coprocessor;
 
 import java.io.IOException;
 
+import org.apache.hadoop.hbase.CoprocessorEnvironment;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.coprocessor.*;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
 
+import com.salesforce.phoenix.metrics.ServerMetrics;
 import com.salesforce.phoenix.util.ServerUtil;
 
 
 abstract public class BaseScannerRegionObserver extends BaseRegionObserver {
+    /**
+     * Number of milliseconds the client waits for the scan, after which the coprocessor may abandon it
+     */
+    public static final String SCAN_TIMEOUT_MS = "ScanTimeoutMs";
+    
+    @Override
+    public void start(CoprocessorEnvironment e) throws IOException {
+        ServerMetrics.getInstance().start();
+    }
+    
+    @Override
+    public void stop(CoprocessorEnvironment e) throws IOException {
+        ServerMetrics.getInstance().shutdown();
+    }
     
     /**
      * Used by logger to identify coprocessor
@@ -50,7 +66,8 @@ abstract public class BaseScannerRegionObserver extends BaseRegionObserver {
     
     /**
      * Wrapper for {@link #postScannerOpen(ObserverContext, Scan, RegionScanner)} that ensures no non IOException is thrown,
-     * to prevent the coprocessor from becoming blacklisted.
+     * to prevent the coprocessor from becoming blacklisted. On failure, the region scanner is closed,
+     * since it will never be handed back to the client.
      * 
      */
     @Override
@@ -58,6 +75,10 @@ abstract public class BaseScannerRegionObserver extends BaseRegionObserver {
         try {
             return doPostScannerOpen(c, scan, s);
         } catch (Throwable t) {
+            try {
+                s.close();
+            } catch (Throwable ignored) {
+            }
             ServerUtil.throwIOException(c.getEnvironment().getRegion().getRegionNameAsString(), t);
             return null; // impossible
         }
@@ -33,26 +33,35 @@ import java.io.*;
 import java.util.*;
 
 import org.apache.hadoop.hbase.*;
-import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.*;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
 import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.regionserver.*;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.io.WritableUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
 import com.salesforce.phoenix.cache.GlobalCache;
+import com.salesforce.phoenix.cache.ScanStateCache;
 import com.salesforce.phoenix.cache.TenantCache;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
-import com.salesforce.phoenix.expression.aggregator.Aggregator;
-import com.salesforce.phoenix.expression.aggregator.ServerAggregators;
+import com.salesforce.phoenix.expression.aggregator.*;
+import com.salesforce.phoenix.expression.function.SingleAggregateFunction;
+import com.salesforce.phoenix.expression.visitor.SingleAggregateFunctionVisitor;
 import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.metrics.ServerMetrics;
 import com.salesforce.phoenix.query.QueryConstants;
-import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
-import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.schema.tuple.*;
 import com.salesforce.phoenix.util.*;
 
 
@@ -69,6 +78,9 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
     public static final String AGGREGATORS = "Aggs";
     public static final String UNORDERED_GROUP_BY_EXPRESSIONS = "UnorderedGroupByExpressions";
     public static final String KEY_ORDERED_GROUP_BY_EXPRESSIONS = "OrderedGroupByExpressions";
+    public static final String UNSORTED_GROUPS = "UnsortedGroups";
+    public static final String UPSERT_SELECT_HAVING = "UpsertSelectHaving";
+    public static final byte[] UPSERT_COUNT_COLUMN = Bytes.toBytes("UpsertCount");
 
     public static final String ESTIMATED_DISTINCT_VALUES = "EstDistinctValues";
     public static final int DEFAULT_ESTIMATED_DISTINCT_VALUES = 10000;
@@ -90,7 +102,7 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
      * b      1
      *
      * The client is required to do a final aggregation, since multiple rows with the same key may be returned from different regions. The returned rows
-     * are in sorted order.
+     * are in sorted order, unless the scan has the {@link #UNSORTED_GROUPS} attribute because the client aggregates them in a hash table.
      */
     @Override
     protected RegionScanner doPostScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, RegionScanner s) throws IOException {
@@ -104,13 +116,21 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
             }
             keyOrdered = true;
         }
-        List<Expression> expressions = deserializeGroupByExpressions(expressionBytes);
+        ScanStateCache<List<Expression>> expressionCache = GlobalCache.getInstance(c.getEnvironment().getConfiguration()).getScanStateCache(GROUP_BY_EXPRESSIONS_DESERIALIZER);
+        List<Expression> expressions = expressionCache.borrow(expressionBytes);
         
         ServerAggregators aggregators = ServerAggregators.deserialize(scan.getAttribute(GroupedAggregateRegionObserver.AGGREGATORS));
         if (keyOrdered) { // Optimize by taking advantage that the rows are already in the required group by key order
-            return scanOrdered(c, scan, s, expressions, aggregators);
+            RegionScanner scanner = scanOrdered(c, scan, s, expressionCache, expressionBytes, expressions, aggregators);
+            if (scan.getAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TABLE) != null) {
+                return upsertOrdered(c, scan, scanner);
+            }
+            return scanner;
         } else { // Otherwse, collect them all up and sort them at the end
-            return scanUnordered(c, scan, s, expressions, aggregators);
+            RegionScanner scanner = scanUnordered(c, scan, s, expressions, aggregators);
+            // All rows have been aggregated at this point, so the group by expressions may be reused
+            expressionCache.release(expressionBytes, expressions);
+            return scanner;
         }
     }
 
@@ -118,7 +138,14 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
         return SizedUtil.sizeOfMap(nRows, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, valueSize);
     }
 
-    private List<Expression> deserializeGroupByExpressions(byte[] expressionBytes) throws IOException {
+    private static final ScanStateCache.Deserializer<List<Expression>> GROUP_BY_EXPRESSIONS_DESERIALIZER = new ScanStateCache.Deserializer<List<Expression>>() {
+        @Override
+        public List<Expression> deserialize(byte[] b) throws IOException {
+            return deserializeGroupByExpressions(b);
+        }
+    };
+    
+    private static List<Expression> deserializeGroupByExpressions(byte[] expressionBytes) throws IOException {
         List<Expression> expressions = new ArrayList<Expression>(3);
         ByteArrayInputStream stream = new ByteArrayInputStream(expressionBytes);
         try {
@@ -181,7 +208,7 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
     /**
      * Used for an aggregate query in which the key order does not necessarily match the group by key order. In this case,
      * we must collect all distinct groups within a region into a map, aggregating as we go, and then at the end of the
-     * underlying scan, sort them and return them one by one during iteration.
+     * underlying scan, sort them (unless the client doesn't need them sorted) and return them one by one during iteration.
      */
     private RegionScanner scanUnordered(ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s, List<Expression> expressions, ServerAggregators aggregators) throws IOException {
         
@@ -197,10 +224,14 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
         TenantCache tenantCache = GlobalCache.getTenantCache(c.getEnvironment().getConfiguration(), ScanUtil.getTenantId(scan));
         int estSize = sizeOfUnorderedGroupByMap(estDistVals, aggregators.getSize());
         final MemoryChunk chunk = tenantCache.getMemoryManager().allocate(estSize);
+        final ServerMetrics metrics = ServerMetrics.getInstance();
+        metrics.startAggregation();
+        ScanLease lease = new ScanLease(scan);
         boolean success = false;
         try {
             // TODO: spool map to disk if map becomes too big
             boolean hasMore;
+            long rowCount = 0;
             int estValueSize = aggregators.getSize();
             MultiKeyValueTuple result = new MultiKeyValueTuple();
             Map<ImmutableBytesWritable, Aggregator[]> aggregateMap = new HashMap<ImmutableBytesWritable, Aggregator[]>(estDistVals);
@@ -209,12 +240,14 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
             region.startRegionOperation();
             try {
                 do {
+                    lease.check();
                     List<KeyValue> results = new ArrayList<KeyValue>();
                     // Results are potentially returned even when the return value of s.next is false
                     // since this is an indication of whether or not there are more values after the
                     // ones returned
                     hasMore = s.nextRaw(results, null) && !s.isFilterDone();
                     if (!results.isEmpty()) {
+                        rowCount++;
                         result.setKeyValues(results);
                         ImmutableBytesWritable key = getKey(expressions, result);
                         Aggregator[] rowAggregators = aggregateMap.get(key);
@@ -240,6 +273,7 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                 } while (hasMore);
             } finally {
                 region.closeRegionOperation();
+                metrics.addRowsProcessed(rowCount);
             }
     
             // Compute final allocation
@@ -262,9 +296,13 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                 KeyValue keyValue = KeyValueUtil.newKeyValue(key.get(),key.getOffset(), key.getLength(),SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length);
                 aggResults.add(keyValue);
             }
-            Collections.sort(aggResults, KeyValue.COMPARATOR);
+            if (scan.getAttribute(UNSORTED_GROUPS) == null) {
+                Collections.sort(aggResults, KeyValue.COMPARATOR);
+            }
+            metrics.addGroups(aggResults.size());
             RegionScanner scanner = new BaseRegionScanner() {
                 private int index = 0;
+                private boolean isClosed = false;
     
                 @Override
                 public HRegionInfo getRegionInfo() {
@@ -273,9 +311,15 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
     
                 @Override
                 public void close() throws IOException {
+                    if (isClosed) {
+                        return;
+                    }
+                    isClosed = true;
                     try {
                         s.close();
                     } finally {
+                        metrics.addGroups(-aggResults.size());
+                        metrics.finishAggregation();
                         chunk.close();
                     }
                 }
@@ -291,8 +335,10 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
             success = true;
             return scanner;
         } finally {
-            if (!success)
+            if (!success) {
+                metrics.finishAggregation();
                 chunk.close();
+            }
         }
     }
 
@@ -300,13 +346,17 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
      * Used for an aggregate query in which the key order match the group by key order. In this case, we can do the
      * aggregation as we scan, by detecting when the group by key changes.
      */
-    private RegionScanner scanOrdered(final ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s, final List<Expression> expressions, final ServerAggregators aggregators) {
+    private RegionScanner scanOrdered(final ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s, final ScanStateCache<List<Expression>> expressionCache, final byte[] expressionBytes, final List<Expression> expressions, final ServerAggregators aggregators) {
         
         if (logger.isDebugEnabled()) {
             logger.debug("Grouped aggregation over ordered rows with scan " + scan + ", group by " + expressions + ", aggregators " + aggregators);
         }
+        final ServerMetrics metrics = ServerMetrics.getInstance();
+        metrics.startAggregation();
+        final ScanLease lease = new ScanLease(scan);
         return new BaseRegionScanner() {
             private ImmutableBytesWritable currentKey = null;
+            private boolean isClosed = false;
 
             @Override
             public HRegionInfo getRegionInfo() {
@@ -315,7 +365,16 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
 
             @Override
             public void close() throws IOException {
-                s.close();
+                if (isClosed) {
+                    return;
+                }
+                isClosed = true;
+                try {
+                    s.close();
+                } finally {
+                    metrics.finishAggregation();
+                }
+                expressionCache.release(expressionBytes, expressions);
             }
 
             @Override
@@ -326,16 +385,19 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                 ImmutableBytesWritable key = null;
                 Aggregator[] rowAggregators = aggregators.getAggregators();
                 HRegion region = c.getEnvironment().getRegion();
+                long rowCount = 0;
                 MultiVersionConsistencyControl.setThreadReadPoint(s.getMvccReadPoint());
                 region.startRegionOperation();
                 try {
                     do {
+                        lease.check();
                         List<KeyValue> kvs = new ArrayList<KeyValue>();
                         // Results are potentially returned even when the return value of s.next is false
                         // since this is an indication of whether or not there are more values after the
                         // ones returned
                         hasMore = s.nextRaw(kvs, null) && !s.isFilterDone();
                         if (!kvs.isEmpty()) {
+                            rowCount++;
                             result.setKeyValues(kvs);
                             key = getKey(expressions, result);
                             aggBoundary = currentKey != null && currentKey.compareTo(key) != 0;
@@ -350,6 +412,7 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
                     } while (hasMore && !aggBoundary);
                 } finally {
                     region.closeRegionOperation();
+                    metrics.addRowsProcessed(rowCount);
                 }
                 
                 if (currentKey != null) {
@@ -376,4 +439,129 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver {
             }
         };
     }
+
+    /**
+     * Used for an UPSERT SELECT whose GROUP BY is along the row key. Since the groups of the ordered scanner
+     * are returned in row key order, every group but the first and the last one of the scan is complete. These
+     * are finished and written to the target table here. The first and the last group may continue in an
+     * adjacent scan, so they are returned to the client to be merged and written there, followed by a row
+     * with the {@link #UPSERT_COUNT_COLUMN} holding the number of rows written here.
+     */
+    private RegionScanner upsertOrdered(final ObserverContext<RegionCoprocessorEnvironment> c, Scan scan, final RegionScanner s) throws IOException {
+        final PTable projectedTable = GlobalCache.getInstance(c.getEnvironment().getConfiguration()).getScanStateCache(UngroupedAggregateRegionObserver.TABLE_DESERIALIZER).get(scan.getAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TABLE));
+        final List<Expression> selectExpressions = UngroupedAggregateRegionObserver.deserializeExpressions(scan.getAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_EXPRS));
+        byte[] havingBytes = scan.getAttribute(UPSERT_SELECT_HAVING);
+        final Expression having = havingBytes == null ? null : UngroupedAggregateRegionObserver.deserializeExpressions(havingBytes).get(0);
+        // Finish the aggregation of a group the way the client does it, through the client-side aggregators
+        ServerAggregators serverAggregators = ServerAggregators.deserialize(scan.getAttribute(AGGREGATORS));
+        final List<SingleAggregateFunction> functions = Arrays.asList(serverAggregators.getFunctions());
+        for (SingleAggregateFunction function : functions) {
+            function.setAggregator(function.newClientAggregator());
+        }
+        final ClientAggregators aggregators = new ClientAggregators(functions, serverAggregators.getMinNullableIndex());
+        SingleAggregateFunctionVisitor visitor = new SingleAggregateFunctionVisitor() {
+            @Override
+            public Iterator<Expression> visitEnter(SingleAggregateFunction function) {
+                function.setAggregator(functions.get(functions.indexOf(function)).getAggregator());
+                return Iterators.emptyIterator();
+            }
+        };
+        for (Expression expression : selectExpressions) {
+            expression.accept(visitor);
+        }
+        if (having != null) {
+            having.accept(visitor);
+        }
+        final long ts = scan.getTimeRange().getMax();
+        final int batchSize = c.getEnvironment().getConfiguration().getInt(QueryServices.MUTATE_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MUTATE_BATCH_SIZE);
+        // Always go through an HTable, since the rows of the target table may belong to other regions
+        final HTableInterface targetHTable = c.getEnvironment().getTable(scan.getAttribute(UngroupedAggregateRegionObserver.UPSERT_SELECT_TARGET_TABLE));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Upserting ordered groups with scan " + scan + " into " + projectedTable.getName().getString());
+        }
+        return new BaseRegionScanner() {
+            private final List<Pair<Mutation,Integer>> mutations = Lists.newArrayListWithExpectedSize(batchSize);
+            private final byte[][] values = new byte[projectedTable.getPKColumns().size()][];
+            private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+            private List<KeyValue> remaining = null;
+            private long rowCount = 0;
+
+            @Override
+            public HRegionInfo getRegionInfo() {
+                return s.getRegionInfo();
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    s.close();
+                } finally {
+                    targetHTable.close();
+                }
+            }
+
+            private void upsert(KeyValue group) throws IOException {
+                Tuple tuple = new SingleKeyValueTuple(group);
+                Aggregator[] rowAggregators = aggregators.getAggregators();
+                aggregators.reset(rowAggregators);
+                aggregators.aggregate(rowAggregators, tuple);
+                if (having != null && having.evaluate(tuple, ptr) && Boolean.FALSE.equals(having.getDataType().toObject(ptr))) {
+                    return;
+                }
+                try {
+                    UngroupedAggregateRegionObserver.addUpsertMutations(projectedTable, selectExpressions, tuple, values, ptr, ts, mutations);
+                    rowCount++;
+                } catch (ConstraintViolationException e) {
+                    // Log and ignore in count
+                    logger.error("Failed to create row in " + projectedTable.getName().getString() + " with values " + SchemaUtil.toString(values), e);
+                }
+                if (mutations.size() >= batchSize) {
+                    UngroupedAggregateRegionObserver.commitBatch(null, targetHTable, mutations);
+                    mutations.clear();
+                }
+            }
+            
+            @Override
+            public boolean next(List<KeyValue> results) throws IOException {
+                if (remaining == null) {
+                    // Return the first group as is
+                    boolean hasMore = s.next(results);
+                    remaining = Lists.newArrayListWithExpectedSize(2);
+                    if (!hasMore) {
+                        return false;
+                    }
+                    // Write each group once the one following it shows that it's complete
+                    KeyValue group = null;
+                    List<KeyValue> kvs = Lists.newArrayListWithExpectedSize(1);
+                    do {
+                        kvs.clear();
+                        hasMore = s.next(kvs);
+                        if (!kvs.isEmpty()) {
+                            if (group != null) {
+                                upsert(group);
+                            }
+                            group = kvs.get(0);
+                        }
+                    } while (hasMore);
+                    if (!mutations.isEmpty()) {
+                        UngroupedAggregateRegionObserver.commitBatch(null, targetHTable, mutations);
+                        mutations.clear();
+                    }
+                    if (group != null) {
+                        remaining.add(group);
+                        if (rowCount > 0) {
+                            byte[] value = PDataType.LONG.toBytes(rowCount);
+                            remaining.add(KeyValueUtil.newKeyValue(group.getRow(), SINGLE_COLUMN_FAMILY, UPSERT_COUNT_COLUMN, AGG_TIMESTAMP, value, 0, value.length));
+                        }
+                    }
+                    return !remaining.isEmpty();
+                }
+                if (remaining.isEmpty()) {
+                    return false;
+                }
+                results.add(remaining.remove(0));
+                return !remaining.isEmpty();
+            }
+        };
+    }
 }
@@ -48,6 +48,7 @@ import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 
 import com.google.common.collect.Lists;
 import com.salesforce.phoenix.cache.GlobalCache;
+import com.salesforce.phoenix.cache.MetaDataCache;
 import com.salesforce.phoenix.jdbc.PhoenixDatabaseMetaData;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.util.*;
@@ -75,7 +76,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
         scan.setStartRow(key);
         scan.setStopRow(ByteUtil.nextKey(key));
         RegionScanner scanner = region.getScanner(scan);
-        Map<ImmutableBytesPtr,PTable> metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
+        MetaDataCache metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
         try {
             PTable oldTable = metaDataCache.get(cacheKey);
             long tableTimeStamp = oldTable == null ? MIN_TABLE_TIMESTAMP-1 : oldTable.getTimeStamp();
@@ -273,7 +274,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
         if (!results.isEmpty() && results.get(0).getTimestamp() > clientTimeStamp) {
             KeyValue kv = results.get(0);
             if (kv.isDelete()) {
-                Map<ImmutableBytesPtr,PTable> metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
+                MetaDataCache metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
                 PTable table = newDeletedTableMarker(kv.getTimestamp());
                 metaDataCache.put(cacheKey, table);
                 return table;
@@ -314,7 +315,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
             try {
                 ImmutableBytesPtr cacheKey = new ImmutableBytesPtr(key);
                 long clientTimeStamp = getClientTimeStamp(tableMetadata);
-                Map<ImmutableBytesPtr,PTable> metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
+                MetaDataCache metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
                 PTable table = metaDataCache.get(cacheKey);
                 // We always cache the latest version - fault in if not in cache
                 if (table != null || (table = buildTable(key, cacheKey, region, HConstants.LATEST_TIMESTAMP)) != null) {
@@ -374,7 +375,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
             }
             try {
                 ImmutableBytesPtr cacheKey = new ImmutableBytesPtr(key);
-                Map<ImmutableBytesPtr,PTable> metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
+                MetaDataCache metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
                 PTable table = metaDataCache.get(cacheKey);
                 long clientTimeStamp = m.getTimeStamp();
                 if ((table != null || (table = buildTable(key, cacheKey, region, HConstants.LATEST_TIMESTAMP)) != null) && table.getTimeStamp() >= clientTimeStamp) {
@@ -481,7 +482,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
             }
             try {
                 ImmutableBytesPtr cacheKey = new ImmutableBytesPtr(key);
-                Map<ImmutableBytesPtr,PTable> metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
+                MetaDataCache metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
                 PTable table = metaDataCache.get(cacheKey);
                 // Get client timeStamp from mutations
                 long clientTimeStamp = getClientTimeStamp(tableMetadata);
@@ -611,7 +612,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
             }
             
             ImmutableBytesPtr cacheKey = new ImmutableBytesPtr(key);
-            Map<ImmutableBytesPtr,PTable> metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
+            MetaDataCache metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
             PTable table = metaDataCache.get(cacheKey);
             // We only cache the latest, so we'll end up building the table with every call if the client connection has specified an SCN.
             // TODO: If we indicate to the client that we're returning an older version, but there's a newer version available, the client
@@ -650,7 +651,7 @@ public class MetaDataEndpointImpl extends BaseEndpointCoprocessor implements Met
 
     @Override
     public void clearCache() {
-        Map<ImmutableBytesPtr,PTable> metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
+        MetaDataCache metaDataCache = GlobalCache.getInstance(this.getEnvironment().getConfiguration()).getMetaDataCache();
         metaDataCache.clear();
     }
 
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.coprocessor;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.ipc.HBaseServer;
+import org.apache.hadoop.hbase.ipc.RpcCallContext;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
+
+
+/**
+ * 
+ * Lease held by a coprocessor on behalf of the client while it works through a region.
+ * The lease expires once the client is no longer waiting for the results, either because
+ * the timeout passed through {@link BaseScannerRegionObserver#SCAN_TIMEOUT_MS} has elapsed
+ * or because the client has disconnected. Scan loops call {@link #check()} as they go so
+ * that an abandoned scan stops early and releases its memory.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class ScanLease {
+    private static final int CHECK_INTERVAL_ROWS = 1000;
+    private final long expirationTimeMs;
+    private int rowCount;
+    
+    public ScanLease(Scan scan) {
+        byte[] timeoutBytes = scan.getAttribute(BaseScannerRegionObserver.SCAN_TIMEOUT_MS);
+        this.expirationTimeMs = timeoutBytes == null ? Long.MAX_VALUE : System.currentTimeMillis() + Bytes.toInt(timeoutBytes);
+    }
+    
+    /**
+     * Called for each row processed. Every {@link #CHECK_INTERVAL_ROWS} rows, checks
+     * whether the client is still waiting on the scan.
+     * @throws IOException if the lease has expired or the client has disconnected
+     */
+    public void check() throws IOException {
+        if (++rowCount < CHECK_INTERVAL_ROWS) {
+            return;
+        }
+        rowCount = 0;
+        RpcCallContext call = HBaseServer.getCurrentCall();
+        if (call != null) {
+            call.throwExceptionIfCallerDisconnected();
+        }
+        if (System.currentTimeMillis() > expirationTimeMs) {
+            SQLException e = new SQLExceptionInfo.Builder(SQLExceptionCode.OPERATION_TIMED_OUT)
+                .setMessage("Scan abandoned by client").build().buildException();
+            throw new DoNotRetryIOException(e.getMessage(), e);
+        }
+    }
+}
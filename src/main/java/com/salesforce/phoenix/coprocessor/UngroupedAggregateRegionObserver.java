@@ -48,14 +48,18 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.salesforce.phoenix.cache.GlobalCache;
+import com.salesforce.phoenix.cache.ScanStateCache;
 import com.salesforce.phoenix.exception.ValueTypeIncompatibleException;
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
 import com.salesforce.phoenix.expression.aggregator.*;
+import com.salesforce.phoenix.metrics.ServerMetrics;
 import com.salesforce.phoenix.query.QueryConstants;
 import com.salesforce.phoenix.query.QueryServicesOptions;
 import com.salesforce.phoenix.schema.*;
 import com.salesforce.phoenix.schema.tuple.MultiKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.*;
 
 
@@ -72,15 +76,67 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
     public static final String DELETE_AGG = "DeleteAgg";
     public static final String UPSERT_SELECT_TABLE = "UpsertSelectTable";
     public static final String UPSERT_SELECT_EXPRS = "UpsertSelectExprs";
+    public static final String UPSERT_SELECT_TARGET_TABLE = "UpsertSelectTargetTable";
     public static final String DELETE_CQ = "DeleteCQ";
     public static final String DELETE_CF = "DeleteCF";
     public static final String EMPTY_CF = "EmptyCF";
     
-    private static void commitBatch(HRegion region, List<Pair<Mutation,Integer>> mutations) throws IOException {
-        @SuppressWarnings("unchecked")
-        Pair<Mutation,Integer>[] mutationArray = new Pair[mutations.size()];
-        // TODO: should we use the one that is all or none?
-        region.batchMutate(mutations.toArray(mutationArray));
+    static void commitBatch(HRegion region, HTableInterface targetHTable, List<Pair<Mutation,Integer>> mutations) throws IOException {
+        if (targetHTable != null) {
+            // Rows are being written to a different table, so send them through the client API
+            List<Mutation> targetMutations = Lists.newArrayListWithExpectedSize(mutations.size());
+            for (Pair<Mutation,Integer> mutation : mutations) {
+                targetMutations.add(mutation.getFirst());
+            }
+            try {
+                targetHTable.batch(targetMutations);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        } else {
+            @SuppressWarnings("unchecked")
+            Pair<Mutation,Integer>[] mutationArray = new Pair[mutations.size()];
+            // TODO: should we use the one that is all or none?
+            region.batchMutate(mutations.toArray(mutationArray));
+        }
+        ServerMetrics.getInstance().addRowsMutated(mutations.size());
+    }
+    
+    /**
+     * Evaluates the select expressions of an UPSERT SELECT against a row and adds the
+     * mutations of the resulting row of the projected table.
+     */
+    static void addUpsertMutations(PTable projectedTable, List<Expression> selectExpressions, Tuple result, byte[][] values, ImmutableBytesWritable ptr, long ts, List<Pair<Mutation,Integer>> mutations) {
+        Arrays.fill(values, null);
+        int i = 0;
+        for (; i < projectedTable.getPKColumns().size(); i++) {
+            if (selectExpressions.get(i).evaluate(result, ptr)) {
+                values[i] = ptr.copyBytes();
+            }
+        }
+        projectedTable.newKey(ptr, values);
+        PRow row = projectedTable.newRow(ts, ptr);
+        for (; i < projectedTable.getColumns().size(); i++) {
+            if (selectExpressions.get(i).evaluate(result, ptr)) {
+                PColumn column = projectedTable.getColumns().get(i);
+                byte[] bytes = ptr.copyBytes();
+                // We are guaranteed that the two column will have the same type.
+                if (!column.getDataType().isSizeCompatible(column.getDataType(),
+                        null, bytes,
+                        null, column.getMaxLength(), 
+                        null, column.getScale())) {
+                    throw new ValueTypeIncompatibleException(column.getDataType(),
+                            column.getMaxLength(), column.getScale());
+                }
+                bytes = column.getDataType().coerceBytes(bytes, null, column.getDataType(),
+                        null, null, column.getMaxLength(), column.getScale());
+                row.setValue(projectedTable.getColumns().get(i), bytes);
+            }
+        }
+        for (Mutation mutation : row.toRowMutations()) {
+            mutations.add(new Pair<Mutation,Integer>(mutation,null));
+        }
     }
     
     @Override
@@ -91,6 +147,7 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         }
         PTable projectedTable = null;
         List<Expression> selectExpressions = null;
+        byte[] selectExpressionBytes = null;
         byte[] upsertSelectTable = scan.getAttribute(UPSERT_SELECT_TABLE);
         boolean isUpsert = false;
         boolean isDelete = false;
@@ -99,12 +156,20 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         byte[][] values = null;
         byte[] emptyCF = null;
         ImmutableBytesWritable ptr = null;
+        HTableInterface targetHTable = null;
         if (upsertSelectTable != null) {
             isUpsert = true;
-            projectedTable = deserializeTable(upsertSelectTable);
-            selectExpressions = deserializeExpressions(scan.getAttribute(UPSERT_SELECT_EXPRS));
+            GlobalCache globalCache = GlobalCache.getInstance(c.getEnvironment().getConfiguration());
+            projectedTable = globalCache.getScanStateCache(TABLE_DESERIALIZER).get(upsertSelectTable);
+            selectExpressionBytes = scan.getAttribute(UPSERT_SELECT_EXPRS);
+            selectExpressions = globalCache.getScanStateCache(EXPRESSIONS_DESERIALIZER).borrow(selectExpressionBytes);
             values = new byte[projectedTable.getPKColumns().size()][];
             ptr = new ImmutableBytesWritable();
+            byte[] targetTableName = scan.getAttribute(UPSERT_SELECT_TARGET_TABLE);
+            if (targetTableName != null) {
+                // Pooled by the coprocessor environment and returned to the pool when closed
+                targetHTable = c.getEnvironment().getTable(targetTableName);
+            }
         } else {
             byte[] isDeleteAgg = scan.getAttribute(DELETE_AGG);
             isDelete = isDeleteAgg != null && Bytes.compareTo(PDataType.TRUE_BYTES, isDeleteAgg) == 0;
@@ -133,108 +198,115 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         	logger.info("Starting ungrouped coprocessor scan " + scan);
         }
         long rowCount = 0;
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        ScanLease lease = new ScanLease(scan);
         MultiVersionConsistencyControl.setThreadReadPoint(s.getMvccReadPoint());
-        region.startRegionOperation();
         try {
-            do {
-                List<KeyValue> results = new ArrayList<KeyValue>();
-                // Results are potentially returned even when the return value of s.next is false
-                // since this is an indication of whether or not there are more values after the
-                // ones returned
-                hasMore = s.nextRaw(results, null) && !s.isFilterDone();
-                if (!results.isEmpty()) {
-                	rowCount++;
-                    result.setKeyValues(results);
-                    try {
-                        if (isDelete) {
-                            @SuppressWarnings("deprecation") // FIXME: Remove when unintentionally deprecated method is fixed (HBASE-7870).
-                            // FIXME: the version of the Delete constructor without the lock args was introduced
-                            // in 0.94.4, thus if we try to use it here we can no longer use the 0.94.2 version
-                            // of the client.
-                            Delete delete = new Delete(results.get(0).getRow(),ts,null);
-                            mutations.add(new Pair<Mutation,Integer>(delete,null));
-                        } else if (isUpsert) {
-                            Arrays.fill(values, null);
-                            int i = 0;
-                            for (; i < projectedTable.getPKColumns().size(); i++) {
-                                if (selectExpressions.get(i).evaluate(result, ptr)) {
-                                    values[i] = ptr.copyBytes();
+            region.startRegionOperation();
+            boolean isRegionOperationStarted = true;
+            try {
+                // Started inside the try so that it is always balanced by the finishAggregation below
+                metrics.startAggregation();
+                do {
+                    lease.check();
+                    List<KeyValue> results = new ArrayList<KeyValue>();
+                    // Results are potentially returned even when the return value of s.next is false
+                    // since this is an indication of whether or not there are more values after the
+                    // ones returned
+                    hasMore = s.nextRaw(results, null) && !s.isFilterDone();
+                    if (!results.isEmpty()) {
+                    	rowCount++;
+                        result.setKeyValues(results);
+                        try {
+                            if (isDelete) {
+                                @SuppressWarnings("deprecation") // FIXME: Remove when unintentionally deprecated method is fixed (HBASE-7870).
+                                // FIXME: the version of the Delete constructor without the lock args was introduced
+                                // in 0.94.4, thus if we try to use it here we can no longer use the 0.94.2 version
+                                // of the client.
+                                Delete delete = new Delete(results.get(0).getRow(),ts,null);
+                                mutations.add(new Pair<Mutation,Integer>(delete,null));
+                            } else if (isUpsert) {
+                                addUpsertMutations(projectedTable, selectExpressions, result, values, ptr, ts, mutations);
+                            } else if (deleteCF != null && deleteCQ != null) {
+                                // No need to search for delete column, since we project only it
+                                // if no empty key value is being set
+                                if (emptyCF == null || result.getValue(deleteCF, deleteCQ) != null) {
+                                    Delete delete = new Delete(results.get(0).getRow());
+                                    delete.deleteColumns(deleteCF,  deleteCQ, ts);
+                                    mutations.add(new Pair<Mutation,Integer>(delete,null));
                                 }
                             }
-                            projectedTable.newKey(ptr, values);
-                            PRow row = projectedTable.newRow(ts, ptr);
-                            for (; i < projectedTable.getColumns().size(); i++) {
-                                if (selectExpressions.get(i).evaluate(result, ptr)) {
-                                    PColumn column = projectedTable.getColumns().get(i);
-                                    byte[] bytes = ptr.copyBytes();
-                                    // We are guaranteed that the two column will have the same type.
-                                    if (!column.getDataType().isSizeCompatible(column.getDataType(),
-                                            null, bytes,
-                                            null, column.getMaxLength(), 
-                                            null, column.getScale())) {
-                                        throw new ValueTypeIncompatibleException(column.getDataType(),
-                                                column.getMaxLength(), column.getScale());
+                            if (emptyCF != null) {
+                                /*
+                                 * If we've specified an emptyCF, then we need to insert an empty
+                                 * key value "retroactively" for any key value that is visible at
+                                 * the timestamp that the DDL was issued. Key values that are not
+                                 * visible at this timestamp will not ever be projected up to
+                                 * scans past this timestamp, so don't need to be considered.
+                                 * We insert one empty key value per row per timestamp.
+                                 */
+                                Set<Long> timeStamps = Sets.newHashSetWithExpectedSize(results.size());
+                                for (KeyValue kv : results) {
+                                    long kvts = kv.getTimestamp();
+                                    if (!timeStamps.contains(kvts)) {
+                                        Put put = new Put(kv.getRow());
+                                        put.add(emptyCF, QueryConstants.EMPTY_COLUMN_BYTES, kvts, ByteUtil.EMPTY_BYTE_ARRAY);
+                                        mutations.add(new Pair<Mutation,Integer>(put,null));
                                     }
-                                    bytes = column.getDataType().coerceBytes(bytes, null, column.getDataType(),
-                                            null, null, column.getMaxLength(), column.getScale());
-                                    row.setValue(projectedTable.getColumns().get(i), bytes);
                                 }
                             }
-                            for (Mutation mutation : row.toRowMutations()) {
-                                mutations.add(new Pair<Mutation,Integer>(mutation,null));
-                            }
-                        } else if (deleteCF != null && deleteCQ != null) {
-                            // No need to search for delete column, since we project only it
-                            // if no empty key value is being set
-                            if (emptyCF == null || result.getValue(deleteCF, deleteCQ) != null) {
-                                Delete delete = new Delete(results.get(0).getRow());
-                                delete.deleteColumns(deleteCF,  deleteCQ, ts);
-                                mutations.add(new Pair<Mutation,Integer>(delete,null));
-                            }
-                        }
-                        if (emptyCF != null) {
-                            /*
-                             * If we've specified an emptyCF, then we need to insert an empty
-                             * key value "retroactively" for any key value that is visible at
-                             * the timestamp that the DDL was issued. Key values that are not
-                             * visible at this timestamp will not ever be projected up to
-                             * scans past this timestamp, so don't need to be considered.
-                             * We insert one empty key value per row per timestamp.
-                             */
-                            Set<Long> timeStamps = Sets.newHashSetWithExpectedSize(results.size());
-                            for (KeyValue kv : results) {
-                                long kvts = kv.getTimestamp();
-                                if (!timeStamps.contains(kvts)) {
-                                    Put put = new Put(kv.getRow());
-                                    put.add(emptyCF, QueryConstants.EMPTY_COLUMN_BYTES, kvts, ByteUtil.EMPTY_BYTE_ARRAY);
-                                    mutations.add(new Pair<Mutation,Integer>(put,null));
+                            // Commit in batches based on UPSERT_BATCH_SIZE_ATTRIB in config
+                            if (!mutations.isEmpty() && batchSize > 0 && mutations.size() % batchSize == 0) {
+                                if (targetHTable == null) {
+                                    commitBatch(region,targetHTable,mutations);
+                                } else {
+                                    // Don't hold this region while waiting on other region servers, as they may in turn
+                                    // be writing to this one, and the region couldn't be closed or split in the meantime
+                                    region.closeRegionOperation();
+                                    isRegionOperationStarted = false;
+                                    commitBatch(region,targetHTable,mutations);
+                                    region.startRegionOperation();
+                                    isRegionOperationStarted = true;
                                 }
+                                mutations.clear();
                             }
+                        } catch (ConstraintViolationException e) {
+                            // Log and ignore in count
+                            logger.error("Failed to create row in " + region.getRegionNameAsString() + " with values " + SchemaUtil.toString(values), e);
+                            continue;
                         }
-                        // Commit in batches based on UPSERT_BATCH_SIZE_ATTRIB in config
-                        if (!mutations.isEmpty() && batchSize > 0 && mutations.size() % batchSize == 0) {
-                            commitBatch(region,mutations);
-                            mutations.clear();
-                        }
-                    } catch (ConstraintViolationException e) {
-                        // Log and ignore in count
-                        logger.error("Failed to create row in " + region.getRegionNameAsString() + " with values " + SchemaUtil.toString(values), e);
-                        continue;
+                        aggregators.aggregate(rowAggregators, result);
+                        hasAny = true;
                     }
-                    aggregators.aggregate(rowAggregators, result);
-                    hasAny = true;
+                } while (hasMore);
+            
+                if (logger.isInfoEnabled()) {
+                	logger.info("Finished scanning " + rowCount + " rows for ungrouped coprocessor scan " + scan);
+                }
+
+                if (!mutations.isEmpty() && targetHTable == null) {
+                    commitBatch(region,targetHTable,mutations);
+                    mutations.clear();
                 }
-            } while (hasMore);
+            } finally {
+                if (isRegionOperationStarted) {
+                    region.closeRegionOperation();
+                }
+                metrics.addRowsProcessed(rowCount);
+                metrics.finishAggregation();
+            }
+            // Rows written to another table are only sent once this region has been released
+            if (!mutations.isEmpty()) {
+                commitBatch(region,targetHTable,mutations);
+            }
         } finally {
-            region.closeRegionOperation();
-        }
-        
-        if (logger.isInfoEnabled()) {
-        	logger.info("Finished scanning " + rowCount + " rows for ungrouped coprocessor scan " + scan);
+            if (targetHTable != null) {
+                targetHTable.close();
+            }
         }
-
-        if (!mutations.isEmpty()) {
-            commitBatch(region,mutations);
+        if (selectExpressions != null) {
+            // Only reused when the scan completed, so that no partially evaluated state is passed on
+            GlobalCache.getInstance(c.getEnvironment().getConfiguration()).getScanStateCache(EXPRESSIONS_DESERIALIZER).release(selectExpressionBytes, selectExpressions);
         }
 
         final boolean hadAny = hasAny;
@@ -274,7 +346,21 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         return scanner;
     }
     
-    private static PTable deserializeTable(byte[] b) {
+    static final ScanStateCache.Deserializer<PTable> TABLE_DESERIALIZER = new ScanStateCache.Deserializer<PTable>() {
+        @Override
+        public PTable deserialize(byte[] b) {
+            return deserializeTable(b);
+        }
+    };
+    
+    static final ScanStateCache.Deserializer<List<Expression>> EXPRESSIONS_DESERIALIZER = new ScanStateCache.Deserializer<List<Expression>>() {
+        @Override
+        public List<Expression> deserialize(byte[] b) {
+            return deserializeExpressions(b);
+        }
+    };
+    
+    static PTable deserializeTable(byte[] b) {
         ByteArrayInputStream stream = new ByteArrayInputStream(b);
         try {
             DataInputStream input = new DataInputStream(stream);
@@ -292,7 +378,7 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         }
     }
 
-    private static List<Expression> deserializeExpressions(byte[] b) {
+    static List<Expression> deserializeExpressions(byte[] b) {
         ByteArrayInputStream stream = new ByteArrayInputStream(b);
         try {
             DataInputStream input = new DataInputStream(stream);
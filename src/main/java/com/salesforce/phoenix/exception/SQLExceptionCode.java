@@ -124,6 +124,8 @@ public enum SQLExceptionCode {
     EXECUTE_QUERY_NOT_APPLICABLE(1103, "XCL03", "executeQuery may not be used."),
     EXECUTE_UPDATE_NOT_APPLICABLE(1104, "XCL03", "executeUpdate may not be used."),
     SPLIT_POINT_NOT_CONSTANT(1105, "XCL04", "Split points must be constants."),
+    QUERY_CANCELLED(1106, "XCL05", "Query was cancelled."),
+    OPERATION_TIMED_OUT(1107, "XCL06", "Operation timed out."),
     
     /**
      * Implementation defined class. Phoenix internal error. (errorcode 20, sqlstate INT).
@@ -31,11 +31,14 @@ package com.salesforce.phoenix.execute;
 import java.sql.SQLException;
 import java.util.List;
 
+import org.apache.hadoop.conf.Configuration;
+
 import com.salesforce.phoenix.compile.GroupByCompiler.GroupBy;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
 import com.salesforce.phoenix.compile.*;
+import com.salesforce.phoenix.coprocessor.GroupedAggregateRegionObserver;
 import com.salesforce.phoenix.expression.Expression;
-import com.salesforce.phoenix.expression.aggregator.Aggregators;
+import com.salesforce.phoenix.expression.aggregator.ClientAggregators;
 import com.salesforce.phoenix.iterate.*;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.TableRef;
@@ -50,7 +53,7 @@ import com.salesforce.phoenix.schema.TableRef;
  * @since 0.1
  */
 public class AggregatePlan extends BasicQueryPlan {
-    private final Aggregators aggregators;
+    private final ClientAggregators aggregators;
     private final GroupBy groupBy;
     private final Expression having;
     private final int maxRows;
@@ -65,6 +68,14 @@ public class AggregatePlan extends BasicQueryPlan {
         this.maxRows = maxRows;
     }
 
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    public Expression getHaving() {
+        return having;
+    }
+
     @Override
     public boolean isAggregate() {
         return true;
@@ -77,6 +88,15 @@ public class AggregatePlan extends BasicQueryPlan {
 
     @Override
     protected Scanner newScanner(ConnectionQueryServices services) throws SQLException {
+        Configuration config = services.getConfig();
+        // Combine the groups in a hash table instead of merge sorting them if configured to do so. This
+        // only applies when the regions would otherwise have to sort their groups for the merge sort.
+        boolean isHashAggregation = limit == null
+                && GroupedAggregateRegionObserver.UNORDERED_GROUP_BY_EXPRESSIONS.equals(groupBy.getScanAttribName())
+                && config.getBoolean(QueryServices.CLIENT_HASH_AGGREGATION_ATTRIB, QueryServicesOptions.DEFAULT_CLIENT_HASH_AGGREGATION);
+        if (isHashAggregation) {
+            context.getScan().setAttribute(GroupedAggregateRegionObserver.UNSORTED_GROUPS, QueryConstants.TRUE);
+        }
         ResultIterators iterators;
         if (limit == null) {
             ParallelIterators parallelIterators = new ParallelIterators(context, table, RowCounter.UNLIMIT_ROW_COUNTER);
@@ -85,13 +105,17 @@ public class AggregatePlan extends BasicQueryPlan {
         } else {
             iterators = new SerialLimitingIterators(context, table, limit, new AggregateRowCounter(aggregators));
         }
+        context.addResultIterators(iterators);
 
         AggregatingResultIterator resultScanner;
         // No need to merge sort for ungrouped aggregation
         if (groupBy.isEmpty()) {
             resultScanner = new UngroupedAggregatingResultIterator(new ConcatResultIterator(iterators), aggregators);
+        } else if (isHashAggregation) {
+            int partitionCount = config.getInt(QueryServices.TARGET_QUERY_CONCURRENCY_ATTRIB, QueryServicesOptions.DEFAULT_TARGET_QUERY_CONCURRENCY);
+            resultScanner = new HashAggregatingResultIterator(context, iterators, aggregators, partitionCount);
         } else {
-            resultScanner = new GroupedAggregatingResultIterator(new MergeSortResultIterator(iterators), aggregators);
+            resultScanner = new GroupedAggregatingResultIterator(newGroupedIterator(new MergeSortResultIterator(iterators)), aggregators);
         }
 
         if (having != null) {
@@ -104,4 +128,14 @@ public class AggregatePlan extends BasicQueryPlan {
 
         return new WrappedScanner(resultScanner, getProjector(), maxRows);
     }
+
+    /**
+     * Hook for processing the merge sorted rows of a grouped aggregation before
+     * they are aggregated on the client.
+     * @param iterator the merge sorted rows returned by the servers
+     * @return the rows to aggregate
+     */
+    protected PeekingResultIterator newGroupedIterator(PeekingResultIterator iterator) {
+        return iterator;
+    }
 }
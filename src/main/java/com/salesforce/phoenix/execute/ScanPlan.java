@@ -28,15 +28,21 @@
 package com.salesforce.phoenix.execute;
 
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
 
+import org.apache.hadoop.hbase.client.Scan;
+
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderBy;
 import com.salesforce.phoenix.compile.*;
 import com.salesforce.phoenix.coprocessor.ScanRegionObserver;
+import com.salesforce.phoenix.exception.PhoenixIOException;
+import com.salesforce.phoenix.filter.RowKeySampleFilter;
 import com.salesforce.phoenix.iterate.*;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.TableRef;
+import com.salesforce.phoenix.util.ScanUtil;
 
 
 
@@ -48,6 +54,7 @@ import com.salesforce.phoenix.schema.TableRef;
  * @since 0.1
  */
 public class ScanPlan extends BasicQueryPlan {
+    private List<KeyRange> splits;
     
     public ScanPlan(StatementContext context, TableRef table, RowProjector projection, Integer limit, OrderBy orderBy) {
         super(context, table, projection, context.getBindManager().getParameterMetaData(), limit, orderBy);
@@ -55,7 +62,7 @@ public class ScanPlan extends BasicQueryPlan {
     
     @Override
     public List<KeyRange> getSplits() {
-        return null;
+        return splits;
     }
     
     @Override
@@ -68,17 +75,36 @@ public class ScanPlan extends BasicQueryPlan {
         // Set any scan attributes before creating the scanner, as it will be too later afterwards
         context.getScan().setAttribute(ScanRegionObserver.NON_AGGREGATE_QUERY, QueryConstants.TRUE);
         ResultIterator scanner;
-        // Either way, just use serial result iterator, instead of parallel one.
-        // When we get the pre-fetching ClientScanner, this will be better, but even
-        // without that, it's better not to run through the entire scan (which is
-        // what the parallel iterator does) in case there are a billion rows and we'll
-        // stop iterating after a few.
-        if (limit == null) {
-            scanner = new TableResultIterator(context, table);
-            scanner = new SerialLimitingResultIterator(scanner, Long.MAX_VALUE, RowCounter.UNLIMIT_ROW_COUNTER);
+        if (limit == null && context.isAsync()) {
+            // When the scan is started ahead of its results being read, run it in parallel
+            // so that the rows are spooled on the client by the time the results are read.
+            ParallelIterators parallelIterators = new ParallelIterators(context, table, RowCounter.UNLIMIT_ROW_COUNTER);
+            splits = parallelIterators.getSplits();
+            context.addResultIterators(parallelIterators);
+            scanner = new ConcatResultIterator(parallelIterators);
         } else {
-            scanner = new TableResultIterator(context, table);
-            scanner = new SerialLimitingResultIterator(scanner, limit, new ScanRowCounter());
+            Scan scan = context.getScan();
+            Double samplePercent = context.getSamplePercent();
+            if (samplePercent != null) {
+                try {
+                    scan = new Scan(scan);
+                } catch (IOException e) {
+                    throw new PhoenixIOException(e);
+                }
+                ScanUtil.andFilter(scan, new RowKeySampleFilter(samplePercent));
+            }
+            // Otherwise, just use serial result iterator, instead of parallel one.
+            // When we get the pre-fetching ClientScanner, this will be better, but even
+            // without that, it's better not to run through the entire scan (which is
+            // what the parallel iterator does) in case there are a billion rows and we'll
+            // stop iterating after a few.
+            if (limit == null) {
+                scanner = new TableResultIterator(context, table, scan);
+                scanner = new SerialLimitingResultIterator(scanner, Long.MAX_VALUE, RowCounter.UNLIMIT_ROW_COUNTER);
+            } else {
+                scanner = new TableResultIterator(context, table, scan);
+                scanner = new SerialLimitingResultIterator(scanner, limit, new ScanRowCounter());
+            }
         }
         if (!orderBy.getOrderingColumns().isEmpty()) {
             scanner = new OrderedResultIterator(context, scanner, orderBy.getOrderingColumns());
@@ -30,7 +30,11 @@ package com.salesforce.phoenix.expression;
 import java.io.*;
 import java.util.*;
 
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
 import com.salesforce.phoenix.expression.visitor.ExpressionVisitor;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
 
 
 
@@ -75,6 +79,33 @@ public abstract class BaseExpression implements Expression {
     public void reset() {
     }
     
+    @Override
+    public boolean evaluateLong(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result) {
+        if (!evaluate(tuple, ptr)) {
+            return false;
+        }
+        if (ptr.getLength() == 0) {
+            result.setNull();
+        } else {
+            result.setLong(getDataType().getCodec().decodeLong(ptr));
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean evaluateBoolean(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result) {
+        if (!evaluate(tuple, ptr)) {
+            return false;
+        }
+        Boolean value = (Boolean)PDataType.BOOLEAN.toObject(ptr, getDataType());
+        if (value == null) {
+            result.setNull();
+        } else {
+            result.setBoolean(value);
+        }
+        return true;
+    }
+    
     protected final <T> List<T> acceptChildren(ExpressionVisitor<T> visitor, Iterator<Expression> iterator) {
         if (iterator == null) {
             iterator = visitor.defaultIterator(this);
@@ -97,6 +97,17 @@ public class CoerceExpression extends BaseSingleExpression {
         return false;
     }
 
+    @Override
+    public boolean evaluateLong(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result) {
+        PDataType fromType = getChild().getDataType();
+        // Coercing between natively encoded types doesn't change the long value, except
+        // that the unsigned types must still reject negative values when they're encoded
+        if (fromType.getCodec() == null || toType == PDataType.UNSIGNED_LONG || toType == PDataType.UNSIGNED_INT) {
+            return super.evaluateLong(tuple, ptr, result);
+        }
+        return getChild().evaluateLong(tuple, ptr, result);
+    }
+
     @Override
     public PDataType getDataType() {
         return toType;
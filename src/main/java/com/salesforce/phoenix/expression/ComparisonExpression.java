@@ -32,8 +32,10 @@ import java.util.List;
 
 import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.WritableUtils;
 
+import com.google.common.primitives.Longs;
 import com.salesforce.phoenix.expression.visitor.ExpressionVisitor;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.Tuple;
@@ -48,6 +50,7 @@ import com.salesforce.phoenix.util.ByteUtil;
  */
 public class ComparisonExpression extends BaseCompoundExpression {
     private CompareOp op;
+    private final PrimitiveResult result = new PrimitiveResult();
     private static final String[] CompareOpString = new String[CompareOp.values().length];
     static {
         CompareOpString[CompareOp.EQUAL.ordinal()] = " = ";
@@ -92,8 +95,50 @@ public class ComparisonExpression extends BaseCompoundExpression {
         return PDataType.BOOLEAN;
     }
 
+    /**
+     * Determines whether values of the type may be compared by the long of their codec.
+     * This is not the case for TIMESTAMP, as its codec only covers the milliseconds
+     * and not the nanoseconds.
+     * @param type the type of an operand of a comparison
+     * @return true if the long of the codec fully represents values of the type
+     */
+    public static boolean isLongComparable(PDataType type) {
+        return type.getCodec() != null && type.isFixedWidth() && type.getByteSize() <= Bytes.SIZEOF_LONG;
+    }
+    
+    /**
+     * Both sides are compared as longs when they're both fully represented by their codec,
+     * which lets arithmetic on either side skip encoding its result into bytes.
+     */
+    private boolean isLongComparison() {
+        return isLongComparable(children.get(0).getDataType()) && isLongComparable(children.get(1).getDataType());
+    }
+
+    @Override
+    public boolean evaluateBoolean(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result) {
+        if (!isLongComparison()) {
+            return super.evaluateBoolean(tuple, ptr, result);
+        }
+        if (!children.get(0).evaluateLong(tuple, ptr, result) || result.isNull()) {
+            return false;
+        }
+        long lhsValue = result.getLong();
+        if (!children.get(1).evaluateLong(tuple, ptr, result) || result.isNull()) {
+            return false;
+        }
+        result.setBoolean(ByteUtil.compare(op, Longs.compare(lhsValue, result.getLong())));
+        return true;
+    }
+
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (isLongComparison()) {
+            if (!evaluateBoolean(tuple, ptr, result)) {
+                return false;
+            }
+            ptr.set(result.getBoolean() ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
+            return true;
+        }
         if (!children.get(0).evaluate(tuple, ptr)) {
             return false;
         }
@@ -63,6 +63,10 @@ public class DecimalMultiplyExpression extends MultiplyExpression {
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
         BigDecimal result = null;
+        // Stay with long arithmetic on the unscaled values until something doesn't fit
+        boolean isUnscaled = true;
+        long[] unscaledResult = new long[] {1, 0};
+        long[] unscaledValue = new long[2];
         for (int i=0; i<children.size(); i++) {
             Expression childExpr = children.get(i);
             if (!childExpr.evaluate(tuple, ptr)) {
@@ -73,6 +77,15 @@ public class DecimalMultiplyExpression extends MultiplyExpression {
             }
             
             PDataType childType = children.get(i).getDataType();
+            if (isUnscaled) {
+                if (NumberUtil.toUnscaledLong(ptr, childType, unscaledValue) && NumberUtil.multiplyUnscaled(unscaledResult, unscaledValue[0], (int)unscaledValue[1])) {
+                    continue;
+                }
+                isUnscaled = false;
+                if (i > 0) {
+                    result = BigDecimal.valueOf(unscaledResult[0], (int)unscaledResult[1]);
+                }
+            }
             BigDecimal bd= (BigDecimal)PDataType.DECIMAL.toObject(ptr, childType);
             
             if (result == null) {
@@ -81,6 +94,9 @@ public class DecimalMultiplyExpression extends MultiplyExpression {
                 result = result.multiply(bd);
             }
         }
+        if (isUnscaled) {
+            result = BigDecimal.valueOf(unscaledResult[0], (int)unscaledResult[1]);
+        }
         if (maxLength != null && scale != null) {
             result = NumberUtil.setDecimalWidthAndScale(result, maxLength, scale);
         }
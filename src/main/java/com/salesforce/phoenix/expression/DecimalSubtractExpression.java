@@ -70,6 +70,10 @@ public class DecimalSubtractExpression extends SubtractExpression {
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
         BigDecimal result = null;
+        // Stay with long arithmetic on the unscaled values until something doesn't fit
+        boolean isUnscaled = true;
+        long[] unscaledResult = new long[] {0, 0};
+        long[] unscaledValue = new long[2];
         for (int i=0; i<children.size(); i++) {
             Expression childExpr = children.get(i);
             if (!childExpr.evaluate(tuple, ptr)) { 
@@ -80,6 +84,16 @@ public class DecimalSubtractExpression extends SubtractExpression {
             }
             
             PDataType childType = children.get(i).getDataType();
+            if (isUnscaled) {
+                if (NumberUtil.toUnscaledLong(ptr, childType, unscaledValue) && (i == 0 || unscaledValue[0] != Long.MIN_VALUE)
+                        && NumberUtil.addUnscaled(unscaledResult, i == 0 ? unscaledValue[0] : -unscaledValue[0], (int)unscaledValue[1])) {
+                    continue;
+                }
+                isUnscaled = false;
+                if (i > 0) {
+                    result = BigDecimal.valueOf(unscaledResult[0], (int)unscaledResult[1]);
+                }
+            }
             boolean isDate = childType.isCoercibleTo(PDataType.DATE);
             BigDecimal bd = isDate ?
                     BigDecimal.valueOf(childType.getCodec().decodeLong(ptr)) :
@@ -98,6 +112,9 @@ public class DecimalSubtractExpression extends SubtractExpression {
                 }
             }
         }
+        if (isUnscaled) {
+            result = BigDecimal.valueOf(unscaledResult[0], (int)unscaledResult[1]);
+        }
         if (maxLength != null && scale != null) {
             result = NumberUtil.setDecimalWidthAndScale(result, maxLength, scale);
         }
@@ -55,6 +55,28 @@ public interface Expression extends PDatum, Writable {
      */
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr);
     
+    /**
+     * Evaluate the expression as a long without encoding the result into bytes.
+     * May only be called when the data type of the expression has a codec
+     * (see {@link com.salesforce.phoenix.schema.PDataType#getCodec()}).
+     * @param tuple Single row result during scan iteration
+     * @param ptr Pointer that may be used during evaluation. Its value is undefined afterwards.
+     * @param result Holder into which the value is set, or which is set to null
+     * @return true if the expression could be evaluated (i.e. result was set)
+     * and false otherwise
+     */
+    public boolean evaluateLong(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result);
+    
+    /**
+     * Evaluate a BOOLEAN expression without encoding the result into bytes.
+     * @param tuple Single row result during scan iteration
+     * @param ptr Pointer that may be used during evaluation. Its value is undefined afterwards.
+     * @param result Holder into which the value is set, or which is set to null
+     * @return true if the expression could be evaluated (i.e. result was set)
+     * and false otherwise
+     */
+    public boolean evaluateBoolean(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result);
+    
     /**
      * Means of traversing expression tree through visitor.
      * @param visitor
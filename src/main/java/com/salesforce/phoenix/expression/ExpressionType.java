@@ -85,7 +85,11 @@ public enum ExpressionType {
     RTrimFunction(RTrimFunction.class),
     UpperFunction(UpperFunction.class),
     LowerFunction(LowerFunction.class),
-    TrimFunction(TrimFunction.class);
+    TrimFunction(TrimFunction.class),
+    ApproxCountDistinctAggregateFunction(ApproxCountDistinctAggregateFunction.class),
+    PercentileApproxAggregateFunction(PercentileApproxAggregateFunction.class),
+    MedianApproxAggregateFunction(MedianApproxAggregateFunction.class),
+    TopKAggregateFunction(TopKAggregateFunction.class);
 
     ExpressionType(Class<? extends Expression> clazz) {
         this.clazz = clazz;
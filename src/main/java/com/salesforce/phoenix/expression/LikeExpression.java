@@ -29,10 +29,12 @@ package com.salesforce.phoenix.expression;
 
 import java.io.DataInput;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -182,6 +184,161 @@ public class LikeExpression extends BaseCompoundExpression {
         return sb.toString();
     }
 
+    /**
+     * Create the matcher for a LIKE pattern. Patterns that are an exact string, a
+     * prefix, a suffix, or a contains are matched directly against the UTF-8 bytes
+     * of the string. Since UTF-8 is self synchronizing, a byte match is always a
+     * match on character boundaries. Any other pattern is matched with a regex.
+     */
+    private static LikeMatcher newMatcher(String s) {
+        // Split the pattern into literal strings and wildcards, collapsing adjacent '%'
+        List<Object> tokens = new ArrayList<Object>();
+        StringBuilder buf = new StringBuilder();
+        boolean wasSlash = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (wasSlash) {
+                buf.append(c);
+                wasSlash = false;
+            } else if (c == SINGLE_CHAR_LIKE) {
+                return new RegexMatcher(s);
+            } else if (c == MULTI_CHAR_LIKE) {
+                if (buf.length() > 0) {
+                    tokens.add(buf.toString());
+                    buf.setLength(0);
+                }
+                if (tokens.isEmpty() || !(tokens.get(tokens.size()-1) instanceof Character)) {
+                    tokens.add(Character.valueOf(MULTI_CHAR_LIKE));
+                }
+            } else if (c == '\\') {
+                wasSlash = true;
+            } else {
+                buf.append(c);
+            }
+        }
+        if (buf.length() > 0) {
+            tokens.add(buf.toString());
+        }
+        switch (tokens.size()) {
+        case 0:
+            return new ExactMatcher("");
+        case 1:
+            return tokens.get(0) instanceof String ? new ExactMatcher((String)tokens.get(0)) : AnyMatcher.INSTANCE;
+        case 2:
+            return tokens.get(0) instanceof String ? new PrefixMatcher((String)tokens.get(0)) : new SuffixMatcher((String)tokens.get(1));
+        case 3:
+            if (tokens.get(1) instanceof String) {
+                return new ContainsMatcher((String)tokens.get(1));
+            }
+            break;
+        }
+        return new RegexMatcher(s);
+    }
+    
+    private static abstract class LikeMatcher {
+        public abstract boolean matches(byte[] b, int offset, int length);
+    }
+    
+    private static class AnyMatcher extends LikeMatcher {
+        private static final AnyMatcher INSTANCE = new AnyMatcher();
+        
+        @Override
+        public boolean matches(byte[] b, int offset, int length) {
+            return true;
+        }
+    }
+    
+    private static class ExactMatcher extends LikeMatcher {
+        private final byte[] literal;
+        
+        private ExactMatcher(String literal) {
+            this.literal = Bytes.toBytes(literal);
+        }
+        
+        @Override
+        public boolean matches(byte[] b, int offset, int length) {
+            return Bytes.equals(b, offset, length, literal, 0, literal.length);
+        }
+    }
+    
+    private static class PrefixMatcher extends LikeMatcher {
+        private final byte[] literal;
+        
+        private PrefixMatcher(String literal) {
+            this.literal = Bytes.toBytes(literal);
+        }
+        
+        @Override
+        public boolean matches(byte[] b, int offset, int length) {
+            return length >= literal.length && Bytes.equals(b, offset, literal.length, literal, 0, literal.length);
+        }
+    }
+    
+    private static class SuffixMatcher extends LikeMatcher {
+        private final byte[] literal;
+        
+        private SuffixMatcher(String literal) {
+            this.literal = Bytes.toBytes(literal);
+        }
+        
+        @Override
+        public boolean matches(byte[] b, int offset, int length) {
+            return length >= literal.length && Bytes.equals(b, offset + length - literal.length, literal.length, literal, 0, literal.length);
+        }
+    }
+    
+    /**
+     * Matches a string containing the literal using a Boyer-Moore-Horspool search
+     */
+    private static class ContainsMatcher extends LikeMatcher {
+        private final byte[] literal;
+        private final int[] shift;
+        
+        private ContainsMatcher(String literal) {
+            this.literal = Bytes.toBytes(literal);
+            this.shift = new int[256];
+            int last = this.literal.length - 1;
+            for (int i = 0; i < shift.length; i++) {
+                shift[i] = this.literal.length;
+            }
+            for (int i = 0; i < last; i++) {
+                shift[this.literal[i] & 0xFF] = last - i;
+            }
+        }
+        
+        @Override
+        public boolean matches(byte[] b, int offset, int length) {
+            int last = literal.length - 1;
+            int end = offset + length - literal.length;
+            int i = offset;
+            while (i <= end) {
+                int j = last;
+                while (b[i + j] == literal[j]) {
+                    if (j == 0) {
+                        return true;
+                    }
+                    j--;
+                }
+                i += shift[b[i + last] & 0xFF];
+            }
+            return false;
+        }
+    }
+    
+    private static class RegexMatcher extends LikeMatcher {
+        private final Pattern pattern;
+        
+        private RegexMatcher(String s) {
+            this.pattern = Pattern.compile(toPattern(s), Pattern.DOTALL);
+        }
+        
+        @Override
+        public boolean matches(byte[] b, int offset, int length) {
+            String value = (String)PDataType.VARCHAR.toObject(b, offset, length);
+            return pattern.matcher(value).matches();
+        }
+    }
+
 //    private static String fromPattern(String s) {
 //        StringBuilder sb = new StringBuilder(s.length());
 //
@@ -206,6 +363,7 @@ public class LikeExpression extends BaseCompoundExpression {
 //    }
 
     private Pattern pattern;
+    private LikeMatcher matcher;
     
     public LikeExpression() {
     }
@@ -224,7 +382,8 @@ public class LikeExpression extends BaseCompoundExpression {
         if (e instanceof LiteralExpression) {
             LiteralExpression patternExpression = (LiteralExpression)e;
             String value = (String)patternExpression.getValue();
-            pattern = Pattern.compile(toPattern(value));
+            pattern = Pattern.compile(toPattern(value), Pattern.DOTALL);
+            matcher = newMatcher(value);
         }
     }
 
@@ -238,8 +397,8 @@ public class LikeExpression extends BaseCompoundExpression {
 
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
-        Pattern pattern = this.pattern;
-        if (pattern == null) { // TODO: don't allow? this is going to be slooowwww
+        LikeMatcher matcher = this.matcher;
+        if (matcher == null) { // TODO: don't allow? this is going to be slooowwww
             if (!getPatternExpression().evaluate(tuple, ptr)) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("LIKE is FALSE: pattern is null");
@@ -247,9 +406,9 @@ public class LikeExpression extends BaseCompoundExpression {
                 return false;
             }
             String value = (String)PDataType.VARCHAR.toObject(ptr);
-            pattern = Pattern.compile(toPattern(value));
+            matcher = newMatcher(value);
             if (logger.isDebugEnabled()) {
-                logger.debug("LIKE pattern is expression: " + pattern.pattern());
+                logger.debug("LIKE pattern is expression: " + value);
             }
         }
         
@@ -260,12 +419,11 @@ public class LikeExpression extends BaseCompoundExpression {
             return false;
         }
         
-        String value = (String)PDataType.VARCHAR.toObject(ptr);
-        boolean matched = pattern.matcher(value).matches();
-        ptr.set(matched ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
+        boolean matched = matcher.matches(ptr.get(), ptr.getOffset(), ptr.getLength());
         if (logger.isDebugEnabled()) {
-            logger.debug("LIKE(value='" + value + "'pattern='" + pattern.pattern() + "' is " + matched);
+            logger.debug("LIKE(value='" + PDataType.VARCHAR.toObject(ptr) + "'pattern='" + getPatternExpression() + "' is " + matched);
         }
+        ptr.set(matched ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
         return true;
     }
 
@@ -36,6 +36,8 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 
 
 public class LongMultiplyExpression extends MultiplyExpression {
+    private final PrimitiveResult result = new PrimitiveResult();
+    
 
     public LongMultiplyExpression() {
     }
@@ -45,23 +47,28 @@ public class LongMultiplyExpression extends MultiplyExpression {
     }
 
     @Override
-    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+    public boolean evaluateLong(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result) {
         long finalResult=1;
         
         for(int i=0;i<children.size();i++) {
             Expression child = children.get(i);
-            if (!child.evaluate(tuple, ptr)) {
-                return false;
-            }
-            if (ptr.getLength() == 0) {
+            if (!child.evaluateLong(tuple, ptr, result) || result.isNull()) {
                 return false;
             }
-            long childvalue = child.getDataType().getCodec().decodeLong(ptr);
-            finalResult *= childvalue;
+            finalResult *= result.getLong();
+        }
+        result.setLong(finalResult);
+        return true;
+    }
+
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (!evaluateLong(tuple, ptr, result)) {
+            return false;
         }
         byte[] resultPtr=new byte[getDataType().getByteSize()];
         ptr.set(resultPtr);
-        getDataType().getCodec().encodeLong(finalResult, ptr);
+        getDataType().getCodec().encodeLong(result.getLong(), ptr);
         return true;
     }
 
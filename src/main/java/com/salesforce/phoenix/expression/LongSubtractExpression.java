@@ -45,6 +45,8 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
  * @since 0.1
  */
 public class LongSubtractExpression extends SubtractExpression {
+    private final PrimitiveResult result = new PrimitiveResult();
+    
     public LongSubtractExpression() {
     }
 
@@ -53,17 +55,16 @@ public class LongSubtractExpression extends SubtractExpression {
     }
 
     @Override
-	public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
-		long finalResult=0;
-		
-		for(int i=0;i<children.size();i++) {
-		    Expression child = children.get(i);
-            if (!child.evaluate(tuple, ptr) || ptr.getLength() == 0) {
+    public boolean evaluateLong(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result) {
+        long finalResult=0;
+        
+        for(int i=0;i<children.size();i++) {
+            Expression child = children.get(i);
+            if (!child.evaluateLong(tuple, ptr, result) || result.isNull()) {
                 return false;
             }
-            PDataType childType = child.getDataType();
-            boolean isDate = childType.isCoercibleTo(PDataType.DATE);
-            long childvalue = childType.getCodec().decodeLong(ptr);
+            boolean isDate = child.getDataType().isCoercibleTo(PDataType.DATE);
+            long childvalue = result.getLong();
             if (i == 0) {
                 finalResult = childvalue;
             } else {
@@ -76,12 +77,21 @@ public class LongSubtractExpression extends SubtractExpression {
                     finalResult /= QueryConstants.MILLIS_IN_DAY;
                 }
             }
-		}
-		byte[] resultPtr=new byte[getDataType().getByteSize()];
-		ptr.set(resultPtr);
-		getDataType().getCodec().encodeLong(finalResult, ptr);
-		return true;
-	}
+        }
+        result.setLong(finalResult);
+        return true;
+    }
+
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (!evaluateLong(tuple, ptr, result)) {
+            return false;
+        }
+        byte[] resultPtr=new byte[getDataType().getByteSize()];
+        ptr.set(resultPtr);
+        getDataType().getCodec().encodeLong(result.getLong(), ptr);
+        return true;
+    }
 
 	@Override
 	public final PDataType getDataType() {
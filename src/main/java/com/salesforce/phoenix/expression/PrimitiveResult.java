@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+
+/**
+ * 
+ * Holder for the result of the primitive typed evaluation methods of {@link Expression},
+ * such as {@link Expression#evaluateLong(com.salesforce.phoenix.schema.tuple.Tuple, org.apache.hadoop.hbase.io.ImmutableBytesWritable, PrimitiveResult)}.
+ * Allows numeric values to be passed between expressions without encoding them into bytes.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class PrimitiveResult {
+    private long longValue;
+    private boolean booleanValue;
+    private boolean isNull;
+    
+    public PrimitiveResult() {
+    }
+    
+    public void setLong(long value) {
+        this.longValue = value;
+        this.isNull = false;
+    }
+    
+    public void setBoolean(boolean value) {
+        this.booleanValue = value;
+        this.isNull = false;
+    }
+    
+    public void setNull() {
+        this.isNull = true;
+    }
+    
+    /**
+     * @return true if the expression evaluated to null, in which case
+     * neither the long nor the boolean value is valid
+     */
+    public boolean isNull() {
+        return isNull;
+    }
+    
+    public long getLong() {
+        return longValue;
+    }
+    
+    public boolean getBoolean() {
+        return booleanValue;
+    }
+    
+    @Override
+    public String toString() {
+        return isNull ? "null" : "[long=" + longValue + ",boolean=" + booleanValue + "]";
+    }
+}
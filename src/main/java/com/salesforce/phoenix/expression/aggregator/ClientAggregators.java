@@ -27,6 +27,7 @@
  ******************************************************************************/
 package com.salesforce.phoenix.expression.aggregator;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.salesforce.phoenix.expression.function.SingleAggregateFunction;
@@ -59,6 +60,15 @@ public class ClientAggregators extends Aggregators {
         this.tempValueSet = ValueBitSet.newInstance(schema);
     }
     
+    /**
+     * @return new client aggregators for the same aggregate functions. Since the state used
+     * to decode the aggregated values isn't thread safe, each thread aggregating rows on the
+     * client must use its own copy.
+     */
+    public ClientAggregators copy() {
+        return new ClientAggregators(Arrays.asList(functions), schema.getMinNullable());
+    }
+    
     @Override
     public void aggregate(Aggregator[] aggregators, Tuple result) {
         TupleUtil.getAggregateValue(result, ptr);
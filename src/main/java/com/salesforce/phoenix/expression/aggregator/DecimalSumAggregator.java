@@ -33,6 +33,7 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.NumberUtil;
 import com.salesforce.phoenix.util.SizedUtil;
 
 
@@ -44,7 +45,11 @@ import com.salesforce.phoenix.util.SizedUtil;
  * @since 0.1
  */
 public class DecimalSumAggregator extends BaseAggregator {
-    private BigDecimal sum = BigDecimal.ZERO;
+    // The sum is kept as an unscaled long and a scale for as long as it fits,
+    // and only switches over to BigDecimal arithmetic once it would overflow.
+    private final long[] unscaledSum = new long[2];
+    private final long[] unscaledValue = new long[2];
+    private BigDecimal sum;
     private byte[] sumBuffer;
     
     public DecimalSumAggregator() {
@@ -56,11 +61,22 @@ public class DecimalSumAggregator extends BaseAggregator {
     
     @Override
     public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
-        BigDecimal value = (BigDecimal)getDataType().toObject(ptr, getInputDataType());
-        sum = sum.add(value);
         if (sumBuffer == null) {
             sumBuffer = new byte[getDataType().getByteSize()];
         }
+        if (sum == null) {
+            if (PDataType.toUnscaledLong(ptr.get(), ptr.getOffset(), ptr.getLength(), unscaledValue)
+                    && NumberUtil.addUnscaled(unscaledSum, unscaledValue[0], (int)unscaledValue[1])) {
+                return;
+            }
+            sum = getSum();
+        }
+        BigDecimal value = (BigDecimal)getDataType().toObject(ptr, getInputDataType());
+        sum = sum.add(value);
+    }
+    
+    private BigDecimal getSum() {
+        return sum == null ? BigDecimal.valueOf(unscaledSum[0], (int)unscaledSum[1]) : sum;
     }
     
     @Override
@@ -68,7 +84,7 @@ public class DecimalSumAggregator extends BaseAggregator {
         if (sumBuffer == null) {
             return false;
         }
-        int len = getDataType().toBytes(sum, sumBuffer, 0);
+        int len = getDataType().toBytes(getSum(), sumBuffer, 0);
         ptr.set(sumBuffer, 0, len);
         return true;
     }
@@ -80,18 +96,21 @@ public class DecimalSumAggregator extends BaseAggregator {
     
     @Override
     public void reset() {
-        sum = BigDecimal.ZERO;
+        unscaledSum[0] = 0;
+        unscaledSum[1] = 0;
+        sum = null;
         sumBuffer = null;
         super.reset();
     }
 
     @Override
     public String toString() {
-        return "DECIMAL SUM [sum=" + sum + "]";
+        return "DECIMAL SUM [sum=" + getSum() + "]";
     }
 
     @Override
     public int getSize() {
-        return super.getSize() + SizedUtil.BIG_DECIMAL_SIZE + SizedUtil.ARRAY_SIZE + getDataType().getByteSize();
+        return super.getSize() + SizedUtil.BIG_DECIMAL_SIZE + 2 * (SizedUtil.ARRAY_SIZE + 2 * SizedUtil.LONG_SIZE)
+                + SizedUtil.ARRAY_SIZE + getDataType().getByteSize();
     }
 }
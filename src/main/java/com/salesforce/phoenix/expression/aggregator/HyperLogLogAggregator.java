@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.aggregator;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.HyperLogLogUtil;
+import com.salesforce.phoenix.util.SizedUtil;
+
+
+/**
+ * 
+ * Base class for aggregators that accumulate a HyperLogLog sketch, used
+ * to estimate the number of distinct values. The sketch is only allocated
+ * once the first value is aggregated, so that groups without a value
+ * evaluate to null.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+abstract public class HyperLogLogAggregator extends BaseAggregator {
+    protected byte[] sketch;
+    
+    protected byte[] getSketch() {
+        if (sketch == null) {
+            sketch = HyperLogLogUtil.newSketch();
+        }
+        return sketch;
+    }
+    
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (sketch == null) {
+            return false;
+        }
+        ptr.set(sketch);
+        return true;
+    }
+    
+    @Override
+    public PDataType getDataType() {
+        return PDataType.BINARY;
+    }
+
+    @Override
+    public void reset() {
+        sketch = null;
+        super.reset();
+    }
+    
+    @Override
+    public int getSize() {
+        return super.getSize() + SizedUtil.ARRAY_SIZE + HyperLogLogUtil.REGISTER_COUNT;
+    }
+    
+    @Override
+    public String toString() {
+        return "APPROX_COUNT_DISTINCT [estimate=" + (sketch == null ? "null" : HyperLogLogUtil.estimate(sketch, 0, sketch.length)) + "]";
+    }
+}
@@ -59,6 +59,15 @@ abstract public class NumberSumAggregator extends BaseAggregator {
     public void aggregate(Tuple tuple, ImmutableBytesWritable ptr) {
         // Get either IntNative or LongNative depending on input type
         long value = getInputDataType().getCodec().decodeLong(ptr);
+        aggregate(tuple, value);
+    }
+    
+    /**
+     * Incrementally aggregate a value that was evaluated through
+     * {@link com.salesforce.phoenix.expression.Expression#evaluateLong(Tuple, ImmutableBytesWritable, com.salesforce.phoenix.expression.PrimitiveResult)}
+     * and so never encoded into bytes.
+     */
+    public void aggregate(Tuple tuple, long value) {
         sum += value;
         if (buffer == null) {
             initBuffer();
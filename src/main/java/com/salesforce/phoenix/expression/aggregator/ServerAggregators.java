@@ -35,6 +35,7 @@ import org.apache.hadoop.io.WritableUtils;
 
 import com.salesforce.phoenix.expression.Expression;
 import com.salesforce.phoenix.expression.ExpressionType;
+import com.salesforce.phoenix.expression.PrimitiveResult;
 import com.salesforce.phoenix.expression.function.SingleAggregateFunction;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 
@@ -49,20 +50,33 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 public class ServerAggregators extends Aggregators {
     public static final ServerAggregators EMPTY_AGGREGATORS = new ServerAggregators(new SingleAggregateFunction[0], new Aggregator[0], new Expression[0], 0);
     private final Expression[] expressions;
+    // Whether the aggregator at each index sums longs that may be evaluated without encoding them
+    private final boolean[] isLongAggregation;
+    private final PrimitiveResult primitiveResult = new PrimitiveResult();
+    private final int minNullableIndex;
     
     private ServerAggregators(SingleAggregateFunction[] functions, Aggregator[] aggregators, Expression[] expressions, int minNullableIndex) {
         super(functions, aggregators, minNullableIndex);
+        this.minNullableIndex = minNullableIndex;
         if (aggregators.length != expressions.length) {
             throw new IllegalArgumentException("Number of aggregators (" + aggregators.length 
                     + ") must match the number of expressions (" + Arrays.toString(expressions) + ")");
         }
         this.expressions = expressions;
+        this.isLongAggregation = new boolean[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            isLongAggregation[i] = aggregators[i] instanceof NumberSumAggregator && expressions[i].getDataType().getCodec() != null;
+        }
     }
     
     @Override
     public void aggregate(Aggregator[] aggregators, Tuple result) {
         for (int i = 0; i < expressions.length; i++) {
-            if (expressions[i].evaluate(result, ptr)) {
+            if (isLongAggregation[i]) {
+                if (expressions[i].evaluateLong(result, ptr, primitiveResult) && !primitiveResult.isNull()) {
+                    ((NumberSumAggregator)aggregators[i]).aggregate(result, primitiveResult.getLong());
+                }
+            } else if (expressions[i].evaluate(result, ptr)) {
                 aggregators[i].aggregate(result, ptr);
             }
         }
@@ -96,6 +110,10 @@ public class ServerAggregators extends Aggregators {
         }
     }
 
+    public int getMinNullableIndex() {
+        return minNullableIndex;
+    }
+    
     @Override
     public Aggregator[] newAggregators() {
         Aggregator[] aggregators = new Aggregator[functions.length];
@@ -47,16 +47,31 @@ public abstract class FunctionExpression extends BaseCompoundExpression {
         super(children);
     }
     
+    /**
+     * Describes how the order of the output of a function relates to the order of its input.
+     * <ul>
+     *   <li>NO: the output may be ordered differently than the input.</li>
+     *   <li>YES_IF_LAST: the output is never ordered differently than the input, but distinct
+     *     inputs may produce the same output. For example, TRUNC(date,'HOUR') maps every date
+     *     within an hour to the same value. Rows grouped by such a function are only contiguous
+     *     if it is applied to the last row key column of the grouping.</li>
+     *   <li>YES: the output is ordered the same as the input and distinct inputs produce
+     *     distinct outputs.</li>
+     * </ul>
+     */
+    public enum OrderPreserving {NO, YES_IF_LAST, YES}
+    
     /**
      * Method used to maintain certain query optimization that may be possible even through a function invocation.
-     * If the function invocatin will not cause the output to be ordered differently than the input, then true should
-     * be returned. Cases in which equals would be returned for the output while the input would return greater than
-     * may be ok.  For example, SUBSTR(foo,1,3) would return true, since the order produced by the input and the order
-     * produced by the output are the both the same.
-     * @return true if the function invocation will preserve order for the inputs versus the outputs and false otherwise
+     * If the function invocatin will not cause the output to be ordered differently than the input, then YES or
+     * YES_IF_LAST should be returned. Cases in which equals would be returned for the output while the input would
+     * return greater than are YES_IF_LAST.  For example, SUBSTR(foo,1,3) would return YES_IF_LAST, since the order
+     * produced by the input and the order produced by the output are the both the same, but more than one input
+     * maps to the same output.
+     * @return how the function invocation preserves order for the inputs versus the outputs
      */
-    public boolean preservesOrder() {
-        return false;
+    public OrderPreserving preservesOrder() {
+        return OrderPreserving.NO;
     }
 
     abstract public String getName();
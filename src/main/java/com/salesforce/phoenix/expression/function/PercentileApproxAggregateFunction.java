@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.function;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.expression.aggregator.*;
+import com.salesforce.phoenix.parse.FunctionParseNode.Argument;
+import com.salesforce.phoenix.parse.FunctionParseNode.BuiltInFunction;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.TDigest;
+
+
+/**
+ * 
+ * Built-in function for PERCENTILE_APPROX(<expression>, <percentile>) aggregate function,
+ * which estimates the value of a numeric expression at the given percentile, a constant
+ * between 0 and 1. For example PERCENTILE_APPROX(latency, 0.99) for the P99 latency.
+ * Each region accumulates a {@link TDigest} of bounded size, which the client merges,
+ * instead of having to sort all values.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+@BuiltInFunction(name=PercentileApproxAggregateFunction.NAME, args= {
+    @Argument(allowedTypes={PDataType.DECIMAL}),
+    @Argument(allowedTypes={PDataType.DECIMAL}, isConstant=true)} )
+public class PercentileApproxAggregateFunction extends SingleAggregateFunction {
+    public static final String NAME = "PERCENTILE_APPROX";
+    private double percentile;
+    
+    public PercentileApproxAggregateFunction() {
+    }
+    
+    public PercentileApproxAggregateFunction(List<Expression> childExpressions) throws SQLException {
+        super(childExpressions);
+        if (childExpressions.size() > 1) {
+            Object value = ((LiteralExpression)childExpressions.get(1)).getValue();
+            double percentile = value == null ? -1 : ((Number)value).doubleValue();
+            if (percentile < 0 || percentile > 1) {
+                throw new SQLExceptionInfo.Builder(SQLExceptionCode.ILLEGAL_DATA)
+                    .setMessage(getName() + " expected a percentile between 0 and 1, but got " + value)
+                    .build().buildException();
+            }
+        }
+        init();
+    }
+    
+    private void init() {
+        percentile = children.size() > 1 ? ((Number)((LiteralExpression)children.get(1)).getValue()).doubleValue() : 0.5;
+    }
+
+    @Override 
+    public Aggregator newServerAggregator() {
+        return new TDigestServerAggregator(getAggregatorExpression().getDataType());
+    }
+    
+    @Override 
+    public Aggregator newClientAggregator() {
+        return new TDigestClientAggregator();
+    }
+    
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (!super.evaluate(tuple, ptr)) {
+            return false;
+        }
+        TDigest digest = new TDigest();
+        digest.merge(ptr.get(), ptr.getOffset(), ptr.getLength());
+        ptr.set(PDataType.DECIMAL.toBytes(BigDecimal.valueOf(digest.quantile(percentile))));
+        return true;
+    }
+    
+    @Override
+    public PDataType getDataType() {
+        return PDataType.DECIMAL;
+    }
+
+    @Override
+    public void readFields(DataInput input) throws IOException {
+        super.readFields(input);
+        init();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
@@ -163,8 +163,8 @@ public class RoundFunction extends ScalarFunction {
     }
     
     @Override
-    public boolean preservesOrder() {
-        return true;
+    public OrderPreserving preservesOrder() {
+        return OrderPreserving.YES_IF_LAST;
     }
 
     @Override
@@ -120,6 +120,15 @@ abstract public class SingleAggregateFunction extends AggregateFunction {
         return aggregator;
     }
     
+    /**
+     * Replace the aggregator this function evaluates against. Used on the server
+     * to finish the aggregation of a group with the client-side aggregator.
+     * @param aggregator the aggregator to evaluate against
+     */
+    public void setAggregator(Aggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+    
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
         return getAggregator().evaluate(tuple, ptr);
@@ -146,6 +155,7 @@ abstract public class SingleAggregateFunction extends AggregateFunction {
     @Override
     public void readFields(DataInput input) throws IOException {
         super.readFields(input);
+        isConstant = children.get(0) instanceof LiteralExpression;
         aggregator = newServerAggregator();
     }
 
@@ -99,7 +99,6 @@ public class SubstrFunction extends PrefixFunction {
 
     @Override
     public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
-        // TODO: multi-byte characters
         Expression offsetExpression = getOffsetExpression();
         if (!offsetExpression.evaluate(tuple,  ptr)) {
             return false;
@@ -124,22 +123,32 @@ public class SubstrFunction extends PrefixFunction {
         
         try {
             boolean isCharType = getStrExpression().getDataType() == PDataType.CHAR;
-            int strlen = isCharType ? ptr.getLength() : StringUtil.calculateUTF8Length(ptr.get(), ptr.getOffset(), ptr.getLength());
+            byte[] bytes = ptr.get();
+            int strOffset = ptr.getOffset();
+            int strByteLength = ptr.getLength();
             
             // Account for 1 versus 0-based offset
             offset = offset - (offset <= 0 ? 0 : 1);
             if (offset < 0) { // Offset < 0 means get from end
+                int strlen = isCharType ? strByteLength : StringUtil.calculateUTF8Length(bytes, strOffset, strByteLength);
                 offset = strlen + offset;
+                if (offset < 0) {
+                    return false;
+                }
             }
-            if (offset < 0 || offset >= strlen) {
+            // Only walk as many characters as we need rather than calculating the length of the whole string
+            int byteOffset = isCharType ? offset : StringUtil.getByteLengthForUtf8SubStr(bytes, strOffset, offset, strByteLength);
+            if (byteOffset >= strByteLength) {
                 return false;
             }
-            int maxLength = strlen - offset;
-            length = length == -1 ? maxLength : Math.min(length,maxLength);
-            
-            int byteOffset = isCharType ? offset : StringUtil.getByteLengthForUtf8SubStr(ptr.get(), ptr.getOffset(), offset);
-            int byteLength = isCharType ? length : StringUtil.getByteLengthForUtf8SubStr(ptr.get(), ptr.getOffset() + byteOffset, length);
-            ptr.set(ptr.get(), ptr.getOffset() + byteOffset, byteLength);
+            int maxByteLength = strByteLength - byteOffset;
+            int byteLength;
+            if (length == -1) {
+                byteLength = maxByteLength;
+            } else {
+                byteLength = isCharType ? Math.min(length, maxByteLength) : StringUtil.getByteLengthForUtf8SubStr(bytes, strOffset + byteOffset, length, maxByteLength);
+            }
+            ptr.set(bytes, strOffset + byteOffset, byteLength);
             return true;
         } catch (UnsupportedEncodingException e) {
             return false;
@@ -182,16 +191,24 @@ public class SubstrFunction extends PrefixFunction {
     }
 
     @Override
-    public boolean preservesOrder() {
+    public OrderPreserving preservesOrder() {
         if (isOffsetConstant) {
             LiteralExpression literal = (LiteralExpression) getOffsetExpression();
             Number offsetNumber = (Number) literal.getValue();
             if (offsetNumber != null) { 
                 int offset = offsetNumber.intValue();
-                return (offset == 0 || offset == 1) && (!hasLengthExpression || isLengthConstant);
+                if (offset == 0 || offset == 1) {
+                    // Without a length, the whole string is returned
+                    if (!hasLengthExpression) {
+                        return OrderPreserving.YES;
+                    }
+                    if (isLengthConstant) {
+                        return OrderPreserving.YES_IF_LAST;
+                    }
+                }
             }
         }
-        return false;
+        return OrderPreserving.NO;
     }
 
     @Override
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression.function;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.expression.aggregator.*;
+import com.salesforce.phoenix.parse.FunctionParseNode.Argument;
+import com.salesforce.phoenix.parse.FunctionParseNode.BuiltInFunction;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.SpaceSaving;
+
+
+/**
+ * 
+ * Built-in function for TOP_K(<expression>, <k>) aggregate function, which finds the
+ * k most frequent values of the expression along with their estimated counts. Since
+ * there's no array type, the result is a VARCHAR of the form "value1=count1, value2=count2"
+ * ordered from the most to the least frequent. A backslash, comma or equal sign within a
+ * value is preceded by a backslash, so that the result may be split unambiguously.
+ * Each region counts the values in a {@link SpaceSaving} sketch of {@link #CAPACITY_PER_K}
+ * times k counters, which the client merges, instead of returning every distinct value.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+@BuiltInFunction(name=TopKAggregateFunction.NAME, args= {
+    @Argument(),
+    @Argument(allowedTypes={PDataType.INTEGER}, isConstant=true)} )
+public class TopKAggregateFunction extends SingleAggregateFunction {
+    public static final String NAME = "TOP_K";
+    public static final int MAX_K = 1000;
+    // Counting more values than returned is what keeps the counts of the top k accurate
+    public static final int CAPACITY_PER_K = 10;
+    
+    public TopKAggregateFunction() {
+    }
+    
+    public TopKAggregateFunction(List<Expression> childExpressions) throws SQLException {
+        super(childExpressions);
+        int k = getK();
+        if (k < 1 || k > MAX_K) {
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.ILLEGAL_DATA)
+                .setMessage(getName() + " expected a k between 1 and " + MAX_K + ", but got " + ((LiteralExpression)childExpressions.get(1)).getValue())
+                .build().buildException();
+        }
+    }
+    
+    private int getK() {
+        // Not known yet when constructed for deserialization
+        if (children.size() < 2) {
+            return 0;
+        }
+        Object value = ((LiteralExpression)children.get(1)).getValue();
+        return value == null ? 0 : ((Number)value).intValue();
+    }
+
+    @Override 
+    public Aggregator newServerAggregator() {
+        return new SpaceSavingServerAggregator(CAPACITY_PER_K * getK());
+    }
+    
+    @Override 
+    public Aggregator newClientAggregator() {
+        return new SpaceSavingClientAggregator(CAPACITY_PER_K * getK());
+    }
+    
+    @Override
+    public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+        if (!super.evaluate(tuple, ptr)) {
+            return false;
+        }
+        SpaceSaving sketch = new SpaceSaving(CAPACITY_PER_K * getK());
+        sketch.merge(ptr.get(), ptr.getOffset(), ptr.getLength());
+        List<SpaceSaving.Counter> counters = sketch.getCounters();
+        PDataType type = getAggregatorExpression().getDataType();
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < counters.size() && i < getK(); i++) {
+            SpaceSaving.Counter counter = counters.get(i);
+            if (i > 0) {
+                buf.append(", ");
+            }
+            appendEscaped(buf, String.valueOf(type.toObject(counter.getValue())));
+            buf.append('=');
+            buf.append(counter.getCount());
+        }
+        ptr.set(PDataType.VARCHAR.toBytes(buf.toString()));
+        return true;
+    }
+    
+    private static void appendEscaped(StringBuilder buf, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == ',' || c == '=') {
+                buf.append('\\');
+            }
+            buf.append(c);
+        }
+    }
+    
+    @Override
+    public PDataType getDataType() {
+        return PDataType.VARCHAR;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
@@ -49,6 +49,8 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 abstract public class BooleanExpressionFilter extends FilterBase {
 
     protected Expression expression;
+    // Specialized form of expression used for evaluation
+    protected Expression compiledExpression;
     protected boolean evaluateOnCompletion;
     private ImmutableBytesWritable tempPtr = new ImmutableBytesWritable();
     
@@ -57,6 +59,7 @@ abstract public class BooleanExpressionFilter extends FilterBase {
 
     public BooleanExpressionFilter(Expression expression) {
         this.expression = expression;
+        this.compiledExpression = FilterExpressionCompiler.compile(expression);
     }
 
     protected void setEvaluateOnCompletion(boolean evaluateOnCompletion) {
@@ -95,19 +98,20 @@ abstract public class BooleanExpressionFilter extends FilterBase {
             justification="Returns null by design.")
     protected Boolean evaluate(Tuple input) {
         try {
-            if (!expression.evaluate(input, tempPtr)) {
+            if (!compiledExpression.evaluate(input, tempPtr)) {
                 return null;
             }
         } catch (IllegalDataException e) {
             return Boolean.FALSE;
         }
-        return (Boolean)expression.getDataType().toObject(tempPtr);
+        return (Boolean)compiledExpression.getDataType().toObject(tempPtr);
     }
 
     @Override
     public void readFields(DataInput input) throws IOException {
         expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
         expression.readFields(input);
+        compiledExpression = FilterExpressionCompiler.compile(expression);
     }
 
     @Override
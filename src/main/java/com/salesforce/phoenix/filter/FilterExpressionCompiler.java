@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.common.primitives.Longs;
+import com.salesforce.phoenix.expression.*;
+import com.salesforce.phoenix.expression.visitor.ExpressionVisitor;
+import com.salesforce.phoenix.schema.IllegalDataException;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.PDataType.PDataCodec;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ByteUtil;
+
+
+/**
+ * 
+ * Specializes a WHERE clause expression tree once it's been deserialized by a filter so
+ * that it's cheaper to evaluate for every row. Comparisons against a constant have the
+ * constant converted to the representation of the other side up front, so that only
+ * the non constant side is evaluated and decoded per row. AND and OR expressions are
+ * rebuilt over their specialized children. Any other expression is evaluated as is.
+ * The specialized expressions are only used for evaluation and may not be serialized.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class FilterExpressionCompiler {
+
+    private FilterExpressionCompiler() {
+    }
+    
+    /**
+     * Specialize an expression for evaluation
+     * @param expression the deserialized expression
+     * @return the specialized expression or the original expression if
+     * no part of it could be specialized
+     */
+    public static Expression compile(Expression expression) {
+        if (expression instanceof ComparisonExpression) {
+            return compileComparison((ComparisonExpression)expression);
+        }
+        if (expression instanceof AndExpression || expression instanceof OrExpression) {
+            List<Expression> children = expression.getChildren();
+            List<Expression> compiledChildren = null;
+            for (int i = 0; i < children.size(); i++) {
+                Expression child = children.get(i);
+                Expression compiledChild = compile(child);
+                if (compiledChild != child && compiledChildren == null) {
+                    compiledChildren = new ArrayList<Expression>(children.subList(0, i));
+                }
+                if (compiledChildren != null) {
+                    compiledChildren.add(compiledChild);
+                }
+            }
+            if (compiledChildren == null) {
+                return expression;
+            }
+            return expression instanceof AndExpression ? new AndExpression(compiledChildren) : new OrExpression(compiledChildren);
+        }
+        return expression;
+    }
+    
+    private static Expression compileComparison(ComparisonExpression comparison) {
+        Expression lhs = comparison.getChildren().get(0);
+        Expression rhs = comparison.getChildren().get(1);
+        PDataType lhsType = lhs.getDataType();
+        PDataType rhsType = rhs.getDataType();
+        if (!(rhs instanceof LiteralExpression) || lhsType == null || rhsType == null) {
+            return comparison;
+        }
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        if (!rhs.evaluate(null, ptr) || ptr.getLength() == 0) {
+            return comparison;
+        }
+        byte[] rhsBytes = ptr.copyBytes();
+        try {
+            // Mirrors the conversions done by PDataType.compareTo, but only once for the constant
+            if (ComparisonExpression.isLongComparable(lhsType) && ComparisonExpression.isLongComparable(rhsType) && !(lhs instanceof ColumnExpression)) {
+                // Compare computed values as longs so that they're never encoded into bytes
+                return new LongComparison(comparison, rhsType.getCodec().decodeLong(rhsBytes, 0));
+            }
+            if (lhsType.isBytesComparableWith(rhsType)) {
+                return new BytesComparison(comparison, rhsBytes);
+            }
+            if (lhsType.getCodec() == null) {
+                return new BytesComparison(comparison, lhsType.toBytes(lhsType.toObject(rhsBytes, 0, rhsBytes.length, rhsType)));
+            }
+            if (rhsType.getCodec() == null) {
+                // The lhs would need to be converted for every row, so nothing to gain
+                return comparison;
+            }
+            return new LongComparison(comparison, rhsType.getCodec().decodeLong(rhsBytes, 0));
+        } catch (IllegalDataException e) {
+            // Let the original expression produce the same error per row
+            return comparison;
+        }
+    }
+    
+    private static abstract class SpecializedComparison extends BaseCompoundExpression {
+        private final ComparisonExpression comparison;
+        protected final Expression lhs;
+        // Result of the comparison for lhs less than, equal to, and greater than rhs
+        private final boolean isLessTrue;
+        private final boolean isEqualTrue;
+        private final boolean isGreaterTrue;
+        
+        SpecializedComparison(ComparisonExpression comparison) {
+            super(comparison.getChildren().subList(0, 1));
+            this.comparison = comparison;
+            this.lhs = children.get(0);
+            CompareOp op = comparison.getFilterOp();
+            this.isLessTrue = ByteUtil.compare(op, -1);
+            this.isEqualTrue = ByteUtil.compare(op, 0);
+            this.isGreaterTrue = ByteUtil.compare(op, 1);
+        }
+        
+        protected abstract int compareTo(ImmutableBytesWritable lhsPtr);
+        
+        protected final boolean isTrue(int c) {
+            return c < 0 ? isLessTrue : c == 0 ? isEqualTrue : isGreaterTrue;
+        }
+        
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            if (!lhs.evaluate(tuple, ptr)) {
+                return false;
+            }
+            ptr.set(isTrue(compareTo(ptr)) ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
+            return true;
+        }
+
+        @Override
+        public PDataType getDataType() {
+            return PDataType.BOOLEAN;
+        }
+        
+        @Override
+        public <T> T accept(ExpressionVisitor<T> visitor) {
+            return comparison.accept(visitor);
+        }
+
+        @Override
+        public void write(DataOutput output) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int hashCode() {
+            return comparison.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null) return false;
+            if (getClass() != obj.getClass()) return false;
+            return comparison.equals(((SpecializedComparison)obj).comparison);
+        }
+
+        @Override
+        public String toString() {
+            return comparison.toString();
+        }
+    }
+    
+    private static class BytesComparison extends SpecializedComparison {
+        private final byte[] rhsBytes;
+        
+        BytesComparison(ComparisonExpression comparison, byte[] rhsBytes) {
+            super(comparison);
+            this.rhsBytes = rhsBytes;
+        }
+
+        @Override
+        protected int compareTo(ImmutableBytesWritable lhsPtr) {
+            return Bytes.compareTo(lhsPtr.get(), lhsPtr.getOffset(), lhsPtr.getLength(), rhsBytes, 0, rhsBytes.length);
+        }
+    }
+    
+    private static class LongComparison extends SpecializedComparison {
+        private final PDataCodec lhsCodec;
+        private final long rhsValue;
+        private final PrimitiveResult result = new PrimitiveResult();
+        
+        LongComparison(ComparisonExpression comparison, long rhsValue) {
+            super(comparison);
+            this.lhsCodec = lhs.getDataType().getCodec();
+            this.rhsValue = rhsValue;
+        }
+
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            if (!evaluateBoolean(tuple, ptr, result)) {
+                return false;
+            }
+            ptr.set(result.getBoolean() ? PDataType.TRUE_BYTES : PDataType.FALSE_BYTES);
+            return true;
+        }
+
+        @Override
+        public boolean evaluateBoolean(Tuple tuple, ImmutableBytesWritable ptr, PrimitiveResult result) {
+            if (!lhs.evaluateLong(tuple, ptr, result) || result.isNull()) {
+                return false;
+            }
+            result.setBoolean(isTrue(Longs.compare(result.getLong(), rhsValue)));
+            return true;
+        }
+
+        @Override
+        protected int compareTo(ImmutableBytesWritable lhsPtr) {
+            return Longs.compare(lhsCodec.decodeLong(lhsPtr.get(), lhsPtr.getOffset()), rhsValue);
+        }
+    }
+}
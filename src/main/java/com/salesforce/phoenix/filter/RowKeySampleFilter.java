@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import java.io.*;
+
+import org.apache.hadoop.hbase.filter.FilterBase;
+
+import com.salesforce.phoenix.util.HashUtil;
+
+
+/**
+ * 
+ * Filter that keeps a pseudo random percentage of the rows it sees, used to implement
+ * the TABLESAMPLE clause. Whether or not a row is kept is decided by hashing its row
+ * key, so the row is dropped before any of its key values are read and the same rows
+ * are sampled each time the same table is scanned.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class RowKeySampleFilter extends FilterBase {
+    private static final double HASH_RANGE = 1L << 53;
+    
+    private double samplePercent;
+    private long threshold;
+
+    public RowKeySampleFilter() {
+    }
+
+    /**
+     * @param samplePercent percentage of the rows to keep, greater than 0 and
+     * less than or equal to 100.
+     */
+    public RowKeySampleFilter(double samplePercent) {
+        init(samplePercent);
+    }
+
+    private void init(double samplePercent) {
+        this.samplePercent = samplePercent;
+        // Compare on the top 53 bits of the hash, the most that a double represents exactly
+        this.threshold = (long)Math.ceil(samplePercent / 100 * HASH_RANGE);
+    }
+    
+    public double getSamplePercent() {
+        return samplePercent;
+    }
+    
+    @Override
+    public boolean filterRowKey(byte[] buffer, int offset, int length) {
+        return (HashUtil.hash64(buffer, offset, length) >>> 11) >= threshold;
+    }
+
+    @Override
+    public void readFields(DataInput input) throws IOException {
+        init(input.readDouble());
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeDouble(samplePercent);
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(samplePercent);
+        return (int)(bits ^ (bits >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        RowKeySampleFilter other = (RowKeySampleFilter)obj;
+        return Double.doubleToLongBits(samplePercent) == Double.doubleToLongBits(other.samplePercent);
+    }
+
+    @Override
+    public String toString() {
+        return "SAMPLE " + samplePercent + "%";
+    }
+}
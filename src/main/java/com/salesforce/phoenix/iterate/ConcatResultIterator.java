@@ -63,6 +63,9 @@ public class ConcatResultIterator implements PeekingResultIterator {
                 PeekingResultIterator iterator = iterators.get(index);
                 iterator.close();
             }
+        } else {
+            // Release any results gathered ahead of time
+            resultIterators.close();
         }
     }
 
@@ -102,6 +102,9 @@ public abstract class ExplainTable {
                 planSteps.add("    SERVER FILTER BY " + filterDesc);
             }
         }
+        if (context.getSamplePercent() != null) {
+            planSteps.add("    TABLESAMPLE " + context.getSamplePercent() + " PERCENT");
+        }
         context.getGroupBy().explain(planSteps);
     }
 
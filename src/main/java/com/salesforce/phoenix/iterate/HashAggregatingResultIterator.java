@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static com.salesforce.phoenix.query.QueryConstants.*;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.exception.SQLExceptionInfo;
+import com.salesforce.phoenix.expression.aggregator.Aggregator;
+import com.salesforce.phoenix.expression.aggregator.ClientAggregators;
+import com.salesforce.phoenix.job.JobManager.Job;
+import com.salesforce.phoenix.job.JobManager.JobCallable;
+import com.salesforce.phoenix.memory.MemoryManager;
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.*;
+
+
+/**
+ * 
+ * Result iterator that does the final aggregation of the groups returned by each region
+ * in a hash table, instead of merge sorting them as {@link GroupedAggregatingResultIterator}
+ * does. The groups are partitioned by the hash of their key into hash tables whose memory
+ * is tracked by the memory manager. The rows of each region are aggregated into the
+ * partitions on their own thread as they're read, so the regions needn't sort the groups
+ * they return. The aggregated groups are returned in no particular order.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class HashAggregatingResultIterator implements AggregatingResultIterator {
+    private final StatementContext context;
+    private final ResultIterators resultIterators;
+    private final ClientAggregators aggregators;
+    private final int partitionCount;
+    private List<Partition> partitions;
+    private int partitionIndex;
+    private Iterator<Map.Entry<ImmutableBytesPtr, Aggregator[]>> iterator;
+    private boolean isClosed;
+    
+    public HashAggregatingResultIterator(StatementContext context, ResultIterators resultIterators, ClientAggregators aggregators, int partitionCount) {
+        if (resultIterators == null) throw new NullPointerException();
+        if (aggregators == null) throw new NullPointerException();
+        if (partitionCount < 1) throw new IllegalArgumentException("Partition count must be at least 1, but was " + partitionCount);
+        this.context = context;
+        this.resultIterators = resultIterators;
+        this.aggregators = aggregators;
+        this.partitionCount = partitionCount;
+    }
+    
+    @Override
+    public Tuple next() throws SQLException {
+        if (isClosed) {
+            return null;
+        }
+        if (partitions == null) {
+            partitions = aggregate();
+            iterator = partitions.get(0).groups.entrySet().iterator();
+        }
+        while (!iterator.hasNext()) {
+            if (++partitionIndex == partitions.size()) {
+                return null;
+            }
+            iterator = partitions.get(partitionIndex).groups.entrySet().iterator();
+        }
+        Map.Entry<ImmutableBytesPtr, Aggregator[]> entry = iterator.next();
+        byte[] value = aggregators.toBytes(entry.getValue());
+        Tuple result = new SingleKeyValueTuple(KeyValueUtil.newKeyValue(entry.getKey(), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length));
+        // Load the group into the aggregators through which the projected aggregate functions are evaluated
+        aggregate(result);
+        return result;
+    }
+    
+    /**
+     * Aggregates the rows of each region into the partitions on its own thread as they're read
+     * @return the partitions holding the aggregated groups
+     */
+    private List<Partition> aggregate() throws SQLException {
+        final List<Partition> partitions = Lists.newArrayListWithExpectedSize(partitionCount);
+        boolean success = false;
+        try {
+            MemoryManager mm = context.getMemoryManager();
+            for (int i = 0; i < partitionCount; i++) {
+                // Each partition needs its own aggregators, as their decoding state isn't thread safe
+                partitions.add(new Partition(aggregators.copy(), mm.allocate(0)));
+            }
+            aggregate(partitions);
+            success = true;
+            return partitions;
+        } finally {
+            if (!success) {
+                closePartitions(partitions);
+            }
+        }
+    }
+    
+    private void aggregate(final List<Partition> partitions) throws SQLException {
+        List<PeekingResultIterator> iterators = resultIterators.getIterators();
+        ExecutorService executor = context.getConnection().getQueryServices().getExecutor();
+        Configuration config = context.getConnection().getQueryServices().getConfig();
+        final Job job = ParallelIterators.newJob(context.getConnection(), config);
+        List<Future<Void>> futures = Lists.newArrayListWithExpectedSize(iterators.size());
+        // Claimed by either the job consuming the iterator or by the cleanup of a job that never started
+        List<AtomicBoolean> isClaimed = Lists.newArrayListWithExpectedSize(iterators.size());
+        for (int i = 0; i < iterators.size(); i++) {
+            isClaimed.add(new AtomicBoolean());
+        }
+        int timeoutMs = context.getQueryTimeoutMs();
+        // Only what's left of the timeout after the parallel scans above
+        long endTimeMs = context.getQueryEndTimeMs();
+        boolean success = false;
+        try {
+            for (int i = 0; i < iterators.size(); i++) {
+                final PeekingResultIterator iterator = iterators.get(i);
+                final AtomicBoolean isIteratorClaimed = isClaimed.get(i);
+                futures.add(executor.submit(new JobCallable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        if (!isIteratorClaimed.compareAndSet(false, true)) {
+                            return null;
+                        }
+                        try {
+                            ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+                            for (Tuple result = iterator.next(); result != null; result = iterator.next()) {
+                                result.getKey(ptr);
+                                // Use a different hash than the one of the hash table, as every key in a partition has the same remainder
+                                long hash = HashUtil.hash64(ptr.get(), ptr.getOffset(), ptr.getLength());
+                                partitions.get((int)((hash >>> 1) % partitions.size())).aggregate(ptr, result);
+                            }
+                        } finally {
+                            iterator.close();
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public Object getJobId() {
+                        return job;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                long waitTimeMs = Math.max(0, endTimeMs - System.currentTimeMillis());
+                future.get(waitTimeMs, TimeUnit.MILLISECONDS);
+            }
+            success = true;
+        } catch (TimeoutException e) {
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.OPERATION_TIMED_OUT)
+                .setMessage("Query did not complete within " + timeoutMs + " ms")
+                .setRootCause(e).build().buildException();
+        } catch (ExecutionException e) {
+            throw ServerUtil.parseServerException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION).setRootCause(e).build().buildException();
+        } catch (RejectedExecutionException e) {
+            throw new SQLException(e);
+        } finally {
+            if (!success) {
+                for (Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+                // Release the results of the regions whose job never started
+                List<PeekingResultIterator> unclaimedIterators = Lists.newArrayList();
+                for (int i = 0; i < iterators.size(); i++) {
+                    if (isClaimed.get(i).compareAndSet(false, true)) {
+                        unclaimedIterators.add(iterators.get(i));
+                    }
+                }
+                SQLCloseables.closeAll(unclaimedIterators);
+            }
+        }
+    }
+    
+    private static void closePartitions(List<Partition> partitions) {
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+    }
+    
+    @Override
+    public void close() throws SQLException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (partitions == null) {
+            // Release any results gathered ahead of time
+            resultIterators.close();
+        } else {
+            closePartitions(partitions);
+        }
+    }
+    
+    @Override
+    public void aggregate(Tuple result) {
+        Aggregator[] rowAggregators = aggregators.getAggregators();
+        aggregators.reset(rowAggregators);
+        aggregators.aggregate(rowAggregators, result);
+    }
+
+    @Override
+    public void explain(List<String> planSteps) {
+        resultIterators.explain(planSteps);
+        planSteps.add("CLIENT " + partitionCount + "-WAY HASH AGGREGATE");
+    }
+    
+    /**
+     * 
+     * Hash table of the groups whose key hashes to the same partition. The rows of
+     * every region may be aggregated into it, so access to it is synchronized.
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    private static class Partition {
+        private final ClientAggregators aggregators;
+        private final MemoryChunk chunk;
+        private final Map<ImmutableBytesPtr, Aggregator[]> groups = Maps.newHashMap();
+        private final ImmutableBytesPtr tempKey = new ImmutableBytesPtr();
+        private final int valueSize;
+        private long size;
+        
+        private Partition(ClientAggregators aggregators, MemoryChunk chunk) {
+            this.aggregators = aggregators;
+            this.chunk = chunk;
+            this.valueSize = aggregators.getSize();
+        }
+        
+        private synchronized void aggregate(ImmutableBytesWritable ptr, Tuple result) {
+            tempKey.set(ptr);
+            Aggregator[] rowAggregators = groups.get(tempKey);
+            if (rowAggregators == null) {
+                // Copy the key, so that the hash table doesn't hold onto the rest of the row
+                ImmutableBytesPtr key = new ImmutableBytesPtr(ptr.copyBytes());
+                size += SizedUtil.sizeOfMap(1, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE + SizedUtil.INT_SIZE + key.getLength(), valueSize);
+                if (size > chunk.getSize()) {
+                    // Grow by half again as much to avoid going to the memory manager for each group
+                    chunk.resize(size * 3 / 2);
+                }
+                groups.put(key, rowAggregators = aggregators.newAggregators());
+            }
+            aggregators.aggregate(rowAggregators, result);
+        }
+        
+        private void close() {
+            chunk.close();
+        }
+    }
+}
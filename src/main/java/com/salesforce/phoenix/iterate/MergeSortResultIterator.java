@@ -65,6 +65,9 @@ public class MergeSortResultIterator implements PeekingResultIterator {
     public void close() throws SQLException {
         if (iterators != null) {
             SQLCloseables.closeAll(iterators);
+        } else {
+            // Release any results gathered ahead of time
+            resultIterators.close();
         }
     }
 
@@ -39,6 +39,7 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.google.common.base.Function;
 import com.google.common.collect.*;
+import com.salesforce.phoenix.compile.QueryMetrics;
 import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.compile.OrderByCompiler.OrderingColumn;
 import com.salesforce.phoenix.expression.Expression;
@@ -97,6 +98,7 @@ public class OrderedResultIterator implements ResultIterator {
 
     private final ResultIterator delegate;
     private final List<OrderingColumn> orderingColumns;
+    private final QueryMetrics metrics;
     
     private Iterator<Tuple> iterator;
 
@@ -131,6 +133,7 @@ public class OrderedResultIterator implements ResultIterator {
         checkArgument(!orderingColumns.isEmpty());
         this.delegate = delegate;
         this.orderingColumns = orderingColumns;
+        this.metrics = context.getMetrics();
     }
 
     /**
@@ -170,6 +173,7 @@ public class OrderedResultIterator implements ResultIterator {
         List<Expression> expressions = Lists.newArrayList(Collections2.transform(orderingColumns, TO_EXPRESSION));
         // TODO: size
         List<ResultEntry> entries = Lists.newArrayList();
+        long startTimeNs = System.nanoTime();
         try {
             for (Tuple result = delegate.next(); result != null; result = delegate.next()) {
                 int pos = 0;
@@ -189,6 +193,7 @@ public class OrderedResultIterator implements ResultIterator {
             this.iterator = newIterator(iterator);
         } finally {
             delegate.close();
+            metrics.addStageTime(QueryMetrics.Stage.SORT, System.nanoTime() - startTimeNs);
         }
     }
 
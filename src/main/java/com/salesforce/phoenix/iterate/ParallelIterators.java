@@ -27,6 +27,7 @@
  ******************************************************************************/
 package com.salesforce.phoenix.iterate;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.*;
@@ -34,19 +35,28 @@ import java.util.concurrent.*;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
 
 import com.google.common.base.*;
 import com.google.common.collect.*;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.salesforce.phoenix.compile.StatementContext;
+import com.salesforce.phoenix.coprocessor.BaseScannerRegionObserver;
+import com.salesforce.phoenix.exception.*;
 import com.salesforce.phoenix.execute.RowCounter;
+import com.salesforce.phoenix.filter.RowKeySampleFilter;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.job.JobManager.Job;
 import com.salesforce.phoenix.job.JobManager.JobCallable;
 import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.TableRef;
-import com.salesforce.phoenix.util.SQLCloseables;
-import com.salesforce.phoenix.util.ScanUtil;
+import com.salesforce.phoenix.util.*;
 
 
 /**
@@ -60,8 +70,15 @@ import com.salesforce.phoenix.util.ScanUtil;
 public class ParallelIterators extends ExplainTable implements ResultIterators {
     private final RowCounter rowCounter;
     private final List<KeyRange> splits;
+    private final Double rowSamplePercent;
+    private List<Pair<byte[],ListenableFuture<PeekingResultIterator>>> futures;
+    private ListenableFuture<List<PeekingResultIterator>> allFutures;
+    private SQLCloseable cancellable;
+    private int timeoutMs;
+    private long endTimeMs;
+    private boolean isClaimed;
+    private boolean isReleased;
 
-    private static final int DEFAULT_THREAD_TIMEOUT_MS = 60000; // 1min
     private static final int DEFAULT_SPOOL_THRESHOLD_BYTES = 1024 * 100; // 100K
 
     static final Function<HRegionInfo, KeyRange> TO_KEY_RANGE = new Function<HRegionInfo, KeyRange>() {
@@ -74,7 +91,67 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
     public ParallelIterators(StatementContext context, TableRef table, RowCounter rowCounter) throws SQLException {
         super(context, table);
         this.rowCounter = rowCounter;
-        this.splits = getSplits(context.getConnection().getQueryServices(), table, context.getScan(), context.getConnection().getQueryServices().getAllTableRegions(table));
+        List<KeyRange> splits = getSplits(context.getConnection().getQueryServices(), table, context.getScan(), context.getConnection().getQueryServices().getAllTableRegions(table));
+        Double samplePercent = context.getSamplePercent();
+        if (samplePercent == null || splits.isEmpty()) {
+            this.splits = splits;
+            this.rowSamplePercent = samplePercent;
+        } else {
+            // Sample the table by only scanning a subset of the splits. Since we round up
+            // the number of splits we scan, make up the difference by sampling the rows within them.
+            int nSampledSplits = getSampledSplitCount(splits.size(), samplePercent);
+            this.rowSamplePercent = getRowSamplePercent(splits.size(), nSampledSplits, samplePercent);
+            this.splits = getSampledSplits(splits, nSampledSplits);
+        }
+    }
+
+    private static final Comparator<KeyRange> SPLIT_HASH_COMPARATOR = new Comparator<KeyRange>() {
+        @Override
+        public int compare(KeyRange o1, KeyRange o2) {
+            byte[] key1 = o1.getLowerRange();
+            byte[] key2 = o2.getLowerRange();
+            return ComparisonChain.start()
+                    .compare(HashUtil.hash64(key1, 0, key1.length), HashUtil.hash64(key2, 0, key2.length))
+                    .compare(o1, o2, KeyRange.COMPARATOR)
+                    .result();
+        }
+    };
+
+    /**
+     * Chooses the splits to scan when sampling by ordering them on the hash of their start key,
+     * so that the same splits are scanned each time the same table is sampled, in the same way
+     * that {@link RowKeySampleFilter} keeps the same rows.
+     * @param splits the splits of the scan, in key order
+     * @param sampledSplitCount the number of splits to scan
+     * @return the sampled splits, in key order
+     */
+    // exposed for tests
+    static List<KeyRange> getSampledSplits(List<KeyRange> splits, int sampledSplitCount) {
+        List<KeyRange> sampledSplits = Lists.newArrayList(Ordering.from(SPLIT_HASH_COMPARATOR).leastOf(splits, sampledSplitCount));
+        Collections.sort(sampledSplits, KeyRange.COMPARATOR);
+        return sampledSplits;
+    }
+
+    /**
+     * @param splitCount the number of splits of the scan
+     * @param samplePercent the percentage of the table to sample
+     * @return the number of splits to scan when sampling, rounded up so that at least one is scanned
+     */
+    // exposed for tests
+    public static int getSampledSplitCount(int splitCount, double samplePercent) {
+        return (int)Math.ceil(splitCount * samplePercent / 100);
+    }
+
+    /**
+     * @param splitCount the number of splits of the scan
+     * @param sampledSplitCount the number of splits scanned when sampling
+     * @param samplePercent the percentage of the table to sample
+     * @return the percentage of the rows to sample within each scanned split, which makes up for
+     * the number of scanned splits having been rounded up
+     */
+    // exposed for tests
+    public static double getRowSamplePercent(int splitCount, int sampledSplitCount, double samplePercent) {
+        return Math.min(100, samplePercent * splitCount / sampledSplitCount);
     }
 
     /**
@@ -118,79 +195,206 @@ public class ParallelIterators extends ExplainTable implements ResultIterators {
         return splits;
     }
 
+    static Job newJob(PhoenixConnection connection, Configuration config) {
+        byte[] tenantId = connection.getTenantId();
+        int weight = QueryServicesOptions.DEFAULT_TENANT_WEIGHT;
+        if (tenantId != null) {
+            weight = config.getInt(QueryServices.TENANT_WEIGHT_ATTRIB_PREFIX + Bytes.toString(tenantId), weight);
+        }
+        int maxConcurrency = config.getInt(QueryServices.MAX_CONCURRENT_SPLITS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_CONCURRENT_SPLITS);
+        return new Job(tenantId == null ? null : new ImmutableBytesWritable(tenantId), weight, connection.getQueryPriority(), maxConcurrency);
+    }
+
     /**
-     * Executes the scan in parallel across all regions, blocking until all scans are complete.
-     * @return the result iterators for the scan of each region
+     * Starts the scan of each region in parallel, without waiting for them to complete.
+     * Calling this more than once has no further effect.
+     * @return a future that completes once the scans of all regions are complete
      */
     @Override
-    public List<PeekingResultIterator> getIterators() throws SQLException {
-        boolean success = false;
+    public synchronized ListenableFuture<?> submit() throws SQLException {
+        if (allFutures != null) {
+            return allFutures;
+        }
         final ConnectionQueryServices services = context.getConnection().getQueryServices();
         Configuration config = services.getConfig();
+        int numSplits = splits.size();
+        futures = new ArrayList<Pair<byte[],ListenableFuture<PeekingResultIterator>>>(numSplits);
+        // Cancel the scans that haven't completed if the statement is cancelled
+        cancellable = new SQLCloseable() {
+            @Override
+            public void close() throws SQLException {
+                release();
+            }
+        };
+        if (!context.addCancellable(cancellable)) {
+            context.checkCancelled();
+        }
+        timeoutMs = context.getQueryTimeoutMs();
+        endTimeMs = context.getQueryEndTimeMs();
+        boolean success = false;
         try {
-            int numSplits = splits.size();
-            List<PeekingResultIterator> iterators = new ArrayList<PeekingResultIterator>(numSplits);
-            List<Pair<byte[],Future<PeekingResultIterator>>> futures = new ArrayList<Pair<byte[],Future<PeekingResultIterator>>>(numSplits);
-            try {
-                ExecutorService executor = services.getExecutor();
-                final MemoryManager mm = services.getMemoryManager();
-                final int spoolThresholdBytes = config.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, DEFAULT_SPOOL_THRESHOLD_BYTES);
-                for (KeyRange split : splits) {
-                    final Scan splitScan = new Scan(this.context.getScan());
-                    // Intersect with existing start/stop key
-                    if (ScanUtil.intersectScanRange(splitScan, split.getLowerRange(), split.getUpperRange())) {
-                        Future<PeekingResultIterator> future =
-                            executor.submit(new JobCallable<PeekingResultIterator>() {
-    
-                            @Override
-                            public PeekingResultIterator call() throws Exception {
-                                // TODO: different HTableInterfaces for each thread or the same is better?
-                                ResultIterator scanner = new TableResultIterator(context, table, splitScan);
-                                return new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter);
-                            }
-    
-                            /**
-                             * Defines the grouping for round robin behavior.  All threads spawned to process
-                             * this scan will be grouped together and time sliced with other simultaneously
-                             * executing parallel scans.
-                             */
-                            @Override
-                            public Object getJobId() {
-                                return ParallelIterators.this;
-                            }
-                        });
-                        futures.add(new Pair<byte[],Future<PeekingResultIterator>>(split.getLowerRange(),future));
+            ExecutorService executor = services.getExecutor();
+            final MemoryManager mm = context.getMemoryManager();
+            final int spoolThresholdBytes = config.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, DEFAULT_SPOOL_THRESHOLD_BYTES);
+            final Job job = newJob(context.getConnection(), config);
+            for (KeyRange split : splits) {
+                final Scan splitScan = new Scan(this.context.getScan());
+                // Intersect with existing start/stop key
+                if (ScanUtil.intersectScanRange(splitScan, split.getLowerRange(), split.getUpperRange())) {
+                    // Let the coprocessors give up on the scan once we've stopped waiting for it
+                    splitScan.setAttribute(BaseScannerRegionObserver.SCAN_TIMEOUT_MS, Bytes.toBytes(timeoutMs));
+                    if (rowSamplePercent != null && rowSamplePercent < 100) {
+                        ScanUtil.andFilter(splitScan, new RowKeySampleFilter(rowSamplePercent));
                     }
+                    Future<PeekingResultIterator> future =
+                        executor.submit(new JobCallable<PeekingResultIterator>() {
+
+                        @Override
+                        public PeekingResultIterator call() throws Exception {
+                            // TODO: different HTableInterfaces for each thread or the same is better?
+                            ResultIterator scanner = new TableResultIterator(context, table, splitScan);
+                            return new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter, context.getMetrics());
+                        }
+
+                        /**
+                         * Defines the grouping for scheduling.  All threads spawned to process
+                         * this scan will be grouped together and time sliced with other simultaneously
+                         * executing parallel scans, based on the tenant and priority of the connection.
+                         */
+                        @Override
+                        public Object getJobId() {
+                            return job;
+                        }
+                    });
+                    // Futures from our own executor are listenable, otherwise a thread waits on the future
+                    ListenableFuture<PeekingResultIterator> listenableFuture = future instanceof ListenableFuture
+                        ? (ListenableFuture<PeekingResultIterator>)future
+                        : JdkFutureAdapters.listenInPoolThread(future);
+                    futures.add(new Pair<byte[],ListenableFuture<PeekingResultIterator>>(split.getLowerRange(),listenableFuture));
+                }
+            }
+            // Sort futures by row key so that we have a predicatble order we're getting rows back for scans.
+            // We're going to wait here until they're finished anyway and this makes testing much easier.
+            Collections.sort(futures, new Comparator<Pair<byte[],ListenableFuture<PeekingResultIterator>>>() {
+                @Override
+                public int compare(Pair<byte[], ListenableFuture<PeekingResultIterator>> o1, Pair<byte[], ListenableFuture<PeekingResultIterator>> o2) {
+                    return Bytes.compareTo(o1.getFirst(), o2.getFirst());
+                }
+            });
+            List<ListenableFuture<PeekingResultIterator>> splitFutures = Lists.newArrayListWithExpectedSize(futures.size());
+            for (Pair<byte[],ListenableFuture<PeekingResultIterator>> future : futures) {
+                splitFutures.add(future.getSecond());
+            }
+            allFutures = Futures.allAsList(splitFutures);
+            // Release everything as soon as one scan fails, as no one may be waiting on the results
+            Futures.addCallback(allFutures, new FutureCallback<List<PeekingResultIterator>>() {
+                @Override
+                public void onSuccess(List<PeekingResultIterator> result) {
                 }
 
-                int timeoutMs = config.getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, DEFAULT_THREAD_TIMEOUT_MS);
-                // Sort futures by row key so that we have a predicatble order we're getting rows back for scans.
-                // We're going to wait here until they're finished anyway and this makes testing much easier.
-                Collections.sort(futures, new Comparator<Pair<byte[],Future<PeekingResultIterator>>>() {
-                    @Override
-                    public int compare(Pair<byte[], Future<PeekingResultIterator>> o1, Pair<byte[], Future<PeekingResultIterator>> o2) {
-                        return Bytes.compareTo(o1.getFirst(), o2.getFirst());
-                    }
-                });
-                for (Pair<byte[],Future<PeekingResultIterator>> future : futures) {
-                    iterators.add(future.getSecond().get(timeoutMs, TimeUnit.MILLISECONDS));
+                @Override
+                public void onFailure(Throwable t) {
+                    release();
                 }
+            });
+            // Catch a cancel that happened while the scans were being submitted
+            if (context.isCancelled()) {
+                release();
+            }
+            success = true;
+            return allFutures;
+        } catch (IOException e) {
+            throw new PhoenixIOException(e);
+        } catch (RejectedExecutionException e) {
+            throw new SQLException(e);
+        } finally {
+            if (!success) {
+                release();
+            }
+        }
+    }
 
-                success = true;
-                return iterators;
-            } finally {
-                if (!success) {
-                    for (Pair<byte[],Future<PeekingResultIterator>> future : futures) {
-                        future.getSecond().cancel(true);
-                    }
-                    SQLCloseables.closeAllQuietly(iterators);
+    /**
+     * Cancels the scans that haven't completed and closes the results of the ones that
+     * have, unless the results have already been handed out through {@link #getIterators()}.
+     */
+    private void release() {
+        List<Pair<byte[],ListenableFuture<PeekingResultIterator>>> futures;
+        synchronized (this) {
+            if (isReleased || isClaimed) {
+                return;
+            }
+            isReleased = true;
+            futures = this.futures;
+        }
+        if (futures == null) { // Never submitted
+            return;
+        }
+        context.removeCancellable(cancellable);
+        for (Pair<byte[],ListenableFuture<PeekingResultIterator>> pair : futures) {
+            Future<PeekingResultIterator> future = pair.getSecond();
+            if (!future.cancel(true) && !future.isCancelled()) {
+                try {
+                    future.get().close();
+                } catch (Exception e) {
+                    // Already failed, so nothing to release
                 }
             }
-        } catch (Exception e) {
+        }
+    }
+
+    /**
+     * Executes the scan in parallel across all regions, blocking until all scans are complete.
+     * If the statement is cancelled or the scans don't complete within the query timeout,
+     * the outstanding scans are cancelled and the results gathered so far are released.
+     * @return the result iterators for the scan of each region
+     */
+    @Override
+    public List<PeekingResultIterator> getIterators() throws SQLException {
+        submit();
+        boolean success = false;
+        try {
+            List<PeekingResultIterator> iterators = new ArrayList<PeekingResultIterator>(futures.size());
+            for (Pair<byte[],ListenableFuture<PeekingResultIterator>> future : futures) {
+                long waitTimeMs = Math.max(0, endTimeMs - System.currentTimeMillis());
+                iterators.add(future.getSecond().get(waitTimeMs, TimeUnit.MILLISECONDS));
+            }
+            synchronized (this) {
+                if (isReleased) {
+                    // Cancelled or failed after our last wait
+                    context.checkCancelled();
+                    throw new SQLException("Parallel scan was abandoned");
+                }
+                isClaimed = true;
+            }
+            context.removeCancellable(cancellable);
+            success = true;
+            return iterators;
+        } catch (CancellationException e) {
+            context.checkCancelled();
             throw new SQLException(e);
+        } catch (TimeoutException e) {
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.OPERATION_TIMED_OUT)
+                .setMessage("Query did not complete within " + timeoutMs + " ms")
+                .setRootCause(e).build().buildException();
+        } catch (ExecutionException e) {
+            context.checkCancelled();
+            throw ServerUtil.parseServerException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION).setRootCause(e).build().buildException();
+        } finally {
+            if (!success) {
+                release();
+            }
         }
     }
 
+    @Override
+    public void close() throws SQLException {
+        release();
+    }
+
     @Override
     public int size() {
         return this.splits.size();
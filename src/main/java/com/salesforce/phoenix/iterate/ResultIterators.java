@@ -30,8 +30,21 @@ package com.salesforce.phoenix.iterate;
 import java.sql.SQLException;
 import java.util.List;
 
-public interface ResultIterators {
+import com.google.common.util.concurrent.ListenableFuture;
+import com.salesforce.phoenix.util.SQLCloseable;
+
+public interface ResultIterators extends SQLCloseable {
     public List<PeekingResultIterator> getIterators() throws SQLException;
+    /**
+     * Start gathering the results ahead of {@link #getIterators()}.
+     * @return a future that completes once {@link #getIterators()} no longer needs to wait
+     */
+    public ListenableFuture<?> submit() throws SQLException;
+    /**
+     * Release the results of {@link #submit()} if they weren't handed out through {@link #getIterators()}.
+     */
+    @Override
+    public void close() throws SQLException;
     public int size();
     public void explain(List<String> planSteps);
 }
@@ -37,9 +37,12 @@ import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.PageFilter;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.exception.PhoenixIOException;
 import com.salesforce.phoenix.execute.RowCounter;
+import com.salesforce.phoenix.filter.RowKeySampleFilter;
 import com.salesforce.phoenix.memory.MemoryManager;
 import com.salesforce.phoenix.query.ConnectionQueryServices;
 import com.salesforce.phoenix.query.QueryServices;
@@ -70,6 +73,7 @@ public class SerialLimitingIterators extends ExplainTable implements ResultItera
         this.rowCounter = rowCounter;
         Set<HRegionInfo> regions = context.getConnection().getQueryServices().getAllTableRegions(this.table);
         regionScans = Lists.newArrayListWithExpectedSize(regions.size());
+        Double samplePercent = context.getSamplePercent();
         for (HRegionInfo region : regions) {
             Scan regionScan;
             try {
@@ -79,6 +83,9 @@ public class SerialLimitingIterators extends ExplainTable implements ResultItera
             }
             // Intersect with existing start/stop key
             if (ScanUtil.intersectScanRange(regionScan, region.getStartKey(), region.getEndKey())) {
+                if (samplePercent != null) {
+                    ScanUtil.andFilter(regionScan, new RowKeySampleFilter(samplePercent));
+                }
                 regionScans.add(regionScan);
             }
         }
@@ -89,7 +96,7 @@ public class SerialLimitingIterators extends ExplainTable implements ResultItera
         ConnectionQueryServices services = context.getConnection().getQueryServices();
         Configuration config = services.getConfig();
         List<PeekingResultIterator> iterators = new ArrayList<PeekingResultIterator>(regionScans.size());
-        MemoryManager mm = services.getMemoryManager();
+        MemoryManager mm = context.getMemoryManager();
         int spoolThresholdBytes = config.getInt(QueryServices.SPOOL_THRESHOLD_BYTES_ATTRIB, DEFAULT_SPOOL_THRESHOLD_BYTES);
         boolean success = false;
         long rowCount = 0;
@@ -97,7 +104,7 @@ public class SerialLimitingIterators extends ExplainTable implements ResultItera
             for (Scan regionScan : regionScans) {
                 ScanUtil.andFilter(regionScan, new PageFilter(limit - rowCount));
                 ResultIterator scanner = new TableResultIterator(context, this.table, regionScan);
-                SpoolingResultIterator iterator = new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter);
+                SpoolingResultIterator iterator = new SpoolingResultIterator(scanner, mm, spoolThresholdBytes, rowCounter, context.getMetrics());
                 rowCount += iterator.getRowCount();
                 iterators.add(iterator);
                 assert(rowCount <= limit);
@@ -114,6 +121,19 @@ public class SerialLimitingIterators extends ExplainTable implements ResultItera
         }
     }
 
+    /**
+     * The regions are scanned one at a time on the thread calling {@link #getIterators()},
+     * stopping once the limit is reached, so nothing is started ahead of time.
+     */
+    @Override
+    public ListenableFuture<?> submit() {
+        return Futures.immediateFuture(null);
+    }
+
+    @Override
+    public void close() {
+    }
+
     @Override
     public int size() {
         return regionScans.size();
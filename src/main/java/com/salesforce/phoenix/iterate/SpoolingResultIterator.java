@@ -36,6 +36,7 @@ import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.io.WritableUtils;
 
+import com.salesforce.phoenix.compile.QueryMetrics;
 import com.salesforce.phoenix.exception.*;
 import com.salesforce.phoenix.execute.RowCounter;
 import com.salesforce.phoenix.memory.MemoryManager;
@@ -70,9 +71,21 @@ public class SpoolingResultIterator implements PeekingResultIterator {
      * @throws SQLException
      */
     public SpoolingResultIterator(ResultIterator scanner, MemoryManager mm, int thresholdBytes, RowCounter rowCounter) throws SQLException {
+        this(scanner, mm, thresholdBytes, rowCounter, new QueryMetrics());
+    }
+    
+    /**
+     * Create a result iterator as above, recording the spooled bytes, the time spent
+     * waiting on the memory manager, and the time spent spooling in the metrics passed in.
+     * @param metrics the metrics of the query being executed
+     * @throws SQLException
+     */
+    public SpoolingResultIterator(ResultIterator scanner, MemoryManager mm, int thresholdBytes, RowCounter rowCounter, QueryMetrics metrics) throws SQLException {
         boolean success = false;
         boolean usedOnDiskIterator = false;
+        long startTimeNs = System.nanoTime();
         final MemoryChunk chunk = mm.allocate(0, thresholdBytes);
+        metrics.addMemoryWaitTime(System.nanoTime() - startTimeNs);
         File tempFile = null;
         try {
             // Can't be bigger than int, since it's the max of the above allocation
@@ -93,9 +106,12 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 rowCount += rowCounter.calculate(result);
             }
             spoolTo.close();
+            metrics.addSpoolBytes(spoolTo.getByteCount(), spoolTo.isInMemory());
             if (spoolTo.isInMemory()) {
                 byte[] data = spoolTo.getData();
+                long resizeStartTimeNs = System.nanoTime();
                 chunk.resize(data.length);
+                metrics.addMemoryWaitTime(System.nanoTime() - resizeStartTimeNs);
                 spoolFrom = new InMemoryResultIterator(data, chunk);
             } else {
                 spoolFrom = new OnDiskResultIterator(maxSize, spoolTo.getFile());
@@ -108,6 +124,7 @@ public class SpoolingResultIterator implements PeekingResultIterator {
             try {
                 scanner.close();
             } finally {
+                metrics.addStageTime(QueryMetrics.Stage.SPOOL, System.nanoTime() - startTimeNs);
                 try {
                     if (!usedOnDiskIterator) {
                         tempFile.delete();
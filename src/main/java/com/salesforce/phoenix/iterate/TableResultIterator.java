@@ -36,6 +36,7 @@ import org.apache.hadoop.hbase.client.Scan;
 
 
 import com.google.common.io.Closeables;
+import com.salesforce.phoenix.compile.QueryMetrics;
 import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.exception.*;
 import com.salesforce.phoenix.schema.TableRef;
@@ -45,14 +46,21 @@ import com.salesforce.phoenix.schema.tuple.Tuple;
 /**
  *
  * Wrapper for ResultScanner creation that closes HTableInterface
- * when ResultScanner is closed.
+ * when ResultScanner is closed. May be closed from another thread
+ * when the statement is cancelled.
  *
  * @author jtaylor
  * @since 0.1
  */
 public class TableResultIterator extends ExplainTable implements ResultIterator {
+    private final StatementContext context;
     private final HTableInterface htable;
     private final ResultIterator delegate;
+    private final QueryMetrics metrics;
+    private final long startTimeNs;
+    private long rowCount;
+    private long byteCount;
+    private boolean isClosed;
 
     public TableResultIterator(StatementContext context, TableRef table) throws SQLException {
         this(context, table, context.getScan());
@@ -60,17 +68,33 @@ public class TableResultIterator extends ExplainTable implements ResultIterator
 
     public TableResultIterator(StatementContext context, TableRef table, Scan scan) throws SQLException {
         super(context, table);
+        this.context = context;
+        metrics = context.getMetrics();
+        startTimeNs = System.nanoTime();
+        context.checkCancelled();
         htable = context.getConnection().getQueryServices().getTable(table.getTableName());
         try {
             delegate = new ScanningResultIterator(htable.getScanner(scan));
         } catch (IOException e) {
             Closeables.closeQuietly(htable);
+            context.checkCancelled();
             throw new PhoenixIOException(e);
         }
+        // Close the scanner, releasing its region server lease, if the statement is cancelled
+        if (!context.addCancellable(this)) {
+            close();
+            context.checkCancelled();
+        }
     }
 
     @Override
-    public void close() throws SQLException {
+    public synchronized void close() throws SQLException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        metrics.addSplit(rowCount, byteCount, System.nanoTime() - startTimeNs);
+        context.removeCancellable(this);
         try {
             delegate.close();
         } finally {
@@ -83,8 +107,21 @@ public class TableResultIterator extends ExplainTable implements ResultIterator
     }
 
     @Override
-    public Tuple next() throws SQLException {
-        return delegate.next();
+    public synchronized Tuple next() throws SQLException {
+        context.checkCancelled();
+        // A cancel from another thread closes the scanner on the same monitor, so
+        // it waits for a call in progress instead of closing the scanner under it
+        if (isClosed) {
+            return null;
+        }
+        Tuple tuple = delegate.next();
+        if (tuple != null) {
+            rowCount++;
+            for (int i = 0; i < tuple.size(); i++) {
+                byteCount += tuple.getValue(i).getLength();
+            }
+        }
+        return tuple;
     }
 
     @Override
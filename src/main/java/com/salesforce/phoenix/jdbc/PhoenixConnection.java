@@ -69,6 +69,7 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
     private boolean isAutoCommit = false;
     private PMetaData metaData;
     private final byte[] tenantId;
+    private final int queryPriority;
     private final String datePattern;
     
     private boolean isClosed = false;
@@ -80,6 +81,7 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
         this.services = services;
         this.scn = JDBCUtil.getCurrentSCN(url, this.info);
         this.tenantId = JDBCUtil.getTenantId(url, this.info);
+        this.queryPriority = JDBCUtil.getQueryPriority(url, this.info);
         this.upsertBatchSize = JDBCUtil.getMutateBatchSize(url, this.info, services.getConfig());
         datePattern = services.getConfig().get(QueryServices.DATE_FORMAT_ATTRIB, DateUtil.DEFAULT_DATE_FORMAT);
         int maxSize = services.getConfig().getInt(QueryServices.MAX_MUTATION_SIZE_ATTRIB,QueryServicesOptions.DEFAULT_MAX_MUTATION_SIZE);
@@ -168,6 +170,10 @@ public class PhoenixConnection implements Connection, com.salesforce.phoenix.jdb
         return tenantId;
     }
     
+    public int getQueryPriority() {
+        return queryPriority;
+    }
+    
     public Long getSCN() {
         return scn;
     }
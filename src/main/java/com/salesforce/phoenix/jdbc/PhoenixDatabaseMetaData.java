@@ -500,7 +500,7 @@ public class PhoenixDatabaseMetaData implements DatabaseMetaData, com.salesforce
                 final byte[] rowNumberHolder = new byte[PDataType.INTEGER.getByteSize()];
                 return new PhoenixStatement(connection) {
                     @Override
-                    protected PhoenixResultSet newResultSet(Scanner scanner) throws SQLException {
+                    protected PhoenixResultSet newResultSet(Scanner scanner, StatementContext context) throws SQLException {
                         RowProjector projector = scanner.getProjection();
                         List<ColumnProjector> columns = new ArrayList<ColumnProjector>(projector.getColumnProjectors());
                         ColumnProjector column = columns.get(keySeqPosition);
@@ -568,7 +568,7 @@ public class PhoenixDatabaseMetaData implements DatabaseMetaData, com.salesforce
                             }
 
                         };
-                        return new PhoenixResultSet(delegate, this);
+                        return new PhoenixResultSet(delegate, this, context);
                     }
                     
                 };
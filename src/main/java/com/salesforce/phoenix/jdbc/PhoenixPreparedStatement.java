@@ -34,6 +34,7 @@ import java.sql.*;
 import java.sql.Date;
 import java.util.*;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.salesforce.phoenix.compile.StatementPlan;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.util.SQLCloseable;
@@ -120,6 +121,15 @@ public class PhoenixPreparedStatement extends PhoenixStatement implements Prepar
         return statement.executeQuery();
     }
     
+    /**
+     * Execute the query without waiting on its parallel scans.
+     * @see PhoenixStatement#executeQueryAsync(String)
+     */
+    public ListenableFuture<ResultSet> executeQueryAsync() throws SQLException {
+        throwIfUnboundParameters();
+        return executeQueryAsync(statement);
+    }
+    
     @Override
     public int executeUpdate() throws SQLException {
         throwIfUnboundParameters();
@@ -34,13 +34,16 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.sql.*;
 import java.text.Format;
+import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Map;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import com.salesforce.phoenix.compile.ColumnProjector;
+import com.salesforce.phoenix.compile.QueryMetrics;
 import com.salesforce.phoenix.compile.RowProjector;
+import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
 import com.salesforce.phoenix.iterate.ResultIterator;
@@ -48,6 +51,7 @@ import com.salesforce.phoenix.query.Scanner;
 import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.schema.tuple.ResultTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
+import com.salesforce.phoenix.util.ByteUtil;
 import com.salesforce.phoenix.util.SQLCloseable;
 
 
@@ -86,16 +90,44 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     private final ResultIterator scanner;
     private final RowProjector rowProjector;
     private final PhoenixStatement statement;
-    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+    private final StatementContext context;
+    private final QueryMetrics metrics;
+    private long clientTimeNs;
+    
+    // Serialized values of the columns of the current row, memoized as they're first accessed
+    private final ImmutableBytesWritable[] columnValues;
+    private final BitSet evaluatedColumns;
     
     private Tuple currentRow = BEFORE_FIRST;
     private boolean isClosed = false;
     private boolean wasNull = false;
     
     public PhoenixResultSet(Scanner scanner, PhoenixStatement statement) throws SQLException {
+        this(scanner, statement, null);
+    }
+    
+    /**
+     * Create a result set over the results of a query executed in the given context,
+     * which supplies the query metrics and through which the query may be cancelled.
+     */
+    public PhoenixResultSet(Scanner scanner, PhoenixStatement statement, StatementContext context) throws SQLException {
         this.rowProjector = scanner.getProjection();
+        this.context = context;
+        this.metrics = context == null ? new QueryMetrics() : context.getMetrics();
         this.scanner = scanner.iterator();
         this.statement = statement;
+        this.columnValues = new ImmutableBytesWritable[rowProjector.getColumnCount()];
+        for (int i = 0; i < columnValues.length; i++) {
+            columnValues[i] = new ImmutableBytesWritable();
+        }
+        this.evaluatedColumns = new BitSet(columnValues.length);
+    }
+    
+    /**
+     * Get the counters collected while executing the query that produced this result set
+     */
+    public QueryMetrics getQueryMetrics() {
+        return metrics;
     }
     
     @Override
@@ -128,6 +160,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
             return;
         }
         try {
+            publishClientTime();
             scanner.close();
         } finally {
             isClosed = true;
@@ -135,6 +168,15 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
         }
     }
 
+    /**
+     * Adds the time spent in {@link #next()} to the query metrics. Accumulated
+     * per result set rather than per row to keep shared atomics off the row path.
+     */
+    private void publishClientTime() {
+        metrics.addStageTime(QueryMetrics.Stage.CLIENT, clientTimeNs);
+        clientTimeNs = 0;
+    }
+    
     @Override
     public void deleteRow() throws SQLException {
         throw new SQLFeatureNotSupportedException();
@@ -177,6 +219,31 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
         }
     }
 
+    /**
+     * Evaluate a column of the current row, only evaluating its expression the first
+     * time the column is accessed for the row.
+     * @param columnIndex the one based index of the column
+     * @return the serialized value of the column or null if the value is null
+     */
+    private ImmutableBytesWritable evaluateColumn(int columnIndex) {
+        ImmutableBytesWritable value = columnValues[columnIndex-1];
+        if (!evaluatedColumns.get(columnIndex-1)) {
+            if (!rowProjector.getColumnProjector(columnIndex-1).evaluate(currentRow, value)) {
+                value.set(ByteUtil.EMPTY_BYTE_ARRAY);
+            }
+            evaluatedColumns.set(columnIndex-1);
+        }
+        return value.getLength() == 0 ? null : value;
+    }
+    
+    private Object getColumnValue(int columnIndex, PDataType type) throws SQLException {
+        ImmutableBytesWritable value = evaluateColumn(columnIndex);
+        if (value == null) {
+            return null;
+        }
+        return rowProjector.getColumnProjector(columnIndex-1).getValue(value, type);
+    }
+
     private void checkCursorState() throws SQLException {
         checkOpen();
         if (currentRow == BEFORE_FIRST) {
@@ -189,7 +256,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
         checkCursorState();
-        BigDecimal value = (BigDecimal)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.DECIMAL, ptr);
+        BigDecimal value = (BigDecimal)getColumnValue(columnIndex, PDataType.DECIMAL);
         wasNull = (value == null);
         return value;
     }
@@ -235,7 +302,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
         checkCursorState();
         ColumnProjector colProjector = rowProjector.getColumnProjector(columnIndex-1);
         PDataType type = colProjector.getExpression().getDataType();
-        Object value = colProjector.getValue(currentRow, type, ptr);
+        Object value = getColumnValue(columnIndex, type);
         wasNull = (value == null);
         if (value == null) {
             return false;
@@ -261,7 +328,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public byte[] getBytes(int columnIndex) throws SQLException {
         checkCursorState();
-        byte[] value = (byte[])rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.BINARY, ptr);
+        byte[] value = (byte[])getColumnValue(columnIndex, PDataType.BINARY);
         wasNull = (value == null);
         return value;
     }
@@ -314,7 +381,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public Date getDate(int columnIndex) throws SQLException {
         checkCursorState();
-        Date value = (Date)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.DATE, ptr);
+        Date value = (Date)getColumnValue(columnIndex, PDataType.DATE);
         wasNull = (value == null);
         if (value == null) {
             return null;
@@ -330,7 +397,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public Date getDate(int columnIndex, Calendar cal) throws SQLException {
         checkCursorState();
-        Date value = (Date)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.DATE, ptr);
+        Date value = (Date)getColumnValue(columnIndex, PDataType.DATE);
         cal.setTime(value);
         return new Date(cal.getTimeInMillis());
     }
@@ -343,12 +410,12 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public double getDouble(int columnIndex) throws SQLException {
         checkCursorState();
-        BigDecimal value = (BigDecimal)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.DECIMAL, ptr);
+        ImmutableBytesWritable value = evaluateColumn(columnIndex);
         wasNull = (value == null);
         if (value == null) {
             return 0;
         }
-        return value.doubleValue();
+        return rowProjector.getColumnProjector(columnIndex-1).getDouble(value);
     }
 
     @Override
@@ -369,7 +436,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public float getFloat(int columnIndex) throws SQLException {
         checkCursorState();
-        BigDecimal value = (BigDecimal)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.DECIMAL, ptr);
+        BigDecimal value = (BigDecimal)getColumnValue(columnIndex, PDataType.DECIMAL);
         wasNull = (value == null);
         if (value == null) {
             return 0;
@@ -390,12 +457,12 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public int getInt(int columnIndex) throws SQLException {
         checkCursorState();
-        Integer value = (Integer)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.INTEGER, ptr);
+        ImmutableBytesWritable value = evaluateColumn(columnIndex);
         wasNull = (value == null);
         if (value == null) {
             return 0;
         }
-        return value;
+        return (int)rowProjector.getColumnProjector(columnIndex-1).getLong(value, PDataType.INTEGER);
     }
 
     @Override
@@ -406,12 +473,12 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public long getLong(int columnIndex) throws SQLException {
         checkCursorState();
-        Long value = (Long)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.LONG, ptr);
+        ImmutableBytesWritable value = evaluateColumn(columnIndex);
         wasNull = (value == null);
         if (value == null) {
             return 0;
         }
-        return value;
+        return rowProjector.getColumnProjector(columnIndex-1).getLong(value, PDataType.LONG);
     }
 
     @Override
@@ -458,7 +525,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     public Object getObject(int columnIndex) throws SQLException {
         checkCursorState();
         ColumnProjector projector = rowProjector.getColumnProjector(columnIndex-1);
-        Object value = projector.getValue(currentRow, projector.getExpression().getDataType(), ptr);
+        Object value = getColumnValue(columnIndex, projector.getExpression().getDataType());
         wasNull = (value == null);
         return value;
     }
@@ -536,7 +603,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
         // We can't coerce using our formatter because we don't have enough context in PDataType.
         ColumnProjector projector = rowProjector.getColumnProjector(columnIndex-1);
         PDataType type = projector.getExpression().getDataType();
-        Object value = projector.getValue(currentRow,type, ptr);
+        Object value = getColumnValue(columnIndex, type);
         if (wasNull = (value == null)) {
             return null;
         }
@@ -555,7 +622,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public Time getTime(int columnIndex) throws SQLException {
         checkCursorState();
-        Time value = (Time)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.TIME, ptr);
+        Time value = (Time)getColumnValue(columnIndex, PDataType.TIME);
         wasNull = (value == null);
         return value;
     }
@@ -568,7 +635,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public Time getTime(int columnIndex, Calendar cal) throws SQLException {
         checkCursorState();
-        Time value = (Time)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.TIME, ptr);
+        Time value = (Time)getColumnValue(columnIndex, PDataType.TIME);
         wasNull = (value == null);
         if (value == null) {
             return null;
@@ -586,7 +653,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public Timestamp getTimestamp(int columnIndex) throws SQLException {
         checkCursorState();
-        Timestamp value = (Timestamp)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.TIMESTAMP, ptr);
+        Timestamp value = (Timestamp)getColumnValue(columnIndex, PDataType.TIMESTAMP);
         wasNull = (value == null);
         return value;
     }
@@ -599,7 +666,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
         checkCursorState();
-        Timestamp value = (Timestamp)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.TIMESTAMP, ptr);
+        Timestamp value = (Timestamp)getColumnValue(columnIndex, PDataType.TIMESTAMP);
         wasNull = (value == null);
         if (value == null) {
             return null;
@@ -622,7 +689,7 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public URL getURL(int columnIndex) throws SQLException {
         checkCursorState();
-        String value = (String)rowProjector.getColumnProjector(columnIndex-1).getValue(currentRow, PDataType.VARCHAR, ptr);
+        String value = (String)getColumnValue(columnIndex, PDataType.VARCHAR);
         wasNull = (value == null);
         if (value == null) {
             return null;
@@ -702,7 +769,16 @@ public class PhoenixResultSet implements ResultSet, SQLCloseable, com.salesforce
     @Override
     public boolean next() throws SQLException {
         checkOpen();
+        if (context != null) {
+            context.checkCancelled();
+        }
+        long startTimeNs = System.nanoTime();
         currentRow = scanner.next();
+        evaluatedColumns.clear();
+        clientTimeNs += System.nanoTime() - startTimeNs;
+        if (currentRow == null) {
+            publishClientTime();
+        }
         return currentRow != null;
     }
 
@@ -32,17 +32,27 @@ import java.io.Reader;
 import java.sql.*;
 import java.text.Format;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.hbase.util.Pair;
 
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.salesforce.phoenix.compile.*;
 import com.salesforce.phoenix.coprocessor.MetaDataProtocol;
 import com.salesforce.phoenix.exception.*;
 import com.salesforce.phoenix.execute.MutationState;
 import com.salesforce.phoenix.expression.RowKeyColumnExpression;
 import com.salesforce.phoenix.iterate.MaterializedResultIterator;
+import com.salesforce.phoenix.iterate.ResultIterators;
 import com.salesforce.phoenix.parse.*;
 import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.query.Scanner;
@@ -72,6 +82,9 @@ import com.salesforce.phoenix.util.*;
  */
 public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce.phoenix.jdbc.Jdbc7Shim.Statement {
     protected static final Object UNBOUND_PARAMETER = new Object();
+    // Fails the future of an asynchronous query whose scans don't complete within its timeout
+    private static final ScheduledExecutorService TIMEOUT_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("phoenix-async-query-timeout").build());
     public enum UpdateOperation {
         DELETED("deleted"),
         UPSERTED("upserted");
@@ -97,6 +110,8 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
     private boolean isClosed = false;
     private ResultSetMetaData resultSetMetaData;
     private int maxRows;
+    private int queryTimeoutMs = -1;
+    private volatile StatementContext executingContext;
     
     
     public PhoenixStatement(PhoenixConnection connection) {
@@ -107,8 +122,8 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         return resultSets;
     }
     
-    protected PhoenixResultSet newResultSet(Scanner scanner) throws SQLException {
-        return new PhoenixResultSet(scanner, PhoenixStatement.this);
+    protected PhoenixResultSet newResultSet(Scanner scanner, StatementContext context) throws SQLException {
+        return new PhoenixResultSet(scanner, PhoenixStatement.this, context);
     }
     
     protected static interface ExecutableStatement extends SQLStatement {
@@ -126,15 +141,26 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
     
     private class ExecutableSelectStatement extends SelectStatement implements ExecutableStatement {
         private ExecutableSelectStatement(List<TableNode> from, HintNode hint, List<AliasedParseNode> select, ParseNode where,
-                List<ParseNode> groupBy, ParseNode having, List<OrderByNode> orderBy, LimitNode limit, int bindCount) {
-            super(from, hint, select, where, groupBy, having, orderBy, limit, bindCount);
+                List<ParseNode> groupBy, ParseNode having, List<OrderByNode> orderBy, LimitNode limit, Double samplePercent, int bindCount) {
+            super(from, hint, select, where, groupBy, having, orderBy, limit, samplePercent, bindCount);
         }
 
         @Override
         public PhoenixResultSet executeQuery() throws SQLException {
+            return executeQuery(compileQuery());
+        }
+
+        private QueryPlan compileQuery() throws SQLException {
+            long startTimeNs = System.nanoTime();
             QueryPlan plan = compilePlan(getParameters());
+            plan.getContext().getMetrics().setCompileTime(System.nanoTime() - startTimeNs);
+            return plan;
+        }
+
+        private PhoenixResultSet executeQuery(QueryPlan plan) throws SQLException {
+            setExecutingContext(plan.getContext());
             Scanner scanner = plan.getScanner();
-            PhoenixResultSet rs = newResultSet(scanner);
+            PhoenixResultSet rs = newResultSet(scanner, plan.getContext());
             resultSets.add(rs);
             lastResultSet = rs;
             lastUpdateCount = NO_UPDATE;
@@ -142,6 +168,52 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
             return rs;
         }
 
+        /**
+         * Starts the scans of the query without waiting on them, returning a future that
+         * completes with the result set once its parallel scans are complete. A query
+         * with a LIMIT that isn't aggregated is still scanned serially, so its scan is
+         * opened on the calling thread and its rows are fetched as the result set is read.
+         */
+        public ListenableFuture<ResultSet> executeQueryAsync() throws SQLException {
+            QueryPlan plan = compileQuery();
+            final StatementContext context = plan.getContext();
+            context.setAsync(true);
+            final PhoenixResultSet rs = executeQuery(plan);
+            List<ListenableFuture<?>> futures = Lists.newArrayListWithExpectedSize(1);
+            try {
+                for (ResultIterators iterators : context.getResultIterators()) {
+                    futures.add(iterators.submit());
+                }
+            } catch (SQLException e) {
+                rs.close();
+                throw e;
+            }
+            final SettableFuture<ResultSet> future = SettableFuture.create();
+            ListenableFuture<List<Object>> scansFuture = Futures.allAsList(futures);
+            ScheduledFuture<?> timeout = null;
+            if (!scansFuture.isDone()) {
+                final int timeoutMs = context.getQueryTimeoutMs();
+                timeout = TIMEOUT_EXECUTOR.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        SQLException e = new SQLExceptionInfo.Builder(SQLExceptionCode.OPERATION_TIMED_OUT)
+                            .setMessage("Query did not complete within " + timeoutMs + " ms").build().buildException();
+                        if (future.setException(e)) {
+                            try {
+                                context.cancel();
+                            } catch (SQLException ignore) {
+                                // Already failed
+                            } finally {
+                                closeQuietly(rs);
+                            }
+                        }
+                    }
+                }, timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            Futures.addCallback(scansFuture, new ResultSetCallback(future, rs, timeout));
+            return future;
+        }
+
         @Override
         public boolean execute() throws SQLException {
             executeQuery();
@@ -170,7 +242,22 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         }
     }
     
+    /**
+     * Applies the query timeout of the statement to the context about to be executed
+     * and makes its scans the ones closed by {@link #cancel()}.
+     */
+    private void setExecutingContext(StatementContext context) {
+        if (context == null) {
+            return;
+        }
+        if (queryTimeoutMs >= 0) {
+            context.setQueryTimeoutMs(queryTimeoutMs);
+        }
+        executingContext = context;
+    }
+    
     private int executeMutation(MutationPlan plan) throws SQLException {
+        setExecutingContext(plan.getContext());
         // Note that the upsert select statements will need to commit any open transaction here,
         // since they'd update data directly from coprocessors, and should thus operate on
         // the latest state
@@ -586,8 +673,8 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         @Override
         public ExecutableSelectStatement select(List<TableNode> from, HintNode hint, List<AliasedParseNode> select,
                                                 ParseNode where, List<ParseNode> groupBy, ParseNode having,
-                                                List<OrderByNode> orderBy, LimitNode limit, int bindCount) {
-            return new ExecutableSelectStatement(from, hint, select, where, groupBy == null ? Collections.<ParseNode>emptyList() : groupBy, having, orderBy == null ? Collections.<OrderByNode>emptyList() : orderBy, limit, bindCount);
+                                                List<OrderByNode> orderBy, LimitNode limit, Double samplePercent, int bindCount) {
+            return new ExecutableSelectStatement(from, hint, select, where, groupBy == null ? Collections.<ParseNode>emptyList() : groupBy, having, orderBy == null ? Collections.<OrderByNode>emptyList() : orderBy, limit, samplePercent, bindCount);
         }
         
         @Override
@@ -662,7 +749,11 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
     @Override
     public void cancel() throws SQLException {
-        throw new SQLFeatureNotSupportedException();
+        // Closes the scans of the last query and interrupts the threads running them
+        StatementContext context = executingContext;
+        if (context != null) {
+            context.cancel();
+        }
     }
 
     @Override
@@ -724,6 +815,74 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
         return parseStatement(sql).execute();
     }
 
+    /**
+     * Execute a query without waiting on its parallel scans. The scans run in parallel on the
+     * query services executor, and the returned future completes, on one of its threads, once
+     * the rows of the result set may be read without waiting on the region servers. Unlike
+     * {@link #executeQuery(String)}, a query that isn't aggregated is scanned in parallel too,
+     * with its rows spooled on the client, unless it has a LIMIT. A query with a LIMIT that
+     * isn't aggregated scans serially, so its scan is opened on the calling thread, the
+     * returned future is already complete, and reading its result set fetches the rows from
+     * the region servers as usual. The future fails with
+     * {@link SQLExceptionCode#OPERATION_TIMED_OUT} if the scans don't complete within the
+     * query timeout. Statements other than a SELECT are executed immediately.
+     * @param sql the query to execute
+     * @return a future for the result set of the query
+     * @throws SQLException if the query could not be compiled or started
+     */
+    public ListenableFuture<ResultSet> executeQueryAsync(String sql) throws SQLException {
+        return executeQueryAsync(parseStatement(sql));
+    }
+
+    private static void closeQuietly(ResultSet rs) {
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            // Already failed
+        }
+    }
+
+    /**
+     * Completes the future of an asynchronous query with its result set once its scans
+     * are complete, closing the result set if they failed, as no one will see it.
+     */
+    private static class ResultSetCallback implements FutureCallback<List<Object>> {
+        private final SettableFuture<ResultSet> future;
+        private final ResultSet rs;
+        private final ScheduledFuture<?> timeout;
+
+        private ResultSetCallback(SettableFuture<ResultSet> future, ResultSet rs, ScheduledFuture<?> timeout) {
+            this.future = future;
+            this.rs = rs;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void onSuccess(List<Object> result) {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            future.set(rs);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (future.setException(ServerUtil.parseServerException(t))) {
+                closeQuietly(rs);
+            }
+        }
+    }
+
+    protected ListenableFuture<ResultSet> executeQueryAsync(ExecutableStatement statement) throws SQLException {
+        if (statement instanceof ExecutableSelectStatement) {
+            return ((ExecutableSelectStatement)statement).executeQueryAsync();
+        }
+        return Futures.<ResultSet>immediateFuture(statement.executeQuery());
+    }
+
     @Override
     public ResultSet executeQuery(String sql) throws SQLException {
         throwIfUnboundParameters();
@@ -813,7 +972,10 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
     @Override
     public int getQueryTimeout() throws SQLException {
-        return connection.getQueryServices().getConfig().getInt(QueryServices.KEEP_ALIVE_MS_ATTRIB, 0) / 1000;
+        if (queryTimeoutMs >= 0) {
+            return queryTimeoutMs == Integer.MAX_VALUE ? 0 : queryTimeoutMs / 1000;
+        }
+        return connection.getQueryServices().getConfig().getInt(QueryServices.THREAD_TIMEOUT_MS_ATTRIB, QueryServicesOptions.DEFAULT_THREAD_TIMEOUT_MS) / 1000;
     }
 
     // For testing
@@ -915,8 +1077,12 @@ public class PhoenixStatement implements Statement, SQLCloseable, com.salesforce
 
     @Override
     public void setQueryTimeout(int seconds) throws SQLException {
-        // The Phoenix setting for this is shared across all connections currently
-        throw new SQLFeatureNotSupportedException();
+        if (seconds < 0) {
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.ILLEGAL_DATA)
+                .setMessage("Query timeout may not be negative: " + seconds).build().buildException();
+        }
+        // Overrides phoenix.query.timeoutMs for this statement, with zero meaning no limit
+        queryTimeoutMs = seconds == 0 || seconds > Integer.MAX_VALUE / 1000 ? Integer.MAX_VALUE : seconds * 1000;
     }
 
     @Override
@@ -27,32 +27,414 @@
  ******************************************************************************/
 package com.salesforce.phoenix.job;
 
+import java.util.*;
 import java.util.concurrent.*;
 
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * 
- * Thread pool executor that executes scans in parallel
+ * Thread pool executor that executes scans in parallel. Tasks are grouped by job (for example
+ * all the splits of one query) and jobs are grouped by tenant. Tasks of a higher priority job
+ * always run first. Among jobs of the same priority, tenants get turns in proportion to their
+ * weight and the jobs of a tenant are round robined, with new jobs going first to reduce latency.
+ * A job may limit the number of its tasks that run at the same time.
  *
  * @author jtaylor
  * @since 0.1
  */
 @SuppressWarnings("rawtypes")
-public class JobManager<T> extends AbstractRoundRobinQueue<T> {
+public class JobManager<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final int DEFAULT_WEIGHT = 1;
+    
+    private final Object lock = new Object();
+    // Ordered from highest to lowest priority
+    private final TreeMap<Integer,PriorityLevel> priorityLevels = new TreeMap<Integer,PriorityLevel>(Collections.reverseOrder());
+    // Both queued jobs and jobs with running tasks
+    private final Map<Object,JobQueue> jobQueues = new HashMap<Object,JobQueue>();
+    private final int maxSize;
+    private int size;
+    
     public JobManager(int maxSize) {
-        super(maxSize, true); // true -> new producers move to front of queue; this reduces latency.
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 
+     * Scheduling attributes of a job. Use an instance as the job id returned
+     * by {@link JobCallable#getJobId()} to have all tasks of the job scheduled
+     * accordingly. Any other job id is scheduled with the default priority and
+     * weight without a tenant and without a limit on its concurrency.
+     *
+     * @author jtaylor
+     * @since 1.2
+     */
+    public static final class Job {
+        private final Object tenantId;
+        private final int weight;
+        private final int priority;
+        private final int maxConcurrency;
+        
+        /**
+         * @param tenantId the tenant on whose behalf the job is run, compared using equals, or null if none
+         * @param weight the share of the executor the tenant gets relative to other tenants
+         * @param priority the priority of the job. Tasks of higher priority jobs run first.
+         * @param maxConcurrency the maximum number of tasks of the job run at the same time or
+         *  zero for no limit
+         */
+        public Job(Object tenantId, int weight, int priority, int maxConcurrency) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight (" + weight + ") must be greater than zero");
+            }
+            this.tenantId = tenantId;
+            this.weight = weight;
+            this.priority = priority;
+            this.maxConcurrency = maxConcurrency;
+        }
+        
+        public Object getTenantId() {
+            return tenantId;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+    }
+    
+    /**
+     * Tasks of a job that are queued, along with the count of its tasks that are running
+     */
+    private class JobQueue {
+        private final Object jobId;
+        private final Object tenantId;
+        private final int weight;
+        private final int priority;
+        private final int maxConcurrency;
+        private final LinkedList<T> tasks = new LinkedList<T>();
+        private int runningCount;
+        
+        private JobQueue(Object jobId) {
+            this.jobId = jobId;
+            if (jobId instanceof Job) {
+                Job job = (Job)jobId;
+                this.tenantId = job.getTenantId();
+                this.weight = job.getWeight();
+                this.priority = job.getPriority();
+                this.maxConcurrency = job.getMaxConcurrency();
+            } else {
+                this.tenantId = null;
+                this.weight = DEFAULT_WEIGHT;
+                this.priority = DEFAULT_PRIORITY;
+                this.maxConcurrency = 0;
+            }
+        }
+        
+        private boolean isRunnable() {
+            return !tasks.isEmpty() && (maxConcurrency <= 0 || runningCount < maxConcurrency);
+        }
+    }
+    
+    /**
+     * Queued jobs of a tenant. The tenant with the lowest pass is served next and each task
+     * taken advances its pass inversely to its weight (i.e. stride scheduling).
+     */
+    private class TenantQueue {
+        private final Object tenantId;
+        private final int weight;
+        private final LinkedList<JobQueue> jobQueues = new LinkedList<JobQueue>();
+        private double pass;
+        
+        private TenantQueue(Object tenantId, int weight, double pass) {
+            this.tenantId = tenantId;
+            this.weight = weight;
+            this.pass = pass;
+        }
+    }
+    
+    /**
+     * Queued jobs of the same priority by tenant
+     */
+    private class PriorityLevel {
+        private final Map<Object,TenantQueue> tenantQueues = new LinkedHashMap<Object,TenantQueue>();
+        // Pass of the last tenant served, at which tenants joining the queue start
+        private double pass;
+    }
+    
+    protected Object extractJobId(T o) {
+        // Tasks not created through submit are each a job of their own
+        return o instanceof JobFutureTask ? ((JobFutureTask)o).getJobId() : o;
+    }
+    
+    @Override
+    public boolean offer(T o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        Object jobId = extractJobId(o);
+        synchronized(lock) {
+            if (size == maxSize) {
+                return false;
+            }
+            JobQueue jobQueue = jobQueues.get(jobId);
+            if (jobQueue == null) {
+                jobQueue = new JobQueue(jobId);
+                jobQueues.put(jobId, jobQueue);
+            }
+            if (jobQueue.tasks.isEmpty()) {
+                PriorityLevel priorityLevel = priorityLevels.get(jobQueue.priority);
+                if (priorityLevel == null) {
+                    priorityLevel = new PriorityLevel();
+                    priorityLevels.put(jobQueue.priority, priorityLevel);
+                }
+                TenantQueue tenantQueue = priorityLevel.tenantQueues.get(jobQueue.tenantId);
+                if (tenantQueue == null) {
+                    tenantQueue = new TenantQueue(jobQueue.tenantId, jobQueue.weight, priorityLevel.pass);
+                    priorityLevel.tenantQueues.put(jobQueue.tenantId, tenantQueue);
+                }
+                // New jobs go to the front to reduce latency
+                tenantQueue.jobQueues.addFirst(jobQueue);
+            }
+            jobQueue.tasks.add(o);
+            size++;
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(T o, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean taken = false;
+        long endAt = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized(lock) {
+            long waitTime = endAt - System.currentTimeMillis();
+            while (!(taken = offer(o)) && waitTime > 0) {
+                lock.wait(waitTime);
+                waitTime = endAt - System.currentTimeMillis();
+            }
+        }
+        return taken;
+    }
+
+    @Override
+    public void put(T o) {
+        offer(o);
+    }
+
+    /**
+     * Find the next task to run: from the highest priority with a runnable job, the tenant
+     * with the lowest pass, and the first of its jobs that may run another task.
+     */
+    private JobQueue next() {
+        for (PriorityLevel priorityLevel : priorityLevels.values()) {
+            TenantQueue nextTenantQueue = null;
+            JobQueue nextJobQueue = null;
+            for (TenantQueue tenantQueue : priorityLevel.tenantQueues.values()) {
+                if (nextTenantQueue != null && tenantQueue.pass >= nextTenantQueue.pass) {
+                    continue;
+                }
+                for (JobQueue jobQueue : tenantQueue.jobQueues) {
+                    if (jobQueue.isRunnable()) {
+                        nextTenantQueue = tenantQueue;
+                        nextJobQueue = jobQueue;
+                        break;
+                    }
+                }
+            }
+            if (nextJobQueue != null) {
+                return nextJobQueue;
+            }
+        }
+        return null;
+    }
+    
+    private T take(JobQueue jobQueue) {
+        PriorityLevel priorityLevel = priorityLevels.get(jobQueue.priority);
+        TenantQueue tenantQueue = priorityLevel.tenantQueues.get(jobQueue.tenantId);
+        T element = jobQueue.tasks.removeFirst();
+        size--;
+        jobQueue.runningCount++;
+        priorityLevel.pass = tenantQueue.pass;
+        tenantQueue.pass += 1.0 / tenantQueue.weight;
+        // Round robin through the jobs of the tenant
+        tenantQueue.jobQueues.remove(jobQueue);
+        if (!jobQueue.tasks.isEmpty()) {
+            tenantQueue.jobQueues.addLast(jobQueue);
+        } else {
+            removeTenantQueueIfEmpty(priorityLevel, tenantQueue);
+        }
+        lock.notifyAll();
+        return element;
+    }
+    
+    private void removeTenantQueueIfEmpty(PriorityLevel priorityLevel, TenantQueue tenantQueue) {
+        if (tenantQueue.jobQueues.isEmpty()) {
+            priorityLevel.tenantQueues.remove(tenantQueue.tenantId);
+            if (priorityLevel.tenantQueues.isEmpty()) {
+                priorityLevels.values().remove(priorityLevel);
+            }
+        }
+    }
+    
+    /**
+     * Must be called when a task taken from the queue has completed, so that
+     * another task of its job may run if the job limits its concurrency.
+     */
+    public void finished(T o) {
+        Object jobId = extractJobId(o);
+        synchronized(lock) {
+            JobQueue jobQueue = jobQueues.get(jobId);
+            if (jobQueue == null) {
+                return;
+            }
+            jobQueue.runningCount--;
+            if (jobQueue.runningCount <= 0 && jobQueue.tasks.isEmpty()) {
+                jobQueues.remove(jobId);
+            }
+            lock.notifyAll();
+        }
+    }
+    
+    @Override
+    public T poll() {
+        synchronized(lock) {
+            JobQueue jobQueue = next();
+            return jobQueue == null ? null : take(jobQueue);
+        }
     }
 
-	@Override
-    protected Object extractProducer(T o) {
-        return ((JobFutureTask)o).getJobId();
-    }        
+    @Override
+    public T take() throws InterruptedException {
+        synchronized(lock) {
+            JobQueue jobQueue;
+            while ((jobQueue = next()) == null) {
+                lock.wait();
+            }
+            return take(jobQueue);
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long endAt = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized(lock) {
+            JobQueue jobQueue;
+            long waitTime = endAt - System.currentTimeMillis();
+            while ((jobQueue = next()) == null && waitTime > 0) {
+                lock.wait(waitTime);
+                waitTime = endAt - System.currentTimeMillis();
+            }
+            return jobQueue == null ? null : take(jobQueue);
+        }
+    }
+
+    @Override
+    public T peek() {
+        synchronized(lock) {
+            JobQueue jobQueue = next();
+            return jobQueue == null ? null : jobQueue.tasks.getFirst();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        synchronized(lock) {
+            for (PriorityLevel priorityLevel : priorityLevels.values()) {
+                for (TenantQueue tenantQueue : priorityLevel.tenantQueues.values()) {
+                    for (JobQueue jobQueue : tenantQueue.jobQueues) {
+                        if (jobQueue.tasks.remove(o)) {
+                            size--;
+                            if (jobQueue.tasks.isEmpty()) {
+                                tenantQueue.jobQueues.remove(jobQueue);
+                                if (jobQueue.runningCount <= 0) {
+                                    jobQueues.remove(jobQueue.jobId);
+                                }
+                                removeTenantQueueIfEmpty(priorityLevel, tenantQueue);
+                            }
+                            lock.notifyAll();
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        synchronized(lock) {
+            List<T> allElements = new ArrayList<T>(size);
+            for (PriorityLevel priorityLevel : priorityLevels.values()) {
+                for (TenantQueue tenantQueue : priorityLevel.tenantQueues.values()) {
+                    for (JobQueue jobQueue : tenantQueue.jobQueues) {
+                        allElements.addAll(jobQueue.tasks);
+                    }
+                }
+            }
+            return Collections.unmodifiableList(allElements).iterator();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Drains queued tasks regardless of the concurrency limit of their job,
+     * since they will not be run by the executor.
+     */
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+
+        synchronized(lock) {
+            int i = 0;
+            for (T element : this) {
+                if (i == maxElements) {
+                    break;
+                }
+                remove(element);
+                c.add(element);
+                i++;
+            }
+            return i;
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        synchronized(lock) {
+            return maxSize - size;
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized(lock) {
+            return size;
+        }
+    }
 
     public static interface JobRunnable<T> extends Runnable {
         public Object getJobId();
     }
 
     public static ThreadPoolExecutor createThreadPoolExec(int keepAliveMs, int size, int queueSize) {
-        BlockingQueue<Runnable> queue;
+        final BlockingQueue<Runnable> queue;
         if (queueSize == 0) {
             queue = new SynchronousQueue<Runnable>(); // Specialized for 0 length.
         } else {
@@ -72,6 +454,37 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
                 return new JobFutureTask<T>((JobRunnable)runnable, value);
             }
             
+            /**
+             * Always go through the queue, as otherwise a task handed directly to a new
+             * thread would bypass the scheduling and the concurrency limit of its job.
+             */
+            @Override
+            public void execute(Runnable command) {
+                if (!(queue instanceof JobManager)) {
+                    super.execute(command);
+                    return;
+                }
+                if (command == null) {
+                    throw new NullPointerException();
+                }
+                if (isShutdown() || !queue.offer(command)) {
+                    getRejectedExecutionHandler().rejectedExecution(command, this);
+                    return;
+                }
+                if (isShutdown() && queue.remove(command)) {
+                    getRejectedExecutionHandler().rejectedExecution(command, this);
+                    return;
+                }
+                prestartCoreThread();
+            }
+            
+            @SuppressWarnings("unchecked")
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                if (queue instanceof JobManager) {
+                    ((JobManager<Runnable>)queue).finished(r);
+                }
+            }
         };
         
         exec.allowCoreThreadTimeOut(true); // ... and allow core threads to time out.  This just keeps things clean when idle, and is nice for ftests modes, etc., where we'd especially like these not to linger.
@@ -79,10 +492,12 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
     }
 
     /**
-     * Subclasses FutureTask for the sole purpose of providing {@link #getCallable()}, which is used to extract the producer in the {@link JobBasedRoundRobinQueue}
+     * Subclasses FutureTask for the purpose of providing {@link #getJobId()}, which is used to schedule the task by the {@link JobManager},
+     * and of notifying listeners when the task completes, so that callers needn't block on its result
      */
-    static class JobFutureTask<T> extends FutureTask<T> {
+    static class JobFutureTask<T> extends FutureTask<T> implements ListenableFuture<T> {
         private final Object jobId;
+        private final ExecutionList executionList = new ExecutionList();
         
         public JobFutureTask(JobRunnable r, T t) {
             super(r, t);
@@ -102,6 +517,19 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
         public Object getJobId() {
             return jobId;
         }
+
+        @Override
+        public void addListener(Runnable listener, Executor executor) {
+            executionList.add(listener, executor);
+        }
+
+        /**
+         * Run the listeners once the task completes, is cancelled, or fails
+         */
+        @Override
+        protected void done() {
+            executionList.execute();
+        }
     }
 
 
@@ -112,4 +540,3 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
         public Object getJobId();
     }
 }
-
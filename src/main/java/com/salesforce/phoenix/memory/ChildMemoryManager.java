@@ -27,7 +27,8 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
-import org.apache.http.annotation.GuardedBy;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.http.annotation.ThreadSafe;
 
 /**
@@ -36,87 +37,120 @@ import org.apache.http.annotation.ThreadSafe;
  * but enforces that at most a threshold percentage is used by this
  * memory manager.  No blocking is done if the threshold is exceeded,
  * but the standard blocking will be done by the global memory manager.
+ * Child memory managers may be layered, for example to give each query
+ * a budget within the budget of its tenant.
  *
  * @author jtaylor
  * @since 0.1
  */
 @ThreadSafe
 public class ChildMemoryManager extends DelegatingMemoryManager {
-    private final Object sync = new Object();
     private final int maxPercOfTotal;
-    @GuardedBy("sync")
-    private long allocatedBytes;
+    private final AtomicLong allocatedBytes = new AtomicLong();
     
     public ChildMemoryManager(MemoryManager mm, int maxPercOfTotal) {
         super(mm);
-        if (mm instanceof ChildMemoryManager) {
-            throw new IllegalStateException("ChildMemoryManager cannot delegate to another ChildMemoryManager");
-        }
         this.maxPercOfTotal = maxPercOfTotal;
         if (maxPercOfTotal <= 0 || maxPercOfTotal > 100) {
             throw new IllegalArgumentException("Max percentage of total memory (" + maxPercOfTotal + "%) must be greater than zero and less than or equal to 100");
         }
     }
 
-
-    private long adjustAllocation(long minBytes, long reqBytes) {
+    /**
+     * Reserve at most reqBytes, but at least minBytes, of this memory manager's share
+     * without blocking.
+     * @return the number of bytes reserved
+     * @throws InsufficientMemoryException if minBytes would exceed this memory manager's share
+     */
+    private long reserveBytes(long minBytes, long reqBytes) {
         assert(reqBytes >= minBytes);
-        long availBytes = getAvailableMemory();
-        // Check if this memory managers percentage of allocated bytes exceeds its allowed maximum
-        if (minBytes > availBytes) {
-            throw new InsufficientMemoryException("Attempt to allocate more memory than the max allowed of " + maxPercOfTotal + "%");
+        long maxBytes = getMaxMemory();
+        while (true) {
+            long allocated = allocatedBytes.get();
+            long availBytes = maxBytes - allocated;
+            // Check if this memory managers percentage of allocated bytes exceeds its allowed maximum
+            if (minBytes > availBytes) {
+                throw new InsufficientMemoryException("Attempt to allocate more memory than the max allowed of " + maxPercOfTotal + "%");
+            }
+            // Revise reqBytes down to available memory if necessary
+            long nBytes = Math.min(reqBytes, availBytes);
+            if (allocatedBytes.compareAndSet(allocated, allocated + nBytes)) {
+                return nBytes;
+            }
         }
-        // Revise reqBytes down to available memory if necessary
-        return Math.min(reqBytes,availBytes);
     }
     
     @Override
-    public MemoryChunk allocate(long minBytes, long nBytes) {
-        synchronized (sync) {
-            nBytes = adjustAllocation(minBytes, nBytes);
-            final MemoryChunk chunk = super.allocate(minBytes, nBytes);
-            allocatedBytes += chunk.getSize();
-            // Instantiate delegate chunk to track allocatedBytes correctly
-            return new MemoryChunk() {
-                @Override
-                public void close() {
-                    synchronized (sync) {
-                        allocatedBytes -= chunk.getSize();
-                        chunk.close();
+    public MemoryChunk allocate(long minBytes, long reqBytes) {
+        long nBytes = reserveBytes(minBytes, reqBytes);
+        final MemoryChunk chunk;
+        try {
+            chunk = super.allocate(minBytes, nBytes);
+        } catch (RuntimeException e) {
+            allocatedBytes.addAndGet(-nBytes);
+            throw e;
+        }
+        // Give back what was reserved but not allocated
+        allocatedBytes.addAndGet(chunk.getSize() - nBytes);
+        // Instantiate delegate chunk to track allocatedBytes correctly
+        return new MemoryChunk() {
+            @Override
+            public void close() {
+                allocatedBytes.addAndGet(-chunk.getSize());
+                chunk.close();
+            }
+
+            @Override
+            public long getSize() {
+                return chunk.getSize();
+            }
+
+            @Override
+            public void resize(long nBytes) {
+                long deltaBytes = nBytes - getSize();
+                if (deltaBytes > 0) {
+                    reserveBytes(deltaBytes,deltaBytes); // Throw if too much memory
+                    try {
+                        chunk.resize(nBytes);
+                    } catch (RuntimeException e) {
+                        allocatedBytes.addAndGet(-deltaBytes);
+                        throw e;
                     }
+                } else {
+                    chunk.resize(nBytes);
+                    allocatedBytes.addAndGet(deltaBytes);
                 }
-    
-                @Override
-                public long getSize() {
-                    return chunk.getSize();
+            }
+
+            @Override
+            public boolean tryResize(long nBytes) {
+                long deltaBytes = nBytes - getSize();
+                if (deltaBytes <= 0) {
+                    resize(nBytes);
+                    return true;
                 }
-    
-                @Override
-                public void resize(long nBytes) {
-                    synchronized (sync) {
-                        long size = getSize();
-                        long deltaBytes = nBytes - size;
-                        if (deltaBytes > 0) {
-                            adjustAllocation(deltaBytes,deltaBytes); // Throw if too much memory
-                        }
-                        chunk.resize(nBytes);
-                        allocatedBytes += deltaBytes;
-                    }
+                try {
+                    reserveBytes(deltaBytes,deltaBytes);
+                } catch (InsufficientMemoryException e) {
+                    return false;
                 }
-            };
-        }
+                if (!chunk.tryResize(nBytes)) {
+                    allocatedBytes.addAndGet(-deltaBytes);
+                    return false;
+                }
+                return true;
+            }
+        };
     }
 
     @Override
     public long getAvailableMemory() {
-        synchronized (sync) {
-            long availBytes = getMaxMemory() - allocatedBytes;
-            // Sanity check (should never happen)
-            if (availBytes < 0) {
-                throw new IllegalStateException("Available memory has become negative: " + availBytes + " bytes.  Allocated memory: " + allocatedBytes + " bytes.");
-            }
-            return availBytes;
+        long availBytes = getMaxMemory() - allocatedBytes.get();
+        // Sanity check (should never happen)
+        if (availBytes < 0) {
+            throw new IllegalStateException("Available memory has become negative: " + availBytes + " bytes.  Allocated memory: " + allocatedBytes.get() + " bytes.");
         }
+        return availBytes;
     }
     
     @Override
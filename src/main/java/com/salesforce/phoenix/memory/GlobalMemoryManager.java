@@ -27,7 +27,14 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.*;
+
 import org.apache.http.annotation.GuardedBy;
+import org.apache.http.annotation.ThreadSafe;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,18 +42,26 @@ import org.slf4j.LoggerFactory;
 /**
  * 
  * Global memory manager to track course grained memory usage across all requests.
+ * Memory is accounted for without locking as long as nobody is waiting for it.
+ * Otherwise, requests wait in a queue and are granted memory in arrival order,
+ * so that a big request may not be starved by a stream of smaller ones. Requests
+ * to grow an already allocated chunk go ahead of new requests, since their owner
+ * can't free up what it holds until it is able to proceed.
  *
  * @author jtaylor
  * @since 0.1
  */
+@ThreadSafe
 public class GlobalMemoryManager implements MemoryManager {
     private static final Logger logger = LoggerFactory.getLogger(GlobalMemoryManager.class);
     
-    private final Object sync = new Object();
     private final long maxMemoryBytes;
     private final int maxWaitMs;
-    @GuardedBy("sync")
-    private volatile long usedMemoryBytes;
+    private final AtomicLong usedMemoryBytes = new AtomicLong();
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    private final Lock lock = new ReentrantLock();
+    @GuardedBy("lock")
+    private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
     
     public GlobalMemoryManager(long maxBytes, int maxWaitMs) {
         if (maxBytes <= 0) {
@@ -57,14 +72,11 @@ public class GlobalMemoryManager implements MemoryManager {
         }
         this.maxMemoryBytes = maxBytes;
         this.maxWaitMs = maxWaitMs;
-        this.usedMemoryBytes = 0;
     }
     
     @Override
     public long getAvailableMemory() {
-        synchronized(sync) {
-            return maxMemoryBytes - usedMemoryBytes;
-        }
+        return maxMemoryBytes - usedMemoryBytes.get();
     }
 
     @Override
@@ -72,42 +84,153 @@ public class GlobalMemoryManager implements MemoryManager {
         return maxMemoryBytes;
     }
 
+    /**
+     * Get the minimum number of bytes requested by the allocations currently
+     * waiting for memory to be freed up.
+     */
+    public long getWaitingBytes() {
+        if (waiterCount.get() == 0) {
+            return 0;
+        }
+        long waitingBytes = 0;
+        lock.lock();
+        try {
+            for (Waiter waiter : waiters) {
+                waitingBytes += waiter.minBytes;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return waitingBytes;
+    }
 
-    // TODO: Work on fairness: One big memory request can cause all others to block here.
-    private long allocateBytes(long minBytes, long reqBytes) {
+    /**
+     * Request for memory waiting for enough of it to be freed up
+     */
+    private class Waiter {
+        private final long minBytes;
+        private final long reqBytes;
+        private final Condition granted = lock.newCondition();
+        @GuardedBy("lock")
+        private long nBytes = -1;
+        
+        private Waiter(long minBytes, long reqBytes) {
+            this.minBytes = minBytes;
+            this.reqBytes = reqBytes;
+        }
+    }
+    
+    /**
+     * Take at most reqBytes, but at least minBytes, if available
+     * @return the number of bytes taken or -1 if minBytes are not available
+     */
+    private long tryAllocateBytes(long minBytes, long reqBytes) {
+        while (true) {
+            long usedBytes = usedMemoryBytes.get();
+            long availBytes = maxMemoryBytes - usedBytes;
+            if (availBytes < minBytes) {
+                return -1;
+            }
+            long nBytes = Math.min(reqBytes, availBytes);
+            if (usedMemoryBytes.compareAndSet(usedBytes, usedBytes + nBytes)) {
+                return nBytes;
+            }
+        }
+    }
+    
+    /**
+     * Grant memory to the waiters in queue order, stopping at the first one
+     * for which not enough is available.
+     */
+    @GuardedBy("lock")
+    private void grantWaiters() {
+        Waiter waiter;
+        while ((waiter = waiters.peek()) != null) {
+            long nBytes = tryAllocateBytes(waiter.minBytes, waiter.reqBytes);
+            if (nBytes < 0) {
+                break;
+            }
+            waiters.remove();
+            waiterCount.decrementAndGet();
+            waiter.nBytes = nBytes;
+            waiter.granted.signal();
+        }
+    }
+    
+    @GuardedBy("lock")
+    private void removeWaiter(Waiter waiter) {
+        if (waiter.nBytes >= 0) { // Granted in the meantime, so give it back
+            usedMemoryBytes.addAndGet(-waiter.nBytes);
+        } else {
+            waiters.remove(waiter);
+            waiterCount.decrementAndGet();
+        }
+        // Others may have been waiting behind this one
+        grantWaiters();
+    }
+    
+    private long allocateBytes(long minBytes, long reqBytes, boolean isResize) {
         if (minBytes < 0 || reqBytes < 0) {
             throw new IllegalStateException("Minimum requested bytes (" + minBytes + ") and requested bytes (" + reqBytes + ") must be greater than zero");
         }
         if (minBytes > maxMemoryBytes) { // No need to wait, since we'll never have this much available
             throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes is larger than global pool of " + maxMemoryBytes + " bytes.");
         }
-        long startTimeMs = System.currentTimeMillis(); // Get time outside of sync block to account for waiting for lock
-        long nBytes;
-        synchronized(sync) {
-            while (usedMemoryBytes + minBytes > maxMemoryBytes) { // Only wait if minBytes not available
+        // Fast path when nobody is waiting for memory
+        if (waiterCount.get() == 0) {
+            long nBytes = tryAllocateBytes(minBytes, reqBytes);
+            if (nBytes >= 0) {
+                return nBytes;
+            }
+        }
+        long startTimeMs = System.currentTimeMillis(); // Get time before locking to account for waiting for lock
+        Waiter waiter = new Waiter(minBytes, reqBytes);
+        lock.lock();
+        try {
+            // Count before checking for available memory, so that a concurrent free knows to grant it
+            waiterCount.incrementAndGet();
+            if (isResize) {
+                waiters.addFirst(waiter);
+            } else {
+                waiters.addLast(waiter);
+            }
+            grantWaiters();
+            while (waiter.nBytes < 0) { // Only wait if minBytes not available
+                long remainingWaitTimeMs = maxWaitMs - (System.currentTimeMillis() - startTimeMs);
+                if (remainingWaitTimeMs <= 0) { // Ran out of time waiting for some memory to get freed up
+                    removeWaiter(waiter);
+                    throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes could not be allocated from remaining memory of " + getAvailableMemory() + " bytes from global pool of " + maxMemoryBytes + " bytes after waiting for " + maxWaitMs + "ms.");
+                }
                 try {
-                    long remainingWaitTimeMs = maxWaitMs - (System.currentTimeMillis() - startTimeMs);
-                    if (remainingWaitTimeMs <= 0) { // Ran out of time waiting for some memory to get freed up
-                        throw new InsufficientMemoryException("Requested memory of " + minBytes + " bytes could not be allocated from remaining memory of " + usedMemoryBytes + " bytes from global pool of " + maxMemoryBytes + " bytes after waiting for " + maxWaitMs + "ms.");
-                    }
-                    sync.wait(remainingWaitTimeMs);
+                    waiter.granted.await(remainingWaitTimeMs, TimeUnit.MILLISECONDS);
                 } catch (InterruptedException ie) {
+                    removeWaiter(waiter);
+                    Thread.currentThread().interrupt();
                     throw new RuntimeException("Interrupted allocation of " + minBytes + " bytes", ie);
                 }
             }
-            // Allocate at most reqBytes, but at least minBytes
-            nBytes = Math.min(reqBytes, maxMemoryBytes - usedMemoryBytes);
-            if (nBytes < minBytes) {
-                throw new IllegalStateException("Allocated bytes (" + nBytes + ") should be at least the minimum requested bytes (" + minBytes + ")");
-            }
-            usedMemoryBytes += nBytes;
+            return waiter.nBytes;
+        } finally {
+            lock.unlock();
         }
-        return nBytes;
     }
 
+    private void freeBytes(long nBytes) {
+        usedMemoryBytes.addAndGet(-nBytes);
+        // Read after freeing, so that a concurrent waiter either sees the freed memory or is granted it here
+        if (waiterCount.get() > 0) {
+            lock.lock();
+            try {
+                grantWaiters();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
     @Override
     public MemoryChunk allocate(long minBytes, long reqBytes) {
-        long nBytes = allocateBytes(minBytes, reqBytes);
+        long nBytes = allocateBytes(minBytes, reqBytes, false);
         return newMemoryChunk(nBytes);
     }
 
@@ -120,6 +243,9 @@ public class GlobalMemoryManager implements MemoryManager {
         return new GlobalMemoryChunk(sizeBytes);
     }
     
+    /**
+     * Memory chunk owned by a single thread at a time.
+     */
     private class GlobalMemoryChunk implements MemoryChunk {
         private volatile long size;
 
@@ -132,9 +258,7 @@ public class GlobalMemoryManager implements MemoryManager {
 
         @Override
         public long getSize() {
-            synchronized(sync) {
-                return size; // TODO: does this need to be synchronized?
-            }
+            return size;
         }
         
         @Override
@@ -142,17 +266,29 @@ public class GlobalMemoryManager implements MemoryManager {
             if (nBytes < 0) {
                 throw new IllegalStateException("Number of bytes to resize to must be greater than zero, but instead is " + nBytes);
             }
-            synchronized(sync) {
-                long nAdditionalBytes = (nBytes - size);
-                if (nAdditionalBytes < 0) {
-                    usedMemoryBytes += nAdditionalBytes;
-                    size = nBytes;
-                    sync.notifyAll();
-                } else {
-                    allocateBytes(nAdditionalBytes, nAdditionalBytes);
-                    size = nBytes;
-                }
+            long nAdditionalBytes = (nBytes - size);
+            if (nAdditionalBytes < 0) {
+                size = nBytes;
+                freeBytes(-nAdditionalBytes);
+            } else if (nAdditionalBytes > 0) {
+                allocateBytes(nAdditionalBytes, nAdditionalBytes, true);
+                size = nBytes;
+            }
+        }
+        
+        @Override
+        public boolean tryResize(long nBytes) {
+            long nAdditionalBytes = (nBytes - size);
+            if (nAdditionalBytes <= 0) {
+                resize(nBytes);
+                return true;
+            }
+            // Don't take memory ahead of the allocations already waiting for it
+            if (waiterCount.get() > 0 || tryAllocateBytes(nAdditionalBytes, nAdditionalBytes) < 0) {
+                return false;
             }
+            size = nBytes;
+            return true;
         }
         
         /**
@@ -161,9 +297,10 @@ public class GlobalMemoryManager implements MemoryManager {
         @Override
         protected void finalize() throws Throwable {
             try {
+                long orphanedSize = size;
                 close();
-                if (size > 0) {
-                    logger.warn("Orphaned chunk of " + size + " bytes found during finalize");
+                if (orphanedSize > 0) {
+                    logger.warn("Orphaned chunk of " + orphanedSize + " bytes found during finalize");
                 }
                 // TODO: log error here, but we can't use SFDC logging
                 // because this runs in an hbase coprocessor.
@@ -175,12 +312,11 @@ public class GlobalMemoryManager implements MemoryManager {
         
         @Override
         public void close() {
-            synchronized(sync) {
-                usedMemoryBytes -= size;
-                size = 0;
-                sync.notifyAll();
+            long nBytes = size;
+            size = 0;
+            if (nBytes > 0) {
+                freeBytes(nBytes);
             }
         }
     }
 }
- 
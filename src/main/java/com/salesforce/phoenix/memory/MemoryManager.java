@@ -101,5 +101,15 @@ public interface MemoryManager {
          *  during configured amount of time
          */
         void resize(long nBytes); 
+        
+        /**
+         * Resize an already allocated memory chunk up or down to a
+         * new amount without ever blocking. Increasing the allocation
+         * only succeeds if nBytes are available right away and no other
+         * allocation is already waiting for memory.
+         * @param nBytes new number of bytes required for this chunk
+         * @return true if the chunk was resized and false otherwise
+         */
+        boolean tryResize(long nBytes);
     }
 }
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.metrics.MetricsRate;
+import org.apache.hadoop.metrics.*;
+import org.apache.hadoop.metrics.util.*;
+
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+
+
+/**
+ * 
+ * Metrics for the work done by Phoenix coprocessors in a region server, published
+ * through the Hadoop metrics system under the hbase context as the phoenix record and
+ * through JMX as the RegionServer,PhoenixStatistics MBean. Coprocessors and caches only
+ * update atomic counters, which are pushed to the metrics system at each update interval.
+ * The metrics are published from the {@link #start()} of the first coprocessor until the
+ * matching {@link #shutdown()} of the last one.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class ServerMetrics implements Updater {
+    private static volatile ServerMetrics INSTANCE = null;
+    
+    private final MetricsContext metricsContext;
+    private final MetricsRecord metricsRecord;
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final Object lock = new Object();
+    // Number of started coprocessors and the MBean published while there are any, guarded by lock
+    private int startCount;
+    private ServerStatistics statistics;
+    
+    private final AtomicInteger activeAggregationCount = new AtomicInteger();
+    private final AtomicLong groupCount = new AtomicLong();
+    private final AtomicLong rowsProcessedCount = new AtomicLong();
+    private final AtomicInteger hashCacheCount = new AtomicInteger();
+    private final AtomicLong hashCacheByteCount = new AtomicLong();
+    private final AtomicLong ageOutEvictionCount = new AtomicLong();
+    private final AtomicLong rowsMutatedCount = new AtomicLong();
+    private volatile GlobalMemoryManager memoryManager;
+    // Counter values already pushed as increments, guarded by this
+    private long pushedRowsProcessedCount;
+    private long pushedAgeOutEvictionCount;
+    private long pushedRowsMutatedCount;
+    
+    private final MetricsIntValue activeAggregations = new MetricsIntValue("activeAggregations", registry, "Number of aggregations in progress");
+    private final MetricsLongValue groupsHeld = new MetricsLongValue("groupsHeld", registry, "Number of groups held in memory by unordered GROUP BY");
+    private final MetricsRate rowsProcessedPerSecond = new MetricsRate("rowsProcessedPerSecond", registry, "Rows aggregated per second");
+    private final MetricsLongValue memoryUsedBytes = new MetricsLongValue("memoryUsedBytes", registry, "Bytes allocated from the global memory manager");
+    private final MetricsLongValue memoryWaitingBytes = new MetricsLongValue("memoryWaitingBytes", registry, "Bytes requested by allocations waiting on the global memory manager");
+    private final MetricsIntValue hashCaches = new MetricsIntValue("hashCaches", registry, "Number of hash join caches");
+    private final MetricsLongValue hashCacheBytes = new MetricsLongValue("hashCacheBytes", registry, "Bytes held by hash join caches");
+    private final MetricsTimeVaryingLong hashCacheAgeOutEvictions = new MetricsTimeVaryingLong("hashCacheAgeOutEvictions", registry, "Hash join caches removed after their time to live");
+    private final MetricsTimeVaryingLong rowsMutated = new MetricsTimeVaryingLong("rowsMutated", registry, "Mutations committed by server-side DELETE and UPSERT SELECT");
+    
+    public static ServerMetrics getInstance() {
+        if (INSTANCE == null) {
+            synchronized(ServerMetrics.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ServerMetrics();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+    
+    private ServerMetrics() {
+        metricsContext = MetricsUtil.getContext("hbase");
+        metricsRecord = MetricsUtil.createRecord(metricsContext, "phoenix");
+    }
+    
+    /**
+     * Start publishing the metrics, if not already published. Called when a coprocessor starts.
+     */
+    public void start() {
+        synchronized (lock) {
+            if (startCount++ == 0) {
+                metricsContext.registerUpdater(this);
+                statistics = new ServerStatistics(registry);
+            }
+        }
+    }
+    
+    /**
+     * Stop publishing the metrics once every coprocessor that called {@link #start()} has stopped,
+     * unregistering the MBean. The counters keep their values.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            if (startCount == 0 || --startCount > 0) {
+                return;
+            }
+            metricsContext.unregisterUpdater(this);
+            statistics.shutdown();
+            statistics = null;
+        }
+    }
+    
+    /**
+     * Set the memory manager from which the used and waiting bytes are reported
+     */
+    public void setMemoryManager(GlobalMemoryManager memoryManager) {
+        this.memoryManager = memoryManager;
+    }
+    
+    public void startAggregation() {
+        activeAggregationCount.incrementAndGet();
+    }
+    
+    public void finishAggregation() {
+        activeAggregationCount.decrementAndGet();
+    }
+    
+    public int getActiveAggregationCount() {
+        return activeAggregationCount.get();
+    }
+    
+    public void addGroups(long count) {
+        groupCount.addAndGet(count);
+    }
+    
+    public long getGroupCount() {
+        return groupCount.get();
+    }
+    
+    public void addRowsProcessed(long count) {
+        rowsProcessedCount.addAndGet(count);
+    }
+    
+    public void addHashCache(long byteCount) {
+        hashCacheCount.incrementAndGet();
+        hashCacheByteCount.addAndGet(byteCount);
+    }
+    
+    public void removeHashCache(long byteCount) {
+        hashCacheCount.decrementAndGet();
+        hashCacheByteCount.addAndGet(-byteCount);
+    }
+    
+    public int getHashCacheCount() {
+        return hashCacheCount.get();
+    }
+    
+    public long getHashCacheByteCount() {
+        return hashCacheByteCount.get();
+    }
+    
+    public void addAgeOutEviction() {
+        ageOutEvictionCount.incrementAndGet();
+    }
+    
+    public void addRowsMutated(long count) {
+        rowsMutatedCount.addAndGet(count);
+    }
+    
+    /**
+     * @return the total number of rows mutated since the region server started
+     */
+    public long getRowsMutatedCount() {
+        return rowsMutatedCount.get();
+    }
+    
+    @Override
+    public void doUpdates(MetricsContext context) {
+        synchronized (this) {
+            activeAggregations.set(activeAggregationCount.get());
+            groupsHeld.set(groupCount.get());
+            // Rates and time varying counters only take increments, so push what accumulated since the last update.
+            // The counters themselves are never reset, so that their totals may be read at any time.
+            long count = rowsProcessedCount.get();
+            rowsProcessedPerSecond.inc((int)Math.min(Integer.MAX_VALUE, count - pushedRowsProcessedCount));
+            pushedRowsProcessedCount = count;
+            GlobalMemoryManager memoryManager = this.memoryManager;
+            if (memoryManager != null) {
+                memoryUsedBytes.set(memoryManager.getMaxMemory() - memoryManager.getAvailableMemory());
+                memoryWaitingBytes.set(memoryManager.getWaitingBytes());
+            }
+            hashCaches.set(hashCacheCount.get());
+            hashCacheBytes.set(hashCacheByteCount.get());
+            count = ageOutEvictionCount.get();
+            hashCacheAgeOutEvictions.inc(count - pushedAgeOutEvictionCount);
+            pushedAgeOutEvictionCount = count;
+            count = rowsMutatedCount.get();
+            rowsMutated.inc(count - pushedRowsMutatedCount);
+            pushedRowsMutatedCount = count;
+            for (MetricsBase metric : registry.getMetricsList()) {
+                metric.pushMetric(metricsRecord);
+            }
+        }
+        metricsRecord.update();
+    }
+}
@@ -426,9 +426,9 @@ public class ParseNodeFactory {
     }
 
     public SelectStatement select(List<TableNode> from, HintNode hint, List<AliasedParseNode> select, ParseNode where,
-            List<ParseNode> groupBy, ParseNode having, List<OrderByNode> orderBy, LimitNode limit, int bindCount) {
+            List<ParseNode> groupBy, ParseNode having, List<OrderByNode> orderBy, LimitNode limit, Double samplePercent, int bindCount) {
 
-        return new SelectStatement(from, hint, select, where, groupBy == null ? Collections.<ParseNode>emptyList() : groupBy, having, orderBy == null ? Collections.<OrderByNode>emptyList() : orderBy, limit, bindCount);
+        return new SelectStatement(from, hint, select, where, groupBy == null ? Collections.<ParseNode>emptyList() : groupBy, having, orderBy == null ? Collections.<OrderByNode>emptyList() : orderBy, limit, samplePercent, bindCount);
     }
     
     public UpsertStatement upsert(TableName table, List<ParseNode> columns, List<ParseNode> values, SelectStatement select, int bindCount) {
@@ -440,7 +440,7 @@ public class ParseNodeFactory {
     }
 
     public SelectStatement select(SelectStatement statement, ParseNode where, ParseNode having) {
-        return select(statement.getFrom(), statement.getHint(), statement.getSelect(), where, statement.getGroupBy(), having, statement.getOrderBy(), statement.getLimit(), statement.getBindCount());
+        return select(statement.getFrom(), statement.getHint(), statement.getSelect(), where, statement.getGroupBy(), having, statement.getOrderBy(), statement.getLimit(), statement.getSamplePercent(), statement.getBindCount());
     }
 
     public SubqueryParseNode subquery(SelectStatement select) {
@@ -46,9 +46,10 @@ public class SelectStatement implements SQLStatement {
     private final ParseNode having;
     private final List<OrderByNode> orderBy;
     private final LimitNode limit;
+    private final Double samplePercent;
     private final int bindCount;
     
-    protected SelectStatement(List<TableNode> from, HintNode hint, List<AliasedParseNode> select, ParseNode where, List<ParseNode> groupBy, ParseNode having, List<OrderByNode> orderBy, LimitNode limit, int bindCount) {
+    protected SelectStatement(List<TableNode> from, HintNode hint, List<AliasedParseNode> select, ParseNode where, List<ParseNode> groupBy, ParseNode having, List<OrderByNode> orderBy, LimitNode limit, Double samplePercent, int bindCount) {
         this.fromTable = Collections.unmodifiableList(from);
         this.hint = hint;
         this.select = Collections.unmodifiableList(select);
@@ -57,6 +58,7 @@ public class SelectStatement implements SQLStatement {
         this.having = having;
         this.orderBy = Collections.unmodifiableList(orderBy);
         this.limit = limit;
+        this.samplePercent = samplePercent;
         this.bindCount = bindCount;
     }
     
@@ -64,6 +66,14 @@ public class SelectStatement implements SQLStatement {
         return limit;
     }
     
+    /**
+     * Gets the percentage of the table to sample from the TABLESAMPLE clause,
+     * or null, if none.
+     */
+    public Double getSamplePercent() {
+        return samplePercent;
+    }
+    
     @Override
     public int getBindCount() {
         return bindCount;
@@ -298,48 +298,10 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
         });
     }
 
-    private static boolean hasNewerTables(long scn, PMetaData metaData) {
-        for (PSchema schema : metaData.getSchemas().values()) {
-            for (PTable table : schema.getTables().values()) {
-                if (table.getTimeStamp() >= scn) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-    
-    private static PMetaData pruneNewerTables(long scn, PMetaData metaData) {
-        if (!hasNewerTables(scn, metaData)) {
-            return metaData;
-        }
-        Map<String,PSchema> newSchemas = new HashMap<String,PSchema>(metaData.getSchemas());
-        for (Map.Entry<String, PSchema> schemaEntry : metaData.getSchemas().entrySet()) {
-            Map<String,PTable> newTables = new HashMap<String,PTable>(schemaEntry.getValue().getTables());
-            Iterator<Map.Entry<String, PTable>> iterator = newTables.entrySet().iterator();
-            boolean wasModified = false;
-            while (iterator.hasNext()) {
-                if (iterator.next().getValue().getTimeStamp() >= scn) {
-                    iterator.remove();
-                    wasModified = true;
-                }
-            }
-            if (wasModified) {
-                if (newTables.isEmpty()) {
-                    newSchemas.remove(schemaEntry.getKey());
-                } else {
-                    PSchema newSchema = new PSchemaImpl(schemaEntry.getKey(),newTables);
-                    newSchemas.put(schemaEntry.getKey(), newSchema);
-                }
-            }
-        }
-        return new PMetaDataImpl(newSchemas);
-    }
-    
     @Override
     public PhoenixConnection connect(String url, Properties info) throws SQLException {
         Long scn = JDBCUtil.getCurrentSCN(url, info);
-        PMetaData metaData = scn == null ? latestMetaData : pruneNewerTables(scn, latestMetaData);
+        PMetaData metaData = scn == null ? latestMetaData : PMetaDataImpl.pruneNewerTables(scn, latestMetaData);
         return new PhoenixConnection(this, url, info, metaData);
     }
 
@@ -84,6 +84,12 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     {@link com.salesforce.phoenix.memory.InsufficientMemoryException} is
  *     thrown. Defaults to
  *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_TENANT_MEMORY_PERC}.</li>
+ *   <li><strong>phoenix.query.maxQueryMemoryPercentage</strong>: maximum
+ *     percentage of the memory available to a connection that any one query
+ *     is allowed to consume. After this percentage, a
+ *     {@link com.salesforce.phoenix.memory.InsufficientMemoryException} is
+ *     thrown. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_QUERY_MEMORY_PERC}.</li>
  *   <li><strong>phoenix.query.targetConcurrency</strong>: target concurrent
  *     threads to use for a query. It serves as a soft limit on the number of
  *     scans into which a query may be split. A hard limit is imposed by
@@ -95,6 +101,17 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     of scans into which a query may be split. A soft limit is imposed by
  *     phoenix.query.targetConcurrency. Defaults to
  *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_QUERY_CONCURRENCY}.</li>
+ *   <li><strong>phoenix.query.maxConcurrentSplits</strong>: maximum number of
+ *     scans of a single query that run at the same time on the client thread
+ *     pool, or zero for no limit. Limiting it leaves threads available for other
+ *     queries. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_MAX_CONCURRENT_SPLITS}.</li>
+ *   <li><strong>phoenix.query.tenantWeight.&lt;tenantId&gt;</strong>: share of the
+ *     client thread pool given to the scans of the queries of a tenant, relative
+ *     to the other tenants, when queries of several tenants compete for it. The
+ *     tenant is identified by the {@link com.salesforce.phoenix.util.PhoenixRuntime#TENANT_ID_ATTRIB}
+ *     connection property. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_TENANT_WEIGHT}.</li>
  *   <li><strong>phoenix.query.dateFormat</strong>: default pattern to use
  *     for convertion of a date to/from a string, whether through the
  *     TO_CHAR(<date>) or TO_DATE(<dateAsString>) functions, or through
@@ -129,6 +146,23 @@ import com.salesforce.phoenix.util.SQLCloseable;
  *     in milliseconds of the region boundary cache used to guide the split
  *     points for query parallelization. Defaults to
  *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS}.</li>
+ *   <li><strong>phoenix.query.scaleSampledAggregates</strong>: whether or not
+ *     the COUNT and SUM aggregates of a query with a TABLESAMPLE clause are
+ *     scaled up by the inverse of the sample percentage to estimate the value
+ *     over the full table. When scaled, these aggregates are returned as DECIMAL.
+ *     Defaults to {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_SCALE_SAMPLED_AGGREGATES}.</li>
+ *   <li><strong>phoenix.query.clientHashAggregation</strong>: whether or not
+ *     the groups of a GROUP BY that isn't along the row key are combined on the
+ *     client in a hash table partitioned across phoenix.query.targetConcurrency
+ *     threads, rather than being sorted by each region and merge sorted by the
+ *     client. The rows are then no longer returned in GROUP BY order when the
+ *     query has no ORDER BY. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_CLIENT_HASH_AGGREGATION}.</li>
+ *   <li><strong>phoenix.bulkLoad.bufferSize</strong>: the approximate number
+ *     of bytes of row data buffered and sorted in memory by
+ *     {@link com.salesforce.phoenix.util.CSVBulkLoader} before they are written
+ *     out as HFiles. Defaults to
+ *     {@link com.salesforce.phoenix.query.QueryServicesOptions#DEFAULT_BULK_LOAD_BUFFER_SIZE}.</li>
  *   </ul>
  *     
  * @author jtaylor
@@ -145,9 +179,12 @@ public interface QueryServices extends SQLCloseable {
     public static final String MAX_MEMORY_PERC_ATTRIB = "phoenix.query.maxGlobalMemoryPercentage";
     public static final String MAX_MEMORY_WAIT_MS_ATTRIB = "phoenix.query.maxGlobalMemoryWaitMs";
     public static final String MAX_TENANT_MEMORY_PERC_ATTRIB = "phoenix.query.maxTenantMemoryPercentage";
+    public static final String MAX_QUERY_MEMORY_PERC_ATTRIB = "phoenix.query.maxQueryMemoryPercentage";
     public static final String MAX_HASH_CACHE_SIZE_ATTRIB = "phoenix.query.maxHashCacheBytes";
     public static final String TARGET_QUERY_CONCURRENCY_ATTRIB = "phoenix.query.targetConcurrency";
     public static final String MAX_QUERY_CONCURRENCY_ATTRIB = "phoenix.query.maxConcurrency";
+    public static final String MAX_CONCURRENT_SPLITS_ATTRIB = "phoenix.query.maxConcurrentSplits";
+    public static final String TENANT_WEIGHT_ATTRIB_PREFIX = "phoenix.query.tenantWeight.";
     public static final String DATE_FORMAT_ATTRIB = "phoenix.query.dateFormat";
     public static final String STATS_UPDATE_FREQ_MS_ATTRIB = "phoenix.query.statsUpdateFrequency";
     public static final String MAX_STATS_AGE_MS_ATTRIB = "phoenix.query.maxStatsAge";
@@ -163,6 +200,13 @@ public interface QueryServices extends SQLCloseable {
     public static final String MUTATE_BATCH_SIZE_ATTRIB = "phoenix.mutate.batchSize";
     public static final String REGION_BOUNDARY_CACHE_TTL_MS_ATTRIB = "phoenix.query.regionBoundaryCacheTTL";
     public static final String MAX_HASH_CACHE_TIME_TO_LIVE_MS = "phoenix.coprocessor.maxHashCacheTimeToLiveMs";
+    public static final String MAX_SERVER_METADATA_CACHE_SIZE_ATTRIB = "phoenix.coprocessor.maxMetaDataCacheSize";
+    public static final String MAX_SERVER_METADATA_CACHE_TIME_TO_LIVE_MS_ATTRIB = "phoenix.coprocessor.maxMetaDataCacheTimeToLiveMs";
+    public static final String MAX_SCAN_STATE_CACHE_SIZE_ATTRIB = "phoenix.coprocessor.maxScanStateCacheSize";
+    public static final String MAX_SCAN_STATE_CACHE_TIME_TO_LIVE_MS_ATTRIB = "phoenix.coprocessor.maxScanStateCacheTimeToLiveMs";
+    public static final String BULK_LOAD_BUFFER_SIZE_ATTRIB = "phoenix.bulkLoad.bufferSize";
+    public static final String SCALE_SAMPLED_AGGREGATES_ATTRIB = "phoenix.query.scaleSampledAggregates";
+    public static final String CLIENT_HASH_AGGREGATION_ATTRIB = "phoenix.query.clientHashAggregation";
 
     public static final String CALL_QUEUE_PRODUCER_ATTRIB_NAME = "CALL_QUEUE_PRODUCER";
     
@@ -50,9 +50,12 @@ public class QueryServicesOptions {
 	public static final int DEFAULT_MAX_MEMORY_PERC = 20; // 20% of heap
 	public static final int DEFAULT_MAX_MEMORY_WAIT_MS = 5000;
 	public static final int DEFAULT_MAX_TENANT_MEMORY_PERC = 100;
+	public static final int DEFAULT_MAX_QUERY_MEMORY_PERC = 100;
 	public static final long DEFAULT_MAX_HASH_CACHE_SIZE = 1024*1024*100;  // 100 Mb
     public static final int DEFAULT_TARGET_QUERY_CONCURRENCY = 8;
     public static final int DEFAULT_MAX_QUERY_CONCURRENCY = 12;
+    public static final int DEFAULT_MAX_CONCURRENT_SPLITS = 0; // No limit
+    public static final int DEFAULT_TENANT_WEIGHT = 1;
     public static final String DEFAULT_DATE_FORMAT = DateUtil.DEFAULT_DATE_FORMAT;
     public static final int DEFAULT_STATS_UPDATE_FREQ_MS = 15 * 60000; // 15min
     public static final int DEFAULT_MAX_STATS_AGE_MS = 24 * 60 * 60000; // 1 day
@@ -69,6 +72,13 @@ public class QueryServicesOptions {
 	public static final int DEFAULT_REGION_BOUNDARY_CACHE_TTL_MS = 60000; // How long to cache region boundary info for parallelization calculation
     public static final int DEFAULT_MAX_HASH_CACHE_TIME_TO_LIVE_MS = 30000; // 30 sec (with no activity)
     public static final int DEFAULT_SCAN_CACHE_SIZE = 1000;
+    public static final long DEFAULT_MAX_SERVER_METADATA_CACHE_SIZE = 1024*1024*20;  // 20 Mb
+    public static final int DEFAULT_MAX_SERVER_METADATA_CACHE_TIME_TO_LIVE_MS = 60 * 60000; // 1 hour (with no activity)
+    public static final long DEFAULT_MAX_SCAN_STATE_CACHE_SIZE = 1024*1024*10;  // 10 Mb of serialized scan attributes, 0 to disable
+    public static final int DEFAULT_MAX_SCAN_STATE_CACHE_TIME_TO_LIVE_MS = 10 * 60000; // 10 min (with no activity)
+    public static final long DEFAULT_BULK_LOAD_BUFFER_SIZE = 1024*1024*64;  // 64 Mb
+    public static final boolean DEFAULT_SCALE_SAMPLED_AGGREGATES = false;
+    public static final boolean DEFAULT_CLIENT_HASH_AGGREGATION = false;
     
     private final Configuration config;
     
@@ -87,10 +97,12 @@ public class QueryServicesOptions {
             .setIfUnset(MAX_MEMORY_PERC_ATTRIB, DEFAULT_MAX_MEMORY_PERC)
             .setIfUnset(MAX_MEMORY_WAIT_MS_ATTRIB, DEFAULT_MAX_MEMORY_WAIT_MS)
             .setIfUnset(MAX_TENANT_MEMORY_PERC_ATTRIB, DEFAULT_MAX_TENANT_MEMORY_PERC)
+            .setIfUnset(MAX_QUERY_MEMORY_PERC_ATTRIB, DEFAULT_MAX_QUERY_MEMORY_PERC)
             .setIfUnset(MAX_HASH_CACHE_SIZE_ATTRIB, DEFAULT_MAX_HASH_CACHE_SIZE)
             .setIfUnset(SCAN_CACHE_SIZE_ATTRIB, DEFAULT_SCAN_CACHE_SIZE)
             .setIfUnset(TARGET_QUERY_CONCURRENCY_ATTRIB, DEFAULT_TARGET_QUERY_CONCURRENCY)
             .setIfUnset(MAX_QUERY_CONCURRENCY_ATTRIB, DEFAULT_MAX_QUERY_CONCURRENCY)
+            .setIfUnset(MAX_CONCURRENT_SPLITS_ATTRIB, DEFAULT_MAX_CONCURRENT_SPLITS)
             .setIfUnset(DATE_FORMAT_ATTRIB, DEFAULT_DATE_FORMAT)
             .setIfUnset(STATS_UPDATE_FREQ_MS_ATTRIB, DEFAULT_STATS_UPDATE_FREQ_MS)
             .setIfUnset(CALL_QUEUE_ROUND_ROBIN_ATTRIB, DEFAULT_CALL_QUEUE_ROUND_ROBIN)
@@ -168,6 +180,10 @@ public class QueryServicesOptions {
         return set(MAX_TENANT_MEMORY_PERC_ATTRIB, maxTenantMemoryPerc);
     }
     
+    public QueryServicesOptions setMaxQueryMemoryPerc(int maxQueryMemoryPerc) {
+        return set(MAX_QUERY_MEMORY_PERC_ATTRIB, maxQueryMemoryPerc);
+    }
+    
     public QueryServicesOptions setMaxHashCacheSize(long maxHashCacheSize) {
         return set(MAX_HASH_CACHE_SIZE_ATTRIB, maxHashCacheSize);
     }
@@ -184,6 +200,14 @@ public class QueryServicesOptions {
         return set(TARGET_QUERY_CONCURRENCY_ATTRIB, targetQueryConcurrency);
     }
     
+    public QueryServicesOptions setMaxConcurrentSplits(int maxConcurrentSplits) {
+        return set(MAX_CONCURRENT_SPLITS_ATTRIB, maxConcurrentSplits);
+    }
+    
+    public QueryServicesOptions setTenantWeight(String tenantId, int weight) {
+        return set(TENANT_WEIGHT_ATTRIB_PREFIX + tenantId, weight);
+    }
+    
     public QueryServicesOptions setDateFormat(String dateFormat) {
         return set(DATE_FORMAT_ATTRIB, dateFormat);
     }
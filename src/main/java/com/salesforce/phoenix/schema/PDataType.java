@@ -68,9 +68,18 @@ public enum PDataType {
             if (object == null) {
                 return 0;
             }
-            byte[] b = toBytes(object); // TODO: no byte[] allocation: use CharsetEncoder
-            System.arraycopy(b, 0, bytes, offset, b.length);
-            return b.length;
+            String s = (String)object;
+            int len = s.length();
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                if (c > 0x007F) { // Multi-byte character, so let the encoder handle it
+                    byte[] b = toBytes(object);
+                    System.arraycopy(b, 0, bytes, offset, b.length);
+                    return b.length;
+                }
+                bytes[offset + i] = (byte)c;
+            }
+            return len;
         }
 
         @Override
@@ -145,8 +154,8 @@ public enum PDataType {
         }
         
         @Override
-        protected boolean isBytesComparableWith(PDataType otherType) {
-            return this == otherType || this == CHAR;
+        public boolean isBytesComparableWith(PDataType otherType) {
+            return this == otherType || otherType == CHAR;
         }
         
     },
@@ -257,8 +266,8 @@ public enum PDataType {
         }
         
         @Override
-        protected boolean isBytesComparableWith(PDataType otherType) {
-            return this == otherType || this == VARCHAR;
+        public boolean isBytesComparableWith(PDataType otherType) {
+            return this == otherType || otherType == VARCHAR;
         }
     },
     LONG("BIGINT", Types.BIGINT, Long.class, new LongCodec()) {
@@ -915,7 +924,7 @@ public enum PDataType {
         }
         
         @Override
-        protected boolean isBytesComparableWith(PDataType otherType) {
+        public boolean isBytesComparableWith(PDataType otherType) {
             return this == otherType || this == DATE;
         }
     },
@@ -998,7 +1007,7 @@ public enum PDataType {
         }
         
         @Override
-        protected boolean isBytesComparableWith(PDataType otherType) {
+        public boolean isBytesComparableWith(PDataType otherType) {
             return this == otherType || this == TIME;
         }
     },
@@ -1392,7 +1401,11 @@ public enum PDataType {
         return codec;
     }
     
-    protected boolean isBytesComparableWith(PDataType otherType) {
+    /**
+     * @return true if a value of this type may be compared against a value of otherType
+     * by comparing their serialized bytes directly, without any conversion.
+     */
+    public boolean isBytesComparableWith(PDataType otherType) {
         return this == otherType;
     }
     
@@ -1660,6 +1673,7 @@ public enum PDataType {
     private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
     private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
     private static final long MAX_LONG_FOR_DESERIALIZE = Long.MAX_VALUE / 1000;
+    private static final int MAX_UNSCALED_LONG_DIGIT_BYTES = 9; // 18 digits always fit into a long
     private static final BigInteger ONE_HUNDRED = BigInteger.valueOf(100);
 
     private static final byte FALSE_BYTE = 0;
@@ -1832,6 +1846,57 @@ public enum PDataType {
         return v;
     }
 
+    /**
+     * Decode a serialized DECIMAL straight into its unscaled long value and scale, without
+     * going through BigInteger and BigDecimal. Only values serialized with at most nine digit bytes
+     * (i.e. 17 or 18 digits, depending on the scale) are decoded this way, as they always fit into a long.
+     * @param unscaledAndScale two element array into which the unscaled value and the scale
+     * are stored when the value fits.
+     * @return true if the value was decoded and false if the caller must fall back to
+     * {@link BigDecimal} through {@link #toObject(byte[], int, int)}.
+     */
+    public static boolean toUnscaledLong(byte[] bytes, int offset, int length, long[] unscaledAndScale) {
+        if (length == 1 && bytes[offset] == ZERO_BYTE) {
+            unscaledAndScale[0] = 0;
+            unscaledAndScale[1] = 0;
+            return true;
+        }
+        int signum = ((bytes[offset] & 0x80) == 0) ? -1 : 1;
+        int scale;
+        int index;
+        int digitOffset;
+        if (signum == 1) {
+            scale = (byte)(((bytes[offset] & 0x7F) - 65) * -2);
+            index = offset + length;
+            digitOffset = POS_DIGIT_OFFSET;
+        } else {
+            scale = (byte)((~bytes[offset] - 65 - 128) * -2);
+            index = offset + length - (bytes[offset + length - 1] == NEG_TERMINAL_BYTE ? 1 : 0);
+            digitOffset = -NEG_DIGIT_OFFSET;
+        }
+        length = index - offset;
+        // Each byte after the exponent byte holds two digits
+        if (length - 1 > MAX_UNSCALED_LONG_DIGIT_BYTES) {
+            return false;
+        }
+        int begIndex = offset + 1;
+        long multiplier = 100L;
+        long l = signum * bytes[--index] - digitOffset;
+        if (l % 10 == 0) { // trailing zero
+            scale--; // drop trailing zero and compensate in the scale
+            l /= 10;
+            multiplier = 10;
+        }
+        while (index > begIndex) {
+            int digit100 = signum * bytes[--index] - digitOffset;
+            l += digit100*multiplier;
+            multiplier *= 100;
+        }
+        unscaledAndScale[0] = l * signum;
+        unscaledAndScale[1] = scale + (length - 2) * 2;
+        return true;
+    }
+
     // Calculate the precisioin and scale of a raw decimal bytes. Returns the values as an int
     // array. The first value is precision, the second value is scale.
     public static int[] getDecimalPrecisionAndScale(byte[] bytes, int offset, int length) {
@@ -30,20 +30,29 @@ package com.salesforce.phoenix.schema;
 import java.sql.SQLException;
 import java.util.*;
 
-
-import com.google.common.collect.*;
+import com.google.common.collect.Lists;
 import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.util.PersistentHashMap;
 
+/**
+ * Immutable client-side cache of schema and table meta data. Both the schema map
+ * and the per schema table maps are {@link PersistentHashMap}s, so each mutation
+ * only copies the path to the changed table instead of every schema and table.
+ */
 public class PMetaDataImpl implements PMetaData {
-    public static final PMetaData EMPTY_META_DATA = new PMetaDataImpl(Collections.<String,PSchema>emptyMap());
-    private final Map<String,PSchema> metaData;
+    public static final PMetaData EMPTY_META_DATA = new PMetaDataImpl(PersistentHashMap.<String,PSchema>of());
+    private final PersistentHashMap<String,PSchema> metaData;
     
     public PMetaDataImpl(Map<String,PSchema> metaData) {
-        this.metaData = ImmutableMap.copyOf(metaData);
+        this.metaData = PersistentHashMap.copyOf(metaData);
     }
     
     public PMetaDataImpl(PSchema schema) {
-        this.metaData = ImmutableMap.of(schema.getName(), schema);
+        this.metaData = PersistentHashMap.<String,PSchema>of().plus(schema.getName(), schema);
+    }
+    
+    private PMetaDataImpl(PersistentHashMap<String,PSchema> metaData) {
+        this.metaData = metaData;
     }
     
     @Override
@@ -66,38 +75,41 @@ public class PMetaDataImpl implements PMetaData {
         return metaData;
     }
 
+    private static PSchemaImpl asSchemaImpl(PSchema schema) {
+        if (schema instanceof PSchemaImpl) {
+            return (PSchemaImpl)schema;
+        }
+        return new PSchemaImpl(schema.getName(), schema.getTables());
+    }
+    
+    private PMetaData replaceTable(String schemaName, PTable table) throws SQLException {
+        PSchema schema = getSchema(schemaName);
+        PSchemaImpl newSchema = asSchemaImpl(schema).addTable(table);
+        return new PMetaDataImpl(metaData.plus(newSchema.getName(), newSchema));
+    }
 
     @Override
     public PMetaData addTable(String schemaName, PTable table) throws SQLException {
-        Map<String,PTable> tables;
-        Map<String,PSchema> schemas = new HashMap<String,PSchema>(metaData);
         schemaName = schemaName == null ? QueryConstants.NULL_SCHEMA_NAME : schemaName;
-        PSchema schema = schemas.get(schemaName);
+        PSchema schema = metaData.get(schemaName);
+        PSchemaImpl newSchema;
         if (schema == null) {
-            tables = Maps.newHashMapWithExpectedSize(5);
+            newSchema = new PSchemaImpl(schemaName, PersistentHashMap.<String,PTable>of().plus(table.getName().getString(), table));
         } else {
-            tables = Maps.newHashMap(schema.getTables());
+            newSchema = asSchemaImpl(schema).addTable(table);
         }
-        tables.put(table.getName().getString(), table);
-        schema = new PSchemaImpl(schemaName, tables);
-        schemas.put(schemaName, schema);
-        return new PMetaDataImpl(schemas);
+        return new PMetaDataImpl(metaData.plus(schemaName, newSchema));
     }
 
     @Override
     public PMetaData addColumn(String schemaName, String tableName, List<PColumn> newColumns, long tableSeqNum, long tableTimeStamp) throws SQLException {
-        Map<String,PSchema> schemas = new HashMap<String,PSchema>(metaData);
         PSchema schema = getSchema(schemaName);
         PTable table = schema.getTable(tableName);
         List<PColumn> columns = Lists.newArrayListWithExpectedSize(table.getColumns().size() + 1);
         columns.addAll(table.getColumns());
         columns.addAll(newColumns);
-        Map<String,PTable> tables = Maps.newHashMap(schema.getTables());
         PTable newTable = new PTableImpl(table.getName(), table.getType(), tableSeqNum, tableTimeStamp, table.getPKName(), columns);
-        tables.put(tableName, newTable);
-        schema = new PSchemaImpl(schemaName, tables);
-        schemas.put(schema.getName(), schema);
-        return new PMetaDataImpl(schemas);
+        return replaceTable(schemaName, newTable);
     }
 
     @Override
@@ -108,21 +120,16 @@ public class PMetaDataImpl implements PMetaData {
         } catch (SchemaNotFoundException e) {
             throw new TableNotFoundException(schemaName, tableName);
         }
-        Map<String,PTable> tables;
-        Map<String,PSchema> schemas = new HashMap<String,PSchema>(metaData);
-        tables = Maps.newHashMap(schema.getTables());
-        if (tables.remove(tableName) == null) {
+        PSchemaImpl newSchema = asSchemaImpl(schema).removeTable(tableName);
+        if (newSchema == schema) {
             throw new TableNotFoundException(schemaName, tableName);
         }
-        schema = new PSchemaImpl(schema.getName(), tables);
-        schemas.put(schema.getName(), schema);
-        return new PMetaDataImpl(schemas);
+        return new PMetaDataImpl(metaData.plus(newSchema.getName(), newSchema));
     }
     
     @Override
     public PMetaData removeColumn(String schemaName, String tableName, String familyName, String columnName, long tableSeqNum, long tableTimeStamp) throws SQLException {
         PSchema schema = getSchema(schemaName);
-        Map<String,PSchema> schemas = new HashMap<String,PSchema>(metaData);
         PTable table = schema.getTable(tableName);
         PColumn column;
         if (familyName == null) {
@@ -141,11 +148,33 @@ public class PMetaDataImpl implements PMetaData {
             columns.add(newColumn);
         }
         
-        Map<String,PTable> tables = Maps.newHashMap(schema.getTables());
         PTable newTable = new PTableImpl(table.getName(), table.getType(), tableSeqNum, tableTimeStamp, table.getPKName(), columns);
-        tables.put(tableName, newTable);
-        schema = new PSchemaImpl(schemaName, tables);
-        schemas.put(schema.getName(), schema);
-        return new PMetaDataImpl(schemas);
+        return replaceTable(schemaName, newTable);
+    }
+    
+    /**
+     * @return meta data without any of the tables with a time stamp at or after
+     * the given time stamp. Only the schemas that contain such tables are copied.
+     */
+    public static PMetaData pruneNewerTables(long scn, PMetaData metaData) {
+        PersistentHashMap<String,PSchema> schemas = PersistentHashMap.copyOf(metaData.getSchemas());
+        PersistentHashMap<String,PSchema> newSchemas = schemas;
+        for (Map.Entry<String, PSchema> schemaEntry : schemas.entrySet()) {
+            PSchemaImpl schema = asSchemaImpl(schemaEntry.getValue());
+            PSchemaImpl newSchema = schema;
+            for (PTable table : schema.getTables().values()) {
+                if (table.getTimeStamp() >= scn) {
+                    newSchema = newSchema.removeTable(table.getName().getString());
+                }
+            }
+            if (newSchema != schema) {
+                if (newSchema.getTables().isEmpty()) {
+                    newSchemas = newSchemas.minus(schemaEntry.getKey());
+                } else {
+                    newSchemas = newSchemas.plus(schemaEntry.getKey(), newSchema);
+                }
+            }
+        }
+        return newSchemas == schemas ? metaData : new PMetaDataImpl(newSchemas);
     }
 }
@@ -30,15 +30,31 @@ package com.salesforce.phoenix.schema;
 import java.sql.SQLException;
 import java.util.Map;
 
-import com.google.common.collect.ImmutableMap;
+import com.salesforce.phoenix.util.PersistentHashMap;
 
 public class PSchemaImpl implements PSchema {
     private final String name;
-    private final Map<String,PTable> tableMap;
+    private final PersistentHashMap<String,PTable> tableMap;
     
     public PSchemaImpl(String name, Map<String,PTable> tables) {
         this.name = name == null ? "" : name;
-        this.tableMap = ImmutableMap.copyOf(tables);
+        this.tableMap = PersistentHashMap.copyOf(tables);
+    }
+    
+    /**
+     * @return a new schema with the given table added or replaced. The table map
+     * of this schema is shared, so the cost is independent of the number of tables.
+     */
+    PSchemaImpl addTable(PTable table) {
+        return new PSchemaImpl(name, tableMap.plus(table.getName().getString(), table));
+    }
+    
+    /**
+     * @return a new schema without the given table or this schema if the table is not present
+     */
+    PSchemaImpl removeTable(String tableName) {
+        PersistentHashMap<String,PTable> newTableMap = tableMap.minus(tableName);
+        return newTableMap == tableMap ? this : new PSchemaImpl(name, newTableMap);
     }
     
     @Override
@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.io.hfile.*;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.google.common.collect.Maps;
+import com.salesforce.phoenix.exception.PhoenixIOException;
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.*;
+
+/**
+ * Bulk loads CSV data by writing HFiles directly and handing them to the
+ * region servers, bypassing the write ahead log and memstore. Rows are encoded the same way as {@link CSVLoader},
+ * including the empty key value column, buffered up to
+ * {@link QueryServices#BULK_LOAD_BUFFER_SIZE_ATTRIB} bytes, and then written out
+ * sorted with one HFile per region and column family. The HFiles of all buffers
+ * are loaded at the end, so none of the data is visible until all of it has
+ * been written. The HFiles are handed to each region directly rather than through
+ * {@code LoadIncrementalHFiles}, since it ignores directories starting with an
+ * underscore and would thus skip the default column family. As with
+ * {@code LoadIncrementalHFiles}, if a region splits after the HFiles were written,
+ * the HFiles that no longer fit into a single region are split at the region
+ * boundary and loaded again. The output directory is removed once the load
+ * completes or fails. All cells are written at the same timestamp, so if the same row
+ * appears in more than one buffer, which value wins is undefined.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class CSVBulkLoader {
+    private static final Logger logger = LoggerFactory.getLogger(CSVBulkLoader.class);
+    private static final long ROW_OVERHEAD = SizedUtil.OBJECT_SIZE + SizedUtil.MAP_ENTRY_SIZE + SizedUtil.ARRAY_SIZE;
+    private static final long CELL_OVERHEAD = SizedUtil.MAP_ENTRY_SIZE + SizedUtil.ARRAY_SIZE;
+    
+    private final PhoenixConnection conn;
+    private final CSVLoader loader;
+    private final Path outputDir;
+    private final long bufferSize;
+    
+    /**
+     * @param conn connection used to resolve the table
+     * @param tableName name of table into which the data is loaded
+     * @param columns names of the columns that the CSV fields map to, an empty list if
+     * the first line of the CSV file contains the column names, or null if the CSV fields
+     * map to the table columns in ordinal order
+     * @param isStrict true to throw if a column name cannot be found and false to skip it 
+     * @param outputDir directory into which the HFiles are written before they are loaded.
+     * Must be on the file system used by HBase and must not already exist.
+     */
+    public CSVBulkLoader(PhoenixConnection conn, String tableName, List<String> columns, boolean isStrict, Path outputDir) {
+        this.conn = conn;
+        this.loader = new CSVLoader(conn, tableName, columns, isStrict);
+        this.outputDir = outputDir;
+        this.bufferSize = conn.getQueryServices().getConfig().getLong(QueryServices.BULK_LOAD_BUFFER_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_BULK_LOAD_BUFFER_SIZE);
+    }
+    
+    /**
+     * Bulk loads the data from a CSV file
+     * @param fileName
+     * @return the number of rows loaded
+     * @throws Exception
+     */
+    public long load(String fileName) throws Exception {
+        CSVReader reader = new CSVReader(new FileReader(fileName));
+        try {
+            return load(reader);
+        } finally {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Bulk loads the CSV data
+     * @param reader CSVReader instance
+     * @return the number of rows loaded
+     * @throws Exception
+     */
+    public long load(CSVReader reader) throws Exception {
+        CSVLoader.RowEncoder encoder = loader.newRowEncoder(reader);
+        TableRef tableRef = encoder.getTableRef();
+        Long scn = conn.getSCN();
+        long timestamp = scn == null ? System.currentTimeMillis() : scn;
+        Configuration config = conn.getQueryServices().getConfig();
+        FileSystem fs = outputDir.getFileSystem(config);
+        if (fs.exists(outputDir)) {
+            throw new IOException("Output directory " + outputDir + " already exists");
+        }
+        HTable htable = new HTable(config, tableRef.getTableName());
+        try {
+            HFileWriter writer = new HFileWriter(fs, htable, timestamp);
+            long rowCount = 0;
+            long size = 0;
+            TreeMap<ImmutableBytesPtr,Map<PColumn,byte[]>> rows = Maps.newTreeMap();
+            String[] nextLine;
+            while ((nextLine = reader.readNext()) != null) {
+                Map<PColumn,byte[]> columnValues = Maps.newHashMapWithExpectedSize(nextLine.length);
+                ImmutableBytesPtr key = encoder.encode(nextLine, columnValues);
+                Map<PColumn,byte[]> existingValues = rows.put(key, columnValues);
+                if (existingValues != null) {
+                    // Like UPSERT, later values for the same row override earlier ones
+                    existingValues.putAll(columnValues);
+                    rows.put(key, existingValues);
+                } else {
+                    size += ROW_OVERHEAD + key.getLength();
+                }
+                for (byte[] value : columnValues.values()) {
+                    size += CELL_OVERHEAD + value.length;
+                }
+                rowCount++;
+                if (size >= bufferSize) {
+                    writer.write(tableRef.getTable(), rows);
+                    rows.clear();
+                    size = 0;
+                }
+            }
+            writer.write(tableRef.getTable(), rows);
+            writer.load(htable);
+            return rowCount;
+        } finally {
+            try {
+                // Known not to have existed before, so always ours to remove
+                fs.delete(outputDir, true);
+            } finally {
+                htable.close();
+            }
+        }
+    }
+    
+    /**
+     * Writes sorted rows into HFiles, starting a new HFile for each region and
+     * column family so that the HFiles normally do not need to be split when loaded.
+     */
+    private class HFileWriter {
+        private final FileSystem fs;
+        private final HTableDescriptor tableDescriptor;
+        private final byte[][] regionStartKeys;
+        private final long timestamp;
+        private final Map<byte[],StoreFile.Writer> writers = new TreeMap<byte[],StoreFile.Writer>(Bytes.BYTES_COMPARATOR);
+        private final List<KeyValue> keyValues = new ArrayList<KeyValue>();
+        private final Deque<Pair<byte[],Path>> familyPaths = new ArrayDeque<Pair<byte[],Path>>();
+        private int regionIndex;
+        
+        private HFileWriter(FileSystem fs, HTable htable, long timestamp) throws IOException {
+            this.fs = fs;
+            this.tableDescriptor = htable.getTableDescriptor();
+            this.regionStartKeys = htable.getStartKeys();
+            this.timestamp = timestamp;
+        }
+        
+        /**
+         * Hand the HFiles to the region servers hosting the regions they belong to. The
+         * region server moves the files into the region's store directories. Files are
+         * grouped by the current region boundaries on each attempt, and a region server
+         * rejects the files of a region that has split in the meantime, in which case
+         * they are grouped again and split as needed.
+         */
+        private void load(HTable htable) throws IOException {
+            logger.info("Loading {} HFiles from {} into {}", new Object[] {familyPaths.size(), outputDir, Bytes.toString(htable.getTableName())});
+            int maxAttempts = conn.getQueryServices().getConfig().getInt(HConstants.HBASE_CLIENT_RETRIES_NUMBER, HConstants.DEFAULT_HBASE_CLIENT_RETRIES_NUMBER);
+            for (int attempt = 1; !familyPaths.isEmpty(); attempt++) {
+                if (attempt > maxAttempts) {
+                    throw new IOException("Unable to bulk load " + familyPaths.size() + " HFiles from " + outputDir + " after " + maxAttempts + " attempts");
+                }
+                Pair<byte[][],byte[][]> startEndKeys = htable.getStartEndKeys();
+                Map<Integer,List<Pair<byte[],String>>> regionFamilyPaths = new TreeMap<Integer,List<Pair<byte[],String>>>();
+                while (!familyPaths.isEmpty()) {
+                    Pair<byte[],Path> familyPath = familyPaths.removeFirst();
+                    byte[][] firstLastRow = getFirstLastRow(familyPath.getSecond());
+                    if (firstLastRow == null) { // Nothing to load
+                        continue;
+                    }
+                    int index = Arrays.binarySearch(startEndKeys.getFirst(), firstLastRow[0], Bytes.BYTES_COMPARATOR);
+                    if (index < 0) {
+                        index = -(index + 1) - 1;
+                    }
+                    byte[] endKey = startEndKeys.getSecond()[index];
+                    if (endKey.length > 0 && Bytes.compareTo(firstLastRow[1], endKey) >= 0) {
+                        // The region split after the HFile was written, so split the HFile at the new boundary
+                        split(familyPath, endKey);
+                        continue;
+                    }
+                    List<Pair<byte[],String>> paths = regionFamilyPaths.get(index);
+                    if (paths == null) {
+                        regionFamilyPaths.put(index, paths = new ArrayList<Pair<byte[],String>>());
+                    }
+                    paths.add(new Pair<byte[],String>(familyPath.getFirst(), familyPath.getSecond().toString()));
+                }
+                for (Map.Entry<Integer,List<Pair<byte[],String>>> entry : regionFamilyPaths.entrySet()) {
+                    final List<Pair<byte[],String>> paths = entry.getValue();
+                    byte[] startKey = startEndKeys.getFirst()[entry.getKey()];
+                    boolean success = new ServerCallable<Boolean>(htable.getConnection(), htable.getTableName(), startKey) {
+                        @Override
+                        public Boolean call() throws Exception {
+                            return server.bulkLoadHFiles(paths, location.getRegionInfo().getRegionName());
+                        }
+                    }.withRetries();
+                    if (!success) {
+                        logger.info("Retrying bulk load of {} HFiles into region starting at {}, as it likely split", paths.size(), Bytes.toStringBinary(startKey));
+                        for (Pair<byte[],String> path : paths) {
+                            familyPaths.add(new Pair<byte[],Path>(path.getFirst(), new Path(path.getSecond())));
+                        }
+                    }
+                }
+            }
+        }
+        
+        /**
+         * @return the first and last row key of an HFile, or null if it is empty
+         */
+        private byte[][] getFirstLastRow(Path path) throws IOException {
+            Configuration config = conn.getQueryServices().getConfig();
+            HFile.Reader reader = HFile.createReader(fs, path, new CacheConfig(config));
+            try {
+                reader.loadFileInfo();
+                byte[] firstRow = reader.getFirstRowKey();
+                if (firstRow == null) {
+                    return null;
+                }
+                return new byte[][] {firstRow, reader.getLastRowKey()};
+            } finally {
+                reader.close();
+            }
+        }
+        
+        /**
+         * Replace an HFile by two HFiles holding the rows before and from the split key.
+         */
+        private void split(Pair<byte[],Path> familyPath, byte[] splitKey) throws IOException {
+            byte[] family = familyPath.getFirst();
+            Configuration config = conn.getQueryServices().getConfig();
+            HFile.Reader reader = HFile.createReader(fs, familyPath.getSecond(), new CacheConfig(config));
+            StoreFile.Writer bottomWriter = newWriter(family);
+            StoreFile.Writer topWriter = newWriter(family);
+            try {
+                HFileScanner scanner = reader.getScanner(false, false);
+                if (scanner.seekTo()) {
+                    do {
+                        KeyValue keyValue = scanner.getKeyValue();
+                        (Bytes.compareTo(keyValue.getBuffer(), keyValue.getRowOffset(), keyValue.getRowLength(), splitKey, 0, splitKey.length) < 0 ? bottomWriter : topWriter).append(keyValue);
+                    } while (scanner.next());
+                }
+            } finally {
+                reader.close();
+                closeWriter(bottomWriter);
+                closeWriter(topWriter);
+            }
+            fs.delete(familyPath.getSecond(), false);
+            familyPaths.add(new Pair<byte[],Path>(family, bottomWriter.getPath()));
+            familyPaths.add(new Pair<byte[],Path>(family, topWriter.getPath()));
+        }
+        
+        private void write(PTable table, SortedMap<ImmutableBytesPtr,Map<PColumn,byte[]>> rows) throws SQLException {
+            try {
+                regionIndex = 0;
+                for (Map.Entry<ImmutableBytesPtr,Map<PColumn,byte[]>> entry : rows.entrySet()) {
+                    ImmutableBytesPtr key = entry.getKey();
+                    int nextRegionIndex = regionIndex;
+                    while (nextRegionIndex + 1 < regionStartKeys.length && Bytes.compareTo(regionStartKeys[nextRegionIndex+1], 0, regionStartKeys[nextRegionIndex+1].length, key.get(), key.getOffset(), key.getLength()) <= 0) {
+                        nextRegionIndex++;
+                    }
+                    if (nextRegionIndex != regionIndex) {
+                        closeWriters();
+                        regionIndex = nextRegionIndex;
+                    }
+                    PRow row = table.newRow(timestamp, key);
+                    for (Map.Entry<PColumn,byte[]> valueEntry : entry.getValue().entrySet()) {
+                        row.setValue(valueEntry.getKey(), valueEntry.getValue());
+                    }
+                    keyValues.clear();
+                    for (Mutation mutation : row.toRowMutations()) {
+                        for (List<KeyValue> familyKeyValues : mutation.getFamilyMap().values()) {
+                            keyValues.addAll(familyKeyValues);
+                        }
+                    }
+                    Collections.sort(keyValues, KeyValue.COMPARATOR);
+                    for (KeyValue keyValue : keyValues) {
+                        getWriter(keyValue.getFamily()).append(keyValue);
+                    }
+                }
+                closeWriters();
+            } catch (IOException e) {
+                throw new PhoenixIOException(e);
+            }
+        }
+        
+        private StoreFile.Writer getWriter(byte[] family) throws IOException {
+            StoreFile.Writer writer = writers.get(family);
+            if (writer == null) {
+                writer = newWriter(family);
+                writers.put(family, writer);
+            }
+            return writer;
+        }
+        
+        private StoreFile.Writer newWriter(byte[] family) throws IOException {
+            HColumnDescriptor familyDescriptor = tableDescriptor.getFamily(family);
+            Configuration config = conn.getQueryServices().getConfig();
+            return new StoreFile.WriterBuilder(config, new CacheConfig(config), fs, familyDescriptor.getBlocksize())
+                .withOutputDir(new Path(outputDir, Bytes.toString(family)))
+                .withCompression(familyDescriptor.getCompression())
+                .withBloomType(familyDescriptor.getBloomFilterType())
+                .withComparator(KeyValue.COMPARATOR)
+                .build();
+        }
+        
+        private void closeWriter(StoreFile.Writer writer) throws IOException {
+            writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+            writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(false));
+            writer.appendTrackedTimestampsToMetadata();
+            writer.close();
+        }
+        
+        private void closeWriters() throws IOException {
+            for (Map.Entry<byte[],StoreFile.Writer> entry : writers.entrySet()) {
+                StoreFile.Writer writer = entry.getValue();
+                closeWriter(writer);
+                familyPaths.add(new Pair<byte[],Path>(entry.getKey(), writer.getPath()));
+            }
+            writers.clear();
+        }
+    }
+}
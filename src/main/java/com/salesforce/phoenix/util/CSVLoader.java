@@ -28,40 +28,111 @@
 package com.salesforce.phoenix.util;
 
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import au.com.bytecode.opencsv.CSVReader;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.salesforce.phoenix.compile.ColumnResolver;
+import com.salesforce.phoenix.compile.FromCompiler;
 import com.salesforce.phoenix.exception.SQLExceptionCode;
 import com.salesforce.phoenix.exception.SQLExceptionInfo;
+import com.salesforce.phoenix.execute.MutationState;
 import com.salesforce.phoenix.expression.LikeExpression;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
-import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.parse.*;
+import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.*;
 
 /***
- * Upserts CSV data using Phoenix JDBC connection
+ * Upserts CSV data using Phoenix JDBC connection. The CSV rows are read on the
+ * calling thread and handed off in batches to a configurable number of loader
+ * threads. Each loader thread encodes the fields directly into row key and
+ * key value bytes using the {@link PDataType} of the column and {@link PTable#newKey},
+ * bypassing statement compilation, and commits each batch through its own connection.
+ * If the CSV data contains more than one row for the same primary key, the columns
+ * of the rows are merged as a sequence of UPSERT statements would, with the value
+ * of the last row winning for each column. This only holds when a single loader
+ * thread is used, which is the default: with more than one, rows for the same key
+ * that fall into different batches may be committed in any order.
  * 
  * @author mchohan
  * 
  */
 public class CSVLoader {
+    private static final int COLUMN_FAMILY_POSITION = 1;
     private static final int COLUMN_NAME_POSITION = 4;
     private static final int DATA_TYPE_POSITION = 5;
+    private static final List<String[]> END_OF_INPUT = Collections.emptyList();
 
+    /**
+     * Callback used to report the progress of a CSV load. Methods may be invoked
+     * concurrently from the loader threads.
+     */
+    public static interface ProgressListener {
+        /**
+         * Called after each batch of rows is committed.
+         * @param rowCount total number of rows upserted so far
+         * @param rowsPerSecond average number of rows upserted per second so far
+         */
+        void progress(long rowCount, double rowsPerSecond);
+        /**
+         * Called once after all rows have been committed.
+         * @param rowCount total number of rows upserted
+         * @param rowsPerSecond average number of rows upserted per second
+         */
+        void complete(long rowCount, double rowsPerSecond);
+    }
+    
+    public static final ProgressListener NO_OP_PROGRESS_LISTENER = new ProgressListener() {
+        @Override
+        public void progress(long rowCount, double rowsPerSecond) {
+        }
+
+        @Override
+        public void complete(long rowCount, double rowsPerSecond) {
+        }
+    };
+    
 	private final PhoenixConnection conn;
 	private final String tableName;
     private final List<String> columns;
     private final boolean isStrict;
+    private final int threadCount;
+    private final ProgressListener listener;
     
     private int unfoundColumnCount;
 
 	public CSVLoader(PhoenixConnection conn, String tableName, List<String> columns, boolean isStrict) {
+	    this(conn, tableName, columns, isStrict, 1, NO_OP_PROGRESS_LISTENER);
+	}
+
+	/**
+	 * @param conn connection used to resolve the table. Each loader thread uses its own
+	 * connection created with the same URL and properties.
+	 * @param tableName name of table into which the data is upserted
+	 * @param columns names of the columns that the CSV fields map to, an empty list if
+	 * the first line of the CSV file contains the column names, or null if the CSV fields
+	 * map to the table columns in ordinal order
+	 * @param isStrict true to throw if a column name cannot be found and false to skip it 
+	 * @param threadCount number of threads encoding and committing rows. Use 1 to keep the
+	 * columns of rows with the same primary key merged in input order
+	 * @param listener callback through which progress is reported
+	 */
+	public CSVLoader(PhoenixConnection conn, String tableName, List<String> columns, boolean isStrict, int threadCount, ProgressListener listener) {
 		this.conn = conn;
 		this.tableName = tableName;
 		this.columns = columns;
 		this.isStrict = isStrict;
+		this.threadCount = Math.max(1, threadCount);
+		this.listener = listener;
 	}
 
 	/**
@@ -75,7 +146,11 @@ public class CSVLoader {
 	 */
 	public void upsert(String fileName) throws Exception {
 		CSVReader reader = new CSVReader(new FileReader(fileName));
-		upsert(reader);
+		try {
+		    upsert(reader);
+		} finally {
+		    reader.close();
+		}
 	}
 
 	/**
@@ -88,64 +163,223 @@ public class CSVLoader {
 	 * @throws Exception
 	 */
 	public void upsert(CSVReader reader) throws Exception {
+	    RowEncoder encoder = newRowEncoder(reader);
+		
+		int maxSize = conn.getQueryServices().getConfig().getInt(QueryServices.MAX_MUTATION_SIZE_ATTRIB,QueryServicesOptions.DEFAULT_MAX_MUTATION_SIZE);
+		int batchSize = Math.min(conn.getUpsertBatchSize(), maxSize);
+		BlockingQueue<List<String[]>> batches = new ArrayBlockingQueue<List<String[]>>(threadCount * 2);
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		List<Future<Void>> futures = Lists.newArrayListWithExpectedSize(threadCount);
+		AtomicLong rowCount = new AtomicLong();
+		long startTime = System.currentTimeMillis();
+		try {
+		    for (int i = 0; i < threadCount; i++) {
+		        futures.add(executor.submit(new Loader(encoder, maxSize, batches, rowCount, startTime)));
+		    }
+		    String[] nextLine;
+		    List<String[]> batch = Lists.newArrayListWithExpectedSize(batchSize);
+		    while ((nextLine = reader.readNext()) != null) {
+		        batch.add(nextLine);
+		        if (batch.size() == batchSize) {
+		            offer(batches, batch, futures);
+		            batch = Lists.newArrayListWithExpectedSize(batchSize);
+		        }
+		    }
+		    if (!batch.isEmpty()) {
+		        offer(batches, batch, futures);
+		    }
+		    for (int i = 0; i < threadCount; i++) {
+		        offer(batches, END_OF_INPUT, futures);
+		    }
+		    for (Future<Void> future : futures) {
+		        getResult(future);
+		    }
+		} finally {
+		    executor.shutdownNow();
+		}
+		listener.complete(rowCount.get(), rowsPerSecond(rowCount.get(), startTime));
+	}
+	
+	static double rowsPerSecond(long rowCount, long startTime) {
+	    long elapsedMs = Math.max(1, System.currentTimeMillis() - startTime);
+	    return rowCount * 1000.0 / elapsedMs;
+	}
+	
+	/**
+	 * Hand off a batch to the loader threads, waiting while the queue is full so that
+	 * the reader does not get too far ahead. Rethrows the failure of any loader thread
+	 * that has stopped, since it would otherwise never drain the queue.
+	 */
+	private static void offer(BlockingQueue<List<String[]>> batches, List<String[]> batch, List<Future<Void>> futures) throws Exception {
+	    while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+	        for (Future<Void> future : futures) {
+	            if (future.isDone()) {
+	                getResult(future);
+	            }
+	        }
+	    }
+	}
+	
+	private static void getResult(Future<Void> future) throws Exception {
+	    try {
+	        future.get();
+	    } catch (ExecutionException e) {
+	        Throwable cause = e.getCause();
+	        if (cause instanceof Exception) {
+	            throw (Exception)cause;
+	        }
+	        throw e;
+	    }
+	}
+	
+	/**
+	 * Resolves the table and the column to which each CSV field maps, reading the
+	 * column names from the first line if they are expected in-line.
+	 * @param reader CSVReader positioned at the start of the CSV data
+	 * @return the encoder for the rows that follow
+	 * @throws SQLException if the table or a column cannot be found
+	 * @throws IOException if the column names cannot be read
+	 */
+	RowEncoder newRowEncoder(CSVReader reader) throws SQLException, IOException {
 	    List<String> columns = this.columns;
 	    if (columns != null && columns.isEmpty()) {
 	        columns = Arrays.asList(reader.readNext());
 	    }
-		ColumnInfo[] columnInfo = generateColumnInfo(columns);
-        PreparedStatement stmt = null;
-        PreparedStatement[] stmtCache = null;
-		if (columns == null) {
-		    stmtCache = new PreparedStatement[columnInfo.length];
-		} else {
-		    String upsertStatement = constructUpsertStatement(columnInfo, columnInfo.length - unfoundColumnCount);
-		    stmt = conn.prepareStatement(upsertStatement);
-		}
-		String[] nextLine;
-		int rowCount = 0;
-		int upsertBatchSize = conn.getUpsertBatchSize();
-		Object upsertValue = null;
-
-		// Upsert data based on SqlType of each column
-		while ((nextLine = reader.readNext()) != null) {
-		    if (columns == null) {
-		        stmt = stmtCache[nextLine.length-1];
-		        if (stmt == null) {
-	                String upsertStatement = constructUpsertStatement(columnInfo, nextLine.length);
-	                stmt = conn.prepareStatement(upsertStatement);
-	                stmtCache[nextLine.length-1] = stmt;
-		        }
-		    }
-			for (int index = 0; index < columnInfo.length; index++) {
-			    if (columnInfo[index] == null) {
-			        continue;
-			    }
-				upsertValue = convertTypeSpecificValue(nextLine[index], columnInfo[index].getSqlType());
-				if (upsertValue != null) {
-					stmt.setObject(index + 1, upsertValue, columnInfo[index].getSqlType());
-				} else {
-					stmt.setNull(index + 1, columnInfo[index].getSqlType());
-				}
-			}
-			stmt.execute();
-
-			// Commit when batch size is reached
-			if (++rowCount % upsertBatchSize == 0) {
-				conn.commit();
-				System.out.println("Rows upserted: " + rowCount);
-			}
-		}
-		conn.commit();
-		System.out.println("CSV Upsert complete. Total number of rows upserted: " + rowCount);
+	    ColumnInfo[] columnInfo = generateColumnInfo(columns);
+	    String upsertStatement = constructUpsertStatement(columnInfo, columnInfo.length - unfoundColumnCount);
+	    UpsertStatement upsert = (UpsertStatement)new SQLParser(upsertStatement).parseStatement();
+	    ColumnResolver resolver = FromCompiler.getResolver(upsert, conn);
+	    TableRef tableRef = resolver.getTables().get(0);
+	    PTable table = tableRef.getTable();
+	    PColumn[] targetColumns = new PColumn[columnInfo.length];
+	    int[] pkSlotIndexes = new int[columnInfo.length];
+	    List<ParseNode> columnNodes = upsert.getColumns();
+	    for (int i = 0, j = 0; i < columnInfo.length; i++) {
+	        if (columnInfo[i] != null) {
+	            // Resolve the column the same way as the UPSERT statement would, taking its family into account
+	            targetColumns[i] = columnNodes.isEmpty() ? table.getColumns().get(i) : resolver.resolveColumn((ColumnParseNode)columnNodes.get(j++)).getColumn();
+	            pkSlotIndexes[i] = table.getPKColumns().indexOf(targetColumns[i]);
+	        }
+	    }
+	    return new RowEncoder(tableRef, targetColumns, pkSlotIndexes);
 	}
 	
 	/**
-	 * Gets CSV string input converted to correct type 
+	 * Encodes CSV lines into the row key and key value column values of the
+	 * target table, using the byte representation of each column type.
 	 */
-	private Object convertTypeSpecificValue(String s, Integer sqlType) throws Exception {
-	    return PDataType.fromSqlType(sqlType).toObject(s);
+	static class RowEncoder {
+	    private final TableRef tableRef;
+	    private final PColumn[] targetColumns;
+	    private final int[] pkSlotIndexes;
+	    
+	    private RowEncoder(TableRef tableRef, PColumn[] targetColumns, int[] pkSlotIndexes) {
+	        this.tableRef = tableRef;
+	        this.targetColumns = targetColumns;
+	        this.pkSlotIndexes = pkSlotIndexes;
+	    }
+	    
+	    TableRef getTableRef() {
+	        return tableRef;
+	    }
+	    
+	    /**
+	     * Encode a CSV line
+	     * @param line the CSV fields
+	     * @param columnValues map into which the values of the key value columns are put.
+	     * An empty byte array is put for a null value.
+	     * @return the row key
+	     * @throws SQLException if a field cannot be converted to its column type
+	     */
+	    ImmutableBytesPtr encode(String[] line, Map<PColumn,byte[]> columnValues) throws SQLException {
+	        PTable table = tableRef.getTable();
+	        byte[][] pkValues = new byte[table.getPKColumns().size()][];
+	        for (int index = 0; index < targetColumns.length && index < line.length; index++) {
+	            PColumn column = targetColumns[index];
+	            if (column == null) {
+	                continue;
+	            }
+	            byte[] value = toBytes(line[index], column);
+	            if (pkSlotIndexes[index] >= 0) {
+	                pkValues[pkSlotIndexes[index]] = value;
+	            } else {
+	                columnValues.put(column, value);
+	            }
+	        }
+	        ImmutableBytesPtr key = new ImmutableBytesPtr();
+	        table.newKey(key, pkValues);
+	        return key;
+	    }
 	}
-
+	
+	/**
+	 * Encodes batches of CSV rows into mutations and commits them
+	 * through a connection private to the thread.
+	 */
+	private class Loader implements Callable<Void> {
+	    private final RowEncoder encoder;
+	    private final int maxSize;
+	    private final BlockingQueue<List<String[]>> batches;
+	    private final AtomicLong rowCount;
+	    private final long startTime;
+	    
+	    private Loader(RowEncoder encoder, int maxSize, BlockingQueue<List<String[]>> batches, AtomicLong rowCount, long startTime) {
+	        this.encoder = encoder;
+	        this.maxSize = maxSize;
+	        this.batches = batches;
+	        this.rowCount = rowCount;
+	        this.startTime = startTime;
+	    }
+	    
+	    @Override
+	    public Void call() throws Exception {
+	        PhoenixConnection loaderConn = new PhoenixConnection(conn.getQueryServices(), conn.getURL(), conn.getClientInfo(), conn.getPMetaData());
+	        try {
+	            List<String[]> batch;
+	            while ((batch = batches.take()) != END_OF_INPUT) {
+	                Map<ImmutableBytesPtr,Map<PColumn,byte[]>> mutation = Maps.newHashMapWithExpectedSize(batch.size());
+	                for (String[] line : batch) {
+	                    Map<PColumn,byte[]> columnValues = Maps.newHashMapWithExpectedSize(line.length);
+	                    ImmutableBytesPtr key = encoder.encode(line, columnValues);
+	                    // Merge with an earlier row for the same key column by column, like UPSERT does
+	                    Map<PColumn,byte[]> existingValues = mutation.put(key, columnValues);
+	                    if (existingValues != null) {
+	                        existingValues.putAll(columnValues);
+	                        mutation.put(key, existingValues);
+	                    }
+	                }
+	                loaderConn.getMutationState().join(new MutationState(encoder.getTableRef(), mutation, 0, maxSize, loaderConn));
+	                loaderConn.commit();
+	                long count = rowCount.addAndGet(batch.size());
+	                listener.progress(count, rowsPerSecond(count, startTime));
+	            }
+	        } finally {
+	            loaderConn.close();
+	        }
+	        return null;
+	    }
+	}
+	
+	/**
+	 * Encodes a CSV field directly into the byte representation of the column,
+	 * coercing it to the column's max length and scale.
+	 */
+	private static byte[] toBytes(String s, PColumn column) throws SQLException {
+	    PDataType type = column.getDataType();
+	    Object value = type.toObject(s);
+	    if (value == null) {
+	        return ByteUtil.EMPTY_BYTE_ARRAY;
+	    }
+	    byte[] b = type.toBytes(value);
+	    Integer maxLength = type.getMaxLength(value);
+	    Integer scale = type.getScale(value);
+	    if (!type.isSizeCompatible(type, value, b, maxLength, column.getMaxLength(), scale, column.getScale())) {
+	        throw new SQLExceptionInfo.Builder(SQLExceptionCode.DATA_INCOMPATIBLE_WITH_TYPE)
+	            .setColumnName(column.getName().getString()).setMessage("value=" + s).build().buildException();
+	    }
+	    return type.coerceBytes(b, value, type, maxLength, scale, column.getMaxLength(), column.getScale());
+	}
+	
 	/**
 	 * Get array of ColumnInfos that contain Column Name and its associated
 	 * PDataType
@@ -156,7 +390,8 @@ public class CSVLoader {
 	 */
 	private ColumnInfo[] generateColumnInfo(List<String> columns)
 			throws SQLException {
-	    Map<String,Integer> columnNameToTypeMap = Maps.newLinkedHashMap();
+	    List<ColumnInfo> allColumns = Lists.newArrayList();
+	    Map<String,Integer> columnNameToTypeMap = Maps.newHashMap();
         DatabaseMetaData dbmd = conn.getMetaData();
         // TODO: escape wildcard characters here because we don't want that behavior here
         String escapedTableName = LikeExpression.escapeLike(tableName);
@@ -165,15 +400,19 @@ public class CSVLoader {
                         (schemaAndTable.length == 1 ? escapedTableName : schemaAndTable[1]),
                         null);
         while (rs.next()) {
-            columnNameToTypeMap.put(rs.getString(COLUMN_NAME_POSITION), rs.getInt(DATA_TYPE_POSITION));
+            String familyName = rs.getString(COLUMN_FAMILY_POSITION);
+            String columnName = rs.getString(COLUMN_NAME_POSITION);
+            int sqlType = rs.getInt(DATA_TYPE_POSITION);
+            allColumns.add(new ColumnInfo(columnName, sqlType));
+            // Allow a key value column to be referenced with or without its family name
+            columnNameToTypeMap.put(columnName, sqlType);
+            if (familyName != null) {
+                columnNameToTypeMap.put(familyName + QueryConstants.NAME_SEPARATOR + columnName, sqlType);
+            }
         }
         ColumnInfo[] columnType;
 	    if (columns == null) {
-            int i = 0;
-            columnType = new ColumnInfo[columnNameToTypeMap.size()];
-            for (Map.Entry<String, Integer> entry : columnNameToTypeMap.entrySet()) {
-                columnType[i++] = new ColumnInfo(entry.getKey(),entry.getValue());
-            }
+            columnType = allColumns.toArray(new ColumnInfo[allColumns.size()]);
 	    } else {
             // Leave "null" as indication to skip b/c it doesn't exist
             columnType = new ColumnInfo[columns.size()];
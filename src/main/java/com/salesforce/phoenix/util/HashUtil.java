@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+
+/**
+ * Utility methods for hashing byte arrays.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class HashUtil {
+    private static final long MURMUR_SEED = 0xe17a1465L;
+    private static final long MURMUR_MULTIPLIER = 0xc6a4a7935bd1e995L;
+    private static final int MURMUR_SHIFT = 47;
+
+    private HashUtil() {
+    }
+    
+    /**
+     * 64-bit MurmurHash2 (MurmurHash64A) of a byte range, with the finalizer of MurmurHash3,
+     * so that every bit of the hash is well distributed, even for short values.
+     * @param b the byte array
+     * @param offset the offset of the range to hash
+     * @param length the length of the range to hash
+     * @return the 64-bit hash
+     */
+    public static long hash64(byte[] b, int offset, int length) {
+        long h = MURMUR_SEED ^ (length * MURMUR_MULTIPLIER);
+        int nBlocks = length >>> 3;
+        for (int i = 0; i < nBlocks; i++) {
+            int o = offset + (i << 3);
+            long k = (b[o] & 0xffL)
+                | ((b[o + 1] & 0xffL) << 8)
+                | ((b[o + 2] & 0xffL) << 16)
+                | ((b[o + 3] & 0xffL) << 24)
+                | ((b[o + 4] & 0xffL) << 32)
+                | ((b[o + 5] & 0xffL) << 40)
+                | ((b[o + 6] & 0xffL) << 48)
+                | ((b[o + 7] & 0xffL) << 56);
+            k *= MURMUR_MULTIPLIER;
+            k ^= k >>> MURMUR_SHIFT;
+            k *= MURMUR_MULTIPLIER;
+            h ^= k;
+            h *= MURMUR_MULTIPLIER;
+        }
+        int tail = offset + (nBlocks << 3);
+        switch (length & 7) {
+        case 7: h ^= (b[tail + 6] & 0xffL) << 48;
+        case 6: h ^= (b[tail + 5] & 0xffL) << 40;
+        case 5: h ^= (b[tail + 4] & 0xffL) << 32;
+        case 4: h ^= (b[tail + 3] & 0xffL) << 24;
+        case 3: h ^= (b[tail + 2] & 0xffL) << 16;
+        case 2: h ^= (b[tail + 1] & 0xffL) << 8;
+        case 1: h ^= (b[tail] & 0xffL);
+            h *= MURMUR_MULTIPLIER;
+        }
+        // Mix the bits further, as short values like an INTEGER would otherwise not spread out the top bits enough
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+
+/**
+ * Utility methods for HyperLogLog sketches used to estimate the number of distinct values.
+ * A sketch is a byte array of {@link #REGISTER_COUNT} registers, each holding the maximum
+ * rank seen for the hashes that map to it. Since registers are only ever replaced by a
+ * larger rank, two sketches are merged by taking the maximum of each register, which
+ * allows partial sketches from each region to be combined on the client.
+ * 
+ * With {@link #PRECISION} bits of the hash used to pick a register, the standard error
+ * of the estimate is 1.04 / sqrt({@link #REGISTER_COUNT}), about 1.15%.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class HyperLogLogUtil {
+    public static final int PRECISION = 13;
+    public static final int REGISTER_COUNT = 1 << PRECISION;
+    private static final double ALPHA_MM = 0.7213 / (1 + 1.079 / REGISTER_COUNT) * REGISTER_COUNT * REGISTER_COUNT;
+
+    private HyperLogLogUtil() {
+    }
+    
+    /**
+     * @return a new sketch with no values added
+     */
+    public static byte[] newSketch() {
+        return new byte[REGISTER_COUNT];
+    }
+    
+    /**
+     * Add the hash of a value to a sketch
+     * @param sketch the sketch to update
+     * @param b the bytes of the value
+     * @param offset the offset of the value
+     * @param length the length of the value
+     */
+    public static void add(byte[] sketch, byte[] b, int offset, int length) {
+        long hash = HashUtil.hash64(b, offset, length);
+        int index = (int)(hash >>> (Long.SIZE - PRECISION));
+        // Rank is the position of the first one bit in the remaining bits, capped for when they're all zero
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION), Long.SIZE - PRECISION) + 1;
+        if (rank > sketch[index]) {
+            sketch[index] = (byte)rank;
+        }
+    }
+    
+    /**
+     * Merge a serialized sketch into another sketch
+     * @param sketch the sketch to update
+     * @param b the bytes of the sketch to merge in
+     * @param offset the offset of the sketch to merge in
+     * @param length the length of the sketch to merge in, which must be {@link #REGISTER_COUNT}
+     */
+    public static void merge(byte[] sketch, byte[] b, int offset, int length) {
+        if (length != REGISTER_COUNT) {
+            throw new IllegalArgumentException("Expected sketch of " + REGISTER_COUNT + " bytes, but got " + length);
+        }
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            byte rank = b[offset + i];
+            if (rank > sketch[i]) {
+                sketch[i] = rank;
+            }
+        }
+    }
+    
+    /**
+     * Estimate the number of distinct values added to a serialized sketch
+     * @param b the bytes of the sketch
+     * @param offset the offset of the sketch
+     * @param length the length of the sketch, which must be {@link #REGISTER_COUNT}
+     * @return the estimated number of distinct values
+     */
+    public static long estimate(byte[] b, int offset, int length) {
+        if (length != REGISTER_COUNT) {
+            throw new IllegalArgumentException("Expected sketch of " + REGISTER_COUNT + " bytes, but got " + length);
+        }
+        double sum = 0;
+        int zeroCount = 0;
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            byte rank = b[offset + i];
+            if (rank == 0) {
+                zeroCount++;
+            }
+            sum += 1.0 / (1L << rank);
+        }
+        double estimate = ALPHA_MM / sum;
+        // Use linear counting for small cardinalities, where the raw estimate is biased.
+        // No correction is needed for large cardinalities, since the hash is 64 bits.
+        if (estimate <= 2.5 * REGISTER_COUNT && zeroCount > 0) {
+            estimate = REGISTER_COUNT * Math.log((double)REGISTER_COUNT / zeroCount);
+        }
+        return Math.round(estimate);
+    }
+}
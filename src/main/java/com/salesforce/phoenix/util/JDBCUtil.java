@@ -33,6 +33,7 @@ import java.util.Properties;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import com.salesforce.phoenix.job.JobManager;
 import com.salesforce.phoenix.query.QueryServices;
 import com.salesforce.phoenix.query.QueryServicesOptions;
 
@@ -94,6 +95,11 @@ public class JDBCUtil {
         return (batchSizeStr == null ? config.getInt(QueryServices.MUTATE_BATCH_SIZE_ATTRIB, config.getInt(QueryServices.UPSERT_BATCH_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MUTATE_BATCH_SIZE)) : Integer.parseInt(batchSizeStr));
     }
 
+    public static int getQueryPriority(String url, Properties info) throws SQLException {
+        String priorityStr = findProperty(url, info, PhoenixRuntime.QUERY_PRIORITY_ATTRIB);
+        return (priorityStr == null ? JobManager.DEFAULT_PRIORITY : Integer.parseInt(priorityStr));
+    }
+
     public static byte[] getTenantId(String url, Properties info) throws SQLException {
         String tenantId = findProperty(url, info, PhoenixRuntime.TENANT_ID_ATTRIB);
         return (tenantId == null ? null : Bytes.toBytes(tenantId));
@@ -29,6 +29,8 @@ package com.salesforce.phoenix.util;
 
 import java.math.*;
 
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+
 import com.salesforce.phoenix.schema.PDataType;
 
 /**
@@ -38,6 +40,13 @@ import com.salesforce.phoenix.schema.PDataType;
  * @since 0.1
  */
 public class NumberUtil {
+    private static final long[] LONG_POWERS_OF_TEN = new long[19];
+    static {
+        LONG_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < LONG_POWERS_OF_TEN.length; i++) {
+            LONG_POWERS_OF_TEN[i] = LONG_POWERS_OF_TEN[i-1] * 10;
+        }
+    }
 
     /**
      * Strip all trailing zeros to ensure that no digit will be zero and
@@ -57,4 +66,80 @@ public class NumberUtil {
         decimal = decimal.setScale(scale, BigDecimal.ROUND_DOWN);
         return decimal;
     }
+
+    /**
+     * Decode a numeric value of the given type into its unscaled long value and scale,
+     * without creating a {@link BigDecimal}.
+     * @param unscaledAndScale two element array into which the unscaled value and the scale are stored.
+     * @return false if the value cannot be represented this way, in which case the caller
+     * must fall back to {@link BigDecimal} arithmetic.
+     */
+    public static boolean toUnscaledLong(ImmutableBytesWritable ptr, PDataType type, long[] unscaledAndScale) {
+        switch (type) {
+        case DECIMAL:
+            return PDataType.toUnscaledLong(ptr.get(), ptr.getOffset(), ptr.getLength(), unscaledAndScale);
+        case LONG:
+        case INTEGER:
+        case UNSIGNED_LONG:
+        case UNSIGNED_INT:
+            unscaledAndScale[0] = type.getCodec().decodeLong(ptr);
+            unscaledAndScale[1] = 0;
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Add an unscaled decimal value to the one held in sum, rescaling to the larger
+     * of the two scales as {@link BigDecimal#add(BigDecimal)} does.
+     * @param sum two element array holding the unscaled value and the scale, updated in place.
+     * @return false if the result does not fit into a long, in which case sum is left unchanged.
+     */
+    public static boolean addUnscaled(long[] sum, long unscaled, int scale) {
+        long lhs = sum[0];
+        int resultScale = (int)sum[1];
+        long rhs = unscaled;
+        if (resultScale < scale) {
+            if (!canRescale(lhs, scale - resultScale)) {
+                return false;
+            }
+            lhs *= LONG_POWERS_OF_TEN[scale - resultScale];
+            resultScale = scale;
+        } else if (scale < resultScale) {
+            if (!canRescale(rhs, resultScale - scale)) {
+                return false;
+            }
+            rhs *= LONG_POWERS_OF_TEN[resultScale - scale];
+        }
+        long result = lhs + rhs;
+        if (((lhs ^ result) & (rhs ^ result)) < 0) { // overflow
+            return false;
+        }
+        sum[0] = result;
+        sum[1] = resultScale;
+        return true;
+    }
+
+    /**
+     * Multiply the unscaled decimal value held in product by another one. As with
+     * {@link BigDecimal#multiply(BigDecimal)}, the resulting scale is the sum of both scales.
+     * @param product two element array holding the unscaled value and the scale, updated in place.
+     * @return false if the result does not fit into a long, in which case product is left unchanged.
+     */
+    public static boolean multiplyUnscaled(long[] product, long unscaled, int scale) {
+        long lhs = product[0];
+        long result = lhs * unscaled;
+        if (lhs != 0 && (result / lhs != unscaled || (lhs == -1 && unscaled == Long.MIN_VALUE))) { // overflow
+            return false;
+        }
+        product[0] = result;
+        product[1] += scale;
+        return true;
+    }
+
+    private static boolean canRescale(long unscaled, int by) {
+        return by < LONG_POWERS_OF_TEN.length && unscaled != Long.MIN_VALUE
+                && Math.abs(unscaled) <= Long.MAX_VALUE / LONG_POWERS_OF_TEN[by];
+    }
 }
@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.util.*;
+
+/**
+ * Immutable map based on a hash array mapped trie. Adding or removing an entry
+ * through {@link #plus(Object, Object)} and {@link #minus(Object)} returns a new
+ * map that shares all untouched nodes with this one, so an update costs
+ * O(log32 n) instead of the O(n) copy required by {@link com.google.common.collect.ImmutableMap}.
+ * All of the {@link java.util.Map} mutation methods throw {@link UnsupportedOperationException}.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public final class PersistentHashMap<K,V> extends AbstractMap<K,V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Map.Entry<K,V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K,V> PersistentHashMap<K,V> of() {
+        return EMPTY;
+    }
+
+    public static <K,V> PersistentHashMap<K,V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentHashMap) {
+            @SuppressWarnings("unchecked")
+            PersistentHashMap<K,V> persistentMap = (PersistentHashMap<K,V>)map;
+            return persistentMap;
+        }
+        PersistentHashMap<K,V> persistentMap = of();
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            persistentMap = persistentMap.plus(entry.getKey(), entry.getValue());
+        }
+        return persistentMap;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        // Spread the bits, since the lower bits are used for the first level of the trie
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null || root == null) {
+            return null;
+        }
+        Leaf leaf = root.find(key, hash(key), 0);
+        return leaf == null ? null : (V)leaf.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && root != null && root.find(key, hash(key), 0) != null;
+    }
+
+    /**
+     * @return a map containing all entries of this map plus the given key value pair,
+     * replacing any existing value for the key. This map is not modified.
+     */
+    public PersistentHashMap<K,V> plus(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        Leaf leaf = new Leaf(hash(key), key, value);
+        if (root == null) {
+            return new PersistentHashMap<K,V>(leaf, 1);
+        }
+        boolean[] replaced = new boolean[1];
+        Node newRoot = root.put(leaf, 0, replaced);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<K,V>(newRoot, replaced[0] ? size : size + 1);
+    }
+
+    /**
+     * @return a map containing all entries of this map except the one for the
+     * given key. If the key is not present, this map is returned.
+     */
+    public PersistentHashMap<K,V> minus(Object key) {
+        if (key == null || root == null) {
+            return this;
+        }
+        Node newRoot = root.remove(key, hash(key), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return of();
+        }
+        return new PersistentHashMap<K,V>(newRoot, size - 1);
+    }
+
+    @Override
+    public Set<Map.Entry<K,V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<K,V>>() {
+                @Override
+                public Iterator<Map.Entry<K,V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private static abstract class Node {
+        abstract Leaf find(Object key, int hash, int shift);
+        abstract Node put(Leaf leaf, int shift, boolean[] replaced);
+        abstract Node remove(Object key, int hash, int shift);
+        abstract int childCount();
+        abstract Node child(int index);
+    }
+
+    private static Node merge(Node existing, int existingHash, Leaf leaf, int shift) {
+        int existingIndex = (existingHash >>> shift) & MASK;
+        int index = (leaf.hash >>> shift) & MASK;
+        if (existingIndex == index) {
+            return new Branch(1 << index, new Node[] {merge(existing, existingHash, leaf, shift + BITS)});
+        }
+        Node[] children = existingIndex < index ? new Node[] {existing, leaf} : new Node[] {leaf, existing};
+        return new Branch((1 << existingIndex) | (1 << index), children);
+    }
+
+    private static final class Leaf extends Node implements Map.Entry<Object,Object> {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+
+        private Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        Leaf find(Object key, int hash, int shift) {
+            return this.hash == hash && this.key.equals(key) ? this : null;
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift, boolean[] replaced) {
+            if (this.hash == leaf.hash) {
+                if (this.key.equals(leaf.key)) {
+                    if (this.value == leaf.value) {
+                        return this;
+                    }
+                    replaced[0] = true;
+                    return leaf;
+                }
+                return new Collision(hash, new Leaf[] {this, leaf});
+            }
+            return merge(this, hash, leaf, shift);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            return find(key, hash, shift) == null ? this : null;
+        }
+
+        @Override
+        int childCount() {
+            return 0;
+        }
+
+        @Override
+        Node child(int index) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?,?> that = (Map.Entry<?,?>)obj;
+            return key.equals(that.getKey()) && value.equals(that.getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * Holds entries whose keys are not equal but whose full hash codes are.
+     */
+    private static final class Collision extends Node {
+        private final int hash;
+        private final Leaf[] leaves;
+
+        private Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].key.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Leaf find(Object key, int hash, int shift) {
+            if (this.hash != hash) {
+                return null;
+            }
+            int i = indexOf(key);
+            return i < 0 ? null : leaves[i];
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift, boolean[] replaced) {
+            if (this.hash != leaf.hash) {
+                return merge(this, hash, leaf, shift);
+            }
+            int i = indexOf(leaf.key);
+            Leaf[] newLeaves;
+            if (i < 0) {
+                newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+                newLeaves[leaves.length] = leaf;
+            } else {
+                if (leaves[i].value == leaf.value) {
+                    return this;
+                }
+                newLeaves = leaves.clone();
+                newLeaves[i] = leaf;
+                replaced[0] = true;
+            }
+            return new Collision(hash, newLeaves);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            if (this.hash != hash) {
+                return this;
+            }
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            if (leaves.length == 2) {
+                return leaves[1 - i];
+            }
+            Leaf[] newLeaves = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, i);
+            System.arraycopy(leaves, i + 1, newLeaves, i, newLeaves.length - i);
+            return new Collision(hash, newLeaves);
+        }
+
+        @Override
+        int childCount() {
+            return leaves.length;
+        }
+
+        @Override
+        Node child(int index) {
+            return leaves[index];
+        }
+    }
+
+    private static final class Branch extends Node {
+        private final int bitmap;
+        private final Node[] children;
+
+        private Branch(int bitmap, Node[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        private int indexOf(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Leaf find(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            return children[indexOf(bit)].find(key, hash, shift + BITS);
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift, boolean[] replaced) {
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int index = indexOf(bit);
+            if ((bitmap & bit) == 0) {
+                Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, index);
+                newChildren[index] = leaf;
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+                return new Branch(bitmap | bit, newChildren);
+            }
+            Node child = children[index];
+            Node newChild = child.put(leaf, shift + BITS, replaced);
+            if (newChild == child) {
+                return this;
+            }
+            Node[] newChildren = children.clone();
+            newChildren[index] = newChild;
+            return new Branch(bitmap, newChildren);
+        }
+
+        @Override
+        Node remove(Object key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = indexOf(bit);
+            Node child = children[index];
+            Node newChild = child.remove(key, hash, shift + BITS);
+            if (newChild == child) {
+                return this;
+            }
+            if (newChild == null) {
+                if (children.length == 1) {
+                    return null;
+                }
+                // Collapse a branch left with a single leaf so lookups stay shallow
+                if (children.length == 2 && !(children[1 - index] instanceof Branch)) {
+                    return children[1 - index];
+                }
+                Node[] newChildren = new Node[children.length - 1];
+                System.arraycopy(children, 0, newChildren, 0, index);
+                System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+                return new Branch(bitmap & ~bit, newChildren);
+            }
+            if (children.length == 1 && !(newChild instanceof Branch)) {
+                return newChild;
+            }
+            Node[] newChildren = children.clone();
+            newChildren[index] = newChild;
+            return new Branch(bitmap, newChildren);
+        }
+
+        @Override
+        int childCount() {
+            return children.length;
+        }
+
+        @Override
+        Node child(int index) {
+            return children[index];
+        }
+    }
+
+    /**
+     * Depth first traversal of the trie. The depth is bounded by the number of
+     * hash bits divided by the bits per level, plus one for a collision node.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K,V>> {
+        private final Node[] nodes = new Node[(Integer.SIZE + BITS - 1) / BITS + 2];
+        private final int[] positions = new int[nodes.length];
+        private int depth = -1;
+        private Leaf next;
+
+        private EntryIterator() {
+            if (root != null) {
+                push(root);
+                advance();
+            }
+        }
+
+        private void push(Node node) {
+            if (node instanceof Leaf) {
+                next = (Leaf)node;
+            } else {
+                nodes[++depth] = node;
+                positions[depth] = 0;
+            }
+        }
+
+        private void advance() {
+            while (next == null && depth >= 0) {
+                Node node = nodes[depth];
+                if (positions[depth] == node.childCount()) {
+                    nodes[depth--] = null;
+                } else {
+                    push(node.child(positions[depth]++));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K,V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K,V> entry = (Map.Entry<K,V>)(Map.Entry<?,?>)next;
+            next = null;
+            advance();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -31,12 +31,15 @@ import java.io.*;
 import java.sql.*;
 import java.util.*;
 
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Mutation;
 
 import com.google.common.collect.Lists;
+import com.salesforce.phoenix.compile.QueryMetrics;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.jdbc.PhoenixDriver;
+import com.salesforce.phoenix.jdbc.PhoenixResultSet;
 
 /**
  * 
@@ -82,6 +85,14 @@ public class PhoenixRuntime {
      */
     public static final String TENANT_ID_ATTRIB = "TenantId";
 
+    /**
+     * Use this connection property to prioritize the queries of a connection.
+     * The scans of queries with a higher priority are run on the client thread
+     * pool before those of queries with a lower priority. Defaults to
+     * {@link com.salesforce.phoenix.job.JobManager#DEFAULT_PRIORITY}.
+     */
+    public static final String QUERY_PRIORITY_ATTRIB = "QueryPriority";
+
     /**
      * Use this as the zookeeper quorum name to have a connection-less connection. This enables
      * Phoenix-compatible HFiles to be created in a map/reduce job by creating tables,
@@ -92,12 +103,26 @@ public class PhoenixRuntime {
     private static final String TABLE_OPTION = "-t";
     private static final String HEADER_OPTION = "-h";
     private static final String STRICT_OPTION = "-s";
+    private static final String THREADS_OPTION = "-n";
+    private static final String BULK_LOAD_OPTION = "-b";
     private static final String HEADER_IN_LINE = "in-line";
     private static final String SQL_FILE_EXT = ".sql";
     private static final String CSV_FILE_EXT = ".csv";
     
+    private static final CSVLoader.ProgressListener CONSOLE_PROGRESS_LISTENER = new CSVLoader.ProgressListener() {
+        @Override
+        public void progress(long rowCount, double rowsPerSecond) {
+            System.out.println("Rows upserted: " + rowCount + " (" + Math.round(rowsPerSecond) + " rows/sec)");
+        }
+
+        @Override
+        public void complete(long rowCount, double rowsPerSecond) {
+            System.out.println("CSV Upsert complete. Total number of rows upserted: " + rowCount + " (" + Math.round(rowsPerSecond) + " rows/sec)");
+        }
+    };
+    
     private static void usageError() {
-        System.err.println("Usage: psql [-t table-name] [-h comma-separated-column-names | in-line] <zookeeper>  <path-to-sql-or-csv-file>...\n" +
+        System.err.println("Usage: psql [-t table-name] [-h comma-separated-column-names | in-line] [-s] [-n thread-count] [-b hfile-output-dir] <zookeeper>  <path-to-sql-or-csv-file>...\n" +
                 "  By default, the name of the CSV file is used to determine the Phoenix table into which the CSV data is loaded\n" +
                 "  and the ordinal value of the columns determines the mapping.\n" +
                 "  -t overrides the table into which the CSV data is loaded\n" +
@@ -105,6 +130,9 @@ public class PhoenixRuntime {
                 "     A special value of in-line indicating that the first line of the CSV file\n" +
                 "     determines the column to which the data maps.\n" +
                 "  -s uses strict mode by throwing an exception if a column name doesn't match during CSV loading.\n" +
+                "  -n sets the number of threads used to load the CSV data. Defaults to 1.\n" +
+                "     With more than one thread, the columns of CSV rows with the same primary key may not be merged in file order.\n" +
+                "  -b bulk loads the CSV data by writing HFiles into the given directory and handing them to the region servers.\n" +
                 "Examples:\n" +
                 "  psql localhost my_ddl.sql\n" +
                 "  psql localhost my_ddl.sql my_table.csv\n" +
@@ -130,6 +158,8 @@ public class PhoenixRuntime {
             String tableName = null;
             List<String> columns = null;
             boolean isStrict = false;
+            int threadCount = 1;
+            String bulkLoadDir = null;
 
             int i = 0;
             for (; i < args.length; i++) {
@@ -154,6 +184,16 @@ public class PhoenixRuntime {
                     }
                 } else if (STRICT_OPTION.equals(args[i])) {
                     isStrict = true;
+                } else if (THREADS_OPTION.equals(args[i])) {
+                    if (++i == args.length) {
+                        usageError();
+                    }
+                    threadCount = Integer.parseInt(args[i]);
+                } else if (BULK_LOAD_OPTION.equals(args[i])) {
+                    if (++i == args.length || bulkLoadDir != null) {
+                        usageError();
+                    }
+                    bulkLoadDir = args[i];
                 } else {
                     break;
                 }
@@ -175,8 +215,14 @@ public class PhoenixRuntime {
                     if (tableName == null) {
                         tableName = fileName.substring(fileName.lastIndexOf(File.separatorChar) + 1, fileName.length()-CSV_FILE_EXT.length());
                     }
-                    CSVLoader csvLoader = new CSVLoader(conn, tableName, columns, isStrict);
-                    csvLoader.upsert(fileName);
+                    if (bulkLoadDir == null) {
+                        CSVLoader csvLoader = new CSVLoader(conn, tableName, columns, isStrict, threadCount, CONSOLE_PROGRESS_LISTENER);
+                        csvLoader.upsert(fileName);
+                    } else {
+                        CSVBulkLoader csvBulkLoader = new CSVBulkLoader(conn, tableName, columns, isStrict, new Path(bulkLoadDir));
+                        long rowCount = csvBulkLoader.load(fileName);
+                        System.out.println("CSV bulk load complete. Total number of rows loaded: " + rowCount);
+                    }
                 } else {
                     usageError();
                 }
@@ -237,4 +283,17 @@ public class PhoenixRuntime {
         Collections.sort(keyValues, KeyValue.COMPARATOR);
         return keyValues;
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the counters collected while compiling and executing the query that produced
+     * a result set, for example the rows and bytes scanned per split and the time spent
+     * in each stage of execution. The counters are updated as the result set is iterated,
+     * so they are complete once the result set has been exhausted.
+     * @param rs a result set returned by a Phoenix statement
+     * @return the metrics of the query
+     * @throws SQLException if the result set is not a Phoenix result set
+     */
+    public static QueryMetrics getQueryMetrics(ResultSet rs) throws SQLException {
+        return rs.unwrap(PhoenixResultSet.class).getQueryMetrics();
+    }
+}
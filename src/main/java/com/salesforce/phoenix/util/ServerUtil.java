@@ -28,13 +28,42 @@
 package com.salesforce.phoenix.util;
 
 import java.io.IOException;
+import java.sql.SQLException;
 
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 
+import com.salesforce.phoenix.exception.*;
+
 public class ServerUtil {
+    private static final String TIMED_OUT_PREFIX = "ERROR " + SQLExceptionCode.OPERATION_TIMED_OUT.getErrorCode()
+            + " (" + SQLExceptionCode.OPERATION_TIMED_OUT.getSQLState() + ")";
+    
     private ServerUtil() {
     }
     
+    /**
+     * Unwraps the failure of a parallel scan into the SQLException that caused it. The cause
+     * of an exception thrown on a region server doesn't survive the RPC, so an
+     * {@link SQLExceptionCode#OPERATION_TIMED_OUT} raised by a server is recognized by its message.
+     * @param t the failure, typically the ExecutionException of a scan's future
+     * @return the SQLException to throw to the client
+     */
+    public static SQLException parseServerException(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && !(cause instanceof PhoenixIOException)) {
+                return (SQLException)cause;
+            }
+        }
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            String msg = cause.getMessage();
+            if (msg != null && msg.contains(TIMED_OUT_PREFIX)) {
+                return new SQLExceptionInfo.Builder(SQLExceptionCode.OPERATION_TIMED_OUT)
+                    .setMessage("Scan abandoned by region server").setRootCause(t).build().buildException();
+            }
+        }
+        return t instanceof SQLException ? (SQLException)t : new SQLException(t);
+    }
+    
     public static void throwIOException(String msg, Throwable t) throws IOException {
         if (t instanceof DoNotRetryIOException) {
             throw (DoNotRetryIOException)t;
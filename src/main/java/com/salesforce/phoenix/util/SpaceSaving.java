@@ -0,0 +1,274 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.Maps;
+
+
+/**
+ * 
+ * Mergeable sketch used to find the most frequent values, based on the Space-Saving
+ * algorithm of Metwally et al. At most {@link #getCapacity()} values are counted.
+ * Once full, a new value replaces the value with the smallest count and inherits
+ * that count as its possible overestimation. The count of a value is therefore never
+ * underestimated, and any value occurring more than total / capacity times is
+ * guaranteed to be counted.
+ * 
+ * Counters are kept in a min heap by count, so that a value is counted or replaced
+ * in logarithmic time.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class SpaceSaving {
+    
+    /**
+     * A value with its estimated count, which is at most error larger than its actual count
+     */
+    public static class Counter {
+        private final ImmutableBytesPtr value;
+        private long count;
+        private long error;
+        private int index;
+        
+        private Counter(ImmutableBytesPtr value, long count, long error) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+        }
+        
+        public ImmutableBytesPtr getValue() {
+            return value;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public long getError() {
+            return error;
+        }
+    }
+    
+    private static final Comparator<Counter> DESCENDING_COUNT_COMPARATOR = new Comparator<Counter>() {
+        @Override
+        public int compare(Counter o1, Counter o2) {
+            return o1.count > o2.count ? -1 : o1.count < o2.count ? 1 : 0;
+        }
+    };
+    
+    private final int capacity;
+    private final Map<ImmutableBytesPtr,Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private final ImmutableBytesPtr lookupPtr = new ImmutableBytesPtr();
+    
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.counters = Maps.newHashMapWithExpectedSize(capacity);
+        this.heap = new Counter[capacity];
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * Count an occurrence of a value. The bytes are copied if the value is not counted yet.
+     */
+    public void add(byte[] b, int offset, int length) {
+        lookupPtr.set(b, offset, length);
+        Counter counter = counters.get(lookupPtr);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.index);
+            return;
+        }
+        byte[] value = new byte[length];
+        System.arraycopy(b, offset, value, 0, length);
+        if (size < capacity) {
+            counter = new Counter(new ImmutableBytesPtr(value), 1, 0);
+            counters.put(counter.value, counter);
+            counter.index = size;
+            heap[size++] = counter;
+            siftUp(counter.index);
+        } else {
+            // Replace the value with the smallest count
+            Counter min = heap[0];
+            counters.remove(min.value);
+            counter = new Counter(new ImmutableBytesPtr(value), min.count + 1, min.count);
+            counters.put(counter.value, counter);
+            counter.index = 0;
+            heap[0] = counter;
+            siftDown(0);
+        }
+    }
+    
+    /**
+     * Merge in a sketch serialized by {@link #toBytes()}. Since a value missing from a full sketch
+     * may have occurred as often as the smallest count of that sketch, that count is added to such
+     * values, which keeps the counts from being underestimated.
+     */
+    public void merge(byte[] b, int offset, int length) {
+        List<Counter> others = fromBytes(b, offset, length);
+        long otherMinCount = 0;
+        if (others.size() >= capacity) {
+            otherMinCount = Long.MAX_VALUE;
+            for (Counter other : others) {
+                otherMinCount = Math.min(otherMinCount, other.count);
+            }
+        }
+        long minCount = size >= capacity ? heap[0].count : 0;
+        List<Counter> merged = new ArrayList<Counter>(size + others.size());
+        for (Counter other : others) {
+            Counter counter = counters.remove(other.value);
+            if (counter == null) {
+                merged.add(new Counter(other.value, other.count + minCount, other.error + minCount));
+            } else {
+                merged.add(new Counter(other.value, other.count + counter.count, other.error + counter.error));
+            }
+        }
+        for (Counter counter : counters.values()) {
+            merged.add(new Counter(counter.value, counter.count + otherMinCount, counter.error + otherMinCount));
+        }
+        Collections.sort(merged, DESCENDING_COUNT_COMPARATOR);
+        counters.clear();
+        size = 0;
+        for (int i = 0; i < merged.size() && size < capacity; i++) {
+            Counter counter = merged.get(i);
+            counters.put(counter.value, counter);
+            counter.index = size;
+            heap[size++] = counter;
+            siftUp(counter.index);
+        }
+    }
+    
+    /**
+     * @return the counted values ordered from the most to the least frequent
+     */
+    public List<Counter> getCounters() {
+        List<Counter> sorted = new ArrayList<Counter>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(heap[i]);
+        }
+        Collections.sort(sorted, DESCENDING_COUNT_COMPARATOR);
+        return sorted;
+    }
+    
+    /**
+     * @return the compact serialized form of the sketch, which may be merged into another
+     * through {@link #merge(byte[], int, int)}
+     */
+    public byte[] toBytes() {
+        TrustedByteArrayOutputStream stream = new TrustedByteArrayOutputStream(1 + size * 16);
+        DataOutputStream output = new DataOutputStream(stream);
+        try {
+            WritableUtils.writeVInt(output, size);
+            for (int i = 0; i < size; i++) {
+                Counter counter = heap[i];
+                WritableUtils.writeVInt(output, counter.value.getLength());
+                output.write(counter.value.get(), counter.value.getOffset(), counter.value.getLength());
+                WritableUtils.writeVLong(output, counter.count);
+                WritableUtils.writeVLong(output, counter.error);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+        return stream.toByteArray();
+    }
+    
+    private static List<Counter> fromBytes(byte[] b, int offset, int length) {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(b, offset, length));
+        try {
+            int n = WritableUtils.readVInt(input);
+            List<Counter> counters = new ArrayList<Counter>(n);
+            for (int i = 0; i < n; i++) {
+                byte[] value = new byte[WritableUtils.readVInt(input)];
+                input.readFully(value);
+                long count = WritableUtils.readVLong(input);
+                long error = WritableUtils.readVLong(input);
+                counters.add(new Counter(new ImmutableBytesPtr(value), count, error));
+            }
+            return counters;
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+    
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parentIndex = (index - 1) >>> 1;
+            Counter parent = heap[parentIndex];
+            if (parent.count <= counter.count) {
+                break;
+            }
+            heap[index] = parent;
+            parent.index = index;
+            index = parentIndex;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+    
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int childIndex = 2 * index + 1;
+            Counter child = heap[childIndex];
+            int rightIndex = childIndex + 1;
+            if (rightIndex < size && heap[rightIndex].count < child.count) {
+                child = heap[childIndex = rightIndex];
+            }
+            if (counter.count <= child.count) {
+                break;
+            }
+            heap[index] = child;
+            child.index = index;
+            index = childIndex;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+    
+    /**
+     * @return the estimated size in bytes of a sketch with the given capacity, assuming
+     * values of the given average size
+     */
+    public static int getSize(int capacity, int averageValueSize) {
+        int counterSize = SizedUtil.OBJECT_SIZE + 2 * SizedUtil.LONG_SIZE + SizedUtil.INT_SIZE + SizedUtil.POINTER_SIZE
+                + SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE + SizedUtil.INT_SIZE + averageValueSize;
+        return SizedUtil.OBJECT_SIZE + SizedUtil.sizeOfMap(capacity, 0, counterSize) + SizedUtil.ARRAY_SIZE + capacity * SizedUtil.POINTER_SIZE;
+    }
+}
@@ -29,6 +29,7 @@ package com.salesforce.phoenix.util;
 
 import java.io.UnsupportedEncodingException;
 
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 
 
@@ -148,6 +149,50 @@ public class StringUtil {
         return byteLength;
     }
 
+    // Same as above, but never walks past maxLength bytes
+    public static int getByteLengthForUtf8SubStr(byte[] bytes, int offset, int length, int maxLength) throws UnsupportedEncodingException {
+        int byteLength = 0;
+        while(length > 0 && byteLength < maxLength) {
+            int charLength = getBytesInChar(bytes[offset + byteLength]);
+            byteLength += charLength;
+            length--;
+        }
+        return Math.min(byteLength, maxLength);
+    }
+
+    /**
+     * Upper or lower case the UTF-8 encoded string in ptr without decoding it, as long
+     * as it only contains single byte characters. A new byte array is only allocated if
+     * a character actually changes case.
+     * @return true if the case was changed, and false if the string contains multi-byte
+     * characters, in which case ptr is left unchanged.
+     */
+    public static boolean changeCaseOfSingleByteChars(ImmutableBytesWritable ptr, boolean toUpperCase) {
+        byte[] bytes = ptr.get();
+        int offset = ptr.getOffset();
+        int length = ptr.getLength();
+        byte from = toUpperCase ? (byte)'a' : (byte)'A';
+        byte to = toUpperCase ? (byte)'z' : (byte)'Z';
+        byte[] result = null;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[offset + i];
+            if (b < 0) { // High bit set means a multi-byte character
+                return false;
+            }
+            if (b >= from && b <= to) {
+                if (result == null) {
+                    result = new byte[length];
+                    System.arraycopy(bytes, offset, result, 0, length);
+                }
+                result[i] = (byte)(b ^ 0x20);
+            }
+        }
+        if (result != null) {
+            ptr.set(result);
+        }
+        return true;
+    }
+
     public static boolean hasMultiByteChars(String s) {
         for (int i = 0; i < s.length(); i++) {
             char c = s.charAt(i);
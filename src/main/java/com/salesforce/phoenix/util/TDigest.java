@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+
+
+/**
+ * 
+ * Mergeable sketch used to estimate quantiles, based on the merging t-digest of Ted Dunning.
+ * Values are summarized by centroids, each holding the mean and the number of the values
+ * it summarizes. Centroids near the tails are kept small, so extreme quantiles like a P99
+ * remain accurate, while those near the median may grow larger. Values and centroids of
+ * other digests are buffered and folded into the centroids once the buffer fills up, which
+ * bounds the state to {@link #MAX_CENTROIDS} + {@link #BUFFER_SIZE} entries no matter how
+ * many values are added.
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class TDigest {
+    // Controls the trade off between size and accuracy: the number of centroids is bounded by it
+    public static final int COMPRESSION = 100;
+    public static final int MAX_CENTROIDS = 2 * COMPRESSION;
+    public static final int BUFFER_SIZE = COMPRESSION;
+    private static final double NORMALIZER = COMPRESSION / (2 * Math.PI);
+    
+    // Centroids in [0,centroidCount) are sorted by mean and followed by the buffered ones up to count
+    private final double[] means = new double[MAX_CENTROIDS + BUFFER_SIZE];
+    private final long[] weights = new long[MAX_CENTROIDS + BUFFER_SIZE];
+    private int centroidCount;
+    private int count;
+    private long totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    
+    /**
+     * Add a single value
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+    
+    private void add(double mean, long weight) {
+        if (count == means.length) {
+            compress();
+        }
+        means[count] = mean;
+        weights[count] = weight;
+        count++;
+        totalWeight += weight;
+    }
+    
+    /**
+     * @return the number of values summarized by the digest
+     */
+    public long getCount() {
+        return totalWeight;
+    }
+    
+    /**
+     * Merge in a digest serialized by {@link #toBytes()}
+     */
+    public void merge(byte[] b, int offset, int length) {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(b, offset, length));
+        try {
+            int n = WritableUtils.readVInt(input);
+            if (n == 0) {
+                return;
+            }
+            min = Math.min(min, input.readDouble());
+            max = Math.max(max, input.readDouble());
+            for (int i = 0; i < n; i++) {
+                double mean = input.readDouble();
+                add(mean, WritableUtils.readVLong(input));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+    }
+    
+    /**
+     * @return the compact serialized form of the digest, which may be merged into another
+     * through {@link #merge(byte[], int, int)}
+     */
+    public byte[] toBytes() {
+        compress();
+        TrustedByteArrayOutputStream stream = new TrustedByteArrayOutputStream(1 + 2 * Bytes.SIZEOF_DOUBLE + count * (Bytes.SIZEOF_DOUBLE + 2));
+        DataOutputStream output = new DataOutputStream(stream);
+        try {
+            WritableUtils.writeVInt(output, count);
+            if (count > 0) {
+                output.writeDouble(min);
+                output.writeDouble(max);
+                for (int i = 0; i < count; i++) {
+                    output.writeDouble(means[i]);
+                    WritableUtils.writeVLong(output, weights[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e); // Impossible
+        }
+        return stream.toByteArray();
+    }
+    
+    /**
+     * Estimate the value at the given quantile
+     * @param q the quantile, between 0 and 1
+     * @return the estimated value or NaN if no values were added
+     */
+    public double quantile(double q) {
+        compress();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count == 1) {
+            return means[0];
+        }
+        if (q >= 1) {
+            return max;
+        }
+        // Each centroid is treated as having half its weight on either side of its mean, with
+        // the values between the means of adjacent centroids linearly interpolated
+        double index = q * totalWeight;
+        double halfWeight = weights[0] / 2.0;
+        if (index < halfWeight) {
+            return min + (means[0] - min) * index / halfWeight;
+        }
+        double weightSoFar = halfWeight;
+        for (int i = 0; i < count - 1; i++) {
+            double deltaWeight = (weights[i] + weights[i + 1]) / 2.0;
+            if (weightSoFar + deltaWeight > index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - weightSoFar) / deltaWeight;
+            }
+            weightSoFar += deltaWeight;
+        }
+        halfWeight = weights[count - 1] / 2.0;
+        return means[count - 1] + (max - means[count - 1]) * (index - weightSoFar) / halfWeight;
+    }
+    
+    private static double qToK(double q) {
+        return NORMALIZER * Math.asin(2 * q - 1);
+    }
+    
+    private static double kToQ(double k) {
+        return (Math.sin(Math.min(k / NORMALIZER, Math.PI / 2)) + 1) / 2;
+    }
+    
+    /**
+     * Fold the buffered entries into the centroids, merging adjacent ones as long as
+     * their combined weight stays within the size allowed at that quantile.
+     */
+    private void compress() {
+        if (count == centroidCount) {
+            return;
+        }
+        for (int i = centroidCount; i < count; i++) {
+            min = Math.min(min, means[i]);
+            max = Math.max(max, means[i]);
+        }
+        sort();
+        int merged = 0;
+        long weightSoFar = 0;
+        double weightLimit = totalWeight * kToQ(qToK(0) + 1);
+        for (int i = 1; i < count; i++) {
+            long proposedWeight = weights[merged] + weights[i];
+            if (weightSoFar + proposedWeight <= weightLimit) {
+                means[merged] += (means[i] - means[merged]) * weights[i] / proposedWeight;
+                weights[merged] = proposedWeight;
+            } else {
+                weightSoFar += weights[merged];
+                weightLimit = totalWeight * kToQ(qToK((double)weightSoFar / totalWeight) + 1);
+                merged++;
+                means[merged] = means[i];
+                weights[merged] = weights[i];
+            }
+        }
+        centroidCount = count = merged + 1;
+    }
+    
+    /**
+     * Sort all entries by mean. Since the centroids are already sorted, only
+     * the buffered entries are sorted before merging the two.
+     */
+    private void sort() {
+        int bufferCount = count - centroidCount;
+        final double[] bufferMeans = Arrays.copyOfRange(means, centroidCount, count);
+        long[] bufferWeights = Arrays.copyOfRange(weights, centroidCount, count);
+        Integer[] order = new Integer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Double.compare(bufferMeans[o1], bufferMeans[o2]);
+            }
+        });
+        // Merge from the end, so that the centroids are not overwritten before being moved
+        int i = centroidCount - 1;
+        int j = bufferCount - 1;
+        for (int k = count - 1; k >= 0 && j >= 0; k--) {
+            if (i >= 0 && means[i] > bufferMeans[order[j]]) {
+                means[k] = means[i];
+                weights[k] = weights[i];
+                i--;
+            } else {
+                means[k] = bufferMeans[order[j]];
+                weights[k] = bufferWeights[order[j]];
+                j--;
+            }
+        }
+    }
+    
+    /**
+     * @return the estimated size in bytes of a digest
+     */
+    public static int getSize() {
+        return SizedUtil.OBJECT_SIZE + 2 * SizedUtil.ARRAY_SIZE + (MAX_CENTROIDS + BUFFER_SIZE) * (SizedUtil.LONG_SIZE + SizedUtil.LONG_SIZE)
+                + 3 * SizedUtil.INT_SIZE + 3 * SizedUtil.LONG_SIZE;
+    }
+}
@@ -37,6 +37,7 @@ import org.junit.Test;
 
 import com.salesforce.phoenix.exception.ValueTypeIncompatibleException;
 import com.salesforce.phoenix.expression.*;
+import com.salesforce.phoenix.expression.aggregator.DecimalSumAggregator;
 import com.salesforce.phoenix.schema.PDataType;
 
 
@@ -260,6 +261,91 @@ public class ArithmeticOperationTest {
         }
     }
 
+    private static final BigDecimal MAX_UNSCALED = new BigDecimal("999999999999999999");
+    
+    private static BigDecimal evaluate(Expression e) {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(e.evaluate(null, ptr));
+        return (BigDecimal)PDataType.DECIMAL.toObject(ptr);
+    }
+    
+    private static List<Expression> constants(BigDecimal... values) throws Exception {
+        List<Expression> children = new ArrayList<Expression>(values.length);
+        for (BigDecimal value : values) {
+            children.add(LiteralExpression.newConstant(value, PDataType.DECIMAL));
+        }
+        return children;
+    }
+    
+    private static void assertEqualDecimal(BigDecimal expected, BigDecimal actual) {
+        assertTrue("Expected " + expected + " but got " + actual, expected.compareTo(actual) == 0);
+    }
+    
+    // The largest values held as unscaled longs must give the same result once
+    // an intermediate result no longer fits and evaluation switches to BigDecimal
+    @Test
+    public void testDecimalAdditionOverflowsUnscaledLong() throws Exception {
+        BigDecimal[] values = new BigDecimal[10];
+        Arrays.fill(values, MAX_UNSCALED);
+        assertEqualDecimal(MAX_UNSCALED.multiply(BigDecimal.TEN), evaluate(new DecimalAddExpression(constants(values))));
+        // Rescaling to the larger scale overflows
+        assertEqualDecimal(new BigDecimal("999999999999999999.1"), 
+                evaluate(new DecimalAddExpression(constants(MAX_UNSCALED, new BigDecimal("0.1")))));
+        // Switches part way through, after the first child was summed as a long
+        assertEqualDecimal(new BigDecimal("999999999999999999.75"), 
+                evaluate(new DecimalAddExpression(constants(new BigDecimal("0.5"), MAX_UNSCALED, new BigDecimal("0.25")))));
+        // Still fits
+        assertEqualDecimal(new BigDecimal("1999999999999999998"), 
+                evaluate(new DecimalAddExpression(constants(MAX_UNSCALED, MAX_UNSCALED))));
+    }
+
+    @Test
+    public void testDecimalSubtractionOverflowsUnscaledLong() throws Exception {
+        BigDecimal[] values = new BigDecimal[10];
+        Arrays.fill(values, MAX_UNSCALED);
+        values[0] = MAX_UNSCALED.negate();
+        assertEqualDecimal(MAX_UNSCALED.multiply(BigDecimal.TEN).negate(), evaluate(new DecimalSubtractExpression(constants(values))));
+        assertEqualDecimal(new BigDecimal("999999999999999999.1"), 
+                evaluate(new DecimalSubtractExpression(constants(MAX_UNSCALED, new BigDecimal("-0.1")))));
+        assertEqualDecimal(new BigDecimal("-999999999999999997.5"), 
+                evaluate(new DecimalSubtractExpression(constants(new BigDecimal("0.5"), MAX_UNSCALED, new BigDecimal("-1")))));
+    }
+
+    @Test
+    public void testDecimalMultiplicationOverflowsUnscaledLong() throws Exception {
+        assertEqualDecimal(MAX_UNSCALED.multiply(MAX_UNSCALED), 
+                evaluate(new DecimalMultiplyExpression(constants(MAX_UNSCALED, MAX_UNSCALED))));
+        assertEqualDecimal(new BigDecimal("303700049.9").multiply(new BigDecimal("303700049.9")), 
+                evaluate(new DecimalMultiplyExpression(constants(new BigDecimal("303700049.9"), new BigDecimal("303700049.9")))));
+        assertEqualDecimal(new BigDecimal("3037000500").pow(2).multiply(new BigDecimal("-0.5")), 
+                evaluate(new DecimalMultiplyExpression(constants(new BigDecimal("3037000500"), new BigDecimal("3037000500"), new BigDecimal("-0.5")))));
+    }
+
+    @Test
+    public void testDecimalSumAggregatorOverflowsUnscaledLong() throws Exception {
+        DecimalSumAggregator aggregator = new DecimalSumAggregator();
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        BigDecimal expected = BigDecimal.ZERO;
+        BigDecimal[] values = new BigDecimal[] {new BigDecimal("0.5"), MAX_UNSCALED, MAX_UNSCALED, new BigDecimal("-0.25")};
+        for (int i = 0; i < 20; i++) {
+            BigDecimal value = values[i % values.length];
+            ptr.set(PDataType.DECIMAL.toBytes(value));
+            aggregator.aggregate(null, ptr);
+            expected = expected.add(value);
+        }
+        assertTrue(aggregator.evaluate(null, ptr));
+        assertEqualDecimal(expected, (BigDecimal)PDataType.DECIMAL.toObject(ptr));
+        
+        // Back to long arithmetic after a reset
+        aggregator.reset();
+        for (BigDecimal value : new BigDecimal[] {new BigDecimal("1.5"), new BigDecimal("-0.25"), new BigDecimal("100")}) {
+            ptr.set(PDataType.DECIMAL.toBytes(value));
+            aggregator.aggregate(null, ptr);
+        }
+        assertTrue(aggregator.evaluate(null, ptr));
+        assertEqualDecimal(new BigDecimal("101.25"), (BigDecimal)PDataType.DECIMAL.toObject(ptr));
+    }
+
     private static void assertEqualValue(PDataType type, Object value, ImmutableBytesWritable ptr) {
         assertEquals(value, type.toObject(ptr.get()));
     }
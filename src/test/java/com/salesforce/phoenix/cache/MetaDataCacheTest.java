@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.memory.GlobalMemoryManager;
+import com.salesforce.phoenix.schema.*;
+import com.salesforce.phoenix.util.ImmutableBytesPtr;
+
+
+/**
+ * 
+ * Tests for the size bounded, memory accounted server-side meta data cache
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MetaDataCacheTest {
+    private static PTable newTable(String name, long timeStamp) {
+        PColumn pkColumn = new PColumnImpl(new PNameImpl("ID"), null, PDataType.VARCHAR, null, null, false, 0);
+        PColumn kvColumn = new PColumnImpl(new PNameImpl("V"), new PNameImpl("CF"), PDataType.INTEGER, null, null, true, 1);
+        return new PTableImpl(new PNameImpl(name), PTableType.USER, timeStamp, 0, null, Arrays.asList(pkColumn, kvColumn));
+    }
+    
+    private static ImmutableBytesPtr key(String name) {
+        return new ImmutableBytesPtr(Bytes.toBytes(name));
+    }
+    
+    @Test
+    public void testMemoryAccounting() {
+        GlobalMemoryManager gmm = new GlobalMemoryManager(100000,1);
+        MetaDataCache cache = new MetaDataCache(gmm, 100000, 60000);
+        cache.put(key("T1"), newTable("T1", 1));
+        cache.put(key("T2"), newTable("T2", 1));
+        assertEquals(2, cache.getEntryCount());
+        assertTrue(cache.getSizeBytes() > 0);
+        assertEquals(gmm.getMaxMemory() - cache.getSizeBytes(), gmm.getAvailableMemory());
+        
+        long sizeBytes = cache.getSizeBytes();
+        cache.put(key("T1"), newTable("T1", 2));
+        assertEquals(sizeBytes, cache.getSizeBytes());
+        assertEquals(2, cache.get(key("T1")).getTimeStamp());
+        
+        cache.put(key("T2"), new PTableImpl(3));
+        assertTrue(cache.getSizeBytes() < sizeBytes);
+        assertNull(cache.get(key("T2")).getName());
+        
+        cache.remove(key("T1"));
+        assertNull(cache.get(key("T1")));
+        cache.clear();
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSizeBytes());
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+        assertEquals(2, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+    }
+    
+    @Test
+    public void testEvictionOverMaxSize() {
+        GlobalMemoryManager gmm = new GlobalMemoryManager(1000000,1);
+        MetaDataCache cache = new MetaDataCache(gmm, 5000, 60000);
+        for (int i = 0; i < 100; i++) {
+            String name = "T" + i;
+            cache.put(key(name), newTable(name, 1));
+        }
+        assertTrue(cache.getEntryCount() < 100);
+        assertTrue(cache.getSizeBytes() <= 5000);
+        assertTrue(cache.getStats().evictionCount() > 0);
+        assertEquals(gmm.getMaxMemory() - cache.getSizeBytes(), gmm.getAvailableMemory());
+    }
+    
+    @Test
+    public void testNotCachedWhenMemoryUnavailable() {
+        GlobalMemoryManager gmm = new GlobalMemoryManager(100,1);
+        MetaDataCache cache = new MetaDataCache(gmm, 100000, 60000);
+        cache.put(key("T1"), newTable("T1", 1));
+        assertNull(cache.get(key("T1")));
+        assertEquals(1, cache.getRejectedCount());
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
+}
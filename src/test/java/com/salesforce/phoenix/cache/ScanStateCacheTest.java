@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+
+/**
+ * 
+ * Tests for the server-side cache of deserialized scan attributes
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class ScanStateCacheTest {
+    private static class CountingDeserializer implements ScanStateCache.Deserializer<StringBuilder> {
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public StringBuilder deserialize(byte[] b) throws IOException {
+            count.incrementAndGet();
+            return new StringBuilder(Bytes.toString(b));
+        }
+    }
+    
+    @Test
+    public void testSharedStateDeserializedOnce() throws IOException {
+        CountingDeserializer deserializer = new CountingDeserializer();
+        ScanStateCache<StringBuilder> cache = new ScanStateCache<StringBuilder>(deserializer, 1024*1024, 60000);
+        StringBuilder state1 = cache.get(Bytes.toBytes("A"));
+        // Equal bytes from a different array must hit the cache
+        StringBuilder state2 = cache.get(Bytes.toBytes("A"));
+        assertSame(state1, state2);
+        assertEquals(1, deserializer.count.get());
+        assertEquals("B", cache.get(Bytes.toBytes("B")).toString());
+        assertEquals(2, deserializer.count.get());
+        cache.clear();
+        cache.get(Bytes.toBytes("A"));
+        assertEquals(3, deserializer.count.get());
+    }
+    
+    @Test
+    public void testBorrowedStateNotShared() throws IOException {
+        CountingDeserializer deserializer = new CountingDeserializer();
+        ScanStateCache<StringBuilder> cache = new ScanStateCache<StringBuilder>(deserializer, 1024*1024, 60000);
+        byte[] key = Bytes.toBytes("A");
+        StringBuilder state1 = cache.borrow(key);
+        StringBuilder state2 = cache.borrow(key);
+        assertNotSame(state1, state2);
+        assertEquals(2, deserializer.count.get());
+        
+        cache.release(key, state1);
+        assertSame(state1, cache.borrow(Bytes.toBytes("A")));
+        assertEquals(2, deserializer.count.get());
+        // Nothing left to reuse until released again
+        assertNotSame(state2, cache.borrow(key));
+        assertEquals(3, deserializer.count.get());
+    }
+    
+    @Test
+    public void testEvictedBySize() throws IOException {
+        CountingDeserializer deserializer = new CountingDeserializer();
+        ScanStateCache<StringBuilder> cache = new ScanStateCache<StringBuilder>(deserializer, 10, 60000);
+        byte[] smallKey = Bytes.toBytes("ABCDE");
+        cache.get(smallKey);
+        cache.get(smallKey);
+        assertEquals(1, deserializer.count.get());
+        // Larger than the cache on its own, so never retained
+        byte[] largeKey = Bytes.toBytes("ABCDEFGHIJK");
+        cache.get(largeKey);
+        cache.get(largeKey);
+        assertEquals(3, deserializer.count.get());
+        // A pool is sized as if full, so a pool for even a small key doesn't fit
+        cache.release(smallKey, cache.borrow(smallKey));
+        cache.borrow(smallKey);
+        assertEquals(5, deserializer.count.get());
+    }
+    
+    @Test
+    public void testNothingCachedWhenSizeZero() throws IOException {
+        CountingDeserializer deserializer = new CountingDeserializer();
+        ScanStateCache<StringBuilder> cache = new ScanStateCache<StringBuilder>(deserializer, 0, 60000);
+        byte[] key = Bytes.toBytes("A");
+        cache.get(key);
+        cache.get(key);
+        cache.release(key, cache.borrow(key));
+        cache.borrow(key);
+        assertEquals(4, deserializer.count.get());
+        assertEquals(0, cache.getEntryCount());
+    }
+}
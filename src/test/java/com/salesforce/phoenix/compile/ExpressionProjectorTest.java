@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.compile;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.schema.IllegalDataException;
+import com.salesforce.phoenix.schema.PDataType;
+
+
+public class ExpressionProjectorTest {
+
+    private static ExpressionProjector newProjector(Object value, PDataType type) throws Exception {
+        return new ExpressionProjector("C", "T", LiteralExpression.newConstant(value, type), false);
+    }
+    
+    private static ImmutableBytesWritable evaluate(ExpressionProjector projector) {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(projector.evaluate(null, ptr));
+        return ptr;
+    }
+    
+    /**
+     * Assert that the primitive getters return the same value as unboxing the result of
+     * getValue, which is what ResultSet.getInt, getLong, and getDouble used to do.
+     */
+    private static void assertSameAsBoxed(Object value, PDataType type) throws Exception {
+        ExpressionProjector projector = newProjector(value, type);
+        ImmutableBytesWritable ptr = evaluate(projector);
+        assertEquals(((Number)projector.getValue(ptr, PDataType.LONG)).longValue(), projector.getLong(ptr, PDataType.LONG));
+        assertEquals(((Number)projector.getValue(ptr, PDataType.INTEGER)).intValue(), (int)projector.getLong(ptr, PDataType.INTEGER));
+        assertEquals(((BigDecimal)projector.getValue(ptr, PDataType.DECIMAL)).doubleValue(), projector.getDouble(ptr), 0);
+    }
+    
+    @Test
+    public void testPrimitiveGettersMatchBoxedValues() throws Exception {
+        for (long value : new long[] {0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertSameAsBoxed(value, PDataType.LONG);
+            assertSameAsBoxed((int)value, PDataType.INTEGER);
+        }
+        for (long value : new long[] {0, 1, Integer.MAX_VALUE}) {
+            assertSameAsBoxed(value, PDataType.UNSIGNED_LONG);
+            assertSameAsBoxed((int)value, PDataType.UNSIGNED_INT);
+        }
+        for (String value : new String[] {"0", "1.5", "-1.5", "123456789.987654321"}) {
+            assertSameAsBoxed(new BigDecimal(value), PDataType.DECIMAL);
+        }
+    }
+    
+    @Test
+    public void testLargeLongMatchesBoxedValue() throws Exception {
+        for (long value : new long[] {Long.MAX_VALUE, Long.MIN_VALUE, 1L << 53 | 1}) {
+            ExpressionProjector projector = newProjector(value, PDataType.LONG);
+            ImmutableBytesWritable ptr = evaluate(projector);
+            assertEquals(value, projector.getLong(ptr, PDataType.LONG));
+            assertEquals(((BigDecimal)projector.getValue(ptr, PDataType.DECIMAL)).doubleValue(), projector.getDouble(ptr), 0);
+        }
+    }
+    
+    @Test
+    public void testGetIntOfLongThatOverflowsInt() throws Exception {
+        for (long value : new long[] {Integer.MAX_VALUE + 1L, Integer.MIN_VALUE - 1L, Long.MAX_VALUE}) {
+            ExpressionProjector projector = newProjector(value, PDataType.LONG);
+            ImmutableBytesWritable ptr = evaluate(projector);
+            try {
+                projector.getValue(ptr, PDataType.INTEGER);
+                fail();
+            } catch (IllegalDataException e) { // expected
+            }
+            try {
+                projector.getLong(ptr, PDataType.INTEGER);
+                fail();
+            } catch (IllegalDataException e) { // expected
+            }
+        }
+    }
+}
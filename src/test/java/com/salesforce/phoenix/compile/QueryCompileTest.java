@@ -31,23 +31,33 @@ import static com.salesforce.phoenix.util.TestUtil.TEST_PROPERTIES;
 import static com.salesforce.phoenix.util.TestUtil.assertDegenerate;
 import static org.junit.Assert.*;
 
+import java.math.BigDecimal;
 import java.sql.*;
 import java.util.*;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
 import com.salesforce.phoenix.coprocessor.GroupedAggregateRegionObserver;
 import com.salesforce.phoenix.coprocessor.UngroupedAggregateRegionObserver;
+import com.salesforce.phoenix.exception.SQLExceptionCode;
+import com.salesforce.phoenix.expression.*;
 import com.salesforce.phoenix.expression.aggregator.*;
+import com.salesforce.phoenix.expression.function.ApproxCountDistinctAggregateFunction;
+import com.salesforce.phoenix.expression.function.MedianApproxAggregateFunction;
+import com.salesforce.phoenix.expression.function.PercentileApproxAggregateFunction;
+import com.salesforce.phoenix.expression.function.SingleAggregateFunction;
+import com.salesforce.phoenix.expression.function.TopKAggregateFunction;
 import com.salesforce.phoenix.jdbc.PhoenixConnection;
 import com.salesforce.phoenix.parse.SQLParser;
 import com.salesforce.phoenix.parse.SelectStatement;
-import com.salesforce.phoenix.query.BaseConnectionlessQueryTest;
-import com.salesforce.phoenix.query.QueryConstants;
+import com.salesforce.phoenix.query.*;
 import com.salesforce.phoenix.schema.AmbiguousColumnException;
+import com.salesforce.phoenix.schema.PDataType;
 import com.salesforce.phoenix.util.*;
 
 
@@ -332,6 +342,7 @@ public class QueryCompileTest extends BaseConnectionlessQueryTest {
             "SELECT count(1) FROM atable GROUP BY entity_id,organization_id",
             "SELECT count(1) FROM atable GROUP BY substr(entity_id,1,3),organization_id",
             "SELECT count(1) FROM ptsdb GROUP BY host,inst,round(date,'HOUR')",
+            "SELECT count(1) FROM ptsdb GROUP BY inst,host,trunc(date,'HOUR')",
             "SELECT count(1) FROM atable GROUP BY organization_id",
         };
         List<Object> binds = Collections.emptyList();
@@ -599,6 +610,9 @@ public class QueryCompileTest extends BaseConnectionlessQueryTest {
             "SELECT count(1) FROM atable GROUP BY substr(organization_id,2,3)",
             "SELECT count(1) FROM atable GROUP BY substr(entity_id,1,3)",
             "SELECT count(1) FROM atable GROUP BY to_date(organization_id)",
+            "SELECT count(1) FROM ptsdb GROUP BY inst,substr(host,1,1),date",
+            // RTRIM maps 'a' and 'a ' to the same value, so it only preserves order on the last column
+            "SELECT count(1) FROM ptsdb GROUP BY rtrim(inst),host",
         };
         List<Object> binds = Collections.emptyList();
         for (String query : queries) {
@@ -861,4 +875,134 @@ public class QueryCompileTest extends BaseConnectionlessQueryTest {
         assertArrayEquals(ByteUtil.concat(ByteUtil.nextKey(Bytes.toBytes("abc ")),QueryConstants.SEPARATOR_BYTE_ARRAY), scan.getStopRow());
         assertNotNull(scan.getFilter());
     }
+
+    @Test
+    public void testTableSamplePercentValidation() throws Exception {
+        List<Object> binds = Collections.emptyList();
+        for (String percent : new String[] {"0", "100.5", "150"}) {
+            try {
+                compileQuery("SELECT count(1) FROM atable TABLESAMPLE (" + percent + " PERCENT)", binds, new Scan());
+                fail("Expected " + percent + "% to be rejected");
+            } catch (SQLException e) {
+                assertEquals(SQLExceptionCode.ILLEGAL_DATA.getErrorCode(), e.getErrorCode());
+            }
+        }
+        // Sampling the whole table is the same as not sampling at all
+        QueryPlan plan = compileQuery("SELECT count(1) FROM atable TABLESAMPLE (100 PERCENT)", binds, new Scan());
+        assertNull(plan.getContext().getSamplePercent());
+        plan = compileQuery("SELECT count(1) FROM atable TABLESAMPLE (0.5 PERCENT)", binds, new Scan());
+        assertEquals(0.5, plan.getContext().getSamplePercent(), 0);
+    }
+
+    @Test
+    public void testScaleSampledAggregates() throws Exception {
+        String query = "SELECT count(1), sum(a_integer), max(a_integer) FROM atable TABLESAMPLE (25 PERCENT)";
+        List<Object> binds = Collections.emptyList();
+        // Not scaled by default
+        QueryPlan plan = compileQuery(query, binds, new Scan());
+        assertNull(plan.getContext().getSampleScaleFactor());
+        for (ColumnProjector projector : plan.getProjector().getColumnProjectors()) {
+            assertFalse(projector.getExpression() instanceof DecimalMultiplyExpression);
+        }
+        
+        Connection conn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES);
+        Configuration config = conn.unwrap(PhoenixConnection.class).getQueryServices().getConfig();
+        conn.close();
+        config.setBoolean(QueryServices.SCALE_SAMPLED_AGGREGATES_ATTRIB, true);
+        try {
+            plan = compileQuery(query, binds, new Scan());
+        } finally {
+            config.setBoolean(QueryServices.SCALE_SAMPLED_AGGREGATES_ATTRIB, QueryServicesOptions.DEFAULT_SCALE_SAMPLED_AGGREGATES);
+        }
+        assertEquals(0, new BigDecimal(4).compareTo(plan.getContext().getSampleScaleFactor()));
+        List<? extends ColumnProjector> projectors = plan.getProjector().getColumnProjectors();
+        // COUNT and SUM are estimated for the whole table, while MAX needs no scaling
+        for (int i = 0; i < 2; i++) {
+            Expression expression = projectors.get(i).getExpression();
+            assertTrue(expression instanceof DecimalMultiplyExpression);
+            assertEquals(PDataType.DECIMAL, expression.getDataType());
+            Expression scaleFactor = expression.getChildren().get(1);
+            assertEquals(0, new BigDecimal(4).compareTo((BigDecimal)((LiteralExpression)scaleFactor).getValue()));
+        }
+        assertFalse(projectors.get(2).getExpression() instanceof DecimalMultiplyExpression);
+    }
+
+    private ServerAggregators compileAggregators(String query) throws SQLException {
+        Scan scan = new Scan();
+        compileQuery(query, Collections.<Object>emptyList(), scan);
+        return ServerAggregators.deserialize(scan.getAttribute(GroupedAggregateRegionObserver.AGGREGATORS));
+    }
+    
+    private void assertCompileFails(String query, String sqlState) throws SQLException {
+        Connection conn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES);
+        try {
+            conn.prepareStatement(query).executeQuery();
+            fail(query);
+        } catch (SQLException e) {
+            assertEquals(query, sqlState, e.getSQLState());
+        } finally {
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testApproxCountDistinct() throws Exception {
+        assertCompileFails("SELECT approx_count_distinct(a_string, 10) FROM atable", SQLExceptionCode.UNKNOWN_FUNCTION.getSQLState());
+        
+        // The function deserialized on the region server aggregates the column values
+        ServerAggregators aggregators = compileAggregators("SELECT approx_count_distinct(a_string) FROM atable");
+        SingleAggregateFunction function = aggregators.getFunctions()[0];
+        assertTrue(function instanceof ApproxCountDistinctAggregateFunction);
+        for (String value : new String[] {"a", "b", "a"}) {
+            aggregators.getAggregators()[0].aggregate(null, new ImmutableBytesWritable(Bytes.toBytes(value)));
+        }
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(function.evaluate(null, ptr));
+        assertEquals(2L, PDataType.LONG.toObject(ptr));
+    }
+    
+    @Test
+    public void testPercentileApprox() throws Exception {
+        assertCompileFails("SELECT percentile_approx(a_integer, 1.5) FROM atable", SQLExceptionCode.ILLEGAL_DATA.getSQLState());
+        assertCompileFails("SELECT percentile_approx(a_string, 0.5) FROM atable", SQLExceptionCode.TYPE_MISMATCH.getSQLState());
+        assertCompileFails("SELECT percentile_approx(a_integer, a_integer) FROM atable", SQLExceptionCode.TYPE_MISMATCH.getSQLState());
+        
+        // The percentile must survive the serialization to the region server
+        String[] queries = new String[] {
+            "SELECT percentile_approx(a_integer, 0.9) FROM atable",
+            "SELECT median_approx(a_integer) FROM atable",
+        };
+        Class<?>[] functionClasses = new Class<?>[] {PercentileApproxAggregateFunction.class, MedianApproxAggregateFunction.class};
+        double[] percentiles = new double[] {900, 500};
+        for (int i = 0; i < queries.length; i++) {
+            ServerAggregators aggregators = compileAggregators(queries[i]);
+            SingleAggregateFunction function = aggregators.getFunctions()[0];
+            assertEquals(functionClasses[i], function.getClass());
+            for (int n = 1; n <= 1000; n++) {
+                aggregators.getAggregators()[0].aggregate(null, new ImmutableBytesWritable(PDataType.INTEGER.toBytes(n)));
+            }
+            ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+            assertTrue(function.evaluate(null, ptr));
+            assertEquals(queries[i], percentiles[i], ((BigDecimal)PDataType.DECIMAL.toObject(ptr)).doubleValue(), 5);
+        }
+    }
+    
+    @Test
+    public void testTopK() throws Exception {
+        assertCompileFails("SELECT top_k(a_string, 0) FROM atable", SQLExceptionCode.ILLEGAL_DATA.getSQLState());
+        assertCompileFails("SELECT top_k(a_string, " + (TopKAggregateFunction.MAX_K + 1) + ") FROM atable", SQLExceptionCode.ILLEGAL_DATA.getSQLState());
+        assertCompileFails("SELECT top_k(a_string, 'foo') FROM atable", SQLExceptionCode.TYPE_MISMATCH.getSQLState());
+        assertCompileFails("SELECT top_k(a_string, a_integer) FROM atable", SQLExceptionCode.TYPE_MISMATCH.getSQLState());
+        
+        // The k must survive the serialization to the region server
+        ServerAggregators aggregators = compileAggregators("SELECT top_k(a_string, 1) FROM atable");
+        SingleAggregateFunction function = aggregators.getFunctions()[0];
+        assertTrue(function instanceof TopKAggregateFunction);
+        for (String value : new String[] {"a", "b", "b"}) {
+            aggregators.getAggregators()[0].aggregate(null, new ImmutableBytesWritable(Bytes.toBytes(value)));
+        }
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(function.evaluate(null, ptr));
+        assertEquals("b=2", PDataType.VARCHAR.toObject(ptr));
+    }
 }
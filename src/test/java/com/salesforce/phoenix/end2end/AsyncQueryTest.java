@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.*;
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.salesforce.phoenix.jdbc.PhoenixPreparedStatement;
+import com.salesforce.phoenix.jdbc.PhoenixStatement;
+import com.salesforce.phoenix.util.PhoenixRuntime;
+
+
+public class AsyncQueryTest extends BaseClientMangedTimeTest {
+
+    @Test
+    public void testAsyncAggregateQuery() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+        String query = "SELECT a_string, count(1) FROM aTable WHERE organization_id=? GROUP BY a_string";
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            PhoenixPreparedStatement statement = conn.prepareStatement(query).unwrap(PhoenixPreparedStatement.class);
+            statement.setString(1, tenantId);
+            ListenableFuture<ResultSet> future = statement.executeQueryAsync();
+            ResultSet rs = future.get(30, TimeUnit.SECONDS);
+            assertTrue(rs.next());
+            assertEquals(A_VALUE, rs.getString(1));
+            assertEquals(4, rs.getLong(2));
+            assertTrue(rs.next());
+            assertEquals(B_VALUE, rs.getString(1));
+            assertEquals(4, rs.getLong(2));
+            assertTrue(rs.next());
+            assertEquals(C_VALUE, rs.getString(1));
+            assertEquals(1, rs.getLong(2));
+            assertFalse(rs.next());
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testAsyncScanQuery() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+        String query = "SELECT entity_id FROM aTable WHERE organization_id='" + tenantId + "'";
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            PhoenixStatement statement = conn.createStatement().unwrap(PhoenixStatement.class);
+            // A query that isn't aggregated is scanned in parallel, with its rows still in key order
+            ListenableFuture<ResultSet> scanFuture = statement.executeQueryAsync(query);
+            ResultSet rs = scanFuture.get(30, TimeUnit.SECONDS);
+            assertNotNull(statement.getQueryPlan().getSplits());
+            for (String row : new String[] {ROW1, ROW2, ROW3, ROW4, ROW5, ROW6, ROW7, ROW8, ROW9}) {
+                assertTrue(rs.next());
+                assertEquals(row, rs.getString(1));
+            }
+            assertFalse(rs.next());
+            
+            // A query with a LIMIT that isn't aggregated opens its scan on the calling thread
+            ListenableFuture<ResultSet> limitFuture = statement.executeQueryAsync(query + " LIMIT 3");
+            assertTrue(limitFuture.isDone());
+            rs = limitFuture.get();
+            int rowCount = 0;
+            while (rs.next()) {
+                rowCount++;
+            }
+            assertEquals(3, rowCount);
+            
+            // Non SELECT statements complete immediately
+            ListenableFuture<ResultSet> future = statement.executeQueryAsync("EXPLAIN " + query);
+            assertTrue(future.isDone());
+            assertTrue(future.get().next());
+        } finally {
+            conn.close();
+        }
+    }
+}
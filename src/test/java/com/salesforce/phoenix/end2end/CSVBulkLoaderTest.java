@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.sql.*;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import com.salesforce.phoenix.jdbc.PhoenixConnection;
+import com.salesforce.phoenix.query.QueryServices;
+import com.salesforce.phoenix.query.QueryServicesOptions;
+import com.salesforce.phoenix.schema.IllegalDataException;
+import com.salesforce.phoenix.util.CSVBulkLoader;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+public class CSVBulkLoaderTest extends BaseHBaseManagedTimeTest {
+
+    @Test
+    public void testBulkLoadAcrossRegions() throws Exception {
+        PhoenixConnection conn = DriverManager.getConnection(getUrl()).unwrap(PhoenixConnection.class);
+        conn.createStatement().execute("CREATE TABLE BULK_LOAD_TEST(K VARCHAR NOT NULL PRIMARY KEY, A.I INTEGER, B.S VARCHAR) SPLIT ON ('g','p')");
+        conn.createStatement().execute("UPSERT INTO BULK_LOAD_TEST VALUES('m',1,'existing')");
+        conn.commit();
+        
+        StringBuilder buf = new StringBuilder();
+        for (char c = 'a'; c <= 'z'; c++) {
+            // Null value for B.S on 'm' must clear the existing value
+            buf.append(c).append(',').append(c - 'a').append(',').append(c == 'm' ? "" : "s" + c).append('\n');
+        }
+        // Later rows override earlier ones
+        buf.append("b,100,\"override\"\n");
+        Path outputDir = new Path("/bulkLoadTest1");
+        CSVBulkLoader loader = new CSVBulkLoader(conn, "BULK_LOAD_TEST", null, true, outputDir);
+        assertEquals(27, loader.load(new CSVReader(new StringReader(buf.toString()))));
+        assertFalse(outputDir.getFileSystem(conn.getQueryServices().getConfig()).exists(outputDir));
+        
+        ResultSet rs = conn.createStatement().executeQuery("SELECT K, I, S FROM BULK_LOAD_TEST");
+        for (char c = 'a'; c <= 'z'; c++) {
+            assertTrue(rs.next());
+            assertEquals(String.valueOf(c), rs.getString(1));
+            if (c == 'b') {
+                assertEquals(100, rs.getInt(2));
+                assertEquals("override", rs.getString(3));
+            } else {
+                assertEquals(c - 'a', rs.getInt(2));
+                assertEquals(c == 'm' ? null : "s" + c, rs.getString(3));
+            }
+        }
+        assertFalse(rs.next());
+        
+        // The empty key value column must be present so that rows are found when only pk columns are selected
+        rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM BULK_LOAD_TEST");
+        assertTrue(rs.next());
+        assertEquals(26, rs.getInt(1));
+        conn.close();
+    }
+
+    @Test
+    public void testBulkLoadMultipleBuffers() throws Exception {
+        PhoenixConnection conn = DriverManager.getConnection(getUrl()).unwrap(PhoenixConnection.class);
+        conn.createStatement().execute("CREATE TABLE BULK_LOAD_BUFFER_TEST(ID INTEGER NOT NULL, NAME VARCHAR NOT NULL, V DECIMAL(10,1) CONSTRAINT PK PRIMARY KEY (ID, NAME))");
+        // Force a flush of the buffer after every row
+        conn.getQueryServices().getConfig().setLong(QueryServices.BULK_LOAD_BUFFER_SIZE_ATTRIB, 1);
+        try {
+            StringBuilder buf = new StringBuilder("NAME,ID,V\n");
+            for (int i = 9; i >= 0; i--) {
+                buf.append("n").append(i).append(',').append(i).append(',').append(i).append(".5\n");
+            }
+            CSVBulkLoader loader = new CSVBulkLoader(conn, "BULK_LOAD_BUFFER_TEST", Arrays.<String>asList(), true, new Path("/bulkLoadTest2"));
+            assertEquals(10, loader.load(new CSVReader(new StringReader(buf.toString()))));
+        } finally {
+            conn.getQueryServices().getConfig().setLong(QueryServices.BULK_LOAD_BUFFER_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_BULK_LOAD_BUFFER_SIZE);
+        }
+        ResultSet rs = conn.createStatement().executeQuery("SELECT ID, NAME, V FROM BULK_LOAD_BUFFER_TEST");
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals("n" + i, rs.getString(2));
+            assertEquals(i + 0.5, rs.getBigDecimal(3).doubleValue(), 0);
+        }
+        assertFalse(rs.next());
+        conn.close();
+    }
+
+    @Test
+    public void testBulkLoadFailureRemovesOutputDir() throws Exception {
+        PhoenixConnection conn = DriverManager.getConnection(getUrl()).unwrap(PhoenixConnection.class);
+        conn.createStatement().execute("CREATE TABLE BULK_LOAD_FAILURE_TEST(ID INTEGER NOT NULL PRIMARY KEY, V INTEGER)");
+        // Force HFiles to be written for the first rows before the bad one is read
+        conn.getQueryServices().getConfig().setLong(QueryServices.BULK_LOAD_BUFFER_SIZE_ATTRIB, 1);
+        Path outputDir = new Path("/bulkLoadTest3");
+        try {
+            CSVBulkLoader loader = new CSVBulkLoader(conn, "BULK_LOAD_FAILURE_TEST", null, true, outputDir);
+            loader.load(new CSVReader(new StringReader("1,1\n2,2\n3,notanumber\n")));
+            fail();
+        } catch (IllegalDataException e) { // expected
+        } finally {
+            conn.getQueryServices().getConfig().setLong(QueryServices.BULK_LOAD_BUFFER_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_BULK_LOAD_BUFFER_SIZE);
+        }
+        assertFalse(outputDir.getFileSystem(conn.getQueryServices().getConfig()).exists(outputDir));
+        // Nothing is visible, since the HFiles are only loaded at the end
+        ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM BULK_LOAD_FAILURE_TEST");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        conn.close();
+    }
+}
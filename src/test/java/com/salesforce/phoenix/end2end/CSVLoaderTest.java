@@ -33,6 +33,8 @@ import java.io.StringReader;
 import java.sql.*;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
@@ -249,4 +251,70 @@ public class CSVLoaderTest extends BaseHBaseManagedTimeTest {
         assertFalse(phoenixResultSet.next());
         conn.close();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCSVUpsertMultipleThreads() throws Exception {
+        String statements = "CREATE TABLE IF NOT EXISTS MULTI_THREAD_CSV(ID INTEGER NOT NULL PRIMARY KEY, NAME VARCHAR, PRICE DECIMAL(10,2));";
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.UPSERT_BATCH_SIZE_ATTRIB, "7");
+        PhoenixConnection conn = DriverManager.getConnection(getUrl(), props).unwrap(PhoenixConnection.class);
+        PhoenixRuntime.executeStatements(conn, new StringReader(statements), null);
+        
+        int rowCount = 1000;
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < rowCount; i++) {
+            buf.append(i).append(",name").append(i).append(',').append(i).append(".25\n");
+        }
+        final AtomicLong completedCount = new AtomicLong(-1);
+        CSVLoader.ProgressListener listener = new CSVLoader.ProgressListener() {
+            @Override
+            public void progress(long rowCount, double rowsPerSecond) {
+            }
+
+            @Override
+            public void complete(long rowCount, double rowsPerSecond) {
+                completedCount.set(rowCount);
+            }
+        };
+        CSVLoader csvUtil = new CSVLoader(conn, "MULTI_THREAD_CSV", null, true, 4, listener);
+        csvUtil.upsert(new CSVReader(new StringReader(buf.toString())));
+        assertEquals(rowCount, completedCount.get());
+
+        ResultSet rs = conn.createStatement().executeQuery("SELECT ID, NAME, PRICE FROM MULTI_THREAD_CSV");
+        for (int i = 0; i < rowCount; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getInt(1));
+            assertEquals("name" + i, rs.getString(2));
+            assertEquals(i + 0.25, rs.getBigDecimal(3).doubleValue(), 0);
+        }
+        assertFalse(rs.next());
+        conn.close();
+    }
+
+    @Test
+    public void testCSVUpsertMergesDuplicateKeysByFamilyColumn() throws Exception {
+        String statements = "CREATE TABLE IF NOT EXISTS MULTI_FAMILY_CSV(ID INTEGER NOT NULL PRIMARY KEY, A.V VARCHAR, B.V VARCHAR);";
+        PhoenixConnection conn = DriverManager.getConnection(getUrl()).unwrap(PhoenixConnection.class);
+        PhoenixRuntime.executeStatements(conn, new StringReader(statements), null);
+        
+        // The second row for key 1 only sets A.V, so B.V must be kept from the first row
+        String csv = "ID,A.V,B.V\n" +
+                "1,a1,b1\n" +
+                "2,a2,b2\n" +
+                "1,a3\n";
+        CSVLoader csvUtil = new CSVLoader(conn, "MULTI_FAMILY_CSV", Collections.<String>emptyList(), true);
+        csvUtil.upsert(new CSVReader(new StringReader(csv)));
+
+        ResultSet rs = conn.createStatement().executeQuery("SELECT ID, A.V, B.V FROM MULTI_FAMILY_CSV");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+        assertEquals("a3", rs.getString(2));
+        assertEquals("b1", rs.getString(3));
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        assertEquals("a2", rs.getString(2));
+        assertEquals("b2", rs.getString(3));
+        assertFalse(rs.next());
+        conn.close();
+    }
+}
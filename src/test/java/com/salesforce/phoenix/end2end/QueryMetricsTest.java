@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.*;
+import static org.junit.Assert.*;
+
+import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.salesforce.phoenix.compile.QueryMetrics;
+import com.salesforce.phoenix.compile.QueryMetrics.SplitMetrics;
+import com.salesforce.phoenix.util.PhoenixRuntime;
+
+
+public class QueryMetricsTest extends BaseClientMangedTimeTest {
+
+    @Test
+    public void testOrderedScanMetrics() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+        String query = "SELECT entity_id FROM aTable WHERE organization_id=? ORDER BY a_integer DESC LIMIT 100";
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            PreparedStatement statement = conn.prepareStatement(query);
+            statement.setString(1, tenantId);
+            ResultSet rs = statement.executeQuery();
+            int rowCount = 0;
+            while (rs.next()) {
+                rowCount++;
+            }
+            assertEquals(9, rowCount);
+            QueryMetrics metrics = PhoenixRuntime.getQueryMetrics(rs);
+            assertTrue(metrics.getCompileTime(TimeUnit.NANOSECONDS) > 0);
+            assertEquals(1, metrics.getSplitCount());
+            assertEquals(9, metrics.getRowsScanned());
+            assertTrue(metrics.getBytesScanned() > 0);
+            assertTrue(metrics.getStageTime(QueryMetrics.Stage.SCAN, TimeUnit.NANOSECONDS) > 0);
+            assertTrue(metrics.getStageTime(QueryMetrics.Stage.SORT, TimeUnit.NANOSECONDS) > 0);
+            assertTrue(metrics.getStageTime(QueryMetrics.Stage.CLIENT, TimeUnit.NANOSECONDS) > 0);
+            assertEquals(0, metrics.getStageTime(QueryMetrics.Stage.SPOOL, TimeUnit.NANOSECONDS));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testParallelAggregateMetrics() throws Exception {
+        long ts = nextTimestamp();
+        String tenantId = getOrganizationId();
+        initATableValues(tenantId, getDefaultSplits(tenantId), null, ts);
+        String query = "SELECT a_string, count(1) FROM aTable WHERE organization_id=? GROUP BY a_string";
+        Properties props = new Properties(TEST_PROPERTIES);
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2)); // Execute at timestamp 2
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        try {
+            PreparedStatement statement = conn.prepareStatement(query);
+            statement.setString(1, tenantId);
+            ResultSet rs = statement.executeQuery();
+            int count = 0;
+            while (rs.next()) {
+                count += rs.getInt(2);
+            }
+            assertEquals(9, count);
+            QueryMetrics metrics = PhoenixRuntime.getQueryMetrics(rs);
+            assertTrue(metrics.getSplitCount() > 1);
+            assertEquals(metrics.getSplitCount(), metrics.getSplits().size());
+            long bytesScanned = 0;
+            for (SplitMetrics split : metrics.getSplits()) {
+                bytesScanned += split.getByteCount();
+            }
+            assertEquals(metrics.getBytesScanned(), bytesScanned);
+            assertTrue(metrics.getSpoolMemoryBytes() > 0);
+            assertEquals(0, metrics.getSpoolDiskBytes());
+            assertTrue(metrics.getStageTime(QueryMetrics.Stage.SPOOL, TimeUnit.NANOSECONDS) >= metrics.getStageTime(QueryMetrics.Stage.SCAN, TimeUnit.NANOSECONDS) / metrics.getSplitCount());
+        } finally {
+            conn.close();
+        }
+    }
+}
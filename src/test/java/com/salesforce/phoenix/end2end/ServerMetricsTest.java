@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.end2end;
+
+import static com.salesforce.phoenix.util.TestUtil.PHOENIX_JDBC_URL;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.salesforce.phoenix.metrics.ServerMetrics;
+
+public class ServerMetricsTest extends BaseHBaseManagedTimeTest {
+    private static final int NUMBER_OF_ROWS = 20;
+    
+    private static void initTableValues(Connection conn) throws SQLException {
+        ensureTableCreated(getUrl(),"IntIntKeyTest");
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO IntIntKeyTest VALUES(?,?)");
+        for (int i = 0; i < NUMBER_OF_ROWS; i++) {
+            stmt.setInt(1, i);
+            stmt.setInt(2, i % 4);
+            stmt.execute();
+        }
+        conn.commit();
+    }
+    
+    @Test
+    public void testAggregationAndMutationMetrics() throws Exception {
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL);
+        initTableValues(conn);
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        long groupCount = metrics.getGroupCount();
+        
+        ResultSet rs = conn.createStatement().executeQuery("SELECT j, count(*) FROM IntIntKeyTest GROUP BY j");
+        int count = 0;
+        while (rs.next()) {
+            count += rs.getInt(2);
+        }
+        assertEquals(NUMBER_OF_ROWS, count);
+        rs.close();
+        // All groups are released once the scans are closed
+        assertEquals(0, metrics.getActiveAggregationCount());
+        assertEquals(groupCount, metrics.getGroupCount());
+        
+        long rowsMutated = metrics.getRowsMutatedCount();
+        conn.setAutoCommit(true);
+        PreparedStatement stmt = conn.prepareStatement("DELETE FROM IntIntKeyTest WHERE i >= ? and i < ?");
+        stmt.setInt(1, 5);
+        stmt.setInt(2, 10);
+        assertEquals(5, stmt.executeUpdate());
+        assertEquals(rowsMutated + 5, metrics.getRowsMutatedCount());
+        assertEquals(0, metrics.getActiveAggregationCount());
+        conn.close();
+    }
+    
+    @Test
+    public void testStatisticsPublishedWhileCoprocessorsRun() throws Exception {
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL);
+        initTableValues(conn);
+        conn.close();
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("hadoop:service=RegionServer,name=PhoenixStatistics");
+        assertTrue(mbeanServer.isRegistered(name));
+        // Only the stop of the last started coprocessor unregisters it
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        metrics.start();
+        metrics.shutdown();
+        assertTrue(mbeanServer.isRegistered(name));
+    }
+}
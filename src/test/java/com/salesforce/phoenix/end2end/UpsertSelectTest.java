@@ -416,4 +416,98 @@ public class UpsertSelectTest extends BaseClientMangedTimeTest {
         conn.close();
         
     }
+    @Test
+    public void testUpsertSelectIntoOtherTableOnServer() throws Exception {
+        long ts = nextTimestamp();
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        conn.createStatement().execute("CREATE TABLE StagingTable (k VARCHAR NOT NULL PRIMARY KEY, v INTEGER) SPLIT ON ('c','f')");
+        conn.createStatement().execute("CREATE TABLE ProductionTable (k VARCHAR NOT NULL PRIMARY KEY, v BIGINT, s VARCHAR) SPLIT ON ('b','e')");
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2));
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO StagingTable VALUES(?, ?)");
+        for (char c = 'a'; c <= 'h'; c++) {
+            stmt.setString(1, String.valueOf(c));
+            stmt.setInt(2, c - 'a');
+            stmt.execute();
+        }
+        conn.commit();
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 4));
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        conn.setAutoCommit(true);
+        String upsert = "UPSERT INTO ProductionTable(k, v, s) SELECT k, v * 10, 'copied' FROM StagingTable WHERE v > 0";
+        ResultSet rs = conn.createStatement().executeQuery("EXPLAIN " + upsert);
+        assertTrue(rs.next());
+        assertEquals("UPSERT ROWS", rs.getString(1));
+        assertEquals(7, conn.createStatement().executeUpdate(upsert));
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 6));
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        rs = conn.createStatement().executeQuery("SELECT k, v, s FROM ProductionTable");
+        for (char c = 'b'; c <= 'h'; c++) {
+            assertTrue(rs.next());
+            assertEquals(String.valueOf(c), rs.getString(1));
+            assertEquals((c - 'a') * 10, rs.getLong(2));
+            assertEquals("copied", rs.getString(3));
+        }
+        assertFalse(rs.next());
+        conn.close();
+    }
+
+    @Test
+    public void testUpsertSelectGroupedByRowKeyOnServer() throws Exception {
+        long ts = nextTimestamp();
+        Properties props = new Properties();
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts));
+        Connection conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        // Split within the groups of c and f so that they straddle regions
+        conn.createStatement().execute("CREATE TABLE HourlyUsage (host CHAR(1) NOT NULL, hour VARCHAR NOT NULL, usage INTEGER CONSTRAINT pk PRIMARY KEY (host, hour)) SPLIT ON ('c1','f2')");
+        conn.createStatement().execute("CREATE TABLE DailyUsage (host CHAR(1) NOT NULL PRIMARY KEY, total BIGINT, hours BIGINT)");
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 2));
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO HourlyUsage VALUES(?, ?, ?)");
+        for (char c = 'a'; c <= 'h'; c++) {
+            for (int hour = 0; hour < 4; hour++) {
+                stmt.setString(1, String.valueOf(c));
+                stmt.setString(2, Integer.toString(hour));
+                stmt.setInt(3, hour + 1);
+                stmt.execute();
+            }
+        }
+        conn.commit();
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 4));
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        conn.setAutoCommit(true);
+        String upsert = "UPSERT INTO DailyUsage(host, total, hours) SELECT host, SUM(usage), COUNT(*) FROM HourlyUsage GROUP BY host HAVING host != 'e'";
+        ResultSet rs = conn.createStatement().executeQuery("EXPLAIN " + upsert);
+        assertTrue(rs.next());
+        assertEquals("UPSERT ROWS", rs.getString(1));
+        assertEquals(7, conn.createStatement().executeUpdate(upsert));
+        conn.close();
+        
+        props.setProperty(PhoenixRuntime.CURRENT_SCN_ATTRIB, Long.toString(ts + 6));
+        conn = DriverManager.getConnection(PHOENIX_JDBC_URL, props);
+        rs = conn.createStatement().executeQuery("SELECT host, total, hours FROM DailyUsage");
+        for (char c = 'a'; c <= 'h'; c++) {
+            if (c == 'e') {
+                continue;
+            }
+            assertTrue(rs.next());
+            assertEquals(String.valueOf(c), rs.getString(1));
+            assertEquals(10, rs.getLong(2));
+            assertEquals(4, rs.getLong(3));
+        }
+        assertFalse(rs.next());
+        conn.close();
+    }
 }
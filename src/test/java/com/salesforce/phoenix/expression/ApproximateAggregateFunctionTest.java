@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.aggregator.Aggregator;
+import com.salesforce.phoenix.expression.function.*;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.util.ByteUtil;
+import com.salesforce.phoenix.util.HyperLogLogUtil;
+
+
+public class ApproximateAggregateFunctionTest {
+    
+    /**
+     * Aggregates each array of values on its own server aggregator, as each region would,
+     * and merges their results on the client aggregator of the function.
+     * @return whether the function evaluated to a non null value, which is then in ptr
+     */
+    private static boolean aggregate(SingleAggregateFunction function, ImmutableBytesWritable ptr, byte[][]... regionValues) {
+        Aggregator clientAggregator = function.getAggregator();
+        for (byte[][] values : regionValues) {
+            Aggregator serverAggregator = function.newServerAggregator();
+            for (byte[] value : values) {
+                serverAggregator.aggregate(null, new ImmutableBytesWritable(value));
+            }
+            if (serverAggregator.evaluate(null, ptr)) {
+                clientAggregator.aggregate(null, ptr);
+            }
+        }
+        return function.evaluate(null, ptr);
+    }
+    
+    private static byte[][] strings(String... values) {
+        byte[][] b = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = PDataType.VARCHAR.toBytes(values[i]);
+        }
+        return b;
+    }
+    
+    private static byte[][] longs(long from, long to) {
+        byte[][] b = new byte[(int)(to - from)][];
+        for (long n = from; n < to; n++) {
+            b[(int)(n - from)] = PDataType.LONG.toBytes(n);
+        }
+        return b;
+    }
+    
+    @Test
+    public void testApproxCountDistinct() throws Exception {
+        ApproxCountDistinctAggregateFunction function = new ApproxCountDistinctAggregateFunction(Arrays.<Expression>asList(
+                LiteralExpression.newConstant(1L)));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(function.evaluate(null, ptr));
+        assertEquals(0L, PDataType.LONG.toObject(ptr));
+        
+        // Overlapping values and a null value across the regions
+        assertTrue(aggregate(function, ptr, longs(0, 1000), longs(500, 1500), new byte[][] {ByteUtil.EMPTY_BYTE_ARRAY}));
+        long estimate = (Long)PDataType.LONG.toObject(ptr);
+        double maxError = 3 * 1.04 / Math.sqrt(HyperLogLogUtil.REGISTER_COUNT);
+        assertTrue("Estimate of " + estimate, Math.abs(estimate - 1500) <= 1500 * maxError);
+    }
+    
+    @Test
+    public void testPercentileApprox() throws Exception {
+        PercentileApproxAggregateFunction function = new PercentileApproxAggregateFunction(Arrays.<Expression>asList(
+                LiteralExpression.newConstant(1L), LiteralExpression.newConstant(new BigDecimal("0.9"))));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertFalse(function.evaluate(null, ptr));
+        
+        assertTrue(aggregate(function, ptr, longs(1, 500), longs(500, 1001)));
+        double percentile = ((BigDecimal)PDataType.DECIMAL.toObject(ptr)).doubleValue();
+        // Within the rank error of the digest
+        assertEquals(900, percentile, 5);
+    }
+    
+    @Test
+    public void testPercentileOutOfRange() {
+        try {
+            new PercentileApproxAggregateFunction(Arrays.<Expression>asList(
+                    LiteralExpression.newConstant(1L), LiteralExpression.newConstant(new BigDecimal("1.5"))));
+            fail();
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().contains(PercentileApproxAggregateFunction.NAME));
+        }
+    }
+    
+    @Test
+    public void testTopK() throws Exception {
+        TopKAggregateFunction function = new TopKAggregateFunction(Arrays.<Expression>asList(
+                LiteralExpression.newConstant("a"), LiteralExpression.newConstant(2)));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertFalse(function.evaluate(null, ptr));
+        
+        assertTrue(aggregate(function, ptr, strings("a", "b", "a", "c", "b", "a"), strings("b", "b", "d")));
+        assertEquals("b=4, a=3", PDataType.VARCHAR.toObject(ptr));
+    }
+    
+    @Test
+    public void testTopKEscapesSeparators() throws Exception {
+        TopKAggregateFunction function = new TopKAggregateFunction(Arrays.<Expression>asList(
+                LiteralExpression.newConstant("a"), LiteralExpression.newConstant(3)));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(aggregate(function, ptr, strings("x=1, y", "x=1, y", "x=1, y", "a\\b", "a\\b", "c,")));
+        assertEquals("x\\=1\\, y=3, a\\\\b=2, c\\,=1", PDataType.VARCHAR.toObject(ptr));
+    }
+    
+    @Test
+    public void testTopKOutOfRange() {
+        for (int k : new int[] {0, TopKAggregateFunction.MAX_K + 1}) {
+            try {
+                new TopKAggregateFunction(Arrays.<Expression>asList(
+                        LiteralExpression.newConstant("a"), LiteralExpression.newConstant(k)));
+                fail();
+            } catch (SQLException e) {
+                assertTrue(e.getMessage().contains(TopKAggregateFunction.NAME));
+            }
+        }
+    }
+}
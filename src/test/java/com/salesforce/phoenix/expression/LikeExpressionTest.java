@@ -29,6 +29,7 @@ package com.salesforce.phoenix.expression;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
 
 import java.util.Arrays;
 import java.util.List;
@@ -50,4 +51,44 @@ public class LikeExpressionTest {
         assertEquals(Boolean.FALSE,result);
     }
 
+    private static boolean like(String value, String pattern) {
+        LikeExpression e = new LikeExpression(Arrays.<Expression>asList(LiteralExpression.newConstant(value), LiteralExpression.newConstant(pattern)));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        assertTrue(e.evaluate(null, ptr));
+        return (Boolean)e.getDataType().toObject(ptr);
+    }
+    
+    @Test
+    public void testExactPrefixSuffixContains() throws Exception {
+        assertTrue(like("abc", "abc"));
+        assertFalse(like("abcd", "abc"));
+        assertTrue(like("abcd", "abc%"));
+        assertTrue(like("abc", "abc%"));
+        assertFalse(like("xabc", "abc%"));
+        assertTrue(like("xabc", "%abc"));
+        assertFalse(like("abcx", "%abc"));
+        assertTrue(like("xxabcxx", "%abc%"));
+        assertTrue(like("abc", "%%abc%%"));
+        assertFalse(like("ab", "%abc%"));
+        assertFalse(like("aabbcc", "%abc%"));
+        assertTrue(like("aababcab", "%abcab"));
+        assertTrue(like("aababcab", "%babca%"));
+        assertTrue(like("anything", "%"));
+        assertTrue(like("ab\ncd", "ab%"));
+        assertTrue(like("ab\ncd", "a%d"));
+    }
+    
+    @Test
+    public void testEscapesAndMultiByte() throws Exception {
+        assertTrue(like("50%", "50\\%"));
+        assertFalse(like("500", "50\\%"));
+        assertTrue(like("a_b", "%\\_%"));
+        assertFalse(like("ab", "%\\_%"));
+        assertTrue(like("caf\u00e9 cr\u00e8me", "%\u00e9 cr%"));
+        assertTrue(like("\u65e5\u672c\u8a9e", "\u65e5%"));
+        assertTrue(like("\u65e5\u672c\u8a9e", "%\u8a9e"));
+        assertTrue(like("\u65e5\u672c\u8a9e", "_\u672c_"));
+        assertFalse(like("\u65e5\u672c\u8a9e", "__"));
+    }
+
 }
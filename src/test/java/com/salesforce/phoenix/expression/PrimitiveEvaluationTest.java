@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.expression;
+
+import static org.junit.Assert.*;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import com.salesforce.phoenix.filter.FilterExpressionCompiler;
+import com.salesforce.phoenix.schema.PDataType;
+
+public class PrimitiveEvaluationTest {
+    @Test
+    public void testNestedArithmetic() throws Exception {
+        // (7 * 2) + 1 - 3
+        Expression multiply = new LongMultiplyExpression(Arrays.<Expression>asList(
+                LiteralExpression.newConstant(7, PDataType.INTEGER), LiteralExpression.newConstant(2L, PDataType.LONG)));
+        Expression add = new LongAddExpression(Arrays.<Expression>asList(multiply, LiteralExpression.newConstant(1L, PDataType.LONG)));
+        Expression subtract = new LongSubtractExpression(Arrays.<Expression>asList(add, LiteralExpression.newConstant(3, PDataType.INTEGER)));
+        
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        PrimitiveResult result = new PrimitiveResult();
+        assertTrue(subtract.evaluateLong(null, ptr, result));
+        assertFalse(result.isNull());
+        assertEquals(12L, result.getLong());
+        
+        assertTrue(subtract.evaluate(null, ptr));
+        assertEquals(12L, PDataType.LONG.toObject(ptr));
+    }
+
+    @Test
+    public void testNullOperand() throws Exception {
+        Expression add = new LongAddExpression(Arrays.<Expression>asList(
+                LiteralExpression.newConstant(null, PDataType.LONG), LiteralExpression.newConstant(1L, PDataType.LONG)));
+        assertFalse(add.evaluateLong(null, new ImmutableBytesWritable(), new PrimitiveResult()));
+    }
+
+    @Test
+    public void testLongComparison() throws Exception {
+        Expression add = new LongAddExpression(Arrays.<Expression>asList(
+                LiteralExpression.newConstant(5, PDataType.INTEGER), LiteralExpression.newConstant(1L, PDataType.LONG)));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        PrimitiveResult result = new PrimitiveResult();
+        for (CompareOp op : new CompareOp[] {CompareOp.LESS, CompareOp.EQUAL, CompareOp.GREATER_OR_EQUAL}) {
+            Expression comparison = new ComparisonExpression(op, Arrays.<Expression>asList(add, LiteralExpression.newConstant(6, PDataType.INTEGER)));
+            assertTrue(comparison.evaluateBoolean(null, ptr, result));
+            assertEquals(op != CompareOp.LESS, result.getBoolean());
+            assertTrue(comparison.evaluate(null, ptr));
+            assertEquals(op != CompareOp.LESS, PDataType.BOOLEAN.toObject(ptr));
+        }
+    }
+
+    @Test
+    public void testTimestampComparisonWithNanos() throws Exception {
+        // Equal milliseconds, but different nanoseconds
+        Timestamp lhsValue = new Timestamp(1000);
+        lhsValue.setNanos(1);
+        Timestamp rhsValue = new Timestamp(1000);
+        rhsValue.setNanos(2);
+        Expression lhs = LiteralExpression.newConstant(lhsValue, PDataType.TIMESTAMP);
+        Expression rhs = LiteralExpression.newConstant(rhsValue, PDataType.TIMESTAMP);
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        PrimitiveResult result = new PrimitiveResult();
+        for (CompareOp op : new CompareOp[] {CompareOp.LESS, CompareOp.EQUAL, CompareOp.GREATER}) {
+            Expression comparison = new ComparisonExpression(op, Arrays.<Expression>asList(lhs, rhs));
+            assertTrue(comparison.evaluateBoolean(null, ptr, result));
+            assertEquals(op == CompareOp.LESS, result.getBoolean());
+            assertTrue(comparison.evaluate(null, ptr));
+            assertEquals(op == CompareOp.LESS, PDataType.BOOLEAN.toObject(ptr));
+            Expression filter = FilterExpressionCompiler.compile(comparison);
+            assertTrue(filter.evaluate(null, ptr));
+            assertEquals(op == CompareOp.LESS, PDataType.BOOLEAN.toObject(ptr));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.*;
+import com.salesforce.phoenix.schema.PDataType;
+
+
+public class FilterExpressionCompilerTest {
+    
+    private static Boolean evaluate(Expression e) {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        if (!e.evaluate(null, ptr)) {
+            return null;
+        }
+        return (Boolean)e.getDataType().toObject(ptr);
+    }
+    
+    private static void assertCompiledMatches(Object lhsValue, PDataType lhsType, Object rhsValue, PDataType rhsType, boolean isSpecialized) throws Exception {
+        for (CompareOp op : CompareOp.values()) {
+            if (op == CompareOp.NO_OP) {
+                continue;
+            }
+            Expression e = new ComparisonExpression(op, Arrays.<Expression>asList(
+                    LiteralExpression.newConstant(lhsValue, lhsType), LiteralExpression.newConstant(rhsValue, rhsType)));
+            Expression compiled = FilterExpressionCompiler.compile(e);
+            assertEquals(isSpecialized, compiled != e);
+            assertEquals(e.toString(), evaluate(e), evaluate(compiled));
+        }
+    }
+
+    @Test
+    public void testBytesComparable() throws Exception {
+        assertCompiledMatches("b", PDataType.VARCHAR, "a", PDataType.VARCHAR, true);
+        assertCompiledMatches("a", PDataType.VARCHAR, "a", PDataType.VARCHAR, true);
+        assertCompiledMatches(5L, PDataType.LONG, 7L, PDataType.LONG, true);
+    }
+
+    @Test
+    public void testNativeComparison() throws Exception {
+        assertCompiledMatches(5, PDataType.INTEGER, 7L, PDataType.LONG, true);
+        assertCompiledMatches(-5, PDataType.INTEGER, -5L, PDataType.LONG, true);
+        assertCompiledMatches(9L, PDataType.LONG, 7, PDataType.INTEGER, true);
+    }
+
+    @Test
+    public void testConvertedConstant() throws Exception {
+        assertCompiledMatches(new BigDecimal("7.5"), PDataType.DECIMAL, 7L, PDataType.LONG, true);
+        assertCompiledMatches(new BigDecimal("7"), PDataType.DECIMAL, 7, PDataType.INTEGER, true);
+        // Converting the non constant side per row gains nothing
+        assertCompiledMatches(7L, PDataType.LONG, new BigDecimal("7.5"), PDataType.DECIMAL, false);
+    }
+
+    @Test
+    public void testAndOr() throws Exception {
+        Expression c1 = new ComparisonExpression(CompareOp.GREATER, Arrays.<Expression>asList(
+                LiteralExpression.newConstant(5, PDataType.INTEGER), LiteralExpression.newConstant(3L, PDataType.LONG)));
+        Expression c2 = new ComparisonExpression(CompareOp.LESS, Arrays.<Expression>asList(
+                LiteralExpression.newConstant(7L, PDataType.LONG), LiteralExpression.newConstant(new BigDecimal("7.5"), PDataType.DECIMAL)));
+        Expression c3 = new ComparisonExpression(CompareOp.EQUAL, Arrays.<Expression>asList(
+                LiteralExpression.newConstant("a", PDataType.VARCHAR), LiteralExpression.newConstant("b", PDataType.VARCHAR)));
+        Expression and = new AndExpression(Arrays.asList(c1, c2));
+        Expression compiledAnd = FilterExpressionCompiler.compile(and);
+        assertTrue(compiledAnd instanceof AndExpression);
+        assertNotSame(and, compiledAnd);
+        assertSame(c2, compiledAnd.getChildren().get(1));
+        assertEquals(evaluate(and), evaluate(compiledAnd));
+        
+        Expression or = new OrExpression(Arrays.asList(c3, and));
+        Expression compiledOr = FilterExpressionCompiler.compile(or);
+        assertTrue(compiledOr instanceof OrExpression);
+        assertEquals(evaluate(or), evaluate(compiledOr));
+        
+        Expression notSpecialized = new AndExpression(Arrays.asList(c2, c2));
+        assertSame(notSpecialized, FilterExpressionCompiler.compile(notSpecialized));
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.filter;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Writables;
+import org.junit.Test;
+
+
+public class RowKeySampleFilterTest {
+    private static final int ROW_COUNT = 100000;
+    
+    private static int getSampledRowCount(RowKeySampleFilter filter) {
+        int sampledRowCount = 0;
+        for (int i = 0; i < ROW_COUNT; i++) {
+            byte[] rowKey = Bytes.toBytes("row" + i);
+            if (!filter.filterRowKey(rowKey, 0, rowKey.length)) {
+                sampledRowCount++;
+            }
+        }
+        return sampledRowCount;
+    }
+    
+    @Test
+    public void testSamplingRate() throws Exception {
+        for (double samplePercent : new double[] {1, 10, 33.3, 50, 90}) {
+            int expectedRowCount = (int)(ROW_COUNT * samplePercent / 100);
+            int sampledRowCount = getSampledRowCount(new RowKeySampleFilter(samplePercent));
+            // Allow for 5% of relative error plus a constant for the small percentages
+            assertEquals("Sampled " + sampledRowCount + " rows at " + samplePercent + "%", expectedRowCount, sampledRowCount, expectedRowCount * 0.05 + 50);
+        }
+        assertEquals(ROW_COUNT, getSampledRowCount(new RowKeySampleFilter(100)));
+    }
+    
+    @Test
+    public void testSamplingIsDeterministic() throws Exception {
+        RowKeySampleFilter filter1 = new RowKeySampleFilter(20);
+        RowKeySampleFilter filter2 = new RowKeySampleFilter(20);
+        for (int i = 0; i < 1000; i++) {
+            byte[] rowKey = Bytes.toBytes(i);
+            assertEquals(filter1.filterRowKey(rowKey, 0, rowKey.length), filter2.filterRowKey(rowKey, 0, rowKey.length));
+        }
+    }
+    
+    @Test
+    public void testSerialization() throws Exception {
+        RowKeySampleFilter filter = new RowKeySampleFilter(12.5);
+        RowKeySampleFilter copy = (RowKeySampleFilter)Writables.getWritable(Writables.getBytes(filter), new RowKeySampleFilter());
+        assertEquals(filter, copy);
+        assertEquals(12.5, copy.getSamplePercent(), 0);
+        // The threshold is recomputed from the percentage when deserialized
+        for (int i = 0; i < 1000; i++) {
+            byte[] rowKey = Bytes.toBytes(i);
+            assertEquals(filter.filterRowKey(rowKey, 0, rowKey.length), copy.filterRowKey(rowKey, 0, rowKey.length));
+        }
+    }
+}
@@ -29,6 +29,7 @@ package com.salesforce.phoenix.iterate;
 
 import static com.salesforce.phoenix.query.QueryConstants.*;
 import static com.salesforce.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.*;
 
 import java.io.*;
 import java.sql.*;
@@ -36,9 +37,12 @@ import java.util.*;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.salesforce.phoenix.compile.AggregationManager;
 import com.salesforce.phoenix.compile.StatementContext;
 import com.salesforce.phoenix.expression.Expression;
@@ -61,6 +65,53 @@ public class AggregateResultScannerTest extends BaseConnectionlessQueryTest {
 
     @Test
     public void testAggregatingMergeSort() throws Throwable {
+        PhoenixConnection pconn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES).unwrap(PhoenixConnection.class);
+        StatementContext context = newContext(pconn);
+        ResultIterator scanner = new GroupedAggregatingResultIterator(new MergeSortResultIterator(newIterators()), context.getAggregationManager().getAggregators());
+        AssertResults.assertResults(scanner, EXPECTED_RESULTS);
+    }
+
+    @Test
+    public void testHashAggregation() throws Throwable {
+        PhoenixConnection pconn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES).unwrap(PhoenixConnection.class);
+        StatementContext context = newContext(pconn);
+        for (int partitionCount = 1; partitionCount <= 3; partitionCount++) {
+            ResultIterator scanner = new HashAggregatingResultIterator(context, newIterators(), context.getAggregationManager().getAggregators(), partitionCount);
+            AssertResults.assertUnorderedResults(scanner, EXPECTED_RESULTS);
+        }
+    }
+
+    @Test
+    public void testHashAggregationEvaluatesAggregateFunctions() throws Throwable {
+        PhoenixConnection pconn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES).unwrap(PhoenixConnection.class);
+        StatementContext context = newContext(pconn);
+        ClientAggregators aggregators = context.getAggregationManager().getAggregators();
+        // Projected aggregate functions are evaluated through the aggregators of the statement
+        SingleAggregateFunction func = aggregators.getFunctions()[0];
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        Map<String,Long> sums = new HashMap<String,Long>();
+        ResultIterator scanner = new HashAggregatingResultIterator(context, newIterators(), aggregators, 2);
+        try {
+            for (Tuple result = scanner.next(); result != null; result = scanner.next()) {
+                assertTrue(func.evaluate(result, ptr));
+                Long sum = (Long)func.getDataType().toObject(ptr);
+                result.getKey(ptr);
+                sums.put(Bytes.toString(ptr.copyBytes()), sum);
+            }
+        } finally {
+            scanner.close();
+        }
+        assertEquals(2, sums.size());
+        assertEquals(Long.valueOf(3), sums.get("a"));
+        assertEquals(Long.valueOf(2), sums.get("b"));
+    }
+
+    private static final Tuple[] EXPECTED_RESULTS = new Tuple[] {
+            new SingleKeyValueTuple(new KeyValue(A, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, PDataType.LONG.toBytes(3L))),
+            new SingleKeyValueTuple(new KeyValue(B, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, PDataType.LONG.toBytes(2L))),
+        };
+
+    private static ResultIterators newIterators() {
         Tuple[] results1 = new Tuple[] {
                 new SingleKeyValueTuple(new KeyValue(A, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, PDataType.LONG.toBytes(1L))),
             };
@@ -80,12 +131,35 @@ public class AggregateResultScannerTest extends BaseConnectionlessQueryTest {
                 new MaterializedResultIterator(Arrays.asList(results3)), 
                 new MaterializedResultIterator(Arrays.asList(results4))}));
 
-        Tuple[] expectedResults = new Tuple[] {
-                new SingleKeyValueTuple(new KeyValue(A, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, PDataType.LONG.toBytes(3L))),
-                new SingleKeyValueTuple(new KeyValue(B, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, PDataType.LONG.toBytes(2L))),
-            };
+        return new ResultIterators() {
 
-        PhoenixConnection pconn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES).unwrap(PhoenixConnection.class);
+            @Override
+            public ListenableFuture<?> submit() {
+                return Futures.immediateFuture(null);
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public List<PeekingResultIterator> getIterators() throws SQLException {
+                return results;
+            }
+
+            @Override
+            public int size() {
+                return results.size();
+            }
+
+            @Override
+            public void explain(List<String> planSteps) {
+            }
+            
+        };
+    }
+
+    private static StatementContext newContext(PhoenixConnection pconn) {
         StatementContext context = new StatementContext(pconn, null, Collections.emptyList(), 0, new Scan());
         AggregationManager aggregationManager = context.getAggregationManager();
         SumAggregateFunction func = new SumAggregateFunction(Arrays.<Expression>asList(new KeyValueColumnExpression(new PLongColumn() {
@@ -109,24 +183,6 @@ public class AggregateResultScannerTest extends BaseConnectionlessQueryTest {
             }
         })), null);
         aggregationManager.setAggregators(new ClientAggregators(Collections.<SingleAggregateFunction>singletonList(func), 1));
-        ResultIterators iterators = new ResultIterators() {
-
-            @Override
-            public List<PeekingResultIterator> getIterators() throws SQLException {
-                return results;
-            }
-
-            @Override
-            public int size() {
-                return results.size();
-            }
-
-            @Override
-            public void explain(List<String> planSteps) {
-            }
-            
-        };
-        ResultIterator scanner = new GroupedAggregatingResultIterator(new MergeSortResultIterator(iterators), aggregationManager.getAggregators());
-        AssertResults.assertResults(scanner, expectedResults);
+        return context;
     }
 }
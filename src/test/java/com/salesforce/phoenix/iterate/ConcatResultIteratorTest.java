@@ -37,6 +37,8 @@ import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.AssertResults;
@@ -64,6 +66,15 @@ public class ConcatResultIteratorTest {
         final List<PeekingResultIterator>results = Arrays.asList(new PeekingResultIterator[] {new MaterializedResultIterator(Arrays.asList(results1)), new MaterializedResultIterator(Arrays.asList(results2)), new MaterializedResultIterator(Arrays.asList(results3))});
         ResultIterators iterators = new ResultIterators() {
 
+            @Override
+            public ListenableFuture<?> submit() {
+                return Futures.immediateFuture(null);
+            }
+
+            @Override
+            public void close() {
+            }
+
             @Override
             public List<PeekingResultIterator> getIterators() throws SQLException {
                 return results;
@@ -114,6 +125,15 @@ public class ConcatResultIteratorTest {
 
         ResultIterators iterators = new ResultIterators() {
 
+            @Override
+            public ListenableFuture<?> submit() {
+                return Futures.immediateFuture(null);
+            }
+
+            @Override
+            public void close() {
+            }
+
             @Override
             public List<PeekingResultIterator> getIterators() throws SQLException {
                 return results;
@@ -37,6 +37,8 @@ import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Test;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
 import com.salesforce.phoenix.schema.tuple.Tuple;
 import com.salesforce.phoenix.util.AssertResults;
@@ -69,6 +71,15 @@ public class MergeSortResultIteratorTest {
 
         ResultIterators iterators = new ResultIterators() {
 
+            @Override
+            public ListenableFuture<?> submit() {
+                return Futures.immediateFuture(null);
+            }
+
+            @Override
+            public void close() {
+            }
+
             @Override
             public List<PeekingResultIterator> getIterators() throws SQLException {
                 return results;
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.iterate;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.salesforce.phoenix.query.KeyRange;
+
+
+public class ParallelIteratorsSampleTest {
+    
+    @Test
+    public void testSampledSplitCount() {
+        assertEquals(1, ParallelIterators.getSampledSplitCount(10, 1));
+        assertEquals(1, ParallelIterators.getSampledSplitCount(10, 10));
+        assertEquals(2, ParallelIterators.getSampledSplitCount(10, 10.5));
+        assertEquals(5, ParallelIterators.getSampledSplitCount(10, 50));
+        assertEquals(10, ParallelIterators.getSampledSplitCount(10, 100));
+        assertEquals(1, ParallelIterators.getSampledSplitCount(1, 0.01));
+    }
+    
+    @Test
+    public void testRowSamplePercent() {
+        // Splits are scanned in full when they're sampled exactly
+        assertEquals(100, ParallelIterators.getRowSamplePercent(10, 5, 50), 0);
+        // One of ten splits is scanned for a 1% sample, so 10% of its rows are kept
+        assertEquals(10, ParallelIterators.getRowSamplePercent(10, 1, 1), 1e-9);
+        // Two of ten splits are scanned for a 15% sample, so 75% of their rows are kept
+        assertEquals(75, ParallelIterators.getRowSamplePercent(10, 2, 15), 1e-9);
+        // The rows of the scanned splits add up to the requested percentage of the table
+        for (double samplePercent : new double[] {0.5, 3, 33.3, 99}) {
+            for (int splitCount = 1; splitCount <= 20; splitCount++) {
+                int sampledSplitCount = ParallelIterators.getSampledSplitCount(splitCount, samplePercent);
+                double rowSamplePercent = ParallelIterators.getRowSamplePercent(splitCount, sampledSplitCount, samplePercent);
+                assertTrue(rowSamplePercent > 0 && rowSamplePercent <= 100);
+                assertEquals(samplePercent, sampledSplitCount * rowSamplePercent / splitCount, 1e-9);
+            }
+        }
+    }
+    
+    @Test
+    public void testSampledSplitsAreDeterministic() {
+        List<KeyRange> splits = Lists.newArrayList();
+        byte[] lowerRange = KeyRange.UNBOUND_LOWER;
+        for (int i = 1; i <= 20; i++) {
+            byte[] upperRange = Bytes.toBytes(i * 1000);
+            splits.add(KeyRange.getKeyRange(lowerRange, true, upperRange, false));
+            lowerRange = upperRange;
+        }
+        splits.add(KeyRange.getKeyRange(lowerRange, true, KeyRange.UNBOUND_UPPER, false));
+        
+        List<KeyRange> sampledSplits = ParallelIterators.getSampledSplits(splits, 5);
+        assertEquals(5, sampledSplits.size());
+        assertTrue(splits.containsAll(sampledSplits));
+        // The sampled splits stay in key order
+        List<KeyRange> sortedSplits = Lists.newArrayList(sampledSplits);
+        Collections.sort(sortedSplits, KeyRange.COMPARATOR);
+        assertEquals(sortedSplits, sampledSplits);
+        // The same splits are chosen each time, regardless of the order they're given in
+        assertEquals(sampledSplits, ParallelIterators.getSampledSplits(splits, 5));
+        Collections.reverse(splits);
+        assertEquals(sampledSplits, ParallelIterators.getSampledSplits(splits, 5));
+        // Every split is scanned for a 100% sample
+        assertEquals(21, ParallelIterators.getSampledSplits(splits, 21).size());
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.jdbc;
+
+import static com.salesforce.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.*;
+
+import java.sql.DriverManager;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.compile.*;
+import com.salesforce.phoenix.expression.BaseTerminalExpression;
+import com.salesforce.phoenix.iterate.MaterializedResultIterator;
+import com.salesforce.phoenix.query.BaseConnectionlessQueryTest;
+import com.salesforce.phoenix.query.WrappedScanner;
+import com.salesforce.phoenix.schema.PDataType;
+import com.salesforce.phoenix.schema.tuple.SingleKeyValueTuple;
+import com.salesforce.phoenix.schema.tuple.Tuple;
+
+
+public class PhoenixResultSetTest extends BaseConnectionlessQueryTest {
+
+    /**
+     * Expression that returns the row key as a LONG, counting how often it is evaluated
+     */
+    private static class RowKeyExpression extends BaseTerminalExpression {
+        private final AtomicInteger evaluationCount = new AtomicInteger();
+        
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            evaluationCount.incrementAndGet();
+            tuple.getKey(ptr);
+            return true;
+        }
+
+        @Override
+        public PDataType getDataType() {
+            return PDataType.LONG;
+        }
+    }
+    
+    private static Tuple newRow(long key) {
+        return new SingleKeyValueTuple(new KeyValue(PDataType.LONG.toBytes(key), Bytes.toBytes("f"), Bytes.toBytes("q"), 0, Bytes.toBytes("v")));
+    }
+    
+    @Test
+    public void testColumnValuesClearedOnNext() throws Exception {
+        RowKeyExpression expression = new RowKeyExpression();
+        RowProjector projector = new RowProjector(Arrays.<ColumnProjector>asList(new ExpressionProjector("K", "T", expression, false)));
+        List<Tuple> rows = Arrays.asList(newRow(1), newRow(Integer.MAX_VALUE + 1L), newRow(-3));
+        PhoenixConnection conn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES).unwrap(PhoenixConnection.class);
+        PhoenixResultSet rs = new PhoenixResultSet(new WrappedScanner(new MaterializedResultIterator(rows), projector), new PhoenixStatement(conn));
+        try {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getLong(1));
+            assertEquals(1, rs.getInt(1));
+            assertEquals(1.0, rs.getDouble(1), 0);
+            assertEquals(1L, rs.getObject(1));
+            // Evaluated once for the row, no matter how often it's read
+            assertEquals(1, expression.evaluationCount.get());
+            
+            assertTrue(rs.next());
+            assertEquals(Integer.MAX_VALUE + 1L, rs.getLong(1));
+            assertEquals(Integer.MAX_VALUE + 1L, rs.getObject(1));
+            assertEquals(2, expression.evaluationCount.get());
+            
+            // Not read at all for this row, so the next row must not see its value
+            assertTrue(rs.next());
+            assertFalse(rs.next());
+            assertEquals(2, expression.evaluationCount.get());
+        } finally {
+            rs.close();
+            conn.close();
+        }
+    }
+    
+    @Test
+    public void testColumnValueOfPreviousRowNotReused() throws Exception {
+        RowKeyExpression expression = new RowKeyExpression();
+        RowProjector projector = new RowProjector(Arrays.<ColumnProjector>asList(new ExpressionProjector("K", "T", expression, false)));
+        List<Tuple> rows = Arrays.asList(newRow(1), newRow(2), newRow(-3));
+        PhoenixConnection conn = DriverManager.getConnection(getUrl(), TEST_PROPERTIES).unwrap(PhoenixConnection.class);
+        PhoenixResultSet rs = new PhoenixResultSet(new WrappedScanner(new MaterializedResultIterator(rows), projector), new PhoenixStatement(conn));
+        try {
+            for (long expected : new long[] {1, 2, -3}) {
+                assertTrue(rs.next());
+                assertEquals(expected, rs.getLong(1));
+                assertEquals(expected, rs.getObject(1));
+            }
+            assertFalse(rs.next());
+            assertEquals(3, expression.evaluationCount.get());
+        } finally {
+            rs.close();
+            conn.close();
+        }
+    }
+}
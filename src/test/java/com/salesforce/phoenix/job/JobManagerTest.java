@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.job;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.salesforce.phoenix.job.JobManager.Job;
+import com.salesforce.phoenix.job.JobManager.JobCallable;
+import com.salesforce.phoenix.job.JobManager.JobFutureTask;
+
+/**
+ * 
+ * Tests for the scheduling of tasks by {@link JobManager}
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class JobManagerTest {
+    
+    private static Runnable newTask(final Object jobId) {
+        return new JobFutureTask<Void>(new JobCallable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+
+            @Override
+            public Object getJobId() {
+                return jobId;
+            }
+        });
+    }
+    
+    private static Object getJobId(Runnable task) {
+        return ((JobFutureTask<?>)task).getJobId();
+    }
+    
+    @Test
+    public void testHigherPriorityFirst() {
+        JobManager<Runnable> queue = new JobManager<Runnable>(100);
+        Job low = new Job(null, 1, 0, 0);
+        Job high = new Job(null, 1, 1, 0);
+        queue.offer(newTask(low));
+        queue.offer(newTask(low));
+        queue.offer(newTask(high));
+        assertSame(high, getJobId(queue.poll()));
+        assertSame(low, getJobId(queue.poll()));
+        assertSame(low, getJobId(queue.poll()));
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+    
+    @Test
+    public void testTenantsServedByWeight() {
+        JobManager<Runnable> queue = new JobManager<Runnable>(100);
+        Job heavy = new Job("a", 3, 0, 0);
+        Job light = new Job("b", 1, 0, 0);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(newTask(heavy));
+        }
+        for (int i = 0; i < 20; i++) {
+            queue.offer(newTask(light));
+        }
+        int heavyCount = 0;
+        for (int i = 0; i < 16; i++) {
+            if (getJobId(queue.poll()) == heavy) {
+                heavyCount++;
+            }
+        }
+        assertEquals(12, heavyCount);
+    }
+    
+    @Test
+    public void testSmallJobNotStarvedByLargeJobOfOtherTenant() {
+        JobManager<Runnable> queue = new JobManager<Runnable>(1000);
+        Job report = new Job("a", 1, 0, 0);
+        for (int i = 0; i < 500; i++) {
+            queue.offer(newTask(report));
+        }
+        for (int i = 0; i < 10; i++) {
+            queue.poll();
+        }
+        Job lookup = new Job("b", 1, 0, 0);
+        queue.offer(newTask(lookup));
+        queue.offer(newTask(lookup));
+        // The new tenant starts at the same pass as the one being served, so it alternates with it
+        Set<Object> jobIds = new HashSet<Object>();
+        for (int i = 0; i < 4; i++) {
+            jobIds.add(getJobId(queue.poll()));
+        }
+        assertTrue(jobIds.contains(lookup));
+        assertEquals(2, jobIds.size());
+    }
+    
+    @Test
+    public void testNewJobFirstWithinTenant() {
+        JobManager<Runnable> queue = new JobManager<Runnable>(100);
+        Job first = new Job("a", 1, 0, 0);
+        Job second = new Job("a", 1, 0, 0);
+        queue.offer(newTask(first));
+        queue.offer(newTask(first));
+        queue.offer(newTask(second));
+        queue.offer(newTask(second));
+        assertSame(second, getJobId(queue.poll()));
+        assertSame(first, getJobId(queue.poll()));
+        assertSame(second, getJobId(queue.poll()));
+        assertSame(first, getJobId(queue.poll()));
+    }
+    
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        JobManager<Runnable> queue = new JobManager<Runnable>(100);
+        Job job = new Job(null, 1, 0, 2);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(newTask(job));
+        }
+        Runnable task1 = queue.poll();
+        assertNotNull(task1);
+        assertNotNull(queue.poll());
+        assertNull(queue.poll());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.size());
+        queue.finished(task1);
+        assertNotNull(queue.poll());
+        assertNull(queue.poll());
+        // Draining ignores the limit, since the tasks will not be run
+        List<Runnable> drained = new ArrayList<Runnable>();
+        assertEquals(1, queue.drainTo(drained));
+        assertEquals(0, queue.size());
+    }
+    
+    @Test
+    public void testExecutorHonorsMaxConcurrency() throws Exception {
+        ThreadPoolExecutor exec = JobManager.createThreadPoolExec(1000, 8, 100);
+        try {
+            final Job job = new Job(null, 1, 0, 2);
+            final AtomicInteger runningCount = new AtomicInteger();
+            final AtomicInteger maxRunningCount = new AtomicInteger();
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(exec.submit(new JobCallable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        int count = runningCount.incrementAndGet();
+                        synchronized (maxRunningCount) {
+                            maxRunningCount.set(Math.max(count, maxRunningCount.get()));
+                        }
+                        Thread.sleep(10);
+                        runningCount.decrementAndGet();
+                        return null;
+                    }
+
+                    @Override
+                    public Object getJobId() {
+                        return job;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(2, maxRunningCount.get());
+        } finally {
+            exec.shutdown();
+        }
+    }
+}
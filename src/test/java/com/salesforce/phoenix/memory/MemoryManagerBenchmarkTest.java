@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.memory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.salesforce.phoenix.memory.MemoryManager.MemoryChunk;
+
+
+/**
+ * 
+ * Contention benchmark of the global memory manager with 64 concurrent allocators,
+ * each allocating through its own child memory manager. The pool is sized so that
+ * allocators regularly have to wait for each other. Only runs when the
+ * phoenix.benchmark system property is true, for example with
+ * mvn test -Dtest=MemoryManagerBenchmarkTest -Dphoenix.benchmark=true
+ *
+ * @author jtaylor
+ * @since 1.2
+ */
+public class MemoryManagerBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(MemoryManagerBenchmarkTest.class);
+    private static final String BENCHMARK_ATTRIB = "phoenix.benchmark";
+    
+    @Test
+    public void testConcurrentAllocatorThroughput() throws Exception {
+        assumeTrue(Boolean.getBoolean(BENCHMARK_ATTRIB));
+        final int nThreads = 64;
+        final int nIterations = 20000;
+        final int maxWaitMs = 8000;
+        final GlobalMemoryManager gmm = new GlobalMemoryManager(nThreads * 100,maxWaitMs);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicLong maxAllocationNs = new AtomicLong();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            final ChildMemoryManager mm = new ChildMemoryManager(gmm, 10);
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        long threadMaxNs = 0;
+                        for (int j = 0; j < nIterations; j++) {
+                            long startNs = System.nanoTime();
+                            MemoryChunk c = mm.allocate(10 + j % 50);
+                            c.resize(c.getSize() * 2);
+                            threadMaxNs = Math.max(threadMaxNs, System.nanoTime() - startNs);
+                            c.resize(c.getSize() / 4);
+                            c.close();
+                        }
+                        long maxNs;
+                        while ((maxNs = maxAllocationNs.get()) < threadMaxNs && !maxAllocationNs.compareAndSet(maxNs, threadMaxNs)) {
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        long startTimeMs = System.currentTimeMillis();
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - startTimeMs);
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+        long allocationsPerSec = nThreads * (long)nIterations * 1000 / elapsedMs;
+        long maxAllocationMs = maxAllocationNs.get() / 1000000;
+        logger.info(nThreads + " concurrent allocators did " + (nThreads * nIterations) + " allocations in " + elapsedMs
+                + "ms (" + allocationsPerSec + "/sec), with the slowest allocation taking " + maxAllocationMs + "ms");
+        assertTrue(allocationsPerSec > 0);
+        // No allocator is starved for anywhere near the maximum wait time
+        assertTrue("Slowest allocation took " + maxAllocationMs + "ms", maxAllocationMs < maxWaitMs / 2);
+    }
+}
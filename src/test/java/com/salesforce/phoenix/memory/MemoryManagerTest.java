@@ -27,8 +27,11 @@
  ******************************************************************************/
 package com.salesforce.phoenix.memory;
 
-import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Test;
 
@@ -77,7 +80,7 @@ public class MemoryManagerTest {
     }
 
     @Test
-    public void testWaitForMemoryAvailable() {
+    public void testWaitForMemoryAvailable() throws Exception {
         final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
         final ChildMemoryManager rmm1 = new ChildMemoryManager(gmm,100);
         final ChildMemoryManager rmm2 = new ChildMemoryManager(gmm,100);
@@ -106,19 +109,20 @@ public class MemoryManagerTest {
         t1.start();
         t2.start();
         sleepFor(500);
-        // Main thread competes with others to get all memory, but should wait
-        // until both threads are complete (since that's when the memory will
-        // again be all available.
+        // Main thread competes with others to get all memory. Since it asks
+        // before t2, it gets it as soon as t1 frees it, with t2 waiting behind.
         ChildMemoryManager rmm = new ChildMemoryManager(gmm,100);
         MemoryChunk c = rmm.allocate(100);
         c.close();
+        t1.join();
+        t2.join();
         assertTrue(rmm.getAvailableMemory() == rmm.getMaxMemory());
         assertTrue(rmm1.getAvailableMemory() == rmm1.getMaxMemory());
         assertTrue(rmm2.getAvailableMemory() == rmm2.getMaxMemory());
     }
     
     @Test
-    public void testResizeWaitForMemoryAvailable() {
+    public void testResizeWaitForMemoryAvailable() throws Exception {
         final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
         final ChildMemoryManager rmm1 = new ChildMemoryManager(gmm,100);
         final ChildMemoryManager rmm2 = new ChildMemoryManager(gmm,100);
@@ -136,7 +140,7 @@ public class MemoryManagerTest {
         Thread t2 = new Thread() {
             @Override
             public void run() {
-                sleepFor(1000);
+                sleepFor(250);
                 MemoryChunk c3 = rmm2.allocate(10);
                 // Will require waiting for a bit of time before t1 frees the requested memory
                 long startTime = System.currentTimeMillis();
@@ -148,17 +152,43 @@ public class MemoryManagerTest {
         t1.start();
         t2.start();
         sleepFor(500);
-        // Main thread competes with others to get all memory, but should wait
-        // until both threads are complete (since that's when the memory will
-        // again be all available.
+        // Main thread competes with others to get all memory. Since it asks
+        // before t2, it gets it as soon as t1 frees it, with t2 waiting behind.
         ChildMemoryManager rmm = new ChildMemoryManager(gmm,100);
         MemoryChunk c = rmm.allocate(100);
         c.close();
+        t1.join();
+        t2.join();
         assertTrue(rmm.getAvailableMemory() == rmm.getMaxMemory());
         assertTrue(rmm1.getAvailableMemory() == rmm1.getMaxMemory());
         assertTrue(rmm2.getAvailableMemory() == rmm2.getMaxMemory());
     }
     
+    @Test
+    public void testTryResize() throws Exception {
+        final GlobalMemoryManager gmm = new GlobalMemoryManager(100,60000);
+        ChildMemoryManager rmm = new ChildMemoryManager(gmm,50);
+        MemoryChunk c1 = rmm.allocate(20);
+        assertTrue(c1.tryResize(40));
+        assertEquals(40, c1.getSize());
+        // Over the share of the child memory manager
+        assertFalse(c1.tryResize(60));
+        assertEquals(40, c1.getSize());
+        MemoryChunk c2 = gmm.allocate(50);
+        // Only 10 bytes left globally, so fails right away instead of waiting
+        long startTimeMs = System.currentTimeMillis();
+        assertFalse(c2.tryResize(70));
+        assertTrue(System.currentTimeMillis() - startTimeMs < 1000);
+        assertEquals(50, c2.getSize());
+        assertTrue(c2.tryResize(60));
+        assertTrue(c1.tryResize(10));
+        assertEquals(10, c1.getSize());
+        c1.close();
+        c2.close();
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+        assertEquals(rmm.getMaxMemory(), rmm.getAvailableMemory());
+    }
+    
     @Test
     public void testWaitUntilResize() {
         final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
@@ -271,4 +301,131 @@ public class MemoryManagerTest {
         assertTrue(rmm3.getAvailableMemory() == rmm3.getMaxMemory());
         assertTrue(rmm4.getAvailableMemory() == rmm4.getMaxMemory());
     }
+    
+    @Test
+    public void testWaitInArrivalOrder() throws Exception {
+        final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
+        MemoryChunk c1 = gmm.allocate(60);
+        final AtomicInteger order = new AtomicInteger();
+        final int[] allocationOrder = new int[2];
+        Thread big = new Thread() {
+            @Override
+            public void run() {
+                MemoryChunk c = gmm.allocate(80);
+                allocationOrder[0] = order.incrementAndGet();
+                c.close();
+            }
+        };
+        Thread small = new Thread() {
+            @Override
+            public void run() {
+                // Would fit right away, but must wait behind the big request
+                MemoryChunk c = gmm.allocate(10);
+                allocationOrder[1] = order.incrementAndGet();
+                c.close();
+            }
+        };
+        big.start();
+        sleepFor(500);
+        small.start();
+        sleepFor(500);
+        assertEquals(0, order.get());
+        c1.close();
+        big.join();
+        small.join();
+        assertEquals(1, allocationOrder[0]);
+        assertEquals(2, allocationOrder[1]);
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
+    
+    @Test
+    public void testLayeredChildMemoryManagers() throws Exception {
+        MemoryManager gmm = new GlobalMemoryManager(1000,1);
+        ChildMemoryManager tenantMM = new ChildMemoryManager(gmm,50);
+        ChildMemoryManager queryMM1 = new ChildMemoryManager(tenantMM,40);
+        ChildMemoryManager queryMM2 = new ChildMemoryManager(tenantMM,80);
+        assertEquals(200, queryMM1.getMaxMemory());
+        MemoryChunk c1 = queryMM1.allocate(150);
+        try {
+            queryMM1.allocate(100);
+            fail();
+        } catch (InsufficientMemoryException e) { // expected
+        }
+        // Capped by what remains of the tenant's share
+        MemoryChunk c2 = queryMM2.allocate(100, 400);
+        assertEquals(350, c2.getSize());
+        try {
+            c2.resize(360);
+            fail();
+        } catch (InsufficientMemoryException e) { // expected
+        }
+        c1.close();
+        c2.resize(360);
+        c2.close();
+        assertEquals(queryMM1.getMaxMemory(), queryMM1.getAvailableMemory());
+        assertEquals(queryMM2.getMaxMemory(), queryMM2.getAvailableMemory());
+        assertEquals(tenantMM.getMaxMemory(), tenantMM.getAvailableMemory());
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
+    
+    @Test
+    public void testConcurrentAllocators() throws Exception {
+        final int nThreads = 8;
+        final int nIterations = 1000;
+        final GlobalMemoryManager gmm = new GlobalMemoryManager(nThreads * 100,8000);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            final ChildMemoryManager mm = new ChildMemoryManager(gmm, 10);
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int j = 0; j < nIterations; j++) {
+                            MemoryChunk c = mm.allocate(10 + j % 50);
+                            c.resize(c.getSize() * 2);
+                            c.resize(c.getSize() / 4);
+                            assertTrue(gmm.getAvailableMemory() >= 0);
+                            c.close();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        startLatch.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(gmm.getMaxMemory(), gmm.getAvailableMemory());
+    }
+
+    @Test
+    public void testWaitingBytes() throws Exception {
+        final GlobalMemoryManager gmm = new GlobalMemoryManager(100,8000);
+        MemoryChunk c1 = gmm.allocate(100);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                MemoryChunk c2 = gmm.allocate(30);
+                c2.close();
+            }
+        };
+        t.start();
+        for (int i = 0; i < 100 && gmm.getWaitingBytes() == 0; i++) {
+            sleepFor(50);
+        }
+        assertEquals(30, gmm.getWaitingBytes());
+        c1.close();
+        t.join();
+        assertEquals(0, gmm.getWaitingBytes());
+        assertTrue(gmm.getAvailableMemory() == gmm.getMaxMemory());
+    }
 }
@@ -27,6 +27,8 @@
  ******************************************************************************/
 package com.salesforce.phoenix.parse;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -399,4 +401,40 @@ public class QueryParserTest {
             assertTrue(e.getMessage(), e.getMessage().contains("ERROR 601 (42P00): Syntax error. Encountered \"d\" at line 2, column 7."));
         }
     }
+
+    @Test
+    public void testParseTableSample() throws Exception {
+        SQLParser parser = new SQLParser(new StringReader(
+                "select count(*) from b tablesample(1 percent)\n" +
+                "where e = d"));
+        SelectStatement statement = (SelectStatement)parser.parseStatement();
+        assertEquals(1.0, statement.getSamplePercent(), 0);
+        
+        parser = new SQLParser(new StringReader(
+                "select a from b tablesample (0.5 percent) group by a"));
+        statement = (SelectStatement)parser.parseStatement();
+        assertEquals(0.5, statement.getSamplePercent(), 0);
+        
+        parser = new SQLParser(new StringReader("select a from b"));
+        statement = (SelectStatement)parser.parseStatement();
+        assertNull(statement.getSamplePercent());
+    }
+
+    @Test
+    public void testParseTableSampleKeywordsAsNames() throws Exception {
+        // Neither keyword is reserved where it names a table or a column
+        SQLParser parser = new SQLParser(new StringReader(
+                "select percent, tablesample from percent tablesample(10 percent) where percent > 1"));
+        SelectStatement statement = (SelectStatement)parser.parseStatement();
+        assertEquals(10.0, statement.getSamplePercent(), 0);
+        
+        parser = new SQLParser(new StringReader(
+                "select p.percent from tablesample p"));
+        statement = (SelectStatement)parser.parseStatement();
+        assertNull(statement.getSamplePercent());
+        
+        parser = new SQLParser(new StringReader(
+                "create table percent (percent varchar not null primary key, tablesample integer)"));
+        parser.parseStatement();
+    }
 }
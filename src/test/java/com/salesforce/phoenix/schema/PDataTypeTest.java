@@ -348,4 +348,20 @@ public class PDataTypeTest {
         assertEquals(bd.toString(), bd.precision(), v[0]);
         assertEquals(bd.toString(), bd.scale(), v[1]);
     }
+
+    @Test
+    public void testToUnscaledLong() throws Exception {
+        long[] unscaledAndScale = new long[2];
+        String[] values = new String[] {"0", "1", "-1", "10", "-10", "0.5", "-0.5", "123.456", "-123.456",
+                "1E+4", "-1E+4", "0.0001", "-0.0001", "999999999999999999", "-999999999999999999", "12345678.9012345678"};
+        for (String value : values) {
+            BigDecimal bd = new BigDecimal(value);
+            byte[] b = PDataType.DECIMAL.toBytes(bd);
+            assertTrue(value, PDataType.toUnscaledLong(b, 0, b.length, unscaledAndScale));
+            assertEquals(value, 0, bd.compareTo(BigDecimal.valueOf(unscaledAndScale[0], (int)unscaledAndScale[1])));
+        }
+        // More than 18 digits doesn't fit
+        byte[] b = PDataType.DECIMAL.toBytes(new BigDecimal("12345678901234567890"));
+        assertFalse(PDataType.toUnscaledLong(b, 0, b.length, unscaledAndScale));
+    }
 }
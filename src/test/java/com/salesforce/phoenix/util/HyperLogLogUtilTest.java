@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+
+public class HyperLogLogUtilTest {
+    // Allow for three times the standard error so that the tests are not flaky
+    private static final double MAX_ERROR = 3 * 1.04 / Math.sqrt(HyperLogLogUtil.REGISTER_COUNT);
+    
+    private static void assertEstimate(long expected, byte[] sketch) {
+        long estimate = HyperLogLogUtil.estimate(sketch, 0, sketch.length);
+        assertTrue("Estimate of " + estimate + " for " + expected, Math.abs(estimate - expected) <= expected * MAX_ERROR);
+    }
+    
+    @Test
+    public void testEstimate() {
+        byte[] sketch = HyperLogLogUtil.newSketch();
+        assertEquals(0, HyperLogLogUtil.estimate(sketch, 0, sketch.length));
+        for (int n = 0; n < 200000; n++) {
+            byte[] b = Bytes.toBytes("visitor" + n);
+            HyperLogLogUtil.add(sketch, b, 0, b.length);
+            // Adding the same value again has no effect
+            HyperLogLogUtil.add(sketch, b, 0, b.length);
+            if (n == 9) {
+                assertEquals(10, HyperLogLogUtil.estimate(sketch, 0, sketch.length));
+            } else if (n == 9999) {
+                assertEstimate(10000, sketch);
+            }
+        }
+        assertEstimate(200000, sketch);
+    }
+    
+    @Test
+    public void testMerge() {
+        byte[] sketch1 = HyperLogLogUtil.newSketch();
+        byte[] sketch2 = HyperLogLogUtil.newSketch();
+        // Half of the values in common across both sketches
+        for (int n = 0; n < 100000; n++) {
+            byte[] b = Bytes.toBytes(n);
+            HyperLogLogUtil.add(sketch1, b, 0, b.length);
+            b = Bytes.toBytes(n + 50000);
+            HyperLogLogUtil.add(sketch2, b, 0, b.length);
+        }
+        byte[] b = new byte[sketch2.length + 2];
+        System.arraycopy(sketch2, 0, b, 1, sketch2.length);
+        HyperLogLogUtil.merge(sketch1, b, 1, sketch2.length);
+        assertEstimate(150000, sketch1);
+    }
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+
+public class NumberUtilTest {
+
+    private static void assertUnscaled(BigDecimal expected, long[] unscaledAndScale) {
+        assertEquals(expected, BigDecimal.valueOf(unscaledAndScale[0], (int)unscaledAndScale[1]));
+    }
+    
+    @Test
+    public void testAddUnscaled() {
+        long[] sum = new long[] {12345, 2};
+        assertTrue(NumberUtil.addUnscaled(sum, 5, 3));
+        assertUnscaled(new BigDecimal("123.45").add(new BigDecimal("0.005")), sum);
+        assertTrue(NumberUtil.addUnscaled(sum, -1, 0));
+        assertUnscaled(new BigDecimal("122.455"), sum);
+        
+        // Largest value that can still be rescaled
+        sum = new long[] {Long.MAX_VALUE / 10, 0};
+        assertTrue(NumberUtil.addUnscaled(sum, 7, 1));
+        assertUnscaled(BigDecimal.valueOf(Long.MAX_VALUE, 1), sum);
+    }
+
+    @Test
+    public void testAddUnscaledOverflow() {
+        long[] sum = new long[] {Long.MAX_VALUE, 0};
+        assertFalse(NumberUtil.addUnscaled(sum, 1, 0));
+        assertUnscaled(BigDecimal.valueOf(Long.MAX_VALUE), sum);
+        
+        sum = new long[] {Long.MIN_VALUE, 0};
+        assertFalse(NumberUtil.addUnscaled(sum, -1, 0));
+        assertUnscaled(BigDecimal.valueOf(Long.MIN_VALUE), sum);
+        
+        // Rescaling the sum overflows
+        sum = new long[] {Long.MAX_VALUE / 10 + 1, 0};
+        assertFalse(NumberUtil.addUnscaled(sum, 1, 1));
+        assertUnscaled(BigDecimal.valueOf(Long.MAX_VALUE / 10 + 1), sum);
+        
+        // Rescaling the value overflows
+        sum = new long[] {1, 1};
+        assertFalse(NumberUtil.addUnscaled(sum, Long.MIN_VALUE, 0));
+        assertUnscaled(new BigDecimal("0.1"), sum);
+        
+        // Scale difference beyond the powers of ten that fit into a long
+        sum = new long[] {1, 0};
+        assertFalse(NumberUtil.addUnscaled(sum, 1, 19));
+        assertUnscaled(BigDecimal.ONE, sum);
+    }
+
+    @Test
+    public void testMultiplyUnscaled() {
+        long[] product = new long[] {15, 1};
+        assertTrue(NumberUtil.multiplyUnscaled(product, -25, 2));
+        assertUnscaled(new BigDecimal("1.5").multiply(new BigDecimal("-0.25")), product);
+        
+        // Largest square that fits into a long
+        product = new long[] {3037000499L, 1};
+        assertTrue(NumberUtil.multiplyUnscaled(product, 3037000499L, 1));
+        assertUnscaled(new BigDecimal("303700049.9").multiply(new BigDecimal("303700049.9")), product);
+        
+        product = new long[] {0, 0};
+        assertTrue(NumberUtil.multiplyUnscaled(product, Long.MIN_VALUE, 3));
+        assertUnscaled(BigDecimal.valueOf(0, 3), product);
+    }
+
+    @Test
+    public void testMultiplyUnscaledOverflow() {
+        long[] product = new long[] {3037000500L, 0};
+        assertFalse(NumberUtil.multiplyUnscaled(product, 3037000500L, 0));
+        assertUnscaled(BigDecimal.valueOf(3037000500L), product);
+        
+        product = new long[] {Long.MIN_VALUE, 0};
+        assertFalse(NumberUtil.multiplyUnscaled(product, -1, 0));
+        assertUnscaled(BigDecimal.valueOf(Long.MIN_VALUE), product);
+        
+        product = new long[] {-1, 2};
+        assertFalse(NumberUtil.multiplyUnscaled(product, Long.MIN_VALUE, 0));
+        assertUnscaled(BigDecimal.valueOf(-1, 2), product);
+    }
+}
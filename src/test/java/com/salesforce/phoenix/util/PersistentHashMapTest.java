@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+
+public class PersistentHashMapTest {
+
+    private static class CollidingKey {
+        private final int hashCode;
+        private final int value;
+        
+        private CollidingKey(int hashCode, int value) {
+            this.hashCode = hashCode;
+            this.value = value;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CollidingKey && ((CollidingKey)obj).value == value;
+        }
+    }
+    
+    private static void assertSameContents(Map<Object,Integer> expected, PersistentHashMap<Object,Integer> actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        int count = 0;
+        for (Map.Entry<Object,Integer> entry : actual.entrySet()) {
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+    
+    private static void testRandomMutations(boolean collide) {
+        Random random = new Random(0);
+        PersistentHashMap<Object,Integer> map = PersistentHashMap.of();
+        Map<Object,Integer> expected = new HashMap<Object,Integer>();
+        List<PersistentHashMap<Object,Integer>> snapshots = new ArrayList<PersistentHashMap<Object,Integer>>();
+        List<Map<Object,Integer>> expectedSnapshots = new ArrayList<Map<Object,Integer>>();
+        for (int i = 0; i < 10000; i++) {
+            Object key = collide ? new CollidingKey(random.nextInt(20), random.nextInt(1000)) : Integer.valueOf(random.nextInt(2000));
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expected.remove(key);
+            } else {
+                Integer value = random.nextInt();
+                map = map.plus(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            if (i % 1000 == 0) {
+                snapshots.add(map);
+                expectedSnapshots.add(new HashMap<Object,Integer>(expected));
+            }
+        }
+        assertSameContents(expected, map);
+        // Earlier versions must be unaffected by later mutations
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertSameContents(expectedSnapshots.get(i), snapshots.get(i));
+        }
+        for (Object key : expected.keySet()) {
+            map = map.minus(key);
+        }
+        assertTrue(map.isEmpty());
+        assertFalse(map.entrySet().iterator().hasNext());
+    }
+    
+    @Test
+    public void testRandomMutations() {
+        testRandomMutations(false);
+    }
+    
+    @Test
+    public void testRandomMutationsWithHashCollisions() {
+        testRandomMutations(true);
+    }
+    
+    @Test
+    public void testUnchangedMapReturned() {
+        PersistentHashMap<String,String> map = PersistentHashMap.<String,String>of().plus("A", "1");
+        assertSame(map, map.minus("B"));
+        assertSame(map, map.plus("A", map.get("A")));
+        assertNotSame(map, map.plus("A", "2"));
+        assertEquals("1", map.get("A"));
+    }
+    
+    @Test(expected=UnsupportedOperationException.class)
+    public void testPutNotSupported() {
+        PersistentHashMap.<String,String>of().put("A", "1");
+    }
+}
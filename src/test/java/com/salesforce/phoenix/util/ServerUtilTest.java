@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.junit.Test;
+
+import com.salesforce.phoenix.exception.*;
+
+
+public class ServerUtilTest {
+
+    @Test
+    public void testParseServerTimeout() throws Exception {
+        SQLException timeout = new SQLExceptionInfo.Builder(SQLExceptionCode.OPERATION_TIMED_OUT)
+            .setMessage("Scan abandoned by client").build().buildException();
+        // The cause thrown on the region server doesn't make it back to the client, only its message
+        IOException serverException = new DoNotRetryIOException(DoNotRetryIOException.class.getName() + ": " + timeout.getMessage());
+        Throwable t = new ExecutionException(new PhoenixIOException(serverException));
+        SQLException e = ServerUtil.parseServerException(t);
+        assertEquals(SQLExceptionCode.OPERATION_TIMED_OUT.getErrorCode(), e.getErrorCode());
+        assertSame(t, e.getCause());
+    }
+    
+    @Test
+    public void testParseSQLExceptionCause() throws Exception {
+        SQLException cancelled = new SQLExceptionInfo.Builder(SQLExceptionCode.QUERY_CANCELLED).build().buildException();
+        assertSame(cancelled, ServerUtil.parseServerException(new ExecutionException(cancelled)));
+        assertSame(cancelled, ServerUtil.parseServerException(cancelled));
+    }
+    
+    @Test
+    public void testParseOtherException() throws Exception {
+        PhoenixIOException ioException = new PhoenixIOException(new IOException("Region offline"));
+        assertSame(ioException, ServerUtil.parseServerException(ioException));
+        ExecutionException t = new ExecutionException(new IllegalStateException());
+        SQLException e = ServerUtil.parseServerException(t);
+        assertSame(t, e.getCause());
+    }
+}
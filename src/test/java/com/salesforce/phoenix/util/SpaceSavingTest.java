@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+
+public class SpaceSavingTest {
+    
+    private static void add(SpaceSaving sketch, String value) {
+        byte[] b = Bytes.toBytes(value);
+        sketch.add(b, 0, b.length);
+    }
+    
+    private static String value(SpaceSaving.Counter counter) {
+        ImmutableBytesPtr ptr = counter.getValue();
+        return Bytes.toString(ptr.get(), ptr.getOffset(), ptr.getLength());
+    }
+    
+    @Test
+    public void testExactBelowCapacity() {
+        SpaceSaving sketch = new SpaceSaving(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                add(sketch, "v" + i);
+            }
+        }
+        List<SpaceSaving.Counter> counters = sketch.getCounters();
+        assertEquals(5, counters.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("v" + (4 - i), value(counters.get(i)));
+            assertEquals(5 - i, counters.get(i).getCount());
+            assertEquals(0, counters.get(i).getError());
+        }
+    }
+    
+    @Test
+    public void testHeavyHittersAcrossMergedSketches() {
+        // Zipfian distribution over many distinct values, as the requests per domain would be
+        int nDistinct = 10000;
+        double[] cumulative = new double[nDistinct];
+        double sum = 0;
+        for (int i = 0; i < nDistinct; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(1);
+        int[] exactCounts = new int[nDistinct];
+        SpaceSaving[] regionSketches = new SpaceSaving[4];
+        for (int i = 0; i < regionSketches.length; i++) {
+            regionSketches[i] = new SpaceSaving(100);
+        }
+        for (int i = 0; i < 200000; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            exactCounts[index]++;
+            add(regionSketches[(i / 1000) % regionSketches.length], "v" + index);
+        }
+        SpaceSaving sketch = new SpaceSaving(100);
+        for (SpaceSaving regionSketch : regionSketches) {
+            byte[] b = regionSketch.toBytes();
+            sketch.merge(b, 0, b.length);
+        }
+        List<SpaceSaving.Counter> counters = sketch.getCounters();
+        assertEquals(100, counters.size());
+        for (int i = 0; i < 10; i++) {
+            SpaceSaving.Counter counter = counters.get(i);
+            assertEquals("v" + i, value(counter));
+            // Counts are never underestimated and are within the error bound
+            assertTrue(counter.getCount() >= exactCounts[i]);
+            assertTrue(counter.getCount() - counter.getError() <= exactCounts[i]);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import com.salesforce.phoenix.expression.Expression;
+import com.salesforce.phoenix.expression.LiteralExpression;
+import com.salesforce.phoenix.expression.function.*;
+import com.salesforce.phoenix.schema.PDataType;
+
+
+public class StringUtilTest {
+
+    private static String evaluate(Expression e) {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        if (!e.evaluate(null, ptr)) {
+            return null;
+        }
+        return (String)PDataType.VARCHAR.toObject(ptr);
+    }
+    
+    private static String substr(String s, long offset, Long length) throws Exception {
+        return evaluate(new SubstrFunction(Arrays.<Expression>asList(LiteralExpression.newConstant(s, PDataType.VARCHAR), 
+                LiteralExpression.newConstant(offset, PDataType.LONG), LiteralExpression.newConstant(length, PDataType.LONG))));
+    }
+    
+    @Test
+    public void testChangeCaseOfSingleByteChars() {
+        byte[] b = Bytes.toBytes("xxaBc1-Zxx");
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable(b, 2, 6);
+        assertTrue(StringUtil.changeCaseOfSingleByteChars(ptr, true));
+        assertEquals("ABC1-Z", Bytes.toString(ptr.get(), ptr.getOffset(), ptr.getLength()));
+        assertEquals("xxaBc1-Zxx", Bytes.toString(b));
+        
+        ptr = new ImmutableBytesWritable(b, 2, 6);
+        assertTrue(StringUtil.changeCaseOfSingleByteChars(ptr, false));
+        assertEquals("abc1-z", Bytes.toString(ptr.get(), ptr.getOffset(), ptr.getLength()));
+        
+        // Nothing to change, so no copy is made
+        ptr = new ImmutableBytesWritable(b, 5, 2);
+        assertTrue(StringUtil.changeCaseOfSingleByteChars(ptr, true));
+        assertSame(b, ptr.get());
+        
+        ptr = new ImmutableBytesWritable(Bytes.toBytes("café"));
+        assertFalse(StringUtil.changeCaseOfSingleByteChars(ptr, true));
+        assertEquals("café", Bytes.toString(ptr.get()));
+    }
+    
+    @Test
+    public void testUpperLower() throws Exception {
+        assertEquals("ABC", evaluate(new UpperFunction(Arrays.<Expression>asList(LiteralExpression.newConstant("aBc")))));
+        assertEquals("abc", evaluate(new LowerFunction(Arrays.<Expression>asList(LiteralExpression.newConstant("aBc")))));
+        assertEquals("CAFÉ", evaluate(new UpperFunction(Arrays.<Expression>asList(LiteralExpression.newConstant("café")))));
+        assertEquals("café", evaluate(new LowerFunction(Arrays.<Expression>asList(LiteralExpression.newConstant("CAFÉ")))));
+    }
+    
+    @Test
+    public void testSubstr() throws Exception {
+        String s = "日本ab語";
+        assertEquals("本ab", substr(s, 2, 3L));
+        assertEquals("本ab語", substr(s, 2, null));
+        assertEquals("本ab語", substr(s, 2, 100L));
+        assertEquals("日", substr(s, 0, 1L));
+        assertEquals("b語", substr(s, -2, null));
+        assertEquals("語", substr(s, 5, null));
+        assertNull(substr(s, 6, null));
+        assertNull(substr(s, -6, null));
+        assertNull(substr(s, 1, 0L));
+    }
+    
+    @Test
+    public void testVarcharToBytes() {
+        byte[] b = new byte[20];
+        assertEquals(3, PDataType.VARCHAR.toBytes("abc", b, 1));
+        assertEquals("abc", Bytes.toString(b, 1, 3));
+        assertEquals(5, PDataType.VARCHAR.toBytes("abéc", b, 1));
+        assertEquals("abéc", Bytes.toString(b, 1, 5));
+    }
+    
+    @Test
+    public void testCharVarcharBytesComparable() {
+        assertTrue(PDataType.VARCHAR.isBytesComparableWith(PDataType.CHAR));
+        assertTrue(PDataType.CHAR.isBytesComparableWith(PDataType.VARCHAR));
+        assertTrue(PDataType.VARCHAR.compareTo(Bytes.toBytes("ab"), 0, 2, Bytes.toBytes("abc"), 0, 3, PDataType.CHAR) < 0);
+    }
+}
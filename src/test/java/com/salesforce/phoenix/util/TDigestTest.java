@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2013, Salesforce.com, Inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ *     Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *     Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *     Neither the name of Salesforce.com nor the names of its contributors may 
+ *     be used to endorse or promote products derived from this software without 
+ *     specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE 
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL 
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR 
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, 
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE 
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package com.salesforce.phoenix.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class TDigestTest {
+    // Maximum difference between the requested quantile and the actual rank of the estimate
+    private static final double MAX_RANK_ERROR = 0.005;
+    
+    private static void assertQuantile(double q, double[] sortedValues, double estimate) {
+        int rank = Arrays.binarySearch(sortedValues, estimate);
+        if (rank < 0) {
+            rank = -rank - 1;
+        }
+        double rankError = Math.abs((double)rank / sortedValues.length - q);
+        assertTrue("Rank error of " + rankError + " for quantile " + q, rankError <= MAX_RANK_ERROR);
+    }
+    
+    @Test
+    public void testQuantile() {
+        TDigest digest = new TDigest();
+        assertTrue(Double.isNaN(digest.quantile(0.5)));
+        digest.add(42);
+        assertEquals(42, digest.quantile(0.99), 0);
+        
+        Random random = new Random(1);
+        double[] values = new double[100000];
+        digest = new TDigest();
+        for (int i = 0; i < values.length; i++) {
+            // Skewed like latencies are
+            values[i] = Math.exp(random.nextGaussian() * 2);
+            digest.add(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, digest.getCount());
+        assertEquals(values[0], digest.quantile(0), 0);
+        assertEquals(values[values.length-1], digest.quantile(1), 0);
+        for (double q : new double[] {0.01, 0.5, 0.95, 0.99, 0.999}) {
+            assertQuantile(q, values, digest.quantile(q));
+        }
+        // State stays bounded no matter how many values are added
+        assertTrue(digest.toBytes().length <= 1 + 2 * 8 + TDigest.MAX_CENTROIDS * (8 + 9));
+    }
+    
+    @Test
+    public void testMerge() {
+        Random random = new Random(1);
+        double[] values = new double[30000];
+        TDigest[] digests = new TDigest[] {new TDigest(), new TDigest(), new TDigest()};
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 1000;
+            digests[i % 3].add(values[i]);
+        }
+        Arrays.sort(values);
+        TDigest digest = new TDigest();
+        for (TDigest partialDigest : digests) {
+            byte[] b = partialDigest.toBytes();
+            digest.merge(b, 0, b.length);
+        }
+        digest.merge(new TDigest().toBytes(), 0, 1);
+        assertEquals(values.length, digest.getCount());
+        for (double q : new double[] {0, 0.01, 0.5, 0.95, 0.99, 1}) {
+            assertQuantile(q, values, digest.quantile(q));
+        }
+    }
+}